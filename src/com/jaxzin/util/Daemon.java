@@ -34,16 +34,20 @@ public abstract class Daemon implements java.lang.Runnable {
     /** Daemon is an abstract class and unable to be instantiated */
     protected Daemon(){}
     
-    /** Starts Daemon in a new Thread */
-    public final void start() {
-        if(Thread.currentThread() != talker) { // If it isn't already started
+    /** Starts Daemon in a new Thread, unless it is already running.  A
+     * running Daemon checks {@link #isStopCondition} and stops while
+     * holding the same lock, so a start that races with it either keeps
+     * the running thread going or starts a new one, never both.
+     */
+    public final synchronized void start() {
+        if(talker == null) { // If it isn't already started
             talker = new Thread(this);
             talker.start();
         } // END: if...
     } // END: start
 
     /** Safely stops the Daemon thread.*/
-    public final void stop() {
+    public final synchronized void stop() {
         talker = null;
     }
 
@@ -64,12 +68,16 @@ public abstract class Daemon implements java.lang.Runnable {
     
     /** Executes the daemon loop */
     public final void run() {
-            while(isAlive()) { 
-                if(isStopCondition()) {
-                    stop();
-                } else {
-                    runBody();
-                } // END: if...
+            while(true) { 
+                synchronized(this) {
+                    if(!isAlive())
+                        return;
+                    if(isStopCondition()) {
+                        stop();
+                        return;
+                    } // END: if...
+                }
+                runBody();
             } // END: while ...
     }
 
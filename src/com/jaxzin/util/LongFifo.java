@@ -0,0 +1,81 @@
+/*
+ * LongFifo.java
+ *
+ * Created on October 19, 2026, 9:20 PM
+ */
+
+package com.jaxzin.util;
+
+/** A first-in-first-out queue of primitive <code>long</code>s backed by a
+ * circular array.  Unlike a {@link java.util.LinkedList} of
+ * {@link java.lang.Long}s, adding and removing values does not allocate
+ * once the array has grown to the queue's working size.
+ * <P>
+ * <B>NOTE:</B> This class is not thread-safe. Callers must lock around it,
+ * usually with the same lock that guards the queue it runs alongside.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public final class LongFifo {
+
+    private long[] values;
+    private int head;
+    private int size;
+
+    /** Creates a new instance of LongFifo with room for 16 values */
+    public LongFifo() {
+        this(16);
+    }
+
+    /** Creates a new instance of LongFifo
+     * @param capacity the initial number of values it can hold before growing
+     */
+    public LongFifo(int capacity) {
+        this.values = new long[Math.max(capacity,1)];
+    }
+
+    /** Adds a value to the end of the queue. */
+    public void addLast(long value) {
+        if(size == values.length)
+            grow();
+        values[(head+size) % values.length] = value;
+        size++;
+    }
+
+    /** Removes and returns the value at the front of the queue.
+     * @throws java.util.NoSuchElementException if the queue is empty
+     */
+    public long removeFirst() {
+        if(size == 0)
+            throw new java.util.NoSuchElementException();
+        long value = values[head];
+        head = (head+1) % values.length;
+        size--;
+        return value;
+    }
+
+    /** Returns the number of values in the queue. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the truth that the queue holds no values. */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Removes all of the values from the queue. */
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    private void grow() {
+        long[] grown = new long[values.length*2];
+        for(int i = 0; i < size; i++) {
+            grown[i] = values[(head+i) % values.length];
+        }
+        values = grown;
+        head = 0;
+    }
+}
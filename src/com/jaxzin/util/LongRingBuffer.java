@@ -0,0 +1,181 @@
+/*
+ * LongRingBuffer.java
+ *
+ * Created on November 11, 2026, 8:10 PM
+ */
+
+package com.jaxzin.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** A ring of primitive <code>long</code>s written by one thread and read by
+ * any number of others, each through a {@link LongRingBuffer.Cursor} of its
+ * own that sees every value in order.  Neither writing nor reading
+ * allocates, and only readers that wait for values take a lock.
+ * <P>
+ * The writer never waits for the readers.  A reader that falls a whole
+ * ring behind loses the values that were written over, skips ahead to the
+ * oldest value still in the ring, and counts what it lost.
+ * <P>
+ * <B>NOTE:</B> Only one thread may call {@link #put} and {@link #publish}
+ * at a time, usually the thread that produces the values.  Each cursor
+ * belongs to one reading thread.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public final class LongRingBuffer {
+
+    /** A reader's position in the ring */
+    public final class Cursor {
+        private long next;
+        private long lost;
+
+        private Cursor(long next) {
+            this.next = next;
+        }
+
+        /** Returns the number of values waiting to be read, or more if the
+         * cursor has fallen behind.
+         */
+        public long available() {
+            return published.get()-next;
+        }
+
+        /** Reads waiting values without waiting for more.
+         * @return the number of values read into <code>values</code>
+         */
+        public int poll(long[] values, int offset, int length) {
+            long end = Math.min(published.get(), next+length);
+            int count = 0;
+            while(next < end) {
+                long value = ring.get((int)(next & mask));
+                // The slot may have been written over while it was read
+                if(claimed.get()-next > ring.length()) {
+                    skip();
+                    end = Math.min(published.get(), next+length-count);
+                    continue;
+                }
+                values[offset+count++] = value;
+                next++;
+            }
+            return count;
+        }
+
+        /** Reads at least one value, waiting for one if there is none.
+         * @param timeout The most to wait, in milliseconds.
+         * @return the number of values read, 0 if none came in time
+         * @throws java.lang.InterruptedException if the thread is interrupted
+         * while waiting
+         */
+        public int take(long[] values, int offset, int length, long timeout) throws InterruptedException {
+            int count = poll(values, offset, length);
+            if(count > 0 || length == 0)
+                return count;
+            long deadline = System.currentTimeMillis()+timeout;
+            synchronized(lock) {
+                waiting++;
+                try {
+                    while(published.get() <= next) {
+                        long remaining = deadline-System.currentTimeMillis();
+                        if(remaining <= 0)
+                            return 0;
+                        lock.wait(remaining);
+                    }
+                } finally {
+                    waiting--;
+                }
+            }
+            return poll(values, offset, length);
+        }
+
+        /** Returns the number of values written over before they were read. */
+        public long getLostCount() {
+            return lost;
+        }
+
+        /** Moves to the oldest value still in the ring */
+        private void skip() {
+            long oldest = claimed.get()-ring.length();
+            if(oldest > next) {
+                lost += oldest-next;
+                next = oldest;
+            }
+        }
+    }
+
+    private AtomicLongArray ring;
+    private int mask;
+    /** The number of values written, counting those not yet published */
+    private AtomicLong claimed;
+    /** The number of values readers may read */
+    private AtomicLong published;
+
+    /** Notified when values are published while readers are waiting */
+    private Object lock;
+    /** The number of readers waiting, only changed with the lock held */
+    private volatile int waiting;
+
+    /** Creates a new instance of LongRingBuffer
+     * @param capacity The number of values the ring holds, rounded up to a
+     * power of two.
+     */
+    public LongRingBuffer(int capacity) {
+        if(capacity < 1 || capacity > 1 << 30)
+            throw new IllegalArgumentException("The capacity must be from 1 to 2^30: "+capacity);
+        int size = Integer.highestOneBit(capacity);
+        if(size < capacity)
+            size <<= 1;
+        this.ring = new AtomicLongArray(size);
+        this.mask = size-1;
+        this.claimed = new AtomicLong();
+        this.published = new AtomicLong();
+        this.lock = new Object();
+    }
+
+    /** Returns the number of values the ring holds. */
+    public int getCapacity() {
+        return ring.length();
+    }
+
+    /** Returns the number of values published so far. */
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    /** Returns a cursor that reads the values published from now on. */
+    public Cursor newCursor() {
+        return new Cursor(published.get());
+    }
+
+    /** Returns a cursor that starts at the oldest value still in the ring. */
+    public Cursor newCursorFromOldest() {
+        return new Cursor(Math.max(0, published.get()-ring.length()));
+    }
+
+    /** Writes a value.  Readers do not see it until {@link #publish}. */
+    public void put(long value) {
+        long sequence = claimed.get();
+        // Claim the slot before writing it, so readers can tell it changed
+        claimed.set(sequence+1);
+        ring.lazySet((int)(sequence & mask), value);
+    }
+
+    /** Lets readers see the values written since the last publish, and
+     * wakes any that are waiting.
+     */
+    public void publish() {
+        published.set(claimed.get());
+        if(waiting > 0) {
+            synchronized(lock) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /** Writes and publishes one value. */
+    public void add(long value) {
+        put(value);
+        publish();
+    }
+}
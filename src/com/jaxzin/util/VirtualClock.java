@@ -0,0 +1,219 @@
+/*
+ * VirtualClock.java
+ *
+ * Created on November 9, 2026, 7:05 PM
+ */
+
+package com.jaxzin.util;
+
+import java.util.*;
+
+/** A clock whose time only moves when it is told to, and a timer of tasks
+ * run at times on that clock.  A simulation scheduled on a
+ * <code>VirtualClock</code> can be stepped through with {@link #advance},
+ * which runs every task that falls due in order and takes no real time, or
+ * run in step with the real clock, sped up or slowed down, with
+ * {@link #start}.
+ * <P>
+ * Tasks run one at a time, on the thread that advances the clock, without
+ * the clock locked, so a task can schedule more tasks.  Tasks due at the
+ * same time run in the order they were scheduled.  Do not call
+ * {@link #advance} while the clock is started.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class VirtualClock {
+
+    /** A task scheduled on the clock */
+    public static final class Task implements Comparable {
+        private long time;
+        private long order;
+        private Runnable runnable;
+        private boolean cancelled;
+
+        private Task(long time, long order, Runnable runnable) {
+            this.time = time;
+            this.order = order;
+            this.runnable = runnable;
+        }
+
+        /** Returns the virtual time the task is due at. */
+        public long getTime() {
+            return this.time;
+        }
+
+        public int compareTo(Object o) {
+            Task other = (Task)o;
+            if(time != other.time)
+                return time < other.time ? -1 : 1;
+            return order < other.order ? -1 : order == other.order ? 0 : 1;
+        }
+    }
+
+    /** Advances the clock alongside the real one */
+    private class Runner implements Runnable {
+        public void run() {
+            long realStart = System.currentTimeMillis();
+            long virtualStart = currentTimeMillis();
+            while(true) {
+                double rate;
+                synchronized(VirtualClock.this) {
+                    if(runner != Thread.currentThread())
+                        return;
+                    rate = speed;
+                }
+                long target = virtualStart+(long)((System.currentTimeMillis()-realStart)*rate);
+                advanceTo(target);
+                synchronized(VirtualClock.this) {
+                    if(runner != Thread.currentThread())
+                        return;
+                    // Sleep until the next task is due, or until one is
+                    // scheduled sooner
+                    long wait = tasks.isEmpty() ? 1000
+                              : (long)((((Task)tasks.first()).time-now)/rate);
+                    try {
+                        VirtualClock.this.wait(Math.max(1, Math.min(wait, 1000)));
+                    } catch(InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Everything below is guarded by the lock on this clock */
+    private long now;
+    private long scheduled;
+    private SortedSet tasks;
+    private Thread runner;
+    private double speed;
+
+    /** Creates a new instance of VirtualClock at time 0 */
+    public VirtualClock() {
+        this(0);
+    }
+
+    /** Creates a new instance of VirtualClock at the given time */
+    public VirtualClock(long start) {
+        this.now = start;
+        this.tasks = new TreeSet();
+        this.speed = 1.0;
+    }
+
+    /** Returns the virtual time in milliseconds. */
+    public synchronized long currentTimeMillis() {
+        return this.now;
+    }
+
+    /** Runs a task once the clock has moved on by the given delay.
+     * @param delay The delay in virtual milliseconds.
+     * @return the task, which can be cancelled
+     */
+    public synchronized Task schedule(Runnable runnable, long delay) {
+        if(runnable == null)
+            throw new IllegalArgumentException("Runnable can not be null.");
+        if(delay < 0)
+            throw new IllegalArgumentException("The delay can not be negative: "+delay);
+        Task task = new Task(now+delay, scheduled++, runnable);
+        tasks.add(task);
+        notifyAll();
+        return task;
+    }
+
+    /** Keeps a task from running, if it has not already. */
+    public synchronized void cancel(Task task) {
+        task.cancelled = true;
+        tasks.remove(task);
+    }
+
+    /** Returns the number of tasks waiting to run. */
+    public synchronized int getPendingCount() {
+        return tasks.size();
+    }
+
+    /** Moves the clock on, running the tasks that fall due on the way. */
+    public void advance(long millis) {
+        if(millis < 0)
+            throw new IllegalArgumentException("The clock can not go back: "+millis);
+        long target;
+        synchronized(this) {
+            target = now+millis;
+        }
+        advanceTo(target);
+    }
+
+    /** Runs tasks until none are left, or until the clock has moved on by
+     * the given limit, whichever comes first.
+     * @return the truth that no tasks are left
+     */
+    public boolean advanceUntilIdle(long limit) {
+        long target;
+        synchronized(this) {
+            target = now+limit;
+        }
+        while(true) {
+            Task task;
+            synchronized(this) {
+                if(tasks.isEmpty())
+                    return true;
+                task = (Task)tasks.first();
+                if(task.time > target)
+                    break;
+            }
+            advanceTo(task.time);
+        }
+        advanceTo(target);
+        synchronized(this) {
+            return tasks.isEmpty();
+        }
+    }
+
+    /** Starts moving the clock alongside the real one, at the given number
+     * of virtual milliseconds to the real one.  Tasks run on a daemon thread.
+     */
+    public synchronized void start(double speed) {
+        if(speed <= 0)
+            throw new IllegalArgumentException("The speed must be positive: "+speed);
+        stop();
+        this.speed = speed;
+        runner = new Thread(new Runner(), "Virtual clock");
+        runner.setDaemon(true);
+        runner.start();
+    }
+
+    /** Stops moving the clock alongside the real one. */
+    public synchronized void stop() {
+        runner = null;
+        notifyAll();
+    }
+
+    /** Returns the virtual milliseconds to the real one the clock was last
+     * started at.
+     */
+    public synchronized double getSpeed() {
+        return this.speed;
+    }
+
+    /** Returns the truth that the clock is moving alongside the real one. */
+    public synchronized boolean isRunning() {
+        return runner != null;
+    }
+
+    private void advanceTo(long target) {
+        while(true) {
+            Task task;
+            synchronized(this) {
+                if(tasks.isEmpty() || ((Task)tasks.first()).time > target) {
+                    now = Math.max(now, target);
+                    return;
+                }
+                task = (Task)tasks.first();
+                tasks.remove(task);
+                now = Math.max(now, task.time);
+                if(task.cancelled)
+                    continue;
+            }
+            task.runnable.run();
+        }
+    }
+}
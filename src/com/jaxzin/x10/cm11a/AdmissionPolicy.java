@@ -0,0 +1,34 @@
+/*
+ * AdmissionPolicy.java
+ *
+ * Created on October 27, 2026, 8:31 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+import javax.x10.event.X10Event;
+
+/** AdmissionPolicy defines the interface for objects that decide whether
+ * {@link com.jaxzin.x10.cm11a.CM11A} accepts a new event onto its transmit
+ * queue, given how long the events already queued are projected to take.
+ *
+ * @see com.jaxzin.x10.cm11a.ThresholdAdmissionPolicy
+ * @see com.jaxzin.x10.cm11a.CM11A#setAdmissionPolicy
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public interface AdmissionPolicy {
+
+    /** Returned by {@link #admit} to queue the event right away. */
+    public static final long ADMIT = 0;
+    /** Returned by {@link #admit} to refuse the event. */
+    public static final long REFUSE = -1;
+
+    /** Decides what to do with a new event.
+     * @param event The event being transmitted.
+     * @param projectedDelay How long the queue is projected to take before
+     * the event would be delivered, in milliseconds.
+     * @return {@link #ADMIT}, {@link #REFUSE}, or the number of milliseconds
+     * to wait before queueing the event.
+     */
+    public long admit(X10Event event, long projectedDelay);
+}
@@ -0,0 +1,104 @@
+/*
+ * BackoffRetryPolicy.java
+ *
+ * Created on October 21, 2026, 8:31 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+import java.util.*;
+
+/** <code>BackoffRetryPolicy</code> is the default
+ * {@link com.jaxzin.x10.cm11a.RetryPolicy}. Each
+ * {@link com.jaxzin.x10.cm11a.FailureCause} gets its own limit on attempts
+ * and its own exponential backoff, and every delay is spread out by a
+ * random jitter so several frames failing together do not retry in step.
+ * <P>
+ * The defaults are:
+ * <LI>{@link FailureCause#CHECKSUM_MISMATCH}: 20 failures, starting at 10ms and doubling up to 500ms.</LI>
+ * <LI>{@link FailureCause#EVENT_RECEIVED}: 20 failures, no delay. The poll has been serviced so the CM11A is ready again.</LI>
+ * <LI>{@link FailureCause#POWER_FAILURE}: 3 failures, no delay. The clock has been reset so the CM11A is ready again.</LI>
+ * <LI>{@link FailureCause#UNEXPECTED_REPLY}: 5 failures, starting at 50ms and doubling up to 1s.</LI>
+ * <LI>{@link FailureCause#NO_RESPONSE}: 2 failures, starting at 500ms. A dead adapter should not tie up the queue.</LI>
+ * <P>
+ * The jitter defaults to 20%, so a 100ms delay becomes anything from 80ms
+ * to 120ms.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class BackoffRetryPolicy implements RetryPolicy {
+    
+    /** The backoff settings for one FailureCause */
+    private static final class Backoff {
+        private int maximumFailures;
+        private long initialDelay;
+        private long maximumDelay;
+        private Backoff(int maximumFailures, long initialDelay, long maximumDelay) {
+            this.maximumFailures = maximumFailures;
+            this.initialDelay = initialDelay;
+            this.maximumDelay = maximumDelay;
+        }
+    }
+    
+    /** Maps FailureCauses to their Backoff settings */
+    private Map backoffs;
+    private double jitter;
+    private Random random;
+    
+    /** Creates a new instance of BackoffRetryPolicy with the default settings */
+    public BackoffRetryPolicy() {
+        this.backoffs = new Hashtable();
+        this.jitter = 0.2;
+        this.random = new Random();
+        setBackoff(FailureCause.CHECKSUM_MISMATCH,  20, 10, 500);
+        setBackoff(FailureCause.EVENT_RECEIVED,     20, 0, 0);
+        setBackoff(FailureCause.POWER_FAILURE,      3, 0, 0);
+        setBackoff(FailureCause.UNEXPECTED_REPLY,   5, 50, 1000);
+        setBackoff(FailureCause.NO_RESPONSE,        2, 500, 500);
+        setBackoff(FailureCause.LINK_FAILURE,       2, 500, 500);
+    }
+    
+    /** Sets how the policy treats one cause of failure.
+     * @param cause The cause to configure.
+     * @param maximumFailures The number of failures with this cause after
+     * which the policy gives up.
+     * @param initialDelay The delay, in milliseconds, after the first failure.
+     * Each later failure doubles it.
+     * @param maximumDelay The longest delay, in milliseconds.
+     */
+    public void setBackoff(FailureCause cause, int maximumFailures, long initialDelay, long maximumDelay) {
+        if(cause == null)
+            throw new IllegalArgumentException("FailureCause can not be null.");
+        if(initialDelay < 0 || maximumDelay < initialDelay)
+            throw new IllegalArgumentException("Delays must satisfy 0 <= initialDelay("+initialDelay+") <= maximumDelay("+maximumDelay+").");
+        this.backoffs.put(cause, new Backoff(maximumFailures, initialDelay, maximumDelay));
+    }
+    
+    /** Sets the jitter as a fraction of each delay.
+     * @param jitter A value from 0.0 (no jitter) to 1.0.
+     */
+    public void setJitter(double jitter) {
+        if(jitter < 0.0 || jitter > 1.0)
+            throw new IllegalArgumentException("The jitter("+jitter+") must be between 0.0 and 1.0, inclusive.");
+        this.jitter = jitter;
+    }
+    
+    public double getJitter() {
+        return this.jitter;
+    }
+    
+    public long getRetryDelay(FailureCause cause, int failures) {
+        Backoff backoff = (Backoff)this.backoffs.get(cause);
+        if(backoff == null || failures >= backoff.maximumFailures)
+            return GIVE_UP;
+        if(backoff.initialDelay == 0)
+            return 0;
+        // Double the delay for each failure after the first, without overflowing
+        long delay = backoff.initialDelay << Math.min(failures-1, 30);
+        if(delay <= 0 || delay > backoff.maximumDelay)
+            delay = backoff.maximumDelay;
+        // Spread the delay out by the jitter
+        double spread = 1.0 + this.jitter*(2.0*this.random.nextDouble()-1.0);
+        return Math.round(delay*spread);
+    }
+}
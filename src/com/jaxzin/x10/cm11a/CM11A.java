@@ -15,9 +15,15 @@ import javax.comm.*;
 import javax.x10.*;
 import javax.x10.codes.*;
 import javax.x10.event.*;
+import javax.x10.util.X10EventPublisher;
+import javax.x10.util.X10ListenerIndex;
+import javax.x10.util.X10ListenerMailboxes;
+import javax.x10.util.X10TransmitterNotifier;
 
 import com.jaxzin.util.Nibble;
 import com.jaxzin.util.Daemon;
+import com.jaxzin.util.LongFifo;
+import com.jaxzin.util.LongRingBuffer;
 
 /** <code>CM11A</code> is an implementation of {@link javax.x10.X10Transceiver} for
  * the CM11A computer<->X10 bridge.  Although you can instantiate this class directly,
@@ -30,23 +36,21 @@ import com.jaxzin.util.Daemon;
  *</BLOCKQUOTE>
  * @author  Brian Jackson (brian@jaxzin.com)
  */
-public class CM11A implements javax.x10.X10Transceiver {
+public class CM11A implements javax.x10.X10Transceiver, javax.x10.X10FilteredReceiver, javax.x10.X10BatchReceiver,
+                             javax.x10.X10BatchTransmitter, javax.x10.X10FilteredTransmitter {
     
     // Setup logging facilities
     private static final Logger LOG = 
             Logger.getLogger(CM11A.class.getName());
     
-    private class CM11ASerialListener implements SerialPortEventListener {
+    private class CM11ASerialListener implements Runnable {
         
         private CM11ASerialListener() {
         }
         
-        public void serialEvent(SerialPortEvent event) {
-            switch(event.getEventType()) {
-                case SerialPortEvent.DATA_AVAILABLE:
-                    handleDataAvailable();
-                    break;
-            }
+        /** Called by the serial link when data is available */
+        public void run() {
+            handleDataAvailable();
         }
         
         private void handleDataAvailable() {
@@ -55,7 +59,7 @@ public class CM11A implements javax.x10.X10Transceiver {
                 // Lock the input stream
                 synchronized(inputStream) {
                     // Stop the listener from being notified of new data(not fail-safe but wastes less cycles at least)
-                    serialPort.notifyOnDataAvailable(false);
+                    serialLink.notifyOnDataAvailable(false);
                     try {
                         // If there really is data to read...
                         if(inputStream.available() > 0) {
@@ -75,91 +79,124 @@ public class CM11A implements javax.x10.X10Transceiver {
                             }
                         }
                     } catch (IOException e) {
+                        // A timeout just means the CM11A went quiet
+                        if(!(e instanceof EOFException))
+                            watchdog.linkFailed(e);
                     }
                     // Tell to start notifying the listener of new data again
-                    serialPort.notifyOnDataAvailable(true);
+                    serialLink.notifyOnDataAvailable(true);
                 }
             }
         }
     }
     
-    private class X10ListenerNotifier implements Runnable {
-        X10Event event;
-        private X10ListenerNotifier(X10Event event) {
-            this.event = event;
+    /** Reads from whatever link is current */
+    private class LinkInputStream extends InputStream {
+        public int read() throws IOException {
+            return linkInputStream.read();
         }
-        public void run() {
-            // Lock the list of X10Listeners
-            synchronized(x10Listeners) {
-                // Iterate through the list of X10Listeners
-                for(Iterator i = x10Listeners.iterator();i.hasNext();) {
-                    X10Listener listener = (X10Listener)i.next();
-                    if(event.getType() == X10Event.ADDRESS) {
-                            listener.address(event);
-                    } else if(event.getType() == X10Event.FUNCTION) {
-                        if(event.getOtherCode() == FunctionCode.ALL_LIGHTS_OFF) {
-                            listener.allLightsOff(event);
-                        } else if(event.getOtherCode() == FunctionCode.ALL_LIGHTS_ON) {
-                            listener.allLightsOn(event);
-                        } else if(event.getOtherCode() == FunctionCode.ALL_UNITS_OFF) {
-                            listener.allUnitsOff(event);
-                        } else if(event.getOtherCode() == FunctionCode.BRIGHTEN) {
-                            listener.brighten(event);
-                        } else if(event.getOtherCode() == FunctionCode.DIM) {
-                            listener.dim(event);
-                        } else if(event.getOtherCode() == FunctionCode.EXTENDED_CODE) {
-                            listener.extendedCode(event);
-                        } else if(event.getOtherCode() == FunctionCode.EXTENDED_DATA_TRANSFER) {
-                            listener.extendedDataTransfer(event);
-                        } else if(event.getOtherCode() == FunctionCode.HAIL_ACKNOWLEDGE) {
-                            listener.hailAcknowledge(event);
-                        } else if(event.getOtherCode() == FunctionCode.HAIL_REQUEST) {
-                            listener.hailRequest(event);
-                        } else if(event.getOtherCode() == FunctionCode.OFF) {
-                            listener.off(event);
-                        } else if(event.getOtherCode() == FunctionCode.ON) {
-                            listener.on(event);
-                        } else if(event.getOtherCode() == FunctionCode.PRESET_DIM_1) {
-                            listener.presetDim1(event);
-                        } else if(event.getOtherCode() == FunctionCode.PRESET_DIM_2) {
-                            listener.presetDim2(event);
-                        } else if(event.getOtherCode() == FunctionCode.STATUS_OFF) {
-                            listener.statusOff(event);
-                        } else if(event.getOtherCode() == FunctionCode.STATUS_ON) {
-                            listener.statusOn(event);
-                        } else if(event.getOtherCode() == FunctionCode.STATUS_REQUEST) {
-                            listener.statusRequest(event);
-                        }
-                    }
-                }
+        public int read(byte[] b, int off, int len) throws IOException {
+            return linkInputStream.read(b, off, len);
+        }
+        public int available() throws IOException {
+            return linkInputStream.available();
+        }
+        public void close() throws IOException {
+            linkInputStream.close();
+        }
+    }
+    
+    /** Writes to whatever link is current */
+    private class LinkOutputStream extends OutputStream {
+        public void write(int b) throws IOException {
+            linkOutputStream.write(b);
+        }
+        public void write(byte[] b, int off, int len) throws IOException {
+            linkOutputStream.write(b, off, len);
+        }
+        public void flush() throws IOException {
+            linkOutputStream.flush();
+        }
+        public void close() throws IOException {
+            linkOutputStream.close();
+        }
+    }
+    
+    /** Stands in for the link while it is being reopened */
+    private static class DownLink implements SerialLink {
+        private static final DownLink INSTANCE = new DownLink();
+        private static final OutputStream DISCARD = new OutputStream() {
+            public void write(int b) {
+            }
+        };
+        private InputStream in = new InputStream() {
+            public int read() throws IOException {
+                throw new IOException("The serial link is down");
             }
+        };
+        private OutputStream out = new OutputStream() {
+            public void write(int b) throws IOException {
+                throw new IOException("The serial link is down");
+            }
+        };
+        public InputStream getInputStream() {
+            return in;
+        }
+        public OutputStream getOutputStream() {
+            return out;
+        }
+        public void setDataListener(Runnable listener) {
+        }
+        public void notifyOnDataAvailable(boolean enable) {
+        }
+        public void close() {
+        }
+    }
+    
+    /** Delivers received events to each listener through its own mailbox,
+     * recording how long each takes
+     */
+    private class CM11AMailboxes extends X10ListenerMailboxes {
+        private CM11AMailboxes() {
+            super(CM11A.this, "CM11A listener");
+        }
+        protected void dispatched(Object listener, long nanos) {
+            statistics.listenerDispatched(listener.getClass(), nanos);
+        }
+        protected void dropped(Object listener, int count) {
+            statistics.listenerEventsDropped(count);
+        }
+        protected void quarantined(X10ListenerMailboxes.Mailbox mailbox) {
+            statistics.listenerQuarantined();
         }
     }
     
-    private class X10TransmitterListenerNotifier implements Runnable {
-        X10TransmitterEvent event;
-        private X10TransmitterListenerNotifier(X10TransmitterEvent event) {
+    /** An event or batch the admission policy deferred.  Its estimate is
+     * counted in the projected queue time until it is queued, and the
+     * policy is asked again when its time comes.
+     */
+    private class DeferredTransmit extends TimerTask {
+        private X10Event event;
+        private X10Batch batch;
+        private long[] estimates;
+        private long reserved;
+        private DeferredTransmit(X10Event event, X10Batch batch, long[] estimates) {
             this.event = event;
+            this.batch = batch;
+            this.estimates = estimates;
+            for(int i = 0; i < estimates.length; i++) {
+                this.reserved += estimates[i];
+            }
         }
         public void run() {
-            // Lock the list of X10TransmitterListeners
-            synchronized(x10TransmitterListeners) {
-                // Iterate through the list of X10TransmitterListeners
-                for(Iterator i = x10TransmitterListeners.iterator();i.hasNext();) {
-                    X10TransmitterListener listener = (X10TransmitterListener)i.next();
-                    if(event.getType() == X10TransmitterEvent.QUEUE_EMPTIED) {
-                            listener.queueEmptied(event);
-                    } else if(event.getType() == X10TransmitterEvent.QUEUE_UPDATED) {
-                            listener.queueUpdated(event);
-                    } else if(event.getType() == X10TransmitterEvent.EVENT_UNDELIVERED) {
-                            listener.eventUndelivered(event);
-                    }
-                }
-            }
+            readmit(this);
         }
     }
     
     private class X10Talker extends Daemon {
+        /** Why the last undelivered event failed */
+        private FailureCause lastFailureCause;
+        
         /** This method is called at the beginning of each loop to test
          * if daemon should continue running.
          */
@@ -176,115 +213,203 @@ public class CM11A implements javax.x10.X10Transceiver {
          */
         public void runBody() {
             X10Event event;
-            boolean isEmpty = false;
+            X10Batch batch;
+            long enqueued;
+            long sequence;
             synchronized(x10Events) {
                 event = (X10Event)x10Events.removeFirst();
-                if(x10Events.isEmpty())
-                    isEmpty = true;
+                batch = (X10Batch)x10EventBatches.removeFirst();
+                enqueued = x10EventTimes.removeFirst();
+                sequence = x10EventSequences.removeFirst();
+                inFlight = true;
+                inFlightEstimate = x10EventEstimates.removeFirst();
+                inFlightStarted = System.nanoTime();
+                queuedEstimate -= inFlightEstimate;
+                statistics.queueDepthChanged(x10Events.size());
+                x10TransmitterNotifier.queueChanged(event, batch, x10Events.size(), 0, 1);
             }
-            if(isEmpty)
-                notifyX10TransmitterListeners(new X10TransmitterEvent(this,X10TransmitterEvent.QUEUE_EMPTIED,event));
 
-            if(!writeToStream(event)) {
-                notifyX10TransmitterListeners(new X10TransmitterEvent(this,X10TransmitterEvent.EVENT_UNDELIVERED,event));
+            // If the breaker has been open long enough, see if the CM11A
+            // is back before trying the event
+            if(circuitBreaker.isProbeDue()) {
+                if(requestStatus() != null)
+                    circuitBreaker.recordSuccess();
+                else
+                    circuitBreaker.probeFailed();
+            }
+            
+            if(!circuitBreaker.isClosed()) {
+                // Fail fast rather than burning attempts on a dead CM11A
+                statistics.eventFailedFast();
+                statistics.eventUndelivered();
+                finished(event, batch, false);
+            } else if(writeToStream(event)) {
+                circuitBreaker.recordSuccess();
+                statistics.eventDelivered(System.nanoTime()-enqueued);
+                powerlineModel.record(event, System.nanoTime()-inFlightStarted);
+                finished(event, batch, true);
+            } else {
+                circuitBreaker.recordFailure(lastFailureCause);
+                statistics.eventUndelivered();
+                finished(event, batch, false);
+            }
+            logDone(sequence, event);
+            synchronized(x10Events) {
+                inFlight = false;
+                inFlightEstimate = 0;
+                // Wake anyone draining the queue
+                x10Events.notifyAll();
             }
         }
     
-        /** Writes the event to serial port's output stream.  This also 
+        /** Writes the event to serial port's output stream, retrying as the
+         * {@link com.jaxzin.x10.cm11a.RetryPolicy} sees fit.  This also 
          * auto recovers the CM11A if it is not in a state to send messages.
+         * The streams are not held between attempts, so polls from the CM11A
+         * can be serviced while waiting to retry.
          * @param event The event to deliver
          * @returns the truth that the event was successfully delivered
          */
         private boolean writeToStream(X10Event event) {
-            boolean success = false;
-
             // Convert the X10Event to bytes formatted for the CM11A
             byte[] bytes = getBytes(event);
 
+            // Failure counts per FailureCause, only created if an attempt fails
+            Map failures = null;
+            int attempt = 0;
+            while(true) {
+                attempt++;
+                FailureCause cause = attemptWrite(event, bytes);
+                if(cause == null)
+                    return true;
+                
+                if(cause == FailureCause.CHECKSUM_MISMATCH)
+                    statistics.checksumRetried();
+                
+                // While the watchdog reopens the port the event waits for
+                // it, rather than using up its attempts on a dead link
+                if(cause == FailureCause.LINK_FAILURE && watchdog.awaitLink()) {
+                    attempt--;
+                    continue;
+                }
+                
+                // Count the failures with this cause
+                if(failures == null)
+                    failures = new HashMap();
+                Integer count = (Integer)failures.get(cause);
+                int failed = (count == null ? 0 : count.intValue())+1;
+                failures.put(cause, Integer.valueOf(failed));
+                
+                // See if we reached our max number of attempts, or the policy has had enough
+                long delay = RetryPolicy.GIVE_UP;
+                if(attempt < maximumAttempts)
+                    delay = retryPolicy.getRetryDelay(cause, failed);
+                if(delay == RetryPolicy.GIVE_UP) {
+                    lastFailureCause = cause;
+                    statistics.attemptsExhausted();
+                    LOG.warning("Gave up sending "+event+" after "+attempt+" attempt(s), last cause "+cause+", wire tap follows:\n"+wireTap.dump());
+                    return false;
+                }
+                
+                // Otherwise, wait and try again
+                if(delay > 0) {
+                    try {
+                        Thread.sleep(delay);
+                    } catch(InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        lastFailureCause = cause;
+                        return false;
+                    }
+                }
+            }
+        }
+        
+        /** Makes one attempt to hand the bytes to the CM11A.
+         * @return null if the CM11A accepted the bytes, otherwise why it didn't
+         */
+        private FailureCause attemptWrite(X10Event event, byte[] bytes) {
             // Lock the output stream
             synchronized(outputStream) {
                 // Lock the input stream
                 synchronized(inputStream) {
                     // Stop the listener from being notified of new data(not fail-safe but wastes less cycles at least)
-                    serialPort.notifyOnDataAvailable(false);
+                    serialLink.notifyOnDataAvailable(false);
                     try {
-                        // Keep looping until done
-                        boolean done = false;
-                        int attempt  = 0;
-                        while(!done) {
-                            // Begin by blindly writing the event to the CM11A
-                            outputStream.write(bytes);
-                            outputStream.flush();
+                        // Begin by blindly writing the event to the CM11A
+                        outputStream.write(bytes);
+                        outputStream.flush();
 
-                            // Read what should be the checksum
-                            byte checksum = inputStream.readByte();
-                            // Figure out if the checksum is correct
-                            boolean checksum_correct = (checksum == getChecksum(bytes));
-                            // If the checksum is correct...
-                            if(checksum_correct) {
-                                // Tell the CM11A the checksum was correct
-                                outputStream.write(MSG_ACKNOWLEDGE);
-                                outputStream.flush();
-                                // Read the CM11A's reply
-                                byte reply = inputStream.readByte();
-                                // Figure out what to do from the reply
-                                switch(reply) {
-                                    case MSG_READY:
-                                        // Event was sent successfully!!
-                                        LOG.info("Event was successfully sent:"+event);
-                                        success = true;
-                                        done = true;
-                                        break;
-                                    case MSG_POWER_FAILURE:
-                                        handlePowerFailure();
-                                        break;
-                                    case MSG_EVENT_RECEIVED:
-                                        handleEventReceived();
-                                        break;
-                                    default:
-                                        // Something's really wrong, because the reply
-                                        // was something the CM11A couldn't possibly send, but try anyway
-                                }
-                            } else {
-                                // Otherwise the checksum was incorrect...
-                                // Figure out what to do from the checksum
-                                switch(checksum) {
-                                    case MSG_POWER_FAILURE:
-                                        handlePowerFailure();
-                                        break;
-                                    case MSG_EVENT_RECEIVED:
-                                        handleEventReceived();
-                                        break;
-                                    default:
-                                        // Checksum was flat-out wrong, try again!!
-                                }
+                        // Read what should be the checksum
+                        byte checksum = inputStream.readByte();
+                        // Figure out if the checksum is correct
+                        boolean checksum_correct = (checksum == getChecksum(bytes));
+                        // If the checksum is correct...
+                        if(checksum_correct) {
+                            // Tell the CM11A the checksum was correct
+                            outputStream.write(MSG_ACKNOWLEDGE);
+                            outputStream.flush();
+                            // Read the CM11A's reply
+                            byte reply = inputStream.readByte();
+                            // Figure out what to do from the reply
+                            switch(reply) {
+                                case MSG_READY:
+                                    // Event was sent successfully!!
+                                    LOG.info("Event was successfully sent:"+event);
+                                    watchdog.heard();
+                                    return null;
+                                case MSG_POWER_FAILURE:
+                                    handlePowerFailure();
+                                    return FailureCause.POWER_FAILURE;
+                                case MSG_EVENT_RECEIVED:
+                                    handleEventReceived();
+                                    return FailureCause.EVENT_RECEIVED;
+                                default:
+                                    // Something's really wrong, because the reply
+                                    // was something the CM11A couldn't possibly send
+                                    return FailureCause.UNEXPECTED_REPLY;
                             }
-
-                            // See if we reached our max number of attempts
-                            if(!done && (attempt >= maximumAttempts)) {
-                                success = false; // redundant, but done for clarity
-                                done = true;
-                            } else {
-                                // Otherwise, try again
-                                attempt++;
+                        } else {
+                            // Otherwise the checksum was incorrect...
+                            // Figure out what to do from the checksum
+                            switch(checksum) {
+                                case MSG_POWER_FAILURE:
+                                    handlePowerFailure();
+                                    return FailureCause.POWER_FAILURE;
+                                case MSG_EVENT_RECEIVED:
+                                    handleEventReceived();
+                                    return FailureCause.EVENT_RECEIVED;
+                                default:
+                                    // Checksum was flat-out wrong
+                                    return FailureCause.CHECKSUM_MISMATCH;
                             }
                         }
                     } catch (IOException e) {
-                        success = false; // redundant, but done for clarity
+                        // Includes the EOFException thrown when the receive timeout expires
+                        if(e instanceof EOFException)
+                            return FailureCause.NO_RESPONSE;
+                        watchdog.linkFailed(e);
+                        return FailureCause.LINK_FAILURE;
+                    } finally {
+                        // Tell to start notifying the listener of new data again
+                        serialLink.notifyOnDataAvailable(true);
                     }
-                    // Tell to start notifying the listener of new data again
-                    serialPort.notifyOnDataAvailable(true);
                 }
             }
-            return success;
         }
     
     }
     
-    /** Vector holding the currently registered X10Listeners */
-    private Vector x10Listeners;
-    /** Vector holding the currently registered X10TransmitterListeners */
-    private Vector x10TransmitterListeners;
+    /** Index of the currently registered X10Listeners and their filters */
+    private X10ListenerIndex x10Listeners;
+    private X10EventPublisher x10EventPublisher;
+    /** Received events packed into longs, created the first time it is asked for */
+    private volatile LongRingBuffer packedEvents;
+    /** Vector holding the currently registered X10BatchListeners */
+    private Vector x10BatchListeners;
+    /** Delivers received events to the X10Listeners and X10BatchListeners */
+    private X10ListenerMailboxes x10ListenerMailboxes;
+    /** Notifies the registered X10TransmitterListeners, in order */
+    private X10TransmitterNotifier x10TransmitterNotifier;
     /** LinkedList holding the current queue of events to be transmitted.
      * I used a linked list because Vector doesn't seem to guarentee that
      * calls to add() will add the object to the end of the list. With
@@ -292,10 +417,60 @@ public class CM11A implements javax.x10.X10Transceiver {
      * what I want.
      */
     private LinkedList x10Events;
+    /** The {@link javax.x10.event.X10Batch} each event in <code>x10Events</code>
+     * was transmitted in, or null, in the same order. Guarded by the lock
+     * on <code>x10Events</code>.
+     */
+    private LinkedList x10EventBatches;
+    /** The {@link java.lang.System#nanoTime} each event in <code>x10Events</code>
+     * was queued at, in the same order. Guarded by the lock on <code>x10Events</code>.
+     */
+    private LongFifo x10EventTimes;
+    /** The estimated delivery time of each event in <code>x10Events</code>,
+     * in nanoseconds, and their total. Guarded by the lock on <code>x10Events</code>.
+     */
+    private LongFifo x10EventEstimates;
+    private long queuedEstimate;
+    /** The estimated delivery time of the events deferred by the admission
+     * policy and not yet queued, in nanoseconds. Guarded by the lock on
+     * <code>x10Events</code>.
+     */
+    private long deferredEstimate;
+    /** The {@link com.jaxzin.x10.cm11a.TransmitLog} sequence number of each
+     * event in <code>x10Events</code>, or 0 if it is not logged, in the same
+     * order. Guarded by the lock on <code>x10Events</code>.
+     */
+    private LongFifo x10EventSequences;
+    /** Where queued events are kept until they are done, or null. Guarded
+     * by the lock on <code>x10Events</code>.
+     */
+    private TransmitLog transmitLog;
+    /** True while an event is being sent, and the estimate and start time
+     * of it. Guarded by the lock on <code>x10Events</code>.
+     */
+    private boolean inFlight;
+    private long inFlightEstimate;
+    private long inFlightStarted;
+    /** True once the CM11A is closed. Guarded by the lock on <code>x10Events</code>. */
+    private boolean closed;
     private X10Talker x10talker;
+    private CM11AStatistics statistics;
+    private WireTap wireTap;
+    private RetryPolicy retryPolicy;
+    private CircuitBreaker circuitBreaker;
+    private PowerlineModel powerlineModel;
+    private AdmissionPolicy admissionPolicy;
+    /** Queues deferred events when their time comes, created when first needed */
+    private Timer deferralTimer;
     
     private int maximumAttempts;
+    private int receiveTimeout;
+    private int openTimeout;
     private HouseCode monitoredHouseCode;
+    /** True while events are queued but not sent, as during warm-up.
+     * Guarded by the lock on <code>x10Events</code>.
+     */
+    private boolean transmitsHeld;
     
     // Properties associated with the serial port
     private String portName;
@@ -304,9 +479,17 @@ public class CM11A implements javax.x10.X10Transceiver {
     private int stopBits;
     private int parity;
     
-    private SerialPort serialPort;
+    private SerialLink serialLink;
+    /** The streams of the serial link, which the buffered streams below
+     * read and write through so they outlive a reopened port
+     */
+    private volatile InputStream linkInputStream;
+    private volatile OutputStream linkOutputStream;
+    private CM11AWatchdog watchdog;
     private DataOutputStream outputStream;
     private DataInputStream inputStream;
+    /** Reused for every buffer download. Guarded by the lock on <code>inputStream</code>. */
+    private byte[] downloadBuffer;
 
     /** The precision of the outbound brightness levels. This
      * has package level access for {@link com.jaxzin.x10.cm11a.CM11AConnection#getClosestBrightnessLevel(double)} to use.
@@ -316,6 +499,8 @@ public class CM11A implements javax.x10.X10Transceiver {
      * has package level access for possible use in other <code>com.jaxzin.x10.cm11a</code> classes.
      */
     static final int INPUT_BRIGHTNESS_LEVELS = 210;
+    /** The number of packed events kept for bulk consumers */
+    private static final int PACKED_EVENTS_CAPACITY = 8192;
     
     /** Received from CM11 when it is ready to receive messages */
     private static final byte MSG_READY                 = (byte) 0x55;
@@ -333,6 +518,12 @@ public class CM11A implements javax.x10.X10Transceiver {
     private static final byte MSG_REQUEST_STATUS        = (byte) 0x8B;
     /** Sent to CM11 to acknowledge that the checksum of the current message is correct */
     private static final byte MSG_ACKNOWLEDGE           = (byte) 0x00;
+    /** The most bytes the CM11 sends after the size byte of a buffer
+     * download: the function mask and 8 data bytes
+     */
+    private static final int MAX_DOWNLOAD_LENGTH        = 9;
+    /** The number of bytes the CM11 sends in reply to MSG_REQUEST_STATUS */
+    private static final int STATUS_LENGTH              = 14;
     
     /** Creates a new instance of CM11A */
     public CM11A(String portName) {
@@ -357,16 +548,32 @@ public class CM11A implements javax.x10.X10Transceiver {
         this.dataBits           = dataBits;
         this.stopBits           = stopBits;
         this.parity             = parity;
+        this.wireTap            = new WireTap(portName);
     }
     
     /** Initializes a CM11A object */
     private CM11A() {
         super();
-        this.x10Listeners               = new Vector();
-        this.x10TransmitterListeners    = new Vector();
+        this.x10Listeners               = new X10ListenerIndex();
+        this.x10BatchListeners          = new Vector();
+        this.x10ListenerMailboxes       = new CM11AMailboxes();
+        this.downloadBuffer             = new byte[MAX_DOWNLOAD_LENGTH];
+        this.x10TransmitterNotifier     = new X10TransmitterNotifier(this, "CM11A transmitter notifier");
         this.x10Events                  = new LinkedList();
+        this.x10EventBatches            = new LinkedList();
+        this.x10EventTimes              = new LongFifo();
+        this.x10EventEstimates          = new LongFifo();
+        this.x10EventSequences          = new LongFifo();
         this.x10talker                  = new X10Talker();
+        this.statistics                 = new CM11AStatistics();
+        this.watchdog                   = new CM11AWatchdog(this, this.statistics);
+        this.retryPolicy                = new BackoffRetryPolicy();
+        this.circuitBreaker             = new CircuitBreaker(this.statistics);
+        this.powerlineModel             = new PowerlineModel();
+        this.admissionPolicy            = new ThresholdAdmissionPolicy();
         this.maximumAttempts            = 20;
+        this.receiveTimeout             = 10000;
+        this.openTimeout                = 2000;
         this.monitoredHouseCode         = HouseCode.A;
     }
     
@@ -388,42 +595,219 @@ public class CM11A implements javax.x10.X10Transceiver {
                                     UnsupportedCommOperationException,
                                     IOException
     {
-        // Attempt to get the port by name, throws NoSuchPortException
-        CommPortIdentifier portId = 
-            CommPortIdentifier.getPortIdentifier(portName);
-        // Attempt to open the port, wait 2 seconds, throws PortInUseException
-        serialPort = (SerialPort) portId.open("CM11A", 2000);
-        // Attempt to get the streams, throws IOException
+        open(openLink());
+        // Reopen the port if the link dies
+        watchdog.start();
+    }
+    
+    /** Opens the link to the CM11A, by default the serial port.  This is
+     * called again by the {@link com.jaxzin.x10.cm11a.CM11AWatchdog} to
+     * reopen the link after it dies.
+     * @throws javax.comm.NoSuchPortException The portName is not valid.
+     * @throws javax.comm.PortInUseException The named serial port is already in use.
+     * @throws javax.comm.UnsupportedCommOperationException One of the serial port parameters is invalid.
+     * @throws java.io.IOException There was a problem opening the link.
+     */
+    protected SerialLink openLink() throws  NoSuchPortException,
+                                            PortInUseException,
+                                            UnsupportedCommOperationException,
+                                            IOException
+    {
+        return new SerialPortLink(portName, baudRate, dataBits, stopBits, parity, openTimeout, receiveTimeout);
+    }
+    
+    /** Starts talking to a CM11A over the given link rather than a serial
+     * port, for instance a {@link com.jaxzin.x10.cm11a.CM11ASimulator}.
+     * There is no watchdog for a link given this way, since it can not be
+     * reopened.
+     * @throws java.io.IOException There was a problem obtaining the link's input and output streams.
+     */
+    protected void open(SerialLink link) throws IOException {
+        if(link == null)
+            throw new IllegalArgumentException("SerialLink can not be null.");
+        // The wire tap sits under the buffers so it sees bytes as they
+        // actually cross the serial port
         outputStream = new DataOutputStream(
                         new BufferedOutputStream(
-                            serialPort.getOutputStream()));
+                            wireTap.tap(new LinkOutputStream())));
         inputStream  = new DataInputStream(
                         new BufferedInputStream(
-                        serialPort.getInputStream() ));
-        // Attempt to set serial port parameters, 
-        //  throws UnsupportedCommOperationException
-        serialPort.setSerialPortParams( baudRate,
-                                        dataBits,
-                                        stopBits,
-                                        parity);
+                            wireTap.tap(new LinkInputStream())));
+        attach(link);
+    }
+    
+    /** Reads and writes through the link, throws IOException if it
+     * failed.  Assumes the serial port's input and output stream have been
+     * locked by the calling method, or that nothing else can use them yet.
+     */
+    private void attach(SerialLink link) throws IOException {
+        // Attempt to get the streams, throws IOException
+        linkInputStream = link.getInputStream();
+        linkOutputStream = link.getOutputStream();
+        serialLink = link;
         
         // Attempt to register a new listener
-        serialPort.notifyOnDataAvailable(true);
-        try {
-            serialPort.addEventListener(new CM11ASerialListener());
-        } catch(TooManyListenersException ignored){}
+        link.setDataListener(new CM11ASerialListener());
+        link.notifyOnDataAvailable(true);
     }
     
-    /** Closes the connection to the serial port */
+    /** Closes the link and opens it again, keeping the streams, listeners
+     * and queue.  Called by the watchdog.
+     * @throws java.lang.Exception if the link could not be opened, in which
+     * case the streams fail until it is
+     */
+    void reopen() throws Exception {
+        // Lock the output stream
+        synchronized(outputStream) {
+            // Lock the input stream
+            synchronized(inputStream) {
+                SerialLink dead = serialLink;
+                serialLink = DownLink.INSTANCE;
+                linkInputStream = DownLink.INSTANCE.getInputStream();
+                // Drop whatever was left in the buffers for the dead link
+                linkOutputStream = DownLink.DISCARD;
+                outputStream.flush();
+                linkOutputStream = DownLink.INSTANCE.getOutputStream();
+                try {
+                    dead.close();
+                } catch(RuntimeException e) {
+                    LOG.log(Level.FINE,"Unable to close the dead serial link",e);
+                }
+                SerialLink link = openLink();
+                try {
+                    attach(link);
+                    clearInputStream();
+                } catch(IOException e) {
+                    serialLink = DownLink.INSTANCE;
+                    linkInputStream = DownLink.INSTANCE.getInputStream();
+                    linkOutputStream = DownLink.INSTANCE.getOutputStream();
+                    link.close();
+                    throw e;
+                }
+            }
+        }
+    }
+    
+    /** Returns false if the serial port the CM11A was opened on is no
+     * longer there, as when a USB adapter is unplugged.
+     */
+    boolean isPortPresent() {
+        if(!(serialLink instanceof SerialPortLink))
+            return true;
+        return SerialPortLink.isPortPresent(portName);
+    }
+    
+    /** Returns the {@link com.jaxzin.x10.cm11a.CM11AWatchdog} that reopens
+     * the serial port if the link to the CM11A dies.
+     */
+    public CM11AWatchdog getWatchdog() {
+        return this.watchdog;
+    }
+    
+    /** Closes the connection to the serial port.  Events still queued are
+     * dropped, though they stay in the transmit log if there is one.
+     * @see #close(long)
+     */
     public void close() {
+        TransmitLog log;
+        synchronized(x10Events) {
+            closed = true;
+            log = transmitLog;
+        }
+        watchdog.stop();
+        synchronized(this) {
+            if(x10EventPublisher != null) x10EventPublisher.close();
+            if(deferralTimer != null) deferralTimer.cancel();
+            deferralTimer = null;
+        }
+        x10TransmitterNotifier.close();
+        x10ListenerMailboxes.close();
         try {
             if(outputStream != null) outputStream.close();
             if(inputStream != null) inputStream.close();
-            if(serialPort != null) {
-                serialPort.removeEventListener();
-                serialPort.close();
-            }
+            if(serialLink != null) serialLink.close();
         } catch(Exception ignored) {}
+        if(log != null) log.close();
+    }
+    
+    /** Sends the events still queued, then closes the connection to the
+     * serial port.  Events deferred by the
+     * {@link com.jaxzin.x10.cm11a.AdmissionPolicy} and not yet queued are
+     * not waited for.
+     * @param drainTimeout The most to wait for the queue to empty, in milliseconds.
+     * @return the truth that every queued event was sent before closing
+     * @throws java.lang.InterruptedException if the thread is interrupted while
+     * waiting, in which case the CM11A is still closed
+     */
+    public boolean close(long drainTimeout) throws InterruptedException {
+        try {
+            return drain(drainTimeout);
+        } finally {
+            close();
+        }
+    }
+    
+    /** Waits until the transmit queue is empty and no event is being sent.
+     * @param timeout The most to wait in milliseconds, 0 to wait forever.
+     * @return the truth that the queue drained
+     * @throws java.lang.InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean drain(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis()+timeout;
+        synchronized(x10Events) {
+            while(!x10Events.isEmpty() || inFlight) {
+                long remaining = deadline-System.currentTimeMillis();
+                if(timeout == 0)
+                    x10Events.wait();
+                else if(remaining > 0)
+                    x10Events.wait(remaining);
+                else
+                    return false;
+            }
+            return true;
+        }
+    }
+    
+    /** Keeps the events queued from now on in the given log until they are
+     * delivered or given up on, and queues the events the log holds that
+     * were never finished, skipping those past the log's expiry.  The log
+     * is closed with the CM11A.
+     * @param transmitLog The log, or null to stop logging.
+     */
+    public void setTransmitLog(TransmitLog transmitLog) {
+        synchronized(x10Events) {
+            this.transmitLog = transmitLog;
+        }
+        if(transmitLog == null)
+            return;
+        TransmitLog.Entry[] entries = transmitLog.getPending();
+        int replayed = 0;
+        for(int i = 0; i < entries.length; i++) {
+            X10Event event = entries[i].getEvent(this);
+            if(transmitLog.isExpired(entries[i])) {
+                LOG.info("Not sending "+event+" from the transmit log, it expired");
+                logDone(entries[i].getSequence(), event);
+                continue;
+            }
+            long estimate = powerlineModel.getEstimate(event);
+            synchronized(x10Events) {
+                queue(event, null, System.nanoTime(), estimate, entries[i].getSequence());
+                statistics.queueDepthChanged(x10Events.size());
+                x10TransmitterNotifier.queueChanged(event, null, x10Events.size(), 1, 0);
+            }
+            replayed++;
+        }
+        if(replayed > 0) {
+            LOG.info("Queued "+replayed+" event(s) left in the transmit log "+transmitLog.getFile());
+            startTalker();
+        }
+    }
+    
+    /** Returns the log queued events are kept in, or null. */
+    public TransmitLog getTransmitLog() {
+        synchronized(x10Events) {
+            return this.transmitLog;
+        }
     }
     
     /** Only used with JVM garbage collection. <BR>
@@ -440,17 +824,87 @@ public class CM11A implements javax.x10.X10Transceiver {
         this.x10Listeners.add(listener);
     }
     
+    /** Registers a new X10Listener to be notified of the
+     * {@link com.jaxzin.x10.event.X10Event}s that match the given filter.
+     */
+    public void addX10Listener(X10Filter filter, X10Listener listener) {
+        this.x10Listeners.add(filter, listener);
+    }
+    
     /** Deregisters an X10Listener
      * @param listener the listener to be removed
      */
     public void removeX10Listener(X10Listener listener) {
         this.x10Listeners.remove(listener);
+        this.x10ListenerMailboxes.remove(listener);
     }
     
-    private void notifyX10Listeners(X10Event event) {
-        // Spawn new Thread to notify all listeners
-        Thread t = new Thread(new X10ListenerNotifier(event));
-        t.start();
+    /** Returns the mailboxes received events are delivered to the listeners
+     * through, to tune how slow listeners are dealt with.
+     */
+    public X10ListenerMailboxes getX10ListenerMailboxes() {
+        return this.x10ListenerMailboxes;
+    }
+    
+    /** Returns the {@link javax.x10.util.X10EventPublisher} of the
+     * {@link com.jaxzin.x10.event.X10Event}s this CM11A receives.  It is
+     * created the first time it is asked for, and its subscribers are
+     * completed when the CM11A is closed.
+     */
+    public synchronized X10EventPublisher getX10EventPublisher() {
+        if(x10EventPublisher == null)
+            x10EventPublisher = new X10EventPublisher(this);
+        return x10EventPublisher;
+    }
+    
+    /** Returns a ring of the events this CM11A receives, packed by
+     * {@link javax.x10.event.X10PackedEvent}, for consumers that handle
+     * events in bulk.  Each consumer reads it through a cursor of its own;
+     * one that falls a whole ring behind loses the oldest events.  It is
+     * created the first time it is asked for.
+     */
+    public synchronized LongRingBuffer getPackedEvents() {
+        if(packedEvents == null)
+            packedEvents = new LongRingBuffer(PACKED_EVENTS_CAPACITY);
+        return packedEvents;
+    }
+    
+    /** Registers an X10BatchListener to be handed the events of each
+     * buffer downloaded from the CM11A together.
+     */
+    public void addX10BatchListener(X10BatchListener listener) {
+        if(listener == null)
+            throw new IllegalArgumentException("X10BatchListener can not be null.");
+        this.x10BatchListeners.add(listener);
+    }
+    
+    /** Deregisters an X10BatchListener
+     * @param listener the listener to be removed
+     */
+    public void removeX10BatchListener(X10BatchListener listener) {
+        this.x10BatchListeners.remove(listener);
+        this.x10ListenerMailboxes.remove(listener);
+    }
+    
+    private void notifyX10Listeners(List events) {
+        if(events.isEmpty())
+            return;
+        // Find the listeners here, in the order the events were received,
+        // since the index follows the addressing
+        for(int i = 0; i < events.size(); i++) {
+            X10Event event = (X10Event)events.get(i);
+            X10Listener[] listeners = x10Listeners.getListeners(event);
+            for(int l = 0; l < listeners.length; l++) {
+                x10ListenerMailboxes.post(listeners[l], event);
+            }
+        }
+        if(x10BatchListeners.isEmpty())
+            return;
+        X10BatchListener[] batchListeners = (X10BatchListener[])x10BatchListeners.toArray(new X10BatchListener[0]);
+        events = Collections.unmodifiableList(events);
+        for(int i = 0; i < batchListeners.length; i++) {
+            x10ListenerMailboxes.post(batchListeners[i], events);
+        }
     }
 
     /** Registers {@link com.jaxzin.x10.event.X10TransmitterListener}s that
@@ -459,38 +913,330 @@ public class CM11A implements javax.x10.X10Transceiver {
      * X10Transmitter.
      */
     public void addX10TransmitterListener(X10TransmitterListener listener) {
-        this.x10TransmitterListeners.add(listener);
+        this.x10TransmitterNotifier.addListener(listener);
+    }
+    
+    /** Registers an {@link com.jaxzin.x10.event.X10TransmitterListener}
+     * for only the given types of
+     * {@link com.jaxzin.x10.event.X10TransmitterEvent}.
+     */
+    public void addX10TransmitterListener(X10TransmitterListener listener, X10TransmitterEvent.Type[] types) {
+        this.x10TransmitterNotifier.addListener(listener, types);
     }
     
     /** Deregisters an {@link com.jaxzin.x10.event.X10TransmitterListener}
      * @param listener the listener to be removed
      */
     public void removeX10TransmitterListener(X10TransmitterListener listener) {
-        this.x10TransmitterListeners.remove(listener);
+        this.x10TransmitterNotifier.removeListener(listener);
+    }
+    
+    /** Returns how long changes to the transmit queue are coalesced into
+     * one queue notice, in milliseconds.
+     */
+    public long getQueueNoticeInterval() {
+        return this.x10TransmitterNotifier.getCoalescingInterval();
+    }
+    
+    /** Sets how long changes to the transmit queue are coalesced into one
+     * {@link com.jaxzin.x10.event.X10TransmitterEvent#QUEUE_UPDATED} or
+     * {@link com.jaxzin.x10.event.X10TransmitterEvent#QUEUE_EMPTIED}.
+     * @param millis The interval in milliseconds, 0 for a notice per change.
+     * @see javax.x10.util.X10TransmitterNotifier
+     */
+    public void setQueueNoticeInterval(long millis) {
+        this.x10TransmitterNotifier.setCoalescingInterval(millis);
     }
     
     private void notifyX10TransmitterListeners(X10TransmitterEvent event) {
-        // Spawn new Thread to notify all listeners
-        Thread t = new Thread(new X10TransmitterListenerNotifier(event));
-        t.start();
+        this.x10TransmitterNotifier.post(event);
     }
     
     /** This method gives the X10 transmitter a new
      * {@link com.jaxzin.x10.event.X10Event} to deliver.
      */
     public void transmit(X10Event event) {
+        try {
+            submit(event);
+        } catch(X10Exception e) {
+            LOG.fine(e.getMessage());
+            notifyX10TransmitterListeners(new X10TransmitterEvent(this,X10TransmitterEvent.EVENT_UNDELIVERED,event));
+        }
+    }
+    
+    /** This method gives the X10 transmitter a sequence of
+     * {@link com.jaxzin.x10.event.X10Event}s to deliver together.  The
+     * {@link com.jaxzin.x10.cm11a.AdmissionPolicy} decides on the batch as
+     * a whole from its first event and total estimate; a refused batch has
+     * all of its events reported undelivered.
+     * @return the batch, which keeps count of the events delivered
+     */
+    public X10Batch transmit(List events) {
+        X10Batch batch = new X10Batch(events);
+        long projected = getProjectedQueueTime();
+        long decision = admissionPolicy.admit((X10Event)batch.getEvents().get(0), projected);
+        if(decision == AdmissionPolicy.REFUSE) {
+            LOG.fine("Refused "+batch+", the transmit queue is projected to take "+projected+"ms");
+            for(Iterator i = batch.getEvents().iterator();i.hasNext();) {
+                statistics.eventRefused();
+                finished((X10Event)i.next(), batch, false);
+            }
+            return batch;
+        }
+        long[] estimates = new long[batch.size()];
+        for(int i = 0; i < estimates.length; i++) {
+            estimates[i] = powerlineModel.getEstimate((X10Event)batch.getEvents().get(i));
+        }
+        boolean accepted;
+        if(decision > 0) {
+            statistics.eventDeferred();
+            accepted = defer(new DeferredTransmit(null, batch, estimates), decision);
+        } else {
+            accepted = enqueue(batch, estimates);
+        }
+        if(!accepted)
+            LOG.fine("Not sending "+batch+", the CM11A is closed");
+        return batch;
+    }
+    
+    /** Gives the X10 transmitter a new {@link com.jaxzin.x10.event.X10Event}
+     * to deliver, if the {@link com.jaxzin.x10.cm11a.AdmissionPolicy} admits
+     * it, and returns when it is expected to be delivered.  A deferred event
+     * is offered to the policy again once the policy's deferral has passed.
+     * @return the estimated time until the event is delivered, in milliseconds
+     * @throws javax.x10.X10Exception if the admission policy refused the event,
+     * or the CM11A is closed
+     * @see #getPowerlineModel
+     */
+    public long submit(X10Event event) throws X10Exception {
+        long projected = getProjectedQueueTime();
+        long decision = admissionPolicy.admit(event, projected);
+        if(decision == AdmissionPolicy.REFUSE) {
+            statistics.eventRefused();
+            throw new X10Exception("Refused "+event+", the transmit queue is projected to take "+projected+"ms");
+        }
+        long estimate = powerlineModel.getEstimate(event);
+        boolean accepted;
+        if(decision > 0) {
+            statistics.eventDeferred();
+            accepted = defer(new DeferredTransmit(event, null, new long[] {estimate}), decision);
+        } else {
+            accepted = enqueue(event, estimate);
+        }
+        if(!accepted)
+            throw new X10Exception("Not sending "+event+", the CM11A is closed");
+        // A deferred event waits until the queue is back down to where it
+        // would have been admitted, so it lands at about the same time
+        return projected+estimate/1000000;
+    }
+    
+    /** Returns how long the events queued or deferred, and the one being
+     * sent, are projected to take, in milliseconds.
+     */
+    public long getProjectedQueueTime() {
+        synchronized(x10Events) {
+            long remaining = 0;
+            if(inFlightEstimate > 0)
+                remaining = Math.max(0, inFlightEstimate-(System.nanoTime()-inFlightStarted));
+            return (queuedEstimate+deferredEstimate+remaining)/1000000;
+        }
+    }
+    
+    /** Holds a deferred event or batch until its time comes, counting it
+     * in the projected queue time meanwhile.
+     * @return false if the CM11A is closed
+     */
+    private synchronized boolean defer(DeferredTransmit deferred, long delay) {
+        synchronized(x10Events) {
+            if(closed)
+                return false;
+            deferredEstimate += deferred.reserved;
+        }
+        if(deferralTimer == null)
+            deferralTimer = new Timer("CM11A deferred events "+portName, true);
+        deferralTimer.schedule(deferred, delay);
+        return true;
+    }
+    
+    /** Offers a deferred event or batch to the admission policy again, now
+     * that the queue has had time to drain, rather than queueing it
+     * regardless of how the queue has kept up.
+     */
+    private void readmit(DeferredTransmit deferred) {
+        synchronized(x10Events) {
+            deferredEstimate -= deferred.reserved;
+        }
+        X10Event first = deferred.batch == null ? deferred.event : (X10Event)deferred.batch.getEvents().get(0);
+        long projected = getProjectedQueueTime();
+        long decision = admissionPolicy.admit(first, projected);
+        boolean accepted;
+        if(decision == AdmissionPolicy.REFUSE) {
+            LOG.fine("Refused deferred "+first+", the transmit queue is projected to take "+projected+"ms");
+            List events = deferred.batch == null ? Collections.singletonList(deferred.event) : deferred.batch.getEvents();
+            for(Iterator i = events.iterator();i.hasNext();) {
+                statistics.eventRefused();
+                finished((X10Event)i.next(), deferred.batch, false);
+            }
+            return;
+        } else if(decision > 0) {
+            accepted = defer(new DeferredTransmit(deferred.event, deferred.batch, deferred.estimates), decision);
+        } else if(deferred.batch == null) {
+            accepted = enqueue(deferred.event, deferred.estimates[0]);
+        } else {
+            accepted = enqueue(deferred.batch, deferred.estimates);
+        }
+        if(!accepted)
+            LOG.fine("Not sending deferred "+first+", the CM11A is closed");
+    }
+    
+    /** Queues an event.
+     * @return false if the CM11A is closed
+     */
+    private boolean enqueue(X10Event event, long estimate) {
+        TransmitLog log;
         // This is a Vector so I shouldn't have to synchronize this explicitly, 
         // but it doesn't hurt to be clear
         synchronized(x10Events) { 
-            this.x10Events.addLast(event);
+            if(closed)
+                return false;
+            log = transmitLog;
+            queue(event, null, System.nanoTime(), estimate, logQueued(log, event));
+            statistics.queueDepthChanged(x10Events.size());
+            x10TransmitterNotifier.queueChanged(event, null, x10Events.size(), 1, 0);
+        }
+        commit(log);
+        startTalker();
+        return true;
+    }
+    
+    /** Queues every event of the batch while holding the queue, so the
+     * talker sends them back to back, and notifies the listeners once.
+     * @return false if the CM11A is closed
+     */
+    private boolean enqueue(X10Batch batch, long[] estimates) {
+        List events = batch.getEvents();
+        TransmitLog log;
+        synchronized(x10Events) {
+            if(closed)
+                return false;
+            log = transmitLog;
+            long now = System.nanoTime();
+            for(int i = 0; i < estimates.length; i++) {
+                X10Event event = (X10Event)events.get(i);
+                queue(event, batch, now, estimates[i], logQueued(log, event));
+            }
+            statistics.queueDepthChanged(x10Events.size());
+            x10TransmitterNotifier.queueChanged((X10Event)events.get(0), batch, x10Events.size(), estimates.length, 0);
+        }
+        // One commit covers the whole batch
+        commit(log);
+        statistics.batchQueued();
+        startTalker();
+        return true;
+    }
+    
+    /** Adds an event to the end of the queue. Only call while holding
+     * the lock on <code>x10Events</code>.
+     */
+    private void queue(X10Event event, X10Batch batch, long now, long estimate, long sequence) {
+        this.x10Events.addLast(event);
+        this.x10EventBatches.addLast(batch);
+        this.x10EventTimes.addLast(now);
+        this.x10EventEstimates.addLast(estimate);
+        this.x10EventSequences.addLast(sequence);
+        this.queuedEstimate += estimate;
+    }
+    
+    /** Appends a queued event to the log, if there is one.  A log that can
+     * not be written does not stop the event being sent.
+     * @return the event's sequence number, or 0 if it was not logged
+     */
+    private long logQueued(TransmitLog log, X10Event event) {
+        if(log == null)
+            return 0;
+        try {
+            return log.append(event);
+        } catch(IOException e) {
+            LOG.log(Level.WARNING,"Unable to write "+event+" to the transmit log",e);
+            return 0;
+        }
+    }
+    
+    /** Waits for what was appended to the log to reach the disk */
+    private void commit(TransmitLog log) {
+        if(log == null)
+            return;
+        try {
+            log.commit();
+        } catch(IOException e) {
+            LOG.log(Level.WARNING,"Unable to commit the transmit log",e);
+        }
+    }
+    
+    /** Marks a logged event done.  Events that failed because the CM11A
+     * was closed under them are left in the log to be sent next time.
+     */
+    private void logDone(long sequence, X10Event event) {
+        if(sequence == 0)
+            return;
+        TransmitLog log;
+        synchronized(x10Events) {
+            if(closed)
+                return;
+            log = transmitLog;
+        }
+        if(log == null)
+            return;
+        try {
+            log.markDone(sequence);
+        } catch(IOException e) {
+            LOG.log(Level.WARNING,"Unable to mark "+event+" done in the transmit log",e);
+        }
+    }
+    
+    /** Starts the talker that actually writes the events to the stream,
+     * unless transmits are being held.
+     */
+    private void startTalker() {
+        synchronized(x10Events) {
+            if(transmitsHeld)
+                return;
         }
-        notifyX10TransmitterListeners(new X10TransmitterEvent(this,X10TransmitterEvent.QUEUE_UPDATED,event));
-        // Start the talker that actually writes the events to the stream
         // Since X10Talker extends Daemon, start() will do nothing if the
         // talker is already started
         x10talker.start();
     }
     
+    /** Queues events without sending them until
+     * {@link #releaseTransmits} is called, so nothing is written to the
+     * CM11A while it is being warmed up.
+     */
+    void holdTransmits() {
+        synchronized(x10Events) {
+            transmitsHeld = true;
+        }
+    }
+    
+    /** Sends the events queued while transmits were held. */
+    void releaseTransmits() {
+        boolean waiting;
+        synchronized(x10Events) {
+            transmitsHeld = false;
+            waiting = !x10Events.isEmpty();
+        }
+        if(waiting)
+            startTalker();
+    }
+    
+    /** Accounts for the outcome of an event and notifies the listeners of it */
+    private void finished(X10Event event, X10Batch batch, boolean delivered) {
+        if(batch != null && batch.recordOutcome(delivered))
+            statistics.batchCompleted(batch.isDelivered(), batch.getElapsedTime());
+        notifyX10TransmitterListeners(new X10TransmitterEvent(this,
+                delivered ? X10TransmitterEvent.EVENT_DELIVERED : X10TransmitterEvent.EVENT_UNDELIVERED,
+                event, batch));
+    }
+    
     /** Sets the CM11A's internal clock to the given date and time.
      */    
     public void setInternalClock(Date date) throws IOException {
@@ -512,7 +1258,7 @@ public class CM11A implements javax.x10.X10Transceiver {
             // Lock the input stream
             synchronized(inputStream) {
                 // Stop the listener from being notified of new data(not fail-safe but wastes less cycles at least)
-                serialPort.notifyOnDataAvailable(false);
+                serialLink.notifyOnDataAvailable(false);
                 // Keep looping until done
                 boolean done = false;
                 int attempt  = 0;
@@ -573,7 +1319,7 @@ public class CM11A implements javax.x10.X10Transceiver {
                     }
                 }
                 // Tell to start notifying the listener of new data again
-                serialPort.notifyOnDataAvailable(true);
+                serialLink.notifyOnDataAvailable(true);
             }
         }
     }
@@ -612,12 +1358,104 @@ public class CM11A implements javax.x10.X10Transceiver {
         return this.maximumAttempts;
     }
     
-    private static byte[] getBytes(X10Event event) {
+    /** Sets how long, in milliseconds, to wait for the CM11A to answer
+     * before treating it as unresponsive. This takes effect the next time
+     * the serial port is opened. Defaults to 10 seconds.
+     */
+    public void setReceiveTimeout(int receiveTimeout) {
+        this.receiveTimeout = receiveTimeout;
+    }
+    
+    public int getReceiveTimeout() {
+        return this.receiveTimeout;
+    }
+    
+    /** Sets how long, in milliseconds, to wait for the serial port if
+     * another application has it open. This takes effect the next time the
+     * serial port is opened. Defaults to 2 seconds.
+     */
+    public void setOpenTimeout(int openTimeout) {
+        this.openTimeout = openTimeout;
+    }
+    
+    public int getOpenTimeout() {
+        return this.openTimeout;
+    }
+    
+    /** Sets the {@link com.jaxzin.x10.cm11a.RetryPolicy} that decides
+     * whether and when a failed attempt to send an event is retried.
+     * Defaults to a {@link com.jaxzin.x10.cm11a.BackoffRetryPolicy}.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        if(retryPolicy == null)
+            throw new IllegalArgumentException("RetryPolicy can not be null.");
+        this.retryPolicy = retryPolicy;
+    }
+    
+    public RetryPolicy getRetryPolicy() {
+        return this.retryPolicy;
+    }
+    
+    /** Sets the {@link com.jaxzin.x10.cm11a.AdmissionPolicy} that decides
+     * whether new events are queued, deferred or refused.  Defaults to a
+     * {@link com.jaxzin.x10.cm11a.ThresholdAdmissionPolicy}.
+     */
+    public void setAdmissionPolicy(AdmissionPolicy admissionPolicy) {
+        if(admissionPolicy == null)
+            throw new IllegalArgumentException("AdmissionPolicy can not be null.");
+        this.admissionPolicy = admissionPolicy;
+    }
+    
+    public AdmissionPolicy getAdmissionPolicy() {
+        return this.admissionPolicy;
+    }
+    
+    /** Returns the {@link com.jaxzin.x10.cm11a.PowerlineModel} that
+     * estimates how long events take to deliver, calibrated from the
+     * events this CM11A has delivered.
+     */
+    public PowerlineModel getPowerlineModel() {
+        return this.powerlineModel;
+    }
+    
+    /** Returns the {@link com.jaxzin.x10.cm11a.CircuitBreaker} that stops
+     * events from being sent to an unresponsive CM11A.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return this.circuitBreaker;
+    }
+    
+    /** Returns the name of the serial port the CM11A is connected to. */
+    public String getPortName() {
+        return this.portName;
+    }
+    
+    /** Returns the runtime statistics for this CM11A. These are the same
+     * statistics {@link com.jaxzin.x10.cm11a.CM11AConnection} registers
+     * with JMX.
+     */
+    public CM11AStatistics getStatistics() {
+        return this.statistics;
+    }
+    
+    /** Returns the {@link com.jaxzin.x10.cm11a.WireTap} recording the bytes
+     * exchanged with the CM11A.  Call {@link com.jaxzin.x10.cm11a.WireTap#dump(Writer)}
+     * on it to see what the CM11A has been saying. The tap is also dumped to
+     * the log whenever an event can not be delivered in
+     * {@link #getMaximumAttempts} attempts.
+     */
+    public WireTap getWireTap() {
+        return this.wireTap;
+    }
+    
+    /** Returns the bytes that send an event to the CM11A */
+    static byte[] getBytes(X10Event event) {
         // build the header byte
         byte header = 0;
         
         // bits 7 through 3 are the brightness levels
-        header = (byte)(((int)(event.getBrightnessLevel()*OUTPUT_BRIGHTNESS_LEVELS)) << 3);
+        // Round, since a level that is a whole number of steps may fall just short of it
+        header = (byte)(((int)Math.round(event.getBrightnessLevel()*OUTPUT_BRIGHTNESS_LEVELS)) << 3);
         
         // bit 2 is always 1
         header |= (byte)(1 << 2);
@@ -629,18 +1467,19 @@ public class CM11A implements javax.x10.X10Transceiver {
         header |= (byte)(event.getOtherCode() == FunctionCode.EXTENDED_CODE?1:0);
         
         // Build the code byte
-        Nibble houseBits = CodeMap.getNibble(event.getHouseCode());
-        Nibble otherBits = CodeMap.getNibble(event.getOtherCode());
-        byte code = houseBits.combineAsHigh(otherBits);
+        byte code = (byte)(CodeMap.getBits(event.getHouseCode()) << 4 | CodeMap.getBits(event.getOtherCode()));
         
         // Build the byte array
         byte[] bytes;
         if(event.getOtherCode() == FunctionCode.EXTENDED_CODE) {
-            bytes      = new byte[4];
+            // Extended codes carry the unit they are for in the low bits of their own byte
+            int unitBits = event.getUnitCode() == null ? 0 : CodeMap.getBits(event.getUnitCode());
+            bytes      = new byte[5];
             bytes[0]   = header;
             bytes[1]   = code;
-            bytes[2]   = event.getData();
-            bytes[3]   = event.getCommand();
+            bytes[2]   = (byte)unitBits;
+            bytes[3]   = event.getData();
+            bytes[4]   = event.getCommand();
         } else {
             bytes      = new byte[2];
             bytes[0]   = header;
@@ -693,78 +1532,146 @@ public class CM11A implements javax.x10.X10Transceiver {
         return (byte)temp;
     }
     
+    /** Asks the CM11A for its status.
+     * @return the 14 status bytes, or null if the CM11A did not answer
+     */
+    byte[] requestStatus() {
+        // Lock the output stream
+        synchronized(outputStream) {
+            // Lock the input stream
+            synchronized(inputStream) {
+                // Stop the listener from being notified of new data(not fail-safe but wastes less cycles at least)
+                serialLink.notifyOnDataAvailable(false);
+                try {
+                    clearInputStream();
+                    outputStream.writeByte(MSG_REQUEST_STATUS);
+                    outputStream.flush();
+                    byte[] status = new byte[STATUS_LENGTH];
+                    inputStream.readFully(status);
+                    watchdog.heard();
+                    return status;
+                } catch(IOException e) {
+                    if(!(e instanceof EOFException))
+                        watchdog.linkFailed(e);
+                    return null;
+                } finally {
+                    // Tell to start notifying the listener of new data again
+                    serialLink.notifyOnDataAvailable(true);
+                }
+            }
+        }
+    }
+    
     /** Reads the CM11A's buffer, parses the events contained into X10Events,
-     * and notifies the registered X10Listeners of those events.  
+     * and notifies the registered listeners of those events.  If the CM11A
+     * announces more data by the time a download is done, it is downloaded
+     * straight away rather than waiting for the listener to be called again.
      * Assumes the serial port's input and output stream have been locked 
      * by the calling method.
      */
     private void handleEventReceived() throws IOException {
-        // Start by clearing the input stream in case there are extra
-        // MSG_EVENT_RECEIVED bytes
+        // Clear the input stream once, in case there are extra
+        // MSG_EVENT_RECEIVED bytes or the rest of a reply to an exchange
+        // the announcement interrupted
         clearInputStream();
-        
+        while(downloadBuffer()) {
+            // Keep going if another buffer was announced during the download,
+            // skipping the repeats of the announcement but nothing else
+            if(peekInputStream() != (MSG_EVENT_RECEIVED & 0xFF))
+                return;
+            while(peekInputStream() == (MSG_EVENT_RECEIVED & 0xFF)) {
+                inputStream.read();
+            }
+        }
+    }
+    
+    /** Downloads and decodes one buffer from the CM11A in a single pass
+     * over the reusable download buffer, and hands its events to the
+     * listeners as one batch.
+     * @return false if the download was malformed and the input was cleared
+     */
+    private boolean downloadBuffer() throws IOException {
         // Tell the CM11A to upload the buffer
         outputStream.writeByte(MSG_REQUEST_BUFFER);
         outputStream.flush();
-        // The first byte is the number of bytes to follow
+        // The first byte is the number of bytes to follow.  A poll the
+        // CM11A sent before it saw the request can come first, and is never
+        // a valid size
         int size = inputStream.read();
+        while(size == (MSG_EVENT_RECEIVED & 0xFF)) {
+            size = inputStream.read();
+        }
         // Size should always be > 1(because of address/function mask)
-        int mask;
-        if(size >= 2) {
-            // Read the mask as an unsigned byte
-            mask = inputStream.readUnsignedByte();
-            size--;
-        } else {
+        if(size < 2 || size > downloadBuffer.length) {
             // Something is wrong because we need at least two bytes in buffer
             clearInputStream();
-            return;
+            return false;
         }
-        // Read the data bytes
-        byte[] data = new byte[size];
-        inputStream.readFully(data);
-        // For each data byte in the buffer(second byte is mask)
-        for(int i = 0; i < data.length; i++) {
-            byte code = data[i];
-            // Figure out the nibbles
-            Nibble houseNibble = new Nibble(code>>>4); // shift the high bits to low
-            Nibble otherNibble = new Nibble(code&0xF); // mask out the high bits
-            // Get the house and other code
-            HouseCode houseCode = CodeMap.getHouseCode(houseNibble);
-            OtherCode otherCode;
-            // Get the other code based on the corresponding bit in the mask byte(1 for function, 0 for address)
-            if(bitValue(mask,i))
-                otherCode = CodeMap.getFunctionCode(otherNibble);
-            else
-                otherCode = CodeMap.getUnitCode(otherNibble);
-            
-            if(otherCode instanceof UnitCode) {
-                notifyX10Listeners(new X10Event(this,houseCode,(UnitCode)otherCode));
-            } else if(otherCode instanceof FunctionCode.Basic) {
-                notifyX10Listeners(new X10Event(this,houseCode,(FunctionCode.Basic)otherCode));
-            } else if(otherCode instanceof FunctionCode.Brightness) {
+        // Read the mask and the data bytes
+        inputStream.readFully(downloadBuffer, 0, size);
+        // Only count buffers that passed the size check and arrived whole
+        statistics.bufferDownloaded(size);
+        int mask = downloadBuffer[0] & 0xFF;
+        
+        List events = new ArrayList(size-1);
+        // Packed copies of the events go straight to the ring, if anyone asked for it
+        LongRingBuffer ring = packedEvents;
+        // For each data byte in the buffer(first byte is mask)
+        for(int i = 0; i < size-1; i++) {
+            int code = downloadBuffer[1+i] & 0xFF;
+            // Get the house code from the high nibble
+            HouseCode houseCode = CodeMap.getHouseCode(code >>> 4);
+            // The mask bit says if the low nibble is a function(1) or unit(0)
+            if((mask & (1 << i)) == 0) {
+                UnitCode unitCode = CodeMap.getUnitCode(code);
+                events.add(new X10Event(this,houseCode,unitCode));
+                if(ring != null) ring.put(X10PackedEvent.address(houseCode,unitCode));
+                continue;
+            }
+            FunctionCode functionCode = CodeMap.getFunctionCode(code);
+            if(functionCode instanceof FunctionCode.Basic) {
+                events.add(new X10Event(this,houseCode,(FunctionCode.Basic)functionCode));
+                if(ring != null) ring.put(X10PackedEvent.function(houseCode,(FunctionCode.Basic)functionCode));
+            } else if(functionCode instanceof FunctionCode.Brightness) {
+                if(i+1 >= size-1)
+                    break;
                 // Get the brightness level(convert it to unsigned value)
-                int rawBright = (int)data[++i] & 0xFF;
+                int rawBright = downloadBuffer[1+(++i)] & 0xFF;
                 double brightnessLevel = (double)rawBright/(double)INPUT_BRIGHTNESS_LEVELS;
-                // Send the brightness event
-                notifyX10Listeners(new X10Event(this,houseCode,(FunctionCode.Brightness)otherCode,brightnessLevel));                
-            } else if(otherCode instanceof FunctionCode.Extended) {
-                // Get the extended 'data' byte
-                byte exData = data[++i];
-                // Get the extended 'command' byte
-                byte exCmd  = data[++i];
-                // Send the extended event
-                notifyX10Listeners(new X10Event(this,houseCode,(FunctionCode.Extended)otherCode,exData,exCmd));                
+                events.add(new X10Event(this,houseCode,(FunctionCode.Brightness)functionCode,brightnessLevel));
+                if(ring != null) ring.put(X10PackedEvent.function(houseCode,(FunctionCode.Brightness)functionCode,rawBright,INPUT_BRIGHTNESS_LEVELS));
+            } else if(functionCode instanceof FunctionCode.Extended) {
+                if(i+3 >= size-1)
+                    break;
+                // The unit code the extended code is for, then the extended
+                // 'data' and 'command' bytes
+                UnitCode exUnit = CodeMap.getUnitCode(downloadBuffer[1+(++i)]);
+                byte exData = downloadBuffer[1+(++i)];
+                byte exCmd  = downloadBuffer[1+(++i)];
+                // Send the extended event, which for a STATUS_ACKNOWLEDGE
+                // carries the unit's level for the monitor to record
+                events.add(new X10Event(this,houseCode,exUnit,(FunctionCode.Extended)functionCode,exData,exCmd));
+                if(ring != null) ring.put(X10PackedEvent.function(houseCode,exUnit,(FunctionCode.Extended)functionCode,exData,exCmd));
             }
         }
-        
+        if(ring != null) ring.publish();
+        notifyX10Listeners(events);
+        return true;
     }
     
-    private boolean bitValue(int b, int bit) {
-        b &= (1 << bit);
-        b >>= bit;
-        return b == 1;
+    /** Returns the next byte waiting in the input stream without reading
+     * it, as an unsigned value from 0 to 255, or -1 if nothing is waiting.
+     */
+    private int peekInputStream() throws IOException {
+        if(inputStream.available() == 0)
+            return -1;
+        inputStream.mark(1);
+        int next = inputStream.read();
+        inputStream.reset();
+        return next;
     }
     
+    
     /** Recovers the CM11A from a power failure.   
      * Assumes the serial port's input and output stream have been locked 
      * by the calling method.
@@ -776,6 +1683,7 @@ public class CM11A implements javax.x10.X10Transceiver {
 
         // Set the CM11A's internal clock to the current time
         setInternalClock(new Date());
+        statistics.powerFailureRecovered();
     }
     
     /** Reads all the available data in the serial port's input stream and
@@ -6,6 +6,11 @@
 
 package com.jaxzin.x10.cm11a;
 
+import java.lang.management.ManagementFactory;
+import java.util.logging.*;
+
+import javax.management.*;
+
 import javax.x10.*;
 import javax.x10.util.*;
 
@@ -15,8 +20,15 @@ import javax.x10.util.*;
  */
 public class CM11AConnection implements javax.x10.X10Connection {
     
+    // Setup logging facilities
+    private static final Logger LOG = 
+            Logger.getLogger(CM11AConnection.class.getName());
+    
     private CM11A cm11a;
     private X10Monitor monitor = null;
+    private X10StatusPoller statusPoller = null;
+    private ObjectName statisticsName = null;
+    private CM11AWarmUp warmUp = null;
     
     /** Creates a new instance of CM11AConnection. This has 
      * <code>package</code> access because only CM11ADriver should create 
@@ -24,6 +36,52 @@ public class CM11AConnection implements javax.x10.X10Connection {
      */
     CM11AConnection(CM11A cmlla) {
         this.cm11a = cmlla;
+        registerStatistics();
+    }
+    
+    /** Returns the warm-up of a connection opened with
+     * {@link com.jaxzin.x10.cm11a.CM11ADriver#connectAsync}, or null if
+     * the connection was opened without one.
+     */
+    public synchronized CM11AWarmUp getWarmUp() {
+        return this.warmUp;
+    }
+    
+    synchronized void setWarmUp(CM11AWarmUp warmUp) {
+        this.warmUp = warmUp;
+    }
+    
+    /** Returns the JMX name the CM11A's statistics are registered under,
+     * or null if they could not be registered.
+     */
+    public ObjectName getStatisticsName() {
+        return this.statisticsName;
+    }
+    
+    /** Registers the CM11A's statistics with the platform MBean server.
+     * Failing to register is logged but does not stop the connection from
+     * working.
+     */
+    private void registerStatistics() {
+        try {
+            ObjectName name = new ObjectName("com.jaxzin.x10.cm11a:type=CM11A,port="
+                                             +ObjectName.quote(String.valueOf(cm11a.getPortName())));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(cm11a.getStatistics(), name);
+            this.statisticsName = name;
+        } catch(JMException e) {
+            LOG.log(Level.WARNING,"Unable to register CM11A statistics with JMX",e);
+        }
+    }
+    
+    private void unregisterStatistics() {
+        if(this.statisticsName == null)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.statisticsName);
+        } catch(JMException e) {
+            LOG.log(Level.FINE,"Unable to unregister CM11A statistics from JMX",e);
+        }
+        this.statisticsName = null;
     }
     
     /** This method returns the X10Receiver for this connection.
@@ -66,9 +124,30 @@ public class CM11AConnection implements javax.x10.X10Connection {
     }
     
     public void close() throws X10Exception {
+            synchronized(this) {
+                if(statusPoller != null) statusPoller.stop();
+            }
+            unregisterStatistics();
             cm11a.close();
     }
     
+    /** Sends the events still queued, waiting at most the given time for
+     * them, then closes the connection.
+     * @param drainTimeout The most to wait for the queue to empty, in milliseconds.
+     * @return the truth that every queued event was sent before closing
+     * @see com.jaxzin.x10.cm11a.CM11A#close(long)
+     */
+    public boolean close(long drainTimeout) throws X10Exception {
+        boolean drained = false;
+        try {
+            drained = cm11a.drain(drainTimeout);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        close();
+        return drained;
+    }
+    
     /** Returns the closest brightness percent this connection can deliver.
      * Most X10 media can not transmit brightness levels at the full
      * 64-bit precision of Java <code>double</code>s.  This method will
@@ -129,4 +208,15 @@ public class CM11AConnection implements javax.x10.X10Connection {
         }
     }
     
+    /** Returns the {@link javax.x10.util.X10StatusPoller} that polls two-way
+     * modules through the CM11A, creating it the first time it is asked
+     * for.  The poller does not send anything until it is started, and is
+     * stopped when the connection is closed.
+     */
+    public synchronized X10StatusPoller getStatusPoller() {
+        if(this.statusPoller == null)
+            this.statusPoller = new X10StatusPoller(this);
+        return this.statusPoller;
+    }
+    
 }
@@ -0,0 +1,284 @@
+/*
+ * CM11ADetector.java
+ *
+ * Created on November 5, 2026, 7:30 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+import java.io.*;
+import java.util.*;
+import java.util.logging.*;
+
+import javax.comm.*;
+
+/** <code>CM11ADetector</code> finds the serial port a CM11A is plugged
+ * into.  Every candidate port is probed at the same time with a status
+ * request, and the first port that answers with a believable status frame
+ * is taken, so detection takes about one probe timeout however many ports
+ * there are.  The port found is cached, and later detections try it on its
+ * own before probing every port again.
+ * <P>
+ * The candidates are the serial ports javax.comm knows of.  Pseudo-terminals
+ * are probed like any other port once the javax.comm implementation lists
+ * them, and {@link #getPortNames} and {@link #openLink} can be overridden to
+ * probe other links, such as {@link com.jaxzin.x10.cm11a.CM11ASimulator}s.
+ * <P>
+ * This is what the driver does for the URL <code>x10:cm11a:auto</code>.
+ *
+ * @see com.jaxzin.x10.cm11a.CM11ADriver
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class CM11ADetector {
+
+    // Setup logging facilities
+    private static final Logger LOG =
+            Logger.getLogger(CM11ADetector.class.getName());
+
+    /** How long a port has to answer the status request, in milliseconds */
+    public static final int DEFAULT_TIMEOUT = 1000;
+
+    /** How long opening a port may take on top of the timeout, in
+     * milliseconds, since javax.comm waits for a port in use
+     */
+    private static final long OPEN_ALLOWANCE = 2000;
+
+    private static final byte MSG_REQUEST_STATUS = (byte) 0x8B;
+    private static final int STATUS_LENGTH       = 14;
+
+    /** The port the last detection found. Guarded by the class lock. */
+    private static String cachedPortName;
+    /** The serial ports last listed. Guarded by the class lock. */
+    private static String[] cachedPortNames;
+
+    /** Probes one port and reports what it found */
+    private class Probe implements Runnable {
+        private String portName;
+        private Search search;
+        private Probe(String portName, Search search) {
+            this.portName = portName;
+            this.search = search;
+        }
+        public void run() {
+            SerialLink link = null;
+            boolean found = false;
+            try {
+                link = openLink(portName);
+                if(search.register(link))
+                    found = isCM11A(link);
+            } catch(Exception e) {
+                LOG.log(Level.FINE,"Unable to probe serial port "+portName,e);
+            } finally {
+                if(link != null)
+                    search.release(link);
+                search.finished(portName, found);
+            }
+        }
+    }
+
+    /** The state of one round of probes */
+    private static class Search {
+        private int running;
+        private String found;
+        private boolean over;
+        private Set links = new HashSet();
+        private Search(int running) {
+            this.running = running;
+        }
+        /** Returns false if the search is already over */
+        private synchronized boolean register(SerialLink link) {
+            if(over)
+                return false;
+            links.add(link);
+            return true;
+        }
+        private void release(SerialLink link) {
+            synchronized(this) {
+                links.remove(link);
+            }
+            link.close();
+        }
+        private synchronized void finished(String portName, boolean answered) {
+            running--;
+            if(answered && found == null)
+                found = portName;
+            notifyAll();
+        }
+        /** Waits for an answer or for every probe to give up, then closes
+         * the links of the probes still waiting.
+         */
+        private String await(long deadline) throws InterruptedException {
+            List abandoned;
+            synchronized(this) {
+                while(found == null && running > 0) {
+                    long remaining = deadline-System.currentTimeMillis();
+                    if(remaining <= 0)
+                        break;
+                    wait(remaining);
+                }
+                over = true;
+                abandoned = new ArrayList(links);
+            }
+            // Closing a link unblocks the probe reading from it
+            for(Iterator i = abandoned.iterator();i.hasNext();) {
+                ((SerialLink)i.next()).close();
+            }
+            synchronized(this) {
+                return found;
+            }
+        }
+    }
+
+    private int baudRate;
+    private int dataBits;
+    private int stopBits;
+    private int parity;
+    private int timeout;
+
+    /** Creates a new instance of CM11ADetector with the CM11A's usual
+     * serial port parameters.
+     */
+    public CM11ADetector() {
+        this(   4800,
+                SerialPort.DATABITS_8,
+                SerialPort.STOPBITS_1,
+                SerialPort.PARITY_NONE);
+    }
+
+    /** Creates a new instance of CM11ADetector that opens ports with the
+     * given parameters.
+     */
+    public CM11ADetector(int baudRate, int dataBits, int stopBits, int parity) {
+        this.baudRate = baudRate;
+        this.dataBits = dataBits;
+        this.stopBits = stopBits;
+        this.parity = parity;
+        this.timeout = DEFAULT_TIMEOUT;
+    }
+
+    /** Returns how long a port has to answer, in milliseconds. */
+    public int getTimeout() {
+        return this.timeout;
+    }
+
+    /** Sets how long a port has to answer the status request.
+     * @param timeout The timeout in milliseconds.
+     */
+    public void setTimeout(int timeout) {
+        if(timeout <= 0)
+            throw new IllegalArgumentException("The timeout must be positive: "+timeout);
+        this.timeout = timeout;
+    }
+
+    /** Finds the port a CM11A answers on, trying the port found last time
+     * before probing every port.
+     * @return the port name, or null if no port answered
+     * @throws java.lang.InterruptedException if the thread is interrupted while probing
+     */
+    public String detect() throws InterruptedException {
+        String cached = getCachedPortName();
+        if(cached != null && probe(new String[] {cached}) != null)
+            return cached;
+        String found = probe(listPortNames());
+        synchronized(CM11ADetector.class) {
+            cachedPortName = found;
+        }
+        if(found == null)
+            LOG.info("No CM11A answered on any serial port");
+        else
+            LOG.info("Found a CM11A on serial port "+found);
+        return found;
+    }
+
+    /** Probes the given ports in parallel.
+     * @return the first port to answer, or null if none did
+     * @throws java.lang.InterruptedException if the thread is interrupted while probing
+     */
+    public String probe(String[] portNames) throws InterruptedException {
+        if(portNames == null)
+            throw new IllegalArgumentException("Port names can not be null.");
+        if(portNames.length == 0)
+            return null;
+        Search search = new Search(portNames.length);
+        for(int i = 0; i < portNames.length; i++) {
+            Thread t = new Thread(new Probe(portNames[i], search), "CM11A probe "+portNames[i]);
+            t.setDaemon(true);
+            t.start();
+        }
+        return search.await(System.currentTimeMillis()+timeout+OPEN_ALLOWANCE);
+    }
+
+    /** Returns the port the last detection found, or null if it found none. */
+    public static synchronized String getCachedPortName() {
+        return cachedPortName;
+    }
+
+    /** Returns the serial ports listed the last time ports were probed or
+     * listed, listing them now if they never were.
+     */
+    public static String[] getSerialPortNames() {
+        synchronized(CM11ADetector.class) {
+            if(cachedPortNames != null)
+                return cachedPortNames.clone();
+        }
+        return new CM11ADetector().listPortNames();
+    }
+
+    /** Forgets the cached port and port list, so the next detection
+     * probes every port.
+     */
+    public static synchronized void clearCache() {
+        cachedPortName = null;
+        cachedPortNames = null;
+    }
+
+    /** Lists the ports and caches the list */
+    private String[] listPortNames() {
+        String[] portNames = getPortNames();
+        synchronized(CM11ADetector.class) {
+            cachedPortNames = portNames.clone();
+        }
+        return portNames;
+    }
+
+    /** Returns the names of the ports to probe, by default every serial port
+     * javax.comm knows of.
+     */
+    protected String[] getPortNames() {
+        List portNames = new ArrayList();
+        Enumeration portList = CommPortIdentifier.getPortIdentifiers();
+        while(portList.hasMoreElements()) {
+            CommPortIdentifier portId = (CommPortIdentifier)portList.nextElement();
+            if(portId.getPortType() == CommPortIdentifier.PORT_SERIAL)
+                portNames.add(portId.getName());
+        }
+        return (String[])portNames.toArray(new String[portNames.size()]);
+    }
+
+    /** Opens a link to the named port whose reads give up after the timeout.
+     * @throws java.lang.Exception if the port can not be opened
+     */
+    protected SerialLink openLink(String portName) throws Exception {
+        return new SerialPortLink(portName, baudRate, dataBits, stopBits, parity, (int)OPEN_ALLOWANCE, timeout);
+    }
+
+    /** Sends a status request over the link and checks the answer. */
+    private boolean isCM11A(SerialLink link) throws IOException {
+        OutputStream out = link.getOutputStream();
+        out.write(MSG_REQUEST_STATUS);
+        out.flush();
+        byte[] status = new byte[STATUS_LENGTH];
+        new DataInputStream(link.getInputStream()).readFully(status);
+        return isStatus(status);
+    }
+
+    /** Returns the truth that the bytes hold a clock a CM11A could report:
+     * seconds under 60, minutes under 120 and half the hour under 12.
+     */
+    static boolean isStatus(byte[] status) {
+        return status.length == STATUS_LENGTH
+            && (status[2]&0xFF) < 60
+            && (status[3]&0xFF) < 120
+            && (status[4]&0xFF) < 12;
+    }
+}
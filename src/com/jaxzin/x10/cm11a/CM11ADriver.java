@@ -6,7 +6,9 @@
 
 package com.jaxzin.x10.cm11a;
 
+import java.io.File;
 import java.util.*;
+import java.util.concurrent.*;
 
 import javax.x10.*;
 import javax.comm.*;
@@ -15,7 +17,7 @@ import javax.comm.*;
  *
  * @author  Brian Jackson (brian@jaxzin.com)
  */
-public class CM11ADriver implements javax.x10.X10Driver {
+public class CM11ADriver implements javax.x10.X10AsyncDriver {
     
     public static final String PROP_PORTNAME    = "portName";
     public static final String PROP_BAUDRATE    = "baudRate";
@@ -23,6 +25,15 @@ public class CM11ADriver implements javax.x10.X10Driver {
     public static final String PROP_STOPBITS    = "stopBits";
     public static final String PROP_PARITY      = "parity";
     public static final String PROP_MAXATTEMPTS = "maxAttempts";
+    public static final String PROP_OPENTIMEOUT = "openTimeout";
+    public static final String PROP_MONITORED   = "monitored";
+    public static final String PROP_TRANSMITLOG = "transmitLog";
+    
+    /** The port name that has the driver find the CM11A's serial port
+     * itself, as in <code>x10:cm11a:auto</code>
+     * @see com.jaxzin.x10.cm11a.CM11ADetector
+     */
+    public static final String AUTO_PORTNAME    = "auto";
     
     
     /** On loading the class, 
@@ -71,43 +82,111 @@ public class CM11ADriver implements javax.x10.X10Driver {
     public X10Connection connect(String url, Properties info) throws X10Exception {
         if(!acceptsURL(url))
             return null;
-        // Initialize the properties
-        
-        
-        // Get port name, first try from url, then from info
-        String portName = getPortName(url,info);
-        if(portName == null)
-            throw new X10Exception("Port name not specified in URL or property \""+PROP_PORTNAME+"\"");
-        
-        // Get baud rate
-        int baudRate = parseBaudRate(getBaudRate(url,info));
-        
-        // Get data bits
-        int dataBits = parseDataBits(getDataBits(url,info));
-        
-        // Get stop bits
-        int stopBits = parseStopBits(getStopBits(url,info));
-        
-        // Get parity
-        int parity = parseParity(getParity(url,info));
+        return openConnection(new Settings(url,info), false);
+    }
+    
+    /** Starts connecting to the CM11A and returns at once.  The future
+     * returns the connection once the serial port is open.  The CM11A's
+     * clock is then set and its status downloaded while the connection is
+     * already in use, and its monitor restored from the status if the
+     * property <code>monitored</code> is <code>true</code>.  Events
+     * transmitted meanwhile are queued until this warm-up is done.
+     * @see com.jaxzin.x10.cm11a.CM11AConnection#getWarmUp
+     * @throws X10Exception if one of the properties is not valid
+     */
+    public Future connectAsync(String url, Properties info) throws X10Exception {
+        if(!acceptsURL(url)) {
+            FutureTask none = new FutureTask(new Runnable() {
+                public void run() {
+                }
+            }, null);
+            none.run();
+            return none;
+        }
+        // Check the properties now so mistakes are thrown to the caller
+        final Settings settings = new Settings(url,info);
+        FutureTask task = new FutureTask(new Callable() {
+            public Object call() throws X10Exception {
+                return openConnection(settings, true);
+            }
+        });
+        Thread t = new Thread(task, "CM11A connect "+settings.portName);
+        t.setDaemon(true);
+        t.start();
+        return task;
+    }
+    
+    /** Opens the CM11A with the given settings.
+     * @param warm If true, the connection is returned once the port is open
+     * and warmed up in the background.
+     */
+    private X10Connection openConnection(Settings settings, boolean warm) throws X10Exception {
+        long started = System.nanoTime();
         
-        // Get max attempts
-        int maxAttempts = parseMaxAttempts(getMaxAttempts(url,info));
+        // Find the CM11A if asked to
+        String portName = settings.portName;
+        if(AUTO_PORTNAME.equalsIgnoreCase(portName))
+            portName = detectPortName(settings.baudRate, settings.dataBits, settings.stopBits, settings.parity);
         
         // Instantiate the CM11A driver with the values read
         CM11A cm11a = new CM11A(portName,
-                                baudRate,
-                                dataBits,
-                                stopBits,
-                                parity);
-        cm11a.setMaximumAttempts(maxAttempts);
-        // Open the serial port
+                                settings.baudRate,
+                                settings.dataBits,
+                                settings.stopBits,
+                                settings.parity);
+        cm11a.setMaximumAttempts(settings.maxAttempts);
+        cm11a.setOpenTimeout(settings.openTimeout);
+        CM11AWarmUp warmUp = warm ? new CM11AWarmUp(cm11a) : null;
+        CM11AConnection connection = new CM11AConnection(cm11a);
+        connection.setMonitored(settings.monitored);
+        // Open the serial port, then queue what the transmit log holds
         try {
             cm11a.open();
+            if(settings.transmitLog != null)
+                cm11a.setTransmitLog(new TransmitLog(settings.transmitLog));
         } catch (Exception e) {
+            if(warmUp != null) warmUp.abandon();
+            try {
+                connection.close();
+            } catch(X10Exception ignored) {}
             throw new X10Exception(e.getMessage());
         }
-        return new CM11AConnection(cm11a);
+        if(warmUp != null) {
+            warmUp.stageFinished(CM11AWarmUp.OPEN, started);
+            connection.setWarmUp(warmUp);
+            warmUp.start(connection);
+        }
+        return connection;
+    }
+    
+    /** The connection settings read from a URL and its properties */
+    private class Settings {
+        private String portName;
+        private int baudRate;
+        private int dataBits;
+        private int stopBits;
+        private int parity;
+        private int maxAttempts;
+        private int openTimeout;
+        private boolean monitored;
+        private File transmitLog;
+        private Settings(String url, Properties info) throws X10Exception {
+            if(info == null)
+                info = new Properties();
+            // Get port name, first try from url, then from info
+            portName = getPortName(url,info);
+            if(portName == null)
+                throw new X10Exception("Port name not specified in URL or property \""+PROP_PORTNAME+"\"");
+            baudRate = parseBaudRate(getBaudRate(url,info));
+            dataBits = parseDataBits(getDataBits(url,info));
+            stopBits = parseStopBits(getStopBits(url,info));
+            parity = parseParity(getParity(url,info));
+            maxAttempts = parseMaxAttempts(getMaxAttempts(url,info));
+            openTimeout = parseOpenTimeout(getOpenTimeout(url,info));
+            monitored = Boolean.valueOf(getMonitored(url,info).trim()).booleanValue();
+            String path = getTransmitLog(url,info).trim();
+            transmitLog = path.length() == 0 ? null : new File(path);
+        }
     }
     
     /** Retrieves the driver's major version number. Initially this should be 1.
@@ -138,7 +217,7 @@ public class CM11ADriver implements javax.x10.X10Driver {
      */
     public X10DriverPropertyInfo[] getPropertyInfo(String url, Properties info) throws X10Exception {
         // Initialize the array
-        X10DriverPropertyInfo[] arr = new X10DriverPropertyInfo[6];
+        X10DriverPropertyInfo[] arr = new X10DriverPropertyInfo[9];
         for(int i = 0; i < arr.length; i++) {
             arr[i] = new X10DriverPropertyInfo(null,null);
         }
@@ -185,6 +264,27 @@ public class CM11ADriver implements javax.x10.X10Driver {
         arr[5].description  = "Maximum number of times the driver will attempt to deliver a message to the CM11A.";
         arr[5].choices      = getMaxAttemptsChoices();
         
+        // Build open timeout
+        arr[6].name         = PROP_OPENTIMEOUT;
+        arr[6].value        = getOpenTimeout(url,info);
+        arr[6].required     = false;
+        arr[6].description  = "Milliseconds to wait for the serial port if another application has it open.";
+        arr[6].choices      = null;
+        
+        // Build monitored
+        arr[7].name         = PROP_MONITORED;
+        arr[7].value        = getMonitored(url,info);
+        arr[7].required     = false;
+        arr[7].description  = "Whether the connection keeps an X10Monitor, restored from the CM11A's status when connecting asynchronously.";
+        arr[7].choices      = new String[] {"false", "true"};
+        
+        // Build transmit log
+        arr[8].name         = PROP_TRANSMITLOG;
+        arr[8].value        = getTransmitLog(url,info);
+        arr[8].required     = false;
+        arr[8].description  = "File that keeps queued events until they are sent, so they survive a restart. Empty for none.";
+        arr[8].choices      = null;
+        
         return arr;
     }
     
@@ -197,6 +297,20 @@ public class CM11ADriver implements javax.x10.X10Driver {
         return portName;
     }
     
+    private String detectPortName(int baudRate, int dataBits, int stopBits, int parity) throws X10Exception {
+        String portName;
+        try {
+            portName = new CM11ADetector(baudRate, dataBits, stopBits, parity).detect();
+        } catch(InterruptedException e) {
+            throw new X10Exception("Interrupted while looking for the CM11A.");
+        } catch(Exception e) {
+            throw new X10Exception(e.getMessage());
+        }
+        if(portName == null)
+            throw new X10Exception("No CM11A answered on any serial port.");
+        return portName;
+    }
+    
     private String getBaudRate(String url, Properties info) {
         return info.getProperty(PROP_BAUDRATE, "4800");
     }
@@ -217,32 +331,31 @@ public class CM11ADriver implements javax.x10.X10Driver {
         return info.getProperty(PROP_MAXATTEMPTS, "20");
     }
     
+    private String getOpenTimeout(String url, Properties info) {
+        return info.getProperty(PROP_OPENTIMEOUT, "2000");
+    }
+    
+    private String getMonitored(String url, Properties info) {
+        return info.getProperty(PROP_MONITORED, "false");
+    }
+    
+    private String getTransmitLog(String url, Properties info) {
+        return info.getProperty(PROP_TRANSMITLOG, "");
+    }
+    
     private String[] getPortNameChoices() throws X10Exception {
-        Vector portNamesV = new Vector();
+        // The ports are listed once rather than every time the properties
+        // are asked for, auto detection lists them again
+        String[] serialPortNames;
         try {
-            CommPortIdentifier portId;
-            Enumeration portList = CommPortIdentifier.getPortIdentifiers();
-
-            while (portList.hasMoreElements()) {
-                portId = (CommPortIdentifier) portList.nextElement();
-                if (portId.getPortType() == CommPortIdentifier.PORT_SERIAL) {
-                    portNamesV.add(portId.getName());
-                }
-            }
+            serialPortNames = CM11ADetector.getSerialPortNames();
         } catch(Exception e) {
             throw new X10Exception(e.getMessage());
         }
-           
-        if(portNamesV.size() == 0)
-            return new String[]{""};
-            
-        String[] portNames = new String[portNamesV.size()];
-        int index = 0;
-        for(Iterator i = portNamesV.iterator();i.hasNext();index++) {
-            String portName = (String)i.next();
-            portNames[index] = portName;
-        }
         
+        String[] portNames = new String[serialPortNames.length+1];
+        portNames[0] = AUTO_PORTNAME;
+        System.arraycopy(serialPortNames, 0, portNames, 1, serialPortNames.length);
         return portNames;
     }
     
@@ -346,4 +459,12 @@ public class CM11ADriver implements javax.x10.X10Driver {
             throw new X10Exception("The maximum attempts of '"+str+"' is not an integer.");
         }
     }
+    
+    private int parseOpenTimeout(String str) throws X10Exception {
+        try {
+            return Integer.parseInt(str);
+        } catch(NumberFormatException e) {
+            throw new X10Exception("The open timeout of '"+str+"' is not an integer.");
+        }
+    }
 }
@@ -0,0 +1,539 @@
+/*
+ * CM11ASimulator.java
+ *
+ * Created on October 31, 2026, 8:05 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+import java.io.*;
+import java.util.*;
+
+import javax.x10.codes.*;
+import javax.x10.event.X10Event;
+
+import com.jaxzin.util.Nibble;
+
+/** <code>CM11ASimulator</code> plays the part of a CM11A at the other end
+ * of a {@link com.jaxzin.x10.cm11a.SerialLink}, so a
+ * {@link com.jaxzin.x10.cm11a.CM11A} can be run with no hardware:
+ * <pre>
+ * CM11ASimulator simulator = new CM11ASimulator();
+ * CM11A cm11a = new CM11A("simulator");
+ * cm11a.open(simulator);
+ * </pre>
+ * It answers transmits with their checksum and, once they are
+ * acknowledged, says it is ready after the time the frame would take on
+ * the powerline.  It also answers status requests and clock uploads.
+ * Events given to {@link #receive} are put in the simulator's buffer and
+ * announced the way the CM11A announces them, by sending
+ * <code>MSG_EVENT_RECEIVED</code> until the buffer is downloaded, so they
+ * reach the CM11A's listeners through its real receive path.  As on the
+ * device, a download carries at most 8 bytes and an announcement can
+ * arrive in the middle of a transmit.
+ * <P>
+ * Powerline times and announcement intervals can be sped up, which lets a
+ * long stretch of traffic be replayed in a short time.
+ * <P>
+ * Attached to a {@link com.jaxzin.x10.cm11a.Powerline}, the simulator
+ * sends its transmits on it instead, and puts what it hears from the
+ * other controllers and modules in its buffer.  A transmit lost to a
+ * collision or noise is still reported ready, as the CM11A can not tell.
+ *
+ * @see com.jaxzin.x10.cm11a.TrafficReplay
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class CM11ASimulator implements SerialLink {
+
+    /** How often the CM11A announces a waiting buffer, in milliseconds at 1x */
+    public static final long POLL_INTERVAL = 1000;
+    /** The most data bytes the CM11A downloads at once */
+    public static final int BUFFER_SIZE = 8;
+
+    private static final int IDLE           = 0;
+    private static final int FRAME          = 1;
+    private static final int AWAIT_ACK      = 2;
+    private static final int TRANSMITTING   = 3;
+
+    private static final int STANDARD_FRAME = 2;
+    private static final int EXTENDED_FRAME = 5;
+    private static final int TIME_FRAME     = 7;
+
+    private static final byte MSG_READY             = (byte) 0x55;
+    private static final byte MSG_POWER_FAILURE     = (byte) 0xA5;
+    private static final byte MSG_EVENT_RECEIVED    = (byte) 0x5A;
+    private static final byte MSG_TIME_UPLOAD       = (byte) 0x9B;
+    private static final byte MSG_REQUEST_BUFFER    = (byte) 0xC3;
+    private static final byte MSG_REQUEST_STATUS    = (byte) 0x8B;
+    private static final byte MSG_ACKNOWLEDGE       = (byte) 0x00;
+    private static final int STATUS_LENGTH          = 14;
+
+    /** The bytes the device has sent that the host has not read */
+    private class DeviceInputStream extends InputStream {
+        public int read() throws IOException {
+            synchronized(lock) {
+                long deadline = System.currentTimeMillis()+receiveTimeout;
+                while(toHost.isEmpty() && !closed) {
+                    long wait = deadline-System.currentTimeMillis();
+                    if(wait <= 0)
+                        return -1;
+                    try {
+                        lock.wait(wait);
+                    } catch(InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                }
+                if(closed)
+                    return -1;
+                return ((Byte)toHost.removeFirst()).byteValue() & 0xFF;
+            }
+        }
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(len == 0)
+                return 0;
+            int first = read();
+            if(first < 0)
+                return -1;
+            b[off] = (byte)first;
+            int count = 1;
+            synchronized(lock) {
+                while(count < len && !toHost.isEmpty()) {
+                    b[off+count++] = ((Byte)toHost.removeFirst()).byteValue();
+                }
+            }
+            return count;
+        }
+        public int available() {
+            synchronized(lock) {
+                return toHost.size();
+            }
+        }
+    }
+
+    /** The bytes the host sends the device */
+    private class DeviceOutputStream extends OutputStream {
+        public void write(int b) {
+            synchronized(lock) {
+                accept((byte)b);
+            }
+        }
+    }
+
+    private Object lock = new Object();
+    private LinkedList toHost;
+    private InputStream inputStream;
+    private OutputStream outputStream;
+    private Runnable dataListener;
+    private boolean notify;
+    private boolean notificationPending;
+    private boolean closed;
+
+    /** Events waiting to be downloaded, each as its data bytes and function flag */
+    private LinkedList buffer;
+    private int state;
+    private byte[] frame;
+    private int frameLength;
+    private int frameFill;
+    /** Bumped whenever a transmit starts or is abandoned, so stale ready replies are dropped */
+    private int transmitNumber;
+
+    /** Runs powerline delays and announcements */
+    private Timer deviceTimer;
+    /** Tells the host about data, like a serial port's event thread */
+    private Timer eventTimer;
+    private TimerTask pollTask;
+    /** The powerline transmits go out on, or null, and what hears it for
+     * the simulator, which is also the sender of its transmits.
+     */
+    private Powerline powerline;
+    private Powerline.Receiver receiver;
+
+    private double speed;
+    private int lineFrequency;
+    private int receiveTimeout;
+
+    private long framesTransmitted;
+    private long eventsReceived;
+    private long eventsDownloaded;
+    private long downloads;
+    private long polls;
+
+    /** Creates a new instance of CM11ASimulator running at real speed on a
+     * 60 Hz powerline.
+     */
+    public CM11ASimulator() {
+        this.toHost = new LinkedList();
+        this.inputStream = new DeviceInputStream();
+        this.outputStream = new DeviceOutputStream();
+        this.buffer = new LinkedList();
+        this.state = IDLE;
+        this.deviceTimer = new Timer("CM11ASimulator device", true);
+        this.eventTimer = new Timer("CM11ASimulator events", true);
+        this.speed = 1.0;
+        this.lineFrequency = 60;
+        this.receiveTimeout = 10000;
+    }
+
+    public InputStream getInputStream() {
+        return this.inputStream;
+    }
+
+    public OutputStream getOutputStream() {
+        return this.outputStream;
+    }
+
+    public void setDataListener(Runnable listener) {
+        synchronized(lock) {
+            this.dataListener = listener;
+        }
+    }
+
+    public void notifyOnDataAvailable(boolean enable) {
+        synchronized(lock) {
+            this.notify = enable;
+            // Data that arrived while notification was off is reported now
+            if(enable && !toHost.isEmpty())
+                notifyDataListener();
+        }
+    }
+
+    public void close() {
+        synchronized(lock) {
+            this.closed = true;
+            lock.notifyAll();
+        }
+        deviceTimer.cancel();
+        eventTimer.cancel();
+    }
+
+    /** Sets how many times faster than real time the simulator runs. */
+    public void setSpeed(double speed) {
+        if(speed <= 0)
+            throw new IllegalArgumentException("The speed must be positive: "+speed);
+        synchronized(lock) {
+            this.speed = speed;
+        }
+    }
+
+    public double getSpeed() {
+        synchronized(lock) {
+            return this.speed;
+        }
+    }
+
+    /** Sets the powerline frequency in Hz, 60 by default. */
+    public void setLineFrequency(int lineFrequency) {
+        if(lineFrequency <= 0)
+            throw new IllegalArgumentException("The line frequency must be positive: "+lineFrequency);
+        synchronized(lock) {
+            this.lineFrequency = lineFrequency;
+        }
+    }
+
+    /** Sets how long a read waits for the device before returning -1, in milliseconds. */
+    public void setReceiveTimeout(int receiveTimeout) {
+        synchronized(lock) {
+            this.receiveTimeout = receiveTimeout;
+        }
+    }
+
+    /** Sends transmits on the powerline and buffers what is heard on it. */
+    public void attach(Powerline powerline) {
+        if(powerline == null)
+            throw new IllegalArgumentException("Powerline can not be null.");
+        Powerline.Receiver receiver = new Powerline.Receiver() {
+            public void heard(X10Event event) {
+                receive(event);
+            }
+        };
+        synchronized(lock) {
+            this.powerline = powerline;
+            this.receiver = receiver;
+        }
+        powerline.addReceiver(receiver);
+    }
+
+    /** Puts an event heard on the powerline into the buffer and announces it. */
+    public void receive(X10Event event) {
+        byte[] bytes = getBufferBytes(event);
+        synchronized(lock) {
+            buffer.addLast(new Object[] {bytes, Boolean.valueOf(event.getType() == X10Event.FUNCTION)});
+            eventsReceived++;
+            if(pollTask == null) {
+                pollTask = new TimerTask() {
+                    public void run() {
+                        poll();
+                    }
+                };
+                // Announce right away, then every poll interval until downloaded
+                deviceTimer.schedule(pollTask, 0, Math.max(1, (long)(POLL_INTERVAL/speed)));
+            }
+        }
+    }
+
+    /** Sends the power failure message, as the CM11A does when it comes
+     * back up and needs its clock set.
+     */
+    public void powerFailure() {
+        synchronized(lock) {
+            send(MSG_POWER_FAILURE);
+        }
+    }
+
+    /** Returns the number of transmits the host has completed. */
+    public long getFramesTransmitted() {
+        synchronized(lock) {
+            return this.framesTransmitted;
+        }
+    }
+
+    /** Returns the number of events given to {@link #receive}. */
+    public long getEventsReceived() {
+        synchronized(lock) {
+            return this.eventsReceived;
+        }
+    }
+
+    /** Returns the number of events the host has downloaded. */
+    public long getEventsDownloaded() {
+        synchronized(lock) {
+            return this.eventsDownloaded;
+        }
+    }
+
+    /** Returns the number of buffer downloads. */
+    public long getDownloads() {
+        synchronized(lock) {
+            return this.downloads;
+        }
+    }
+
+    /** Returns the number of times a waiting buffer was announced. */
+    public long getPolls() {
+        synchronized(lock) {
+            return this.polls;
+        }
+    }
+
+    /** Returns the number of events waiting to be downloaded. */
+    public int getBufferedCount() {
+        synchronized(lock) {
+            return buffer.size();
+        }
+    }
+
+    /** Announces the buffer if there is one and the device is idle. */
+    private void poll() {
+        synchronized(lock) {
+            if(buffer.isEmpty()) {
+                if(pollTask != null)
+                    pollTask.cancel();
+                pollTask = null;
+                return;
+            }
+            if(state != IDLE || closed)
+                return;
+            polls++;
+            send(MSG_EVENT_RECEIVED);
+        }
+    }
+
+    /** Handles one byte from the host.  Callers hold the lock. */
+    private void accept(byte b) {
+        if(closed)
+            return;
+        switch(state) {
+            case FRAME:
+                frame[frameFill++] = b;
+                if(frameFill == frameLength) {
+                    state = AWAIT_ACK;
+                    send(getChecksum(frame));
+                }
+                return;
+            case AWAIT_ACK:
+                if(b == MSG_ACKNOWLEDGE) {
+                    startTransmit();
+                    return;
+                }
+                // Anything else abandons the frame and starts over
+                state = IDLE;
+                break;
+            case TRANSMITTING:
+                // The CM11A ignores the host while it is on the powerline
+                return;
+        }
+
+        if(b == MSG_REQUEST_BUFFER) {
+            download();
+        } else if(b == MSG_REQUEST_STATUS) {
+            sendStatus();
+        } else if(b == MSG_TIME_UPLOAD) {
+            startFrame(b, TIME_FRAME);
+        } else if((b & 0x04) != 0) {
+            // A transmit header, bit 0 says whether it is extended
+            startFrame(b, (b & 0x01) != 0 ? EXTENDED_FRAME : STANDARD_FRAME);
+        }
+        // Anything else is noise the CM11A would ignore
+    }
+
+    private void startFrame(byte header, int length) {
+        frame = new byte[length];
+        frame[0] = header;
+        frameLength = length;
+        frameFill = 1;
+        state = FRAME;
+    }
+
+    private void startTransmit() {
+        final int number = ++transmitNumber;
+        state = TRANSMITTING;
+        if(powerline != null && frame[0] != MSG_TIME_UPLOAD) {
+            powerline.transmit(receiver, getEvent(frame), new Powerline.TransmitCallback() {
+                public void transmitted(X10Event event, Powerline.Outcome outcome) {
+                    synchronized(lock) {
+                        if(number != transmitNumber || state != TRANSMITTING)
+                            return;
+                        framesTransmitted++;
+                        state = IDLE;
+                        send(MSG_READY);
+                    }
+                }
+            });
+            return;
+        }
+        long delay = frame[0] == MSG_TIME_UPLOAD ? 0
+                   : (long)(getCycles(frame)*1000.0/lineFrequency/speed);
+        deviceTimer.schedule(new TimerTask() {
+            public void run() {
+                synchronized(lock) {
+                    if(number != transmitNumber || state != TRANSMITTING)
+                        return;
+                    if(frame[0] != MSG_TIME_UPLOAD)
+                        framesTransmitted++;
+                    state = IDLE;
+                    send(MSG_READY);
+                }
+            }
+        }, delay);
+    }
+
+    private void download() {
+        // Take whole events up to the buffer size
+        List events = new ArrayList();
+        int length = 0;
+        while(!buffer.isEmpty()) {
+            Object[] event = (Object[])buffer.getFirst();
+            int size = ((byte[])event[0]).length;
+            if(length+size > BUFFER_SIZE && !events.isEmpty())
+                break;
+            events.add(buffer.removeFirst());
+            length += size;
+        }
+        int mask = 0;
+        byte[] data = new byte[length];
+        int fill = 0;
+        for(int i = 0; i < events.size(); i++) {
+            Object[] event = (Object[])events.get(i);
+            byte[] bytes = (byte[])event[0];
+            if(((Boolean)event[1]).booleanValue())
+                mask |= 1 << fill;
+            System.arraycopy(bytes, 0, data, fill, bytes.length);
+            fill += bytes.length;
+        }
+        send((byte)(length+1));
+        send((byte)mask);
+        for(int i = 0; i < data.length; i++) {
+            send(data[i]);
+        }
+        downloads++;
+        eventsDownloaded += events.size();
+    }
+
+    private void sendStatus() {
+        byte[] status = new byte[STATUS_LENGTH];
+        Calendar now = Calendar.getInstance();
+        status[2] = (byte)now.get(Calendar.SECOND);
+        status[3] = (byte)(60*(now.get(Calendar.HOUR_OF_DAY)%2)+now.get(Calendar.MINUTE));
+        status[4] = (byte)(now.get(Calendar.HOUR_OF_DAY)/2);
+        for(int i = 0; i < status.length; i++) {
+            send(status[i]);
+        }
+    }
+
+    /** Queues a byte for the host and tells it there is data.  Callers hold the lock. */
+    private void send(byte b) {
+        toHost.addLast(Byte.valueOf(b));
+        lock.notifyAll();
+        if(notify)
+            notifyDataListener();
+    }
+
+    /** Runs the data listener on the event thread, once for any number of
+     * bytes that arrive before it gets to run.  Callers hold the lock.
+     */
+    private void notifyDataListener() {
+        if(notificationPending || dataListener == null || closed)
+            return;
+        notificationPending = true;
+        final Runnable listener = dataListener;
+        eventTimer.schedule(new TimerTask() {
+            public void run() {
+                synchronized(lock) {
+                    notificationPending = false;
+                }
+                listener.run();
+            }
+        }, 0);
+    }
+
+    /** Encodes an event the way the CM11A stores it in its buffer */
+    private static byte[] getBufferBytes(X10Event event) {
+        byte code = (byte)(CodeMap.getBits(event.getHouseCode()) << 4 | CodeMap.getBits(event.getOtherCode()));
+        if(event.getOtherCode() instanceof FunctionCode.Brightness) {
+            int level = (int)Math.round(event.getBrightnessLevel()*CM11A.INPUT_BRIGHTNESS_LEVELS);
+            return new byte[] {code, (byte)level};
+        }
+        if(event.getOtherCode() == FunctionCode.EXTENDED_CODE) {
+            Nibble unitBits = event.getUnitCode() == null ? new Nibble(0)
+                                                          : CodeMap.getNibble(event.getUnitCode());
+            return new byte[] {code, unitBits.byteValue(), event.getData(), event.getCommand()};
+        }
+        return new byte[] {code};
+    }
+
+    /** Returns the powerline cycles a transmitted frame takes */
+    private static int getCycles(byte[] frame) {
+        return PowerlineModel.getCycles(getEvent(frame));
+    }
+
+    /** Decodes the event a transmitted frame carries */
+    private static X10Event getEvent(byte[] frame) {
+        HouseCode houseCode = CodeMap.getHouseCode(new Nibble((frame[1]>>>4)&0xF));
+        Nibble otherBits = new Nibble(frame[1]&0xF);
+        X10Event event;
+        if((frame[0] & 0x02) == 0) {
+            event = new X10Event(CM11ASimulator.class, houseCode, CodeMap.getUnitCode(otherBits));
+        } else {
+            FunctionCode functionCode = CodeMap.getFunctionCode(otherBits);
+            if(functionCode instanceof FunctionCode.Brightness) {
+                // Bits 7 through 3 of the header are the dim steps
+                double level = (double)((frame[0] & 0xFF) >>> 3)/CM11A.OUTPUT_BRIGHTNESS_LEVELS;
+                event = new X10Event(CM11ASimulator.class, houseCode, (FunctionCode.Brightness)functionCode, Math.min(level, X10Event.MAX_BRIGHTNESS_LEVEL));
+            } else if(functionCode instanceof FunctionCode.Extended) {
+                UnitCode unitCode = CodeMap.getUnitCode(new Nibble(frame[2]&0xF));
+                event = new X10Event(CM11ASimulator.class, houseCode, unitCode, (FunctionCode.Extended)functionCode, frame[3], frame[4]);
+            } else {
+                event = new X10Event(CM11ASimulator.class, houseCode, (FunctionCode.Basic)functionCode);
+            }
+        }
+        return event;
+    }
+
+    private static byte getChecksum(byte[] bytes) {
+        int sum = 0;
+        for(int i = 0; i < bytes.length; i++) {
+            sum += bytes[i];
+        }
+        return (byte)(sum & 0xFF);
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * CM11AStatistics.java
+ *
+ * Created on October 19, 2026, 9:40 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.x10.util.LatencyHistogram;
+
+/** Collects the runtime statistics of a {@link com.jaxzin.x10.cm11a.CM11A}
+ * and exposes them through JMX.  The recording methods have
+ * <code>package</code> access and are called by
+ * {@link com.jaxzin.x10.cm11a.CM11A} as it works. None of them lock, and
+ * apart from the first event seen for a new listener class, none of them
+ * allocate.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class CM11AStatistics implements CM11AStatisticsMBean {
+
+    /** The largest download the CM11A can send: the mask byte plus 8 data bytes */
+    private static final int MAX_BUFFER_BYTES = 9;
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger queueHighWaterMark = new AtomicInteger();
+
+    private final AtomicLong eventsUndelivered = new AtomicLong();
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram();
+
+    private final AtomicLong checksumRetries = new AtomicLong();
+    private final AtomicLong attemptsExhausted = new AtomicLong();
+    private final AtomicLong powerFailureRecoveries = new AtomicLong();
+    private final AtomicLong linkFailures = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+
+    private volatile CircuitBreaker.State circuitBreakerState = CircuitBreaker.CLOSED;
+    private final AtomicLong circuitBreakerOpenings = new AtomicLong();
+    private final AtomicLong eventsFailedFast = new AtomicLong();
+    private final AtomicLong eventsRefused = new AtomicLong();
+    private final AtomicLong eventsDeferred = new AtomicLong();
+
+    private final AtomicLong batchesQueued = new AtomicLong();
+    private final AtomicLong batchesUndelivered = new AtomicLong();
+    private final LatencyHistogram batchLatency = new LatencyHistogram();
+
+    private final AtomicLong bufferDownloads = new AtomicLong();
+    private final AtomicLong bufferBytes = new AtomicLong();
+    private final AtomicLongArray bufferSizes = new AtomicLongArray(MAX_BUFFER_BYTES+1);
+
+    /** Maps listener classes to their LatencyHistograms */
+    private final ConcurrentHashMap listenerLatency = new ConcurrentHashMap();
+    private final AtomicLong listenersQuarantined = new AtomicLong();
+    private final AtomicLong listenerEventsDropped = new AtomicLong();
+
+    /** Creates a new instance of CM11AStatistics. This has
+     * <code>package</code> access because only CM11A should create
+     * instances of this class.
+     */
+    CM11AStatistics() {
+    }
+
+    /** Records the depth of the transmit queue after it has changed. */
+    void queueDepthChanged(int depth) {
+        queueDepth.set(depth);
+        int high = queueHighWaterMark.get();
+        while(depth > high && !queueHighWaterMark.compareAndSet(high, depth)) {
+            high = queueHighWaterMark.get();
+        }
+    }
+
+    /** Records an event delivered <code>nanos</code> after it was queued. */
+    void eventDelivered(long nanos) {
+        deliveryLatency.record(nanos);
+    }
+
+    void eventUndelivered() {
+        eventsUndelivered.incrementAndGet();
+    }
+
+    void checksumRetried() {
+        checksumRetries.incrementAndGet();
+    }
+
+    void attemptsExhausted() {
+        attemptsExhausted.incrementAndGet();
+    }
+
+    void powerFailureRecovered() {
+        powerFailureRecoveries.incrementAndGet();
+    }
+
+    void linkFailed() {
+        linkFailures.incrementAndGet();
+    }
+
+    void reconnected() {
+        reconnects.incrementAndGet();
+    }
+
+    void circuitBreakerStateChanged(CircuitBreaker.State state) {
+        circuitBreakerState = state;
+    }
+
+    void circuitBreakerOpened() {
+        circuitBreakerOpenings.incrementAndGet();
+    }
+
+    void eventFailedFast() {
+        eventsFailedFast.incrementAndGet();
+    }
+
+    void eventRefused() {
+        eventsRefused.incrementAndGet();
+    }
+
+    void eventDeferred() {
+        eventsDeferred.incrementAndGet();
+    }
+
+    void batchQueued() {
+        batchesQueued.incrementAndGet();
+    }
+
+    /** Records a batch whose every event has been accounted for,
+     * <code>nanos</code> after it was transmitted.
+     */
+    void batchCompleted(boolean delivered, long nanos) {
+        if(delivered)
+            batchLatency.record(nanos);
+        else
+            batchesUndelivered.incrementAndGet();
+    }
+
+    /** Records a buffer download of <code>size</code> bytes, not counting
+     * the size byte itself.
+     */
+    void bufferDownloaded(int size) {
+        bufferDownloads.incrementAndGet();
+        if(size < 0)
+            size = 0;
+        bufferBytes.addAndGet(size);
+        bufferSizes.incrementAndGet(Math.min(size, MAX_BUFFER_BYTES));
+    }
+
+    /** Records the time one listener took to handle one event. */
+    void listenerDispatched(Class listenerClass, long nanos) {
+        LatencyHistogram histogram = (LatencyHistogram)listenerLatency.get(listenerClass);
+        if(histogram == null) {
+            // Only the first event for a listener class gets here
+            listenerLatency.putIfAbsent(listenerClass, new LatencyHistogram());
+            histogram = (LatencyHistogram)listenerLatency.get(listenerClass);
+        }
+        histogram.record(nanos);
+    }
+
+    /** Records a listener quarantined for being slow. */
+    void listenerQuarantined() {
+        listenersQuarantined.incrementAndGet();
+    }
+
+    /** Records events or downloads dropped instead of handed to a listener. */
+    void listenerEventsDropped(int count) {
+        listenerEventsDropped.addAndGet(count);
+    }
+
+    public int getTransmitQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public int getTransmitQueueHighWaterMark() {
+        return queueHighWaterMark.get();
+    }
+
+    public long getEventsDelivered() {
+        return deliveryLatency.getCount();
+    }
+
+    public long getEventsUndelivered() {
+        return eventsUndelivered.get();
+    }
+
+    public double getDeliveryLatencyMean() {
+        return millis(deliveryLatency.getMean());
+    }
+
+    public double getDeliveryLatency50thPercentile() {
+        return millis(deliveryLatency.getPercentile(50));
+    }
+
+    public double getDeliveryLatency99thPercentile() {
+        return millis(deliveryLatency.getPercentile(99));
+    }
+
+    public double getDeliveryLatencyMaximum() {
+        return millis(deliveryLatency.getMaximum());
+    }
+
+    public long[] getDeliveryLatencyHistogram() {
+        return deliveryLatency.getCounts();
+    }
+
+    public long getChecksumRetries() {
+        return checksumRetries.get();
+    }
+
+    public long getAttemptsExhausted() {
+        return attemptsExhausted.get();
+    }
+
+    public long getPowerFailureRecoveries() {
+        return powerFailureRecoveries.get();
+    }
+
+    public long getLinkFailures() {
+        return linkFailures.get();
+    }
+
+    public long getReconnects() {
+        return reconnects.get();
+    }
+
+    public String getCircuitBreakerState() {
+        return circuitBreakerState.toString();
+    }
+
+    public long getCircuitBreakerOpenings() {
+        return circuitBreakerOpenings.get();
+    }
+
+    public long getEventsFailedFast() {
+        return eventsFailedFast.get();
+    }
+
+    public long getEventsRefused() {
+        return eventsRefused.get();
+    }
+
+    public long getEventsDeferred() {
+        return eventsDeferred.get();
+    }
+
+    public long getBatchesQueued() {
+        return batchesQueued.get();
+    }
+
+    public long getBatchesDelivered() {
+        return batchLatency.getCount();
+    }
+
+    public long getBatchesUndelivered() {
+        return batchesUndelivered.get();
+    }
+
+    public double getBatchLatencyMean() {
+        return millis(batchLatency.getMean());
+    }
+
+    public double getBatchLatency99thPercentile() {
+        return millis(batchLatency.getPercentile(99));
+    }
+
+    public long getBufferDownloads() {
+        return bufferDownloads.get();
+    }
+
+    public long getBufferBytesDownloaded() {
+        return bufferBytes.get();
+    }
+
+    public double getBufferBytesPerDownloadMean() {
+        long downloads = bufferDownloads.get();
+        return downloads == 0 ? 0.0 : (double)bufferBytes.get()/(double)downloads;
+    }
+
+    public long[] getBufferBytesPerDownloadHistogram() {
+        long[] counts = new long[bufferSizes.length()];
+        for(int i = 0; i < counts.length; i++) {
+            counts[i] = bufferSizes.get(i);
+        }
+        return counts;
+    }
+
+    public String[] getListenerDispatchLatencies() {
+        List lines = new ArrayList();
+        for(Iterator i = listenerLatency.entrySet().iterator();i.hasNext();) {
+            Map.Entry entry = (Map.Entry)i.next();
+            lines.add(((Class)entry.getKey()).getName()+": "+entry.getValue());
+        }
+        Collections.sort(lines);
+        return (String[])lines.toArray(new String[lines.size()]);
+    }
+
+    public long getListenersQuarantined() {
+        return listenersQuarantined.get();
+    }
+
+    public long getListenerEventsDropped() {
+        return listenerEventsDropped.get();
+    }
+
+    public void reset() {
+        queueHighWaterMark.set(queueDepth.get());
+        eventsUndelivered.set(0);
+        deliveryLatency.reset();
+        checksumRetries.set(0);
+        attemptsExhausted.set(0);
+        powerFailureRecoveries.set(0);
+        linkFailures.set(0);
+        reconnects.set(0);
+        circuitBreakerOpenings.set(0);
+        eventsFailedFast.set(0);
+        eventsRefused.set(0);
+        eventsDeferred.set(0);
+        batchesQueued.set(0);
+        batchesUndelivered.set(0);
+        batchLatency.reset();
+        bufferDownloads.set(0);
+        bufferBytes.set(0);
+        for(int i = 0; i < bufferSizes.length(); i++) {
+            bufferSizes.set(i, 0);
+        }
+        listenerLatency.clear();
+        listenersQuarantined.set(0);
+        listenerEventsDropped.set(0);
+    }
+
+    private static double millis(long nanos) {
+        return nanos/1000000.0;
+    }
+}
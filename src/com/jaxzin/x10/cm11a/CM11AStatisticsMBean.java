@@ -0,0 +1,116 @@
+/*
+ * CM11AStatisticsMBean.java
+ *
+ * Created on October 19, 2026, 9:31 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+/** The JMX management interface of {@link com.jaxzin.x10.cm11a.CM11AStatistics}.
+ * Each {@link com.jaxzin.x10.cm11a.CM11AConnection} registers one of these
+ * with the platform MBean server under the name
+ * <code>com.jaxzin.x10.cm11a:type=CM11A,port=<i>PORT_NAME</i></code>.
+ * All times are reported in milliseconds.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public interface CM11AStatisticsMBean {
+
+    /** Returns the number of events waiting in the transmit queue. */
+    public int getTransmitQueueDepth();
+    /** Returns the largest number of events the transmit queue has held. */
+    public int getTransmitQueueHighWaterMark();
+
+    /** Returns the number of events delivered to the CM11A. */
+    public long getEventsDelivered();
+    /** Returns the number of events the CM11A could not be made to accept. */
+    public long getEventsUndelivered();
+    /** Returns the mean time from {@link com.jaxzin.x10.cm11a.CM11A#transmit}
+     * to delivery.
+     */
+    public double getDeliveryLatencyMean();
+    /** Returns the median time from enqueue to delivery. */
+    public double getDeliveryLatency50thPercentile();
+    /** Returns the 99th percentile time from enqueue to delivery. */
+    public double getDeliveryLatency99thPercentile();
+    /** Returns the longest time from enqueue to delivery. */
+    public double getDeliveryLatencyMaximum();
+    /** Returns the enqueue to delivery histogram.  Element <code>i</code>
+     * counts the deliveries that took up to 2<sup>i</sup> microseconds.
+     */
+    public long[] getDeliveryLatencyHistogram();
+
+    /** Returns the number of frames resent because of a bad checksum. */
+    public long getChecksumRetries();
+    /** Returns the number of sends given up on, either by the
+     * {@link com.jaxzin.x10.cm11a.RetryPolicy} or after
+     * {@link com.jaxzin.x10.cm11a.CM11A#getMaximumAttempts} attempts.
+     */
+    public long getAttemptsExhausted();
+    /** Returns the number of times the CM11A was recovered from a power failure. */
+    public long getPowerFailureRecoveries();
+    /** Returns the number of times the serial link was found dead. */
+    public long getLinkFailures();
+    /** Returns the number of times the serial port was reopened after
+     * the link was found dead.
+     */
+    public long getReconnects();
+
+    /** Returns the state of the {@link com.jaxzin.x10.cm11a.CircuitBreaker}. */
+    public String getCircuitBreakerState();
+    /** Returns the number of times the circuit breaker has opened. */
+    public long getCircuitBreakerOpenings();
+    /** Returns the number of events failed without being sent because the
+     * circuit breaker was open.
+     */
+    public long getEventsFailedFast();
+
+    /** Returns the number of events the
+     * {@link com.jaxzin.x10.cm11a.AdmissionPolicy} refused.
+     */
+    public long getEventsRefused();
+    /** Returns the number of events the admission policy deferred. */
+    public long getEventsDeferred();
+
+    /** Returns the number of {@link javax.x10.event.X10Batch}es queued. */
+    public long getBatchesQueued();
+    /** Returns the number of batches whose every event was delivered. */
+    public long getBatchesDelivered();
+    /** Returns the number of batches with at least one event undelivered. */
+    public long getBatchesUndelivered();
+    /** Returns the mean time from transmitting a batch to delivering its
+     * last event.
+     */
+    public double getBatchLatencyMean();
+    /** Returns the 99th percentile time from transmitting a batch to
+     * delivering its last event.
+     */
+    public double getBatchLatency99thPercentile();
+
+    /** Returns the number of times the CM11A's buffer was downloaded. */
+    public long getBufferDownloads();
+    /** Returns the total number of bytes downloaded from the CM11A's buffer. */
+    public long getBufferBytesDownloaded();
+    /** Returns the mean number of bytes per buffer download. */
+    public double getBufferBytesPerDownloadMean();
+    /** Returns the buffer download size histogram. Element <code>i</code>
+     * counts the downloads that were <code>i</code> bytes long.
+     */
+    public long[] getBufferBytesPerDownloadHistogram();
+
+    /** Returns one line per {@link javax.x10.event.X10Listener} class
+     * summarizing how long that class takes to handle an event.
+     */
+    public String[] getListenerDispatchLatencies();
+    /** Returns the number of times a listener was quarantined for being slow. */
+    public long getListenersQuarantined();
+    /** Returns the number of events and downloads dropped instead of being
+     * handed to a slow or quarantined listener.
+     */
+    public long getListenerEventsDropped();
+
+    /** Clears all of the counters and histograms.  The queue depth is left
+     * alone since it reflects the current state of the queue.
+     */
+    public void reset();
+}
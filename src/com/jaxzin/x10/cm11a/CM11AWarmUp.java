@@ -0,0 +1,214 @@
+/*
+ * CM11AWarmUp.java
+ *
+ * Created on November 6, 2026, 7:40 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+import java.util.*;
+import java.util.logging.*;
+
+import javax.x10.codes.*;
+import javax.x10.event.X10Event;
+import javax.x10.util.X10Monitor;
+
+import com.jaxzin.util.Nibble;
+
+/** <code>CM11AWarmUp</code> brings a newly opened CM11A up to date while
+ * the connection is already in use.  Once the serial port is open the
+ * clock upload and the status download are started together, and the
+ * monitor, if the connection has one, is restored from the status as soon
+ * as it arrives.  Events transmitted before the warm-up is done are queued
+ * and sent when it is.
+ * <P>
+ * How long each stage took is kept, and logged when the warm-up is done.
+ * The stages are {@link #OPEN}, which includes finding the port for
+ * <code>x10:cm11a:auto</code>, {@link #CLOCK}, {@link #STATUS} and
+ * {@link #MONITOR}.  A stage that fails is logged and does not stop the
+ * others.
+ *
+ * @see com.jaxzin.x10.cm11a.CM11ADriver#connectAsync
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class CM11AWarmUp {
+
+    // Setup logging facilities
+    private static final Logger LOG =
+            Logger.getLogger(CM11AWarmUp.class.getName());
+
+    /** Opening the serial port */
+    public static final String OPEN     = "open";
+    /** Setting the CM11A's clock */
+    public static final String CLOCK    = "clock";
+    /** Downloading the CM11A's status */
+    public static final String STATUS   = "status";
+    /** Restoring the monitor from the status */
+    public static final String MONITOR  = "monitor";
+
+    /** Where the monitored house code is in the status */
+    private static final int STATUS_HOUSE   = 7;
+    /** Where the on/off bits of the monitored units are in the status */
+    private static final int STATUS_ON_OFF  = 10;
+
+    private CM11A cm11a;
+    private long started;
+    /** Stage names to how long they took in nanoseconds, in the order they
+     * finished. Guarded by the lock on this warm-up.
+     */
+    private Map stageTimes;
+    private int running;
+    private boolean done;
+
+    /** Not public, only CM11ADriver creates warm-ups. Transmits are held
+     * from here until the warm-up is done.
+     */
+    CM11AWarmUp(CM11A cm11a) {
+        this.cm11a = cm11a;
+        this.started = System.nanoTime();
+        this.stageTimes = new LinkedHashMap();
+        cm11a.holdTransmits();
+    }
+
+    /** Records that a stage started at the given time has finished */
+    synchronized void stageFinished(String stage, long stageStarted) {
+        stageTimes.put(stage, Long.valueOf(System.nanoTime()-stageStarted));
+    }
+
+    /** Starts the stages that follow opening the port and returns at once. */
+    void start(final CM11AConnection connection) {
+        synchronized(this) {
+            running = 2;
+        }
+        Thread clock = new Thread(new Runnable() {
+            public void run() {
+                long stageStarted = System.nanoTime();
+                try {
+                    cm11a.setInternalClock(new Date());
+                    stageFinished(CLOCK, stageStarted);
+                } catch(Exception e) {
+                    LOG.log(Level.WARNING,"Unable to set the CM11A's clock during warm-up",e);
+                } finally {
+                    finished();
+                }
+            }
+        }, "CM11A warm-up clock");
+        Thread status = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    long stageStarted = System.nanoTime();
+                    byte[] status = cm11a.requestStatus();
+                    if(status == null) {
+                        LOG.warning("The CM11A did not answer the status request during warm-up");
+                        return;
+                    }
+                    stageFinished(STATUS, stageStarted);
+                    X10Monitor monitor = connection.getMonitor();
+                    if(monitor != null) {
+                        stageStarted = System.nanoTime();
+                        restore(monitor, status);
+                        stageFinished(MONITOR, stageStarted);
+                    }
+                } finally {
+                    finished();
+                }
+            }
+        }, "CM11A warm-up status");
+        clock.setDaemon(true);
+        status.setDaemon(true);
+        clock.start();
+        status.start();
+    }
+
+    /** Abandons the warm-up, for when the port could not be opened */
+    void abandon() {
+        synchronized(this) {
+            done = true;
+            notifyAll();
+        }
+        cm11a.releaseTransmits();
+    }
+
+    private void finished() {
+        synchronized(this) {
+            if(--running > 0)
+                return;
+            done = true;
+            notifyAll();
+        }
+        cm11a.releaseTransmits();
+        LOG.info("CM11A on "+cm11a.getPortName()+" warmed up in "
+                 +(System.nanoTime()-started)/1000000+"ms "+this);
+    }
+
+    /** Sets the monitored units on or off the way the status says they are */
+    private void restore(X10Monitor monitor, byte[] status) {
+        HouseCode houseCode = CodeMap.getHouseCode((status[STATUS_HOUSE]&0xFF)>>>4);
+        int onOff = ((status[STATUS_ON_OFF]&0xFF) << 8) | (status[STATUS_ON_OFF+1]&0xFF);
+        // Address the units that are on and switch them on, then the same
+        // for the units that are off
+        List events = new ArrayList();
+        for(int pass = 0; pass < 2; pass++) {
+            boolean on = pass == 0;
+            int before = events.size();
+            for(int i = Nibble.MIN_VALUE; i <= Nibble.MAX_VALUE; i++) {
+                if(((onOff >>> i) & 1) == (on ? 1 : 0))
+                    events.add(new X10Event(cm11a, houseCode, CodeMap.getUnitCode(i)));
+            }
+            if(events.size() > before)
+                events.add(new X10Event(cm11a, houseCode, on ? FunctionCode.ON : FunctionCode.OFF));
+        }
+        monitor.recordEvents((X10Event[])events.toArray(new X10Event[events.size()]));
+    }
+
+    /** Returns the truth that every stage has finished or failed. */
+    public synchronized boolean isDone() {
+        return this.done;
+    }
+
+    /** Waits until the warm-up is done.
+     * @param timeout The most to wait in milliseconds, 0 to wait forever.
+     * @return the truth that the warm-up is done
+     * @throws java.lang.InterruptedException if the thread is interrupted while waiting
+     */
+    public synchronized boolean waitFor(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis()+timeout;
+        while(!done) {
+            long remaining = deadline-System.currentTimeMillis();
+            if(timeout == 0)
+                wait();
+            else if(remaining > 0)
+                wait(remaining);
+            else
+                return false;
+        }
+        return true;
+    }
+
+    /** Returns how long the named stage took in milliseconds, or -1 if it
+     * has not finished or failed.
+     */
+    public synchronized long getStageTime(String stage) {
+        Long time = (Long)stageTimes.get(stage);
+        return time == null ? -1 : time.longValue()/1000000;
+    }
+
+    /** Returns the names of the stages that have finished, in the order
+     * they finished.
+     */
+    public synchronized String[] getFinishedStages() {
+        return (String[])stageTimes.keySet().toArray(new String[stageTimes.size()]);
+    }
+
+    public synchronized String toString() {
+        StringBuffer buf = new StringBuffer("[");
+        for(Iterator i = stageTimes.entrySet().iterator();i.hasNext();) {
+            Map.Entry entry = (Map.Entry)i.next();
+            buf.append(entry.getKey()).append(' ')
+               .append(((Long)entry.getValue()).longValue()/1000000).append("ms");
+            if(i.hasNext())
+                buf.append(", ");
+        }
+        return buf.append(']').toString();
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * CM11AWatchdog.java
+ *
+ * Created on November 7, 2026, 7:20 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+import java.io.IOException;
+import java.util.logging.*;
+
+/** <code>CM11AWatchdog</code> notices when the serial link to a CM11A has
+ * died and reopens the port.  A link is taken for dead when reading or
+ * writing it fails outright, rather than just timing out, when the serial
+ * port is no longer listed, or when the CM11A misses several status
+ * heartbeats in a row.  Heartbeats are only sent when nothing has been
+ * heard from the CM11A for a heartbeat interval.
+ * <P>
+ * While the link is down the event being sent waits for it to come back
+ * instead of using up its attempts, and the events behind it stay queued.
+ * The port is reopened with exponential backoff, and once it is the
+ * CM11A carries on with the same listeners and queue, so a USB adapter
+ * that is unplugged and plugged back in, or that re-enumerates, needs
+ * nothing from the application.
+ * <P>
+ * Every CM11A opened on a serial port has a watchdog, started when the
+ * port is opened and stopped when it is closed.
+ *
+ * @see com.jaxzin.x10.cm11a.CM11A#getWatchdog
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class CM11AWatchdog {
+
+    // Setup logging facilities
+    private static final Logger LOG =
+            Logger.getLogger(CM11AWatchdog.class.getName());
+
+    /** How long the CM11A may be quiet before it is sent a heartbeat */
+    public static final long DEFAULT_HEARTBEAT_INTERVAL = 30000;
+    /** How many heartbeats in a row may go unanswered */
+    public static final int DEFAULT_MISSED_HEARTBEATS = 2;
+    /** The longest wait between attempts to reopen the port */
+    public static final long DEFAULT_MAXIMUM_BACKOFF = 60000;
+
+    /** The wait before the first attempt to reopen the port */
+    private static final long INITIAL_BACKOFF = 500;
+
+    private class Watcher implements Runnable {
+        public void run() {
+            while(true) {
+                synchronized(lock) {
+                    while(!stopped && !failed) {
+                        long remaining = heartbeatInterval-(System.currentTimeMillis()-lastHeard);
+                        if(remaining <= 0)
+                            break;
+                        try {
+                            lock.wait(remaining);
+                        } catch(InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if(stopped)
+                        return;
+                }
+                if(!isFailed())
+                    check();
+                if(isFailed())
+                    reconnect();
+            }
+        }
+    }
+
+    private CM11A cm11a;
+    private CM11AStatistics statistics;
+
+    /** Everything below is guarded by the lock */
+    private Object lock;
+    private long heartbeatInterval;
+    private int missedHeartbeats;
+    private long maximumBackoff;
+    private long lastHeard;
+    private int missed;
+    private boolean failed;
+    private boolean reconnecting;
+    private boolean stopped;
+    private Thread thread;
+
+    /** Not public, only CM11A creates watchdogs */
+    CM11AWatchdog(CM11A cm11a, CM11AStatistics statistics) {
+        this.cm11a = cm11a;
+        this.statistics = statistics;
+        this.lock = new Object();
+        this.heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+        this.missedHeartbeats = DEFAULT_MISSED_HEARTBEATS;
+        this.maximumBackoff = DEFAULT_MAXIMUM_BACKOFF;
+    }
+
+    /** Returns how long the CM11A may be quiet before it is sent a
+     * heartbeat, in milliseconds.
+     */
+    public long getHeartbeatInterval() {
+        synchronized(lock) {
+            return this.heartbeatInterval;
+        }
+    }
+
+    /** Sets how long the CM11A may be quiet before it is sent a heartbeat.
+     * @param millis The interval in milliseconds.
+     */
+    public void setHeartbeatInterval(long millis) {
+        if(millis <= 0)
+            throw new IllegalArgumentException("The heartbeat interval must be positive: "+millis);
+        synchronized(lock) {
+            this.heartbeatInterval = millis;
+            lock.notifyAll();
+        }
+    }
+
+    /** Returns how many heartbeats in a row may go unanswered before the
+     * link is taken for dead.
+     */
+    public int getMissedHeartbeats() {
+        synchronized(lock) {
+            return this.missedHeartbeats;
+        }
+    }
+
+    public void setMissedHeartbeats(int missedHeartbeats) {
+        if(missedHeartbeats < 1)
+            throw new IllegalArgumentException("At least one heartbeat has to be missed: "+missedHeartbeats);
+        synchronized(lock) {
+            this.missedHeartbeats = missedHeartbeats;
+        }
+    }
+
+    /** Returns the longest wait between attempts to reopen the port, in
+     * milliseconds.
+     */
+    public long getMaximumBackoff() {
+        synchronized(lock) {
+            return this.maximumBackoff;
+        }
+    }
+
+    public void setMaximumBackoff(long millis) {
+        if(millis < INITIAL_BACKOFF)
+            throw new IllegalArgumentException("The maximum backoff can not be under "+INITIAL_BACKOFF+": "+millis);
+        synchronized(lock) {
+            this.maximumBackoff = millis;
+        }
+    }
+
+    /** Returns the truth that the link is thought to be working. */
+    public boolean isLinkUp() {
+        synchronized(lock) {
+            return !failed;
+        }
+    }
+
+    /** Starts watching the link, if not already watching */
+    void start() {
+        synchronized(lock) {
+            if(thread != null)
+                return;
+            stopped = false;
+            lastHeard = System.currentTimeMillis();
+            thread = new Thread(new Watcher(), "CM11A watchdog "+cm11a.getPortName());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /** Stops watching, and releases anything waiting for the link */
+    void stop() {
+        synchronized(lock) {
+            stopped = true;
+            thread = null;
+            lock.notifyAll();
+        }
+    }
+
+    /** Records that the CM11A answered, so no heartbeat is due. */
+    void heard() {
+        synchronized(lock) {
+            lastHeard = System.currentTimeMillis();
+            missed = 0;
+        }
+    }
+
+    /** Records that reading or writing the link failed outright.
+     * @return the truth that the watchdog will reopen the port
+     */
+    boolean linkFailed(IOException e) {
+        synchronized(lock) {
+            if(thread == null)
+                return false;
+            if(!failed && !reconnecting)
+                LOG.log(Level.WARNING,"Serial link to the CM11A on "+cm11a.getPortName()+" failed",e);
+            failed = true;
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+    /** Waits while the link is down.
+     * @return the truth that the link is up, false if the watchdog is not
+     * running or was stopped while waiting
+     */
+    boolean awaitLink() {
+        synchronized(lock) {
+            while(failed && thread != null) {
+                try {
+                    lock.wait();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return thread != null;
+        }
+    }
+
+    private boolean isFailed() {
+        synchronized(lock) {
+            return failed;
+        }
+    }
+
+    /** Checks the port is still there and sends a heartbeat */
+    private void check() {
+        if(!cm11a.isPortPresent()) {
+            LOG.warning("Serial port "+cm11a.getPortName()+" has disappeared");
+            synchronized(lock) {
+                failed = true;
+            }
+            return;
+        }
+        if(cm11a.requestStatus() != null) {
+            heard();
+            return;
+        }
+        synchronized(lock) {
+            // The failed request may already have reported the link dead
+            if(failed)
+                return;
+            missed++;
+            lastHeard = System.currentTimeMillis();
+            if(missed >= missedHeartbeats) {
+                LOG.warning("The CM11A on "+cm11a.getPortName()+" missed "+missed+" heartbeat(s)");
+                failed = true;
+            }
+        }
+    }
+
+    /** Reopens the port, backing off between attempts, until it opens or
+     * the watchdog is stopped.
+     */
+    private void reconnect() {
+        statistics.linkFailed();
+        long backoff = INITIAL_BACKOFF;
+        int attempt = 0;
+        while(true) {
+            synchronized(lock) {
+                reconnecting = true;
+                if(stopped)
+                    return;
+                try {
+                    lock.wait(backoff);
+                } catch(InterruptedException e) {
+                    return;
+                }
+                if(stopped)
+                    return;
+                backoff = Math.min(backoff*2, maximumBackoff);
+            }
+            attempt++;
+            try {
+                cm11a.reopen();
+                break;
+            } catch(Exception e) {
+                LOG.log(Level.FINE,"Unable to reopen serial port "+cm11a.getPortName()+", attempt "+attempt,e);
+            }
+        }
+        synchronized(lock) {
+            reconnecting = false;
+            failed = false;
+            missed = 0;
+            lastHeard = System.currentTimeMillis();
+            lock.notifyAll();
+        }
+        statistics.reconnected();
+        LOG.info("Reopened serial port "+cm11a.getPortName()+" after "+attempt+" attempt(s)");
+    }
+}
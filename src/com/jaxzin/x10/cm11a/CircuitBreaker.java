@@ -0,0 +1,164 @@
+/*
+ * CircuitBreaker.java
+ *
+ * Created on October 21, 2026, 9:02 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+import java.util.logging.*;
+
+/** <code>CircuitBreaker</code> keeps {@link com.jaxzin.x10.cm11a.CM11A} from
+ * wasting attempts on an adapter that is not answering.  It starts out
+ * {@link #CLOSED}, and while it is closed events are delivered normally.
+ * After {@link #getFailureThreshold} events in a row are undelivered, or
+ * as soon as one is given up on because the CM11A stopped responding, it
+ * {@link #OPEN}s.  While it is open every queued event fails right away
+ * without touching the serial port.  Once {@link #getOpenInterval} has
+ * passed the next event moves it to {@link #HALF_OPEN} and the CM11A is
+ * sent a status request.  If the CM11A answers, the breaker closes and
+ * delivery carries on, otherwise it opens again for another interval.
+ *
+ * @see com.jaxzin.x10.cm11a.CM11A#getCircuitBreaker
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class CircuitBreaker {
+    
+    // Setup logging facilities
+    private static final Logger LOG = 
+            Logger.getLogger(CircuitBreaker.class.getName());
+    
+    /** The states of a {@link com.jaxzin.x10.cm11a.CircuitBreaker}.  Each
+     * state is also a constant of {@link com.jaxzin.x10.cm11a.CircuitBreaker}.
+     */
+    public enum State {
+        /** The CM11A is healthy and events are delivered normally. */
+        CLOSED,
+        /** The CM11A is unhealthy and events fail without being sent. */
+        OPEN,
+        /** The CM11A is being probed with a status request. */
+        HALF_OPEN
+    }
+    
+    /** The CM11A is healthy and events are delivered normally. */
+    public static final State CLOSED        = State.CLOSED;
+    /** The CM11A is unhealthy and events fail without being sent. */
+    public static final State OPEN          = State.OPEN;
+    /** The CM11A is being probed with a status request. */
+    public static final State HALF_OPEN     = State.HALF_OPEN;
+    
+    private State state;
+    private int failureThreshold;
+    private long openInterval;
+    private int consecutiveFailures;
+    private long openedAt;
+    private CM11AStatistics statistics;
+    
+    /** Creates a new instance of CircuitBreaker. This has 
+     * <code>package</code> access because only CM11A should create 
+     * instances of this class. 
+     */
+    CircuitBreaker(CM11AStatistics statistics) {
+        this.statistics = statistics;
+        this.failureThreshold = 3;
+        this.openInterval = 30000;
+        setState(CLOSED);
+    }
+    
+    /** Returns the current state, one of {@link #CLOSED}, {@link #OPEN}
+     * or {@link #HALF_OPEN}.
+     */
+    public synchronized State getState() {
+        return this.state;
+    }
+    
+    /** Returns the truth that events should be sent to the CM11A. */
+    public synchronized boolean isClosed() {
+        return this.state == CLOSED;
+    }
+    
+    /** Sets the number of undelivered events in a row that opens the breaker.
+     * Defaults to 3.
+     */
+    public synchronized void setFailureThreshold(int failureThreshold) {
+        if(failureThreshold < 1)
+            throw new IllegalArgumentException("The failure threshold must be at least 1, not "+failureThreshold+".");
+        this.failureThreshold = failureThreshold;
+    }
+    
+    public synchronized int getFailureThreshold() {
+        return this.failureThreshold;
+    }
+    
+    /** Sets how long, in milliseconds, the breaker stays open before the
+     * CM11A is probed again. Defaults to 30 seconds.
+     */
+    public synchronized void setOpenInterval(long openInterval) {
+        if(openInterval < 0)
+            throw new IllegalArgumentException("The open interval can not be negative.");
+        this.openInterval = openInterval;
+    }
+    
+    public synchronized long getOpenInterval() {
+        return this.openInterval;
+    }
+    
+    /** Closes the breaker by hand, for instance after the adapter has been
+     * plugged back in.
+     */
+    public synchronized void reset() {
+        this.consecutiveFailures = 0;
+        setState(CLOSED);
+    }
+    
+    /** Records that an event was delivered. */
+    synchronized void recordSuccess() {
+        this.consecutiveFailures = 0;
+        if(this.state != CLOSED) {
+            LOG.info("CM11A is responding again, closing circuit breaker");
+            setState(CLOSED);
+        }
+    }
+    
+    /** Records that an event was given up on.
+     * @param cause The cause of the last failed attempt.
+     */
+    synchronized void recordFailure(FailureCause cause) {
+        this.consecutiveFailures++;
+        if(this.state == CLOSED &&
+           (cause == FailureCause.NO_RESPONSE || cause == FailureCause.LINK_FAILURE
+            || this.consecutiveFailures >= this.failureThreshold)) {
+            LOG.warning("Opening circuit breaker after "+this.consecutiveFailures+" undelivered event(s), last cause "+cause);
+            open();
+        }
+    }
+    
+    /** Returns true, and moves to {@link #HALF_OPEN}, if the breaker is open
+     * and has been open for long enough that the CM11A should be probed.
+     */
+    synchronized boolean isProbeDue() {
+        if(this.state == OPEN && System.currentTimeMillis()-this.openedAt >= this.openInterval) {
+            setState(HALF_OPEN);
+            return true;
+        }
+        return false;
+    }
+    
+    /** Records that the status request probe went unanswered. */
+    synchronized void probeFailed() {
+        LOG.info("CM11A did not answer the status request, circuit breaker stays open");
+        open();
+    }
+    
+    private void open() {
+        this.openedAt = System.currentTimeMillis();
+        if(this.state == CLOSED)
+            statistics.circuitBreakerOpened();
+        setState(OPEN);
+    }
+    
+    private void setState(State state) {
+        this.state = state;
+        statistics.circuitBreakerStateChanged(state);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * FailureCause.java
+ *
+ * Created on October 21, 2026, 8:05 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+/** <code>FailureCause</code> enumerates the reasons an attempt to hand a
+ * frame to the CM11A can fail. A {@link com.jaxzin.x10.cm11a.RetryPolicy} is
+ * told the cause of each failed attempt so it can treat them differently.
+ *
+ * @see com.jaxzin.x10.cm11a.RetryPolicy
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public enum FailureCause {
+    
+    /** The CM11A echoed a checksum that did not match the frame, usually
+     * because of noise on the serial line.
+     */
+    CHECKSUM_MISMATCH,
+    /** The CM11A answered with an unsolicited 0x5A poll because it had
+     * received X10 traffic of its own. The poll has already been serviced
+     * when the policy hears about it.
+     */
+    EVENT_RECEIVED,
+    /** The CM11A answered with a 0xA5 power failure poll. Its clock has
+     * already been reset when the policy hears about it.
+     */
+    POWER_FAILURE,
+    /** The CM11A sent a reply it should never send. */
+    UNEXPECTED_REPLY,
+    /** The CM11A did not answer before the receive timeout expired while
+     * the serial port itself kept working. This is what a dead or
+     * unplugged adapter looks like.
+     */
+    NO_RESPONSE,
+    /** The serial link itself failed, as when a USB adapter is unplugged.
+     * The policy only hears about it when there is no
+     * {@link com.jaxzin.x10.cm11a.CM11AWatchdog} to reopen the port, since
+     * otherwise the event waits for the link to come back.
+     */
+    LINK_FAILURE
+}
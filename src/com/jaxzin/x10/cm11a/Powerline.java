@@ -0,0 +1,465 @@
+/*
+ * Powerline.java
+ *
+ * Created on November 9, 2026, 8:10 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.logging.*;
+
+import javax.x10.codes.*;
+import javax.x10.event.X10Event;
+import javax.x10.util.X10Monitor;
+
+import com.jaxzin.util.VirtualClock;
+
+/** <code>Powerline</code> simulates the wiring of a whole house, with
+ * {@link com.jaxzin.x10.cm11a.VirtualModule}s plugged into it and any
+ * number of controllers sending on it, so planners and monitors can be
+ * tried against modules that behave like real ones.
+ * <P>
+ * Each event is one frame that occupies the line for as many AC cycles as
+ * {@link com.jaxzin.x10.cm11a.PowerlineModel#getCycles} says.  A sender
+ * sends its frames one after another and waits while it can hear another
+ * sender's, but X10 has no way to tell which of two senders goes first:
+ * frames that start within the collision window of each other, one cycle
+ * by default, collide and nobody hears either.  Senders that were waiting
+ * start after a random few quiet cycles once the line is free, and can
+ * collide with each other the same way.  A frame that
+ * gets through may still be lost to noise, with the probability given to
+ * {@link #setNoise}.  Frames that get through are heard by every module and
+ * every {@link Powerline.Receiver} except the sender.
+ * <P>
+ * Everything happens on a {@link com.jaxzin.util.VirtualClock}.  A
+ * simulation with only scripted senders can be stepped through with the
+ * clock's <code>advance</code>, taking no real time.  A CM11A connection
+ * from {@link #connect} runs on real threads with real timeouts, so start
+ * the clock alongside the real one for it:
+ * <pre>
+ * Powerline powerline = new Powerline();
+ * powerline.addModule(new VirtualLampModule(HouseCode.A, UnitCode.UNIT_1));
+ * powerline.getClock().start(10);
+ * CM11AConnection connection = powerline.connect("house");
+ * connection.setMonitored(true);
+ * ...
+ * String[] differences = powerline.compare(connection.getMonitor());
+ * </pre>
+ *
+ * @see com.jaxzin.x10.cm11a.CM11ASimulator#attach
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class Powerline {
+
+    // Setup logging facilities
+    private static final Logger LOG =
+            Logger.getLogger(Powerline.class.getName());
+
+    /** What became of a frame sent on the powerline.  Each outcome is also
+     * a constant of {@link com.jaxzin.x10.cm11a.Powerline}.
+     */
+    public enum Outcome {
+        /** The frame got through */
+        DELIVERED,
+        /** The frame collided with another and nobody heard it */
+        COLLIDED,
+        /** The frame was lost to noise */
+        CORRUPTED
+    }
+
+    /** The frame got through */
+    public static final Outcome DELIVERED   = Outcome.DELIVERED;
+    /** The frame collided with another and nobody heard it */
+    public static final Outcome COLLIDED    = Outcome.COLLIDED;
+    /** The frame was lost to noise */
+    public static final Outcome CORRUPTED   = Outcome.CORRUPTED;
+
+    /** A controller that listens to the powerline */
+    public interface Receiver {
+        /** Called with each frame that gets through, except its own. */
+        public void heard(X10Event event);
+    }
+
+    /** Told what became of a frame */
+    public interface TransmitCallback {
+        public void transmitted(X10Event event, Outcome outcome);
+    }
+
+    /** The cycles a frame can start after another without hearing it */
+    public static final int DEFAULT_COLLISION_WINDOW = 1;
+    /** The most quiet cycles a waiting sender adds before starting */
+    public static final int DEFAULT_BACKOFF_CYCLES = 6;
+
+    /** A frame on the line or waiting for it */
+    private static final class Frame {
+        private Object sender;
+        private X10Event event;
+        private TransmitCallback callback;
+        private long start;
+        private boolean collided;
+        private Frame(Object sender, X10Event event, TransmitCallback callback) {
+            this.sender = sender;
+            this.event = event;
+            this.callback = callback;
+        }
+    }
+
+    private VirtualClock clock;
+
+    /** Everything below is guarded by the lock on this powerline */
+    private Random random;
+    private int lineFrequency;
+    private double noise;
+    private int collisionWindow;
+    private int backoffCycles;
+    private List modules;
+    private List receivers;
+    /** Frames on the line, and frames waiting for it to be quiet */
+    private List onLine;
+    private List waiting;
+    private long framesSent;
+    private long framesDelivered;
+    private long collisions;
+    private long framesCorrupted;
+
+    /** Creates a new instance of Powerline on a clock of its own */
+    public Powerline() {
+        this(new VirtualClock());
+    }
+
+    /** Creates a new instance of Powerline on the given clock */
+    public Powerline(VirtualClock clock) {
+        if(clock == null)
+            throw new IllegalArgumentException("VirtualClock can not be null.");
+        this.clock = clock;
+        this.random = new Random();
+        this.lineFrequency = 60;
+        this.collisionWindow = DEFAULT_COLLISION_WINDOW;
+        this.backoffCycles = DEFAULT_BACKOFF_CYCLES;
+        this.modules = new ArrayList();
+        this.receivers = new ArrayList();
+        this.onLine = new ArrayList();
+        this.waiting = new ArrayList();
+    }
+
+    /** Returns the clock the powerline runs on. */
+    public VirtualClock getClock() {
+        return this.clock;
+    }
+
+    /** Seeds the randomness of noise and backoff, so a run can be repeated. */
+    public synchronized void setSeed(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /** Sets the powerline frequency in Hz, 60 by default. */
+    public synchronized void setLineFrequency(int lineFrequency) {
+        if(lineFrequency <= 0)
+            throw new IllegalArgumentException("The line frequency must be positive: "+lineFrequency);
+        this.lineFrequency = lineFrequency;
+    }
+
+    public synchronized int getLineFrequency() {
+        return this.lineFrequency;
+    }
+
+    /** Sets the probability that a frame which did not collide is lost to
+     * noise, 0 by default.
+     */
+    public synchronized void setNoise(double noise) {
+        if(noise < 0 || noise > 1)
+            throw new IllegalArgumentException("The noise must be from 0 to 1: "+noise);
+        this.noise = noise;
+    }
+
+    public synchronized double getNoise() {
+        return this.noise;
+    }
+
+    /** Sets how many cycles after one frame starts another can start
+     * without hearing it, and collide with it.
+     */
+    public synchronized void setCollisionWindow(int cycles) {
+        if(cycles < 0)
+            throw new IllegalArgumentException("The collision window can not be negative: "+cycles);
+        this.collisionWindow = cycles;
+    }
+
+    public synchronized int getCollisionWindow() {
+        return this.collisionWindow;
+    }
+
+    /** Sets the most quiet cycles a waiting sender adds, chosen at random,
+     * before it starts once the line is free.
+     */
+    public synchronized void setBackoffCycles(int cycles) {
+        if(cycles < 0)
+            throw new IllegalArgumentException("The backoff can not be negative: "+cycles);
+        this.backoffCycles = cycles;
+    }
+
+    /** Plugs a module into the powerline. */
+    public void addModule(VirtualModule module) {
+        if(module == null)
+            throw new IllegalArgumentException("VirtualModule can not be null.");
+        if(module.getPowerline() != null)
+            throw new IllegalArgumentException(module+" is already plugged in.");
+        module.setPowerline(this);
+        synchronized(this) {
+            modules.add(module);
+        }
+    }
+
+    /** Returns the modules plugged into the powerline. */
+    public synchronized VirtualModule[] getModules() {
+        return (VirtualModule[])modules.toArray(new VirtualModule[modules.size()]);
+    }
+
+    /** Returns the first module with the given address, or null. */
+    public synchronized VirtualModule getModule(HouseCode houseCode, UnitCode unitCode) {
+        for(Iterator i = modules.iterator();i.hasNext();) {
+            VirtualModule module = (VirtualModule)i.next();
+            if(module.getHouseCode() == houseCode && module.getUnitCode() == unitCode)
+                return module;
+        }
+        return null;
+    }
+
+    public synchronized void addReceiver(Receiver receiver) {
+        if(receiver == null)
+            throw new IllegalArgumentException("Receiver can not be null.");
+        receivers.add(receiver);
+    }
+
+    public synchronized void removeReceiver(Receiver receiver) {
+        receivers.remove(receiver);
+    }
+
+    /** Sends a frame on the powerline, as soon as the sender hears it quiet.
+     * @param sender The controller sending, which does not hear its own frame.
+     * @param callback Told what became of the frame, or null.
+     */
+    public void transmit(Object sender, X10Event event, TransmitCallback callback) {
+        if(event == null)
+            throw new IllegalArgumentException("Event can not be null.");
+        tryStart(new Frame(sender, event, callback), false);
+    }
+
+    /** Sends a frame on the powerline without being told what became of it. */
+    public void transmit(Object sender, X10Event event) {
+        transmit(sender, event, null);
+    }
+
+    /** Sends a module's answer to a status request */
+    void answer(VirtualModule module, X10Event event) {
+        transmit(module, event, null);
+    }
+
+    /** Starts the frame if the sender can not hear the line busy, otherwise
+     * waits for it to be quiet.  A sender's frames wait behind its earlier
+     * ones.
+     * @param released True if the frame is the sender's first waiting frame,
+     * let go now the line is quiet.
+     */
+    private synchronized void tryStart(final Frame frame, boolean released) {
+        long now = clock.currentTimeMillis();
+        long window = toMillis(collisionWindow);
+        boolean busy = false;
+        for(Iterator i = onLine.iterator();i.hasNext();) {
+            Frame other = (Frame)i.next();
+            if(other.sender == frame.sender || now-other.start >= window)
+                busy = true;
+        }
+        if(busy || (!released && isWaiting(frame.sender))) {
+            if(released) {
+                // Back in front of the sender's later frames
+                int at = 0;
+                while(at < waiting.size() && ((Frame)waiting.get(at)).sender != frame.sender)
+                    at++;
+                waiting.add(at, frame);
+            } else {
+                waiting.add(frame);
+            }
+            return;
+        }
+        // Whatever is on the line started too recently to be heard
+        for(Iterator i = onLine.iterator();i.hasNext();) {
+            Frame other = (Frame)i.next();
+            if(!other.collided)
+                collisions++;
+            other.collided = true;
+            frame.collided = true;
+        }
+        if(frame.collided)
+            collisions++;
+        frame.start = now;
+        onLine.add(frame);
+        framesSent++;
+        clock.schedule(new Runnable() {
+            public void run() {
+                ended(frame);
+            }
+        }, toMillis(PowerlineModel.getCycles(frame.event)));
+    }
+
+    /** Takes a frame off the line and delivers it if it got through */
+    private void ended(Frame frame) {
+        Outcome outcome;
+        Receiver[] listening;
+        VirtualModule[] plugged;
+        synchronized(this) {
+            onLine.remove(frame);
+            if(frame.collided) {
+                outcome = COLLIDED;
+            } else if(noise > 0 && random.nextDouble() < noise) {
+                outcome = CORRUPTED;
+                framesCorrupted++;
+            } else {
+                outcome = DELIVERED;
+                framesDelivered++;
+            }
+            if(onLine.isEmpty() && !waiting.isEmpty())
+                releaseWaiting();
+            listening = (Receiver[])receivers.toArray(new Receiver[receivers.size()]);
+            plugged = (VirtualModule[])modules.toArray(new VirtualModule[modules.size()]);
+        }
+        if(outcome == DELIVERED) {
+            for(int i = 0; i < plugged.length; i++) {
+                if(plugged[i] != frame.sender)
+                    plugged[i].heard(frame.event);
+            }
+            for(int i = 0; i < listening.length; i++) {
+                if(listening[i] != frame.sender)
+                    listening[i].heard(frame.event);
+            }
+        } else if(LOG.isLoggable(Level.FINE)) {
+            LOG.fine(frame.event+" from "+frame.sender+" "+outcome);
+        }
+        if(frame.callback != null)
+            frame.callback.transmitted(frame.event, outcome);
+    }
+
+    /** Starts the first waiting frame of each sender after a random quiet
+     * period.  The lock is held.
+     */
+    private void releaseWaiting() {
+        Set senders = new HashSet();
+        for(Iterator i = waiting.iterator();i.hasNext();) {
+            final Frame frame = (Frame)i.next();
+            if(!senders.add(frame.sender))
+                continue;
+            i.remove();
+            clock.schedule(new Runnable() {
+                public void run() {
+                    tryStart(frame, true);
+                }
+            }, toMillis(random.nextInt(backoffCycles+1)));
+        }
+    }
+
+    /** Returns the truth that the sender has frames waiting.  The lock is held. */
+    private boolean isWaiting(Object sender) {
+        for(Iterator i = waiting.iterator();i.hasNext();) {
+            if(((Frame)i.next()).sender == sender)
+                return true;
+        }
+        return false;
+    }
+
+    private long toMillis(int cycles) {
+        return (cycles*1000L+lineFrequency-1)/lineFrequency;
+    }
+
+    /** Returns the number of frames that went on the line. */
+    public synchronized long getFramesSent() {
+        return this.framesSent;
+    }
+
+    /** Returns the number of frames that got through. */
+    public synchronized long getFramesDelivered() {
+        return this.framesDelivered;
+    }
+
+    /** Returns the number of frames lost to collisions. */
+    public synchronized long getCollisions() {
+        return this.collisions;
+    }
+
+    /** Returns the number of frames lost to noise. */
+    public synchronized long getFramesCorrupted() {
+        return this.framesCorrupted;
+    }
+
+    /** Returns the truth that nothing is on the line or waiting for it. */
+    public synchronized boolean isQuiet() {
+        return onLine.isEmpty() && waiting.isEmpty();
+    }
+
+    /** Opens a CM11A on a {@link com.jaxzin.x10.cm11a.CM11ASimulator}
+     * attached to the powerline, and returns a connection to it.  Start
+     * the clock alongside the real one before using it.
+     * @param name The name the CM11A gives as its port name.
+     * @throws java.io.IOException if the CM11A can not be opened
+     */
+    public CM11AConnection connect(String name) throws IOException {
+        CM11ASimulator simulator = new CM11ASimulator();
+        if(clock.isRunning())
+            simulator.setSpeed(clock.getSpeed());
+        simulator.attach(this);
+        CM11A cm11a = new CM11A(name);
+        cm11a.open(simulator);
+        return new CM11AConnection(cm11a);
+    }
+
+    /** Tells the monitor which modules are lights, so it treats the
+     * others as appliances the way the modules do.
+     */
+    public void describeTo(X10Monitor monitor) {
+        VirtualModule[] plugged = getModules();
+        for(int i = 0; i < plugged.length; i++) {
+            monitor.setLight(plugged[i].getHouseCode(), plugged[i].getUnitCode(), plugged[i].isLight());
+        }
+    }
+
+    /** Compares the modules with what the monitor believes about them,
+     * allowing a dim step of difference in brightness.
+     * @return a description of each module the monitor is wrong about,
+     * none if it has them all right
+     */
+    public String[] compare(X10Monitor monitor) {
+        return compare(monitor, 1.0/VirtualLampModule.DIM_STEPS);
+    }
+
+    /** Compares the modules with what the monitor believes about them.
+     * @param tolerance The most the brightness of a lamp that is on may be off by.
+     * @return a description of each module the monitor is wrong about,
+     * none if it has them all right
+     */
+    public String[] compare(X10Monitor monitor, double tolerance) {
+        if(monitor == null)
+            throw new IllegalArgumentException("X10Monitor can not be null.");
+        List differences = new ArrayList();
+        VirtualModule[] plugged = getModules();
+        for(int i = 0; i < plugged.length; i++) {
+            VirtualModule module = plugged[i];
+            HouseCode houseCode = module.getHouseCode();
+            UnitCode unitCode = module.getUnitCode();
+            boolean on = monitor.isOn(houseCode, unitCode);
+            if(on != module.isOn()) {
+                differences.add(module+", the monitor has it "+(on ? "on" : "off"));
+            } else if(on && module.isLight()) {
+                double level = monitor.getBrightnessLevel(houseCode, unitCode);
+                if(Math.abs(level-module.getBrightnessLevel()) > tolerance+1e-9)
+                    differences.add(module+", the monitor has it at "+Math.round(level*100)+"%");
+            }
+        }
+        return (String[])differences.toArray(new String[differences.size()]);
+    }
+
+    public synchronized String toString() {
+        return "Powerline["+modules.size()+" modules, "+framesSent+" frames sent, "
+               +framesDelivered+" delivered, "+collisions+" collided, "+framesCorrupted+" corrupted]";
+    }
+}
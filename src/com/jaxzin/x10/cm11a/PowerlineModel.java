@@ -0,0 +1,170 @@
+/*
+ * PowerlineModel.java
+ *
+ * Created on October 27, 2026, 7:52 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+import javax.x10.codes.FunctionCode;
+import javax.x10.event.X10Event;
+import javax.x10.util.X10FramePlan;
+
+/** <code>PowerlineModel</code> estimates how long a
+ * {@link com.jaxzin.x10.cm11a.CM11A} takes to deliver an
+ * {@link javax.x10.event.X10Event}.
+ * <P>
+ * An event's cost starts from the AC line cycles its frame occupies: every
+ * code is sent twice, a dim or bright code is repeated once per dim step,
+ * and an extended code carries three more bytes.  Each
+ * {@link PowerlineModel.FrameType} then has its own time per cycle, which
+ * starts at the line period and is calibrated from the measured time each
+ * delivered event took, retries and all, with an exponentially weighted
+ * moving average.  The calibration soaks up whatever the cycle counts leave
+ * out, like the serial handshake and collisions on the powerline.
+ *
+ * @see com.jaxzin.x10.cm11a.CM11A#getPowerlineModel
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class PowerlineModel {
+
+    /** The kinds of frame the model calibrates separately.  Each kind is
+     * also a constant of {@link com.jaxzin.x10.cm11a.PowerlineModel}.
+     */
+    public enum FrameType {
+        /** Frames that address a unit */
+        ADDRESS,
+        /** Function frames with no extra information */
+        FUNCTION,
+        /** Dim and bright frames, repeated once per dim step */
+        BRIGHTNESS,
+        /** Extended code frames */
+        EXTENDED
+    }
+
+    /** Frames that address a unit */
+    public static final FrameType ADDRESS       = FrameType.ADDRESS;
+    /** Function frames with no extra information */
+    public static final FrameType FUNCTION      = FrameType.FUNCTION;
+    /** Dim and bright frames, repeated once per dim step */
+    public static final FrameType BRIGHTNESS    = FrameType.BRIGHTNESS;
+    /** Extended code frames */
+    public static final FrameType EXTENDED      = FrameType.EXTENDED;
+
+    private static final FrameType[] FRAME_TYPES = FrameType.values();
+
+    /** An extended code is 31 cycles long and sent twice, plus the gap */
+    private static final int EXTENDED_CYCLES = 31*2+X10FramePlan.GAP_CYCLES;
+
+    /** The weight given to each new measurement by default */
+    public static final double DEFAULT_WEIGHT = 0.2;
+
+    private int lineFrequency;
+    private double weight;
+    private double[] nanosPerCycle;
+    private long[] samples;
+
+    /** Creates a new instance of PowerlineModel for a 60Hz powerline */
+    public PowerlineModel() {
+        this(X10FramePlan.DEFAULT_LINE_FREQUENCY);
+    }
+
+    /** Creates a new instance of PowerlineModel
+     * @param lineFrequency The AC line frequency in Hz, usually 50 or 60.
+     */
+    public PowerlineModel(int lineFrequency) {
+        if(lineFrequency <= 0)
+            throw new IllegalArgumentException("The line frequency must be positive, not "+lineFrequency+".");
+        this.lineFrequency = lineFrequency;
+        this.weight = DEFAULT_WEIGHT;
+        this.nanosPerCycle = new double[FRAME_TYPES.length];
+        this.samples = new long[FRAME_TYPES.length];
+        reset();
+    }
+
+    /** Returns the kind of frame an event is sent in. */
+    public static FrameType getFrameType(X10Event event) {
+        if(event.getType() == X10Event.ADDRESS)
+            return ADDRESS;
+        if(event.getOtherCode() == FunctionCode.EXTENDED_CODE)
+            return EXTENDED;
+        if(event.getOtherCode() instanceof FunctionCode.Brightness)
+            return BRIGHTNESS;
+        return FUNCTION;
+    }
+
+    /** Returns the number of AC line cycles an event's frame occupies,
+     * including the quiet cycles after it.
+     */
+    public static int getCycles(X10Event event) {
+        if(getFrameType(event) == EXTENDED)
+            return EXTENDED_CYCLES;
+        return X10FramePlan.getCycles(event);
+    }
+
+    /** Returns the estimated time to deliver an event, in nanoseconds. */
+    public synchronized long getEstimate(X10Event event) {
+        return (long)(getCycles(event)*this.nanosPerCycle[getFrameType(event).ordinal()]);
+    }
+
+    /** Calibrates the model with the time an event took to deliver.
+     * @param event The delivered event.
+     * @param nanos How long it took, in nanoseconds.
+     */
+    public synchronized void record(X10Event event, long nanos) {
+        if(nanos <= 0)
+            return;
+        int i = getFrameType(event).ordinal();
+        double measured = (double)nanos/getCycles(event);
+        // The first measurement replaces the line period guess outright
+        if(this.samples[i] == 0)
+            this.nanosPerCycle[i] = measured;
+        else
+            this.nanosPerCycle[i] += this.weight*(measured-this.nanosPerCycle[i]);
+        this.samples[i]++;
+    }
+
+    /** Returns the calibrated time per cycle of a kind of frame, in nanoseconds. */
+    public synchronized double getNanosPerCycle(FrameType frameType) {
+        return this.nanosPerCycle[frameType.ordinal()];
+    }
+
+    /** Returns the number of measurements a kind of frame has been calibrated with. */
+    public synchronized long getSampleCount(FrameType frameType) {
+        return this.samples[frameType.ordinal()];
+    }
+
+    public synchronized double getWeight() {
+        return this.weight;
+    }
+
+    /** Sets the weight, between 0.0 and 1.0, given to each new measurement. */
+    public synchronized void setWeight(double weight) {
+        if(weight <= 0.0 || weight > 1.0)
+            throw new IllegalArgumentException("The weight must be more than 0.0 and at most 1.0, not "+weight+".");
+        this.weight = weight;
+    }
+
+    public synchronized int getLineFrequency() {
+        return this.lineFrequency;
+    }
+
+    /** Forgets every measurement and goes back to the line period. */
+    public synchronized void reset() {
+        for(int i = 0; i < FRAME_TYPES.length; i++) {
+            this.nanosPerCycle[i] = 1e9/this.lineFrequency;
+            this.samples[i] = 0;
+        }
+    }
+
+    public synchronized String toString() {
+        StringBuffer buffer = new StringBuffer("PowerlineModel[");
+        for(int i = 0; i < FRAME_TYPES.length; i++) {
+            if(i > 0)
+                buffer.append(',');
+            buffer.append(FRAME_TYPES[i]).append('=');
+            buffer.append(Math.round(this.nanosPerCycle[i]/1000)).append("us/cycle");
+        }
+        return buffer.append(']').toString();
+    }
+}
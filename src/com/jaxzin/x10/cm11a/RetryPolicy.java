@@ -0,0 +1,33 @@
+/*
+ * RetryPolicy.java
+ *
+ * Created on October 21, 2026, 8:16 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+/** RetryPolicy defines the interface for objects that decide whether, and
+ * how soon, {@link com.jaxzin.x10.cm11a.CM11A} tries again after an attempt
+ * to hand a frame to the CM11A fails.  Whatever the policy says,
+ * {@link com.jaxzin.x10.cm11a.CM11A} never makes more than
+ * {@link com.jaxzin.x10.cm11a.CM11A#getMaximumAttempts} attempts at one
+ * frame.
+ *
+ * @see com.jaxzin.x10.cm11a.BackoffRetryPolicy
+ * @see com.jaxzin.x10.cm11a.CM11A#setRetryPolicy
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public interface RetryPolicy {
+    
+    /** Returned by {@link #getRetryDelay} to give up on the frame. */
+    public static final long GIVE_UP = -1;
+    
+    /** Returns how long to wait before the next attempt.
+     * @param cause Why the last attempt failed.
+     * @param failures The number of attempts at this frame that have failed
+     * with this cause, including the last one.
+     * @return The delay in milliseconds, 0 to try again right away, or
+     * {@link #GIVE_UP} to stop trying.
+     */
+    public long getRetryDelay(FailureCause cause, int failures);
+}
@@ -0,0 +1,41 @@
+/*
+ * SerialLink.java
+ *
+ * Created on October 31, 2026, 7:12 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+import java.io.*;
+
+/** SerialLink defines the interface for the byte link between a
+ * {@link com.jaxzin.x10.cm11a.CM11A} and the device.  Normally this is a
+ * javax.comm serial port, but any link that carries the CM11A protocol,
+ * such as the {@link com.jaxzin.x10.cm11a.CM11ASimulator}, will do.
+ * <P>
+ * Reads from the input stream should give up and return -1 if the device
+ * says nothing for a while, the way a serial port with a receive timeout
+ * does, so that a dead device is noticed.
+ *
+ * @see com.jaxzin.x10.cm11a.CM11A#open(SerialLink)
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public interface SerialLink {
+
+    /** Returns the stream of bytes from the device. */
+    public InputStream getInputStream() throws IOException;
+
+    /** Returns the stream of bytes to the device. */
+    public OutputStream getOutputStream() throws IOException;
+
+    /** Sets what is run when the device sends data while notification is on.
+     * @param listener run on the link's own thread
+     */
+    public void setDataListener(Runnable listener);
+
+    /** Turns notification of data from the device on and off. */
+    public void notifyOnDataAvailable(boolean enable);
+
+    /** Closes the link. */
+    public void close();
+}
@@ -0,0 +1,93 @@
+/*
+ * SerialPortLink.java
+ *
+ * Created on October 31, 2026, 7:30 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+import java.io.*;
+import java.util.TooManyListenersException;
+import java.util.logging.*;
+
+import javax.comm.*;
+
+/** A {@link com.jaxzin.x10.cm11a.SerialLink} over a javax.comm serial port.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+class SerialPortLink implements SerialLink {
+
+    // Setup logging facilities
+    private static final Logger LOG =
+            Logger.getLogger(SerialPortLink.class.getName());
+
+    private SerialPort serialPort;
+
+    /** Opens the named serial port with the given parameters.
+     * @param openTimeout How long to wait for the port if it is in use, in milliseconds.
+     * @param receiveTimeout How long a read waits for the device, in milliseconds.
+     * @throws javax.comm.NoSuchPortException The portName is not valid.
+     * @throws javax.comm.PortInUseException The named serial port is already in use.
+     * @throws javax.comm.UnsupportedCommOperationException One of the serial port parameters is invalid.
+     */
+    SerialPortLink(String portName, int baudRate, int dataBits, int stopBits, int parity, int openTimeout, int receiveTimeout)
+            throws NoSuchPortException, PortInUseException, UnsupportedCommOperationException
+    {
+        // Attempt to get the port by name, throws NoSuchPortException
+        CommPortIdentifier portId =
+            CommPortIdentifier.getPortIdentifier(portName);
+        // Attempt to open the port, throws PortInUseException
+        serialPort = (SerialPort) portId.open("CM11A", openTimeout);
+        // Attempt to set serial port parameters,
+        //  throws UnsupportedCommOperationException
+        serialPort.setSerialPortParams( baudRate,
+                                        dataBits,
+                                        stopBits,
+                                        parity);
+        // Without a receive timeout a dead CM11A blocks reads forever
+        try {
+            serialPort.enableReceiveTimeout(receiveTimeout);
+        } catch(UnsupportedCommOperationException e) {
+            LOG.warning("Serial port "+portName+" does not support receive timeouts, an unresponsive CM11A will not be detected");
+        }
+    }
+
+    /** Returns the truth that javax.comm still lists the named port. */
+    static boolean isPortPresent(String portName) {
+        try {
+            CommPortIdentifier.getPortIdentifier(portName);
+            return true;
+        } catch(NoSuchPortException e) {
+            return false;
+        }
+    }
+
+    public InputStream getInputStream() throws IOException {
+        return serialPort.getInputStream();
+    }
+
+    public OutputStream getOutputStream() throws IOException {
+        return serialPort.getOutputStream();
+    }
+
+    public void setDataListener(final Runnable listener) {
+        try {
+            serialPort.addEventListener(new SerialPortEventListener() {
+                public void serialEvent(SerialPortEvent event) {
+                    if(event.getEventType() == SerialPortEvent.DATA_AVAILABLE)
+                        listener.run();
+                }
+            });
+        } catch(TooManyListenersException ignored){}
+    }
+
+    public void notifyOnDataAvailable(boolean enable) {
+        serialPort.notifyOnDataAvailable(enable);
+    }
+
+    public void close() {
+        serialPort.removeEventListener();
+        serialPort.close();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * ThresholdAdmissionPolicy.java
+ *
+ * Created on October 27, 2026, 8:44 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+import javax.x10.event.X10Event;
+
+/** <code>ThresholdAdmissionPolicy</code> admits events while the projected
+ * queue time is under a threshold.  Over the threshold, an event is
+ * deferred until the queue should have drained back to the threshold, as
+ * long as that is no longer than the maximum deferral; otherwise it is
+ * refused.  With a maximum deferral of 0, which is the default, events
+ * over the threshold are simply refused.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class ThresholdAdmissionPolicy implements AdmissionPolicy {
+
+    /** The projected queue time over which events are not admitted by default, five minutes */
+    public static final long DEFAULT_THRESHOLD = 300000;
+
+    private long threshold;
+    private long maximumDeferral;
+
+    /** Creates a new instance of ThresholdAdmissionPolicy with the default threshold */
+    public ThresholdAdmissionPolicy() {
+        this(DEFAULT_THRESHOLD, 0);
+    }
+
+    /** Creates a new instance of ThresholdAdmissionPolicy
+     * @param threshold The projected queue time over which events are not
+     * admitted right away, in milliseconds.
+     * @param maximumDeferral The longest an event may be deferred, in
+     * milliseconds.
+     */
+    public ThresholdAdmissionPolicy(long threshold, long maximumDeferral) {
+        setThreshold(threshold);
+        setMaximumDeferral(maximumDeferral);
+    }
+
+    public long admit(X10Event event, long projectedDelay) {
+        long over = projectedDelay-this.threshold;
+        if(over <= 0)
+            return ADMIT;
+        if(over <= this.maximumDeferral)
+            return over;
+        return REFUSE;
+    }
+
+    public long getThreshold() {
+        return this.threshold;
+    }
+
+    /** Sets the projected queue time over which events are not admitted right away, in milliseconds. */
+    public void setThreshold(long threshold) {
+        if(threshold < 0)
+            throw new IllegalArgumentException("The threshold can not be negative: "+threshold);
+        this.threshold = threshold;
+    }
+
+    public long getMaximumDeferral() {
+        return this.maximumDeferral;
+    }
+
+    /** Sets the longest an event may be deferred, in milliseconds. */
+    public void setMaximumDeferral(long maximumDeferral) {
+        if(maximumDeferral < 0)
+            throw new IllegalArgumentException("The maximum deferral can not be negative: "+maximumDeferral);
+        this.maximumDeferral = maximumDeferral;
+    }
+}
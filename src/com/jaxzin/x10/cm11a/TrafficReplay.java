@@ -0,0 +1,511 @@
+/*
+ * TrafficReplay.java
+ *
+ * Created on October 31, 2026, 9:10 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+import javax.x10.codes.*;
+import javax.x10.event.*;
+
+import javax.x10.util.LatencyHistogram;
+import com.jaxzin.util.LongFifo;
+
+/** <code>TrafficReplay</code> drives a recorded X10 event trace through a
+ * {@link com.jaxzin.x10.cm11a.CM11A} talking to a
+ * {@link com.jaxzin.x10.cm11a.CM11ASimulator}, from 1x up to 1000x real
+ * time, and reports how the whole stack held up.  Inbound events are put
+ * in the simulator's buffer, so they come in through the CM11A's
+ * <code>MSG_EVENT_RECEIVED</code> download like events heard on the
+ * powerline.  Outbound events are given to
+ * {@link com.jaxzin.x10.cm11a.CM11A#transmit}.
+ * <P>
+ * A trace is plain text, one event per line:
+ * <pre>
+ * # an evening
+ * 0      IN  B4
+ * 0      IN  B ON
+ * 1500   OUT A1
+ * 1500   OUT A DIM 0.25
+ * 90000  OUT C5 PRESET_DIM 20
+ * </pre>
+ * The first column is the time in milliseconds from the start of the
+ * trace and the second is <code>IN</code> or <code>OUT</code>.  The event
+ * is a house code and unit for an address, a house code and function with
+ * a level for <code>DIM</code> and <code>BRIGHTEN</code>, or a house code
+ * and unit with an extended command and its data byte.  A function name
+ * without a unit and data byte, such as <code>B ALL_UNITS_OFF</code>, is
+ * always the standard function.  Lines starting
+ * with <code>#</code> are comments.
+ * <P>
+ * The {@link TrafficReplay.Report} gives the throughput, latency
+ * percentiles in each direction, thread counts and heap growth, so leaks
+ * such as a thread per notified event show up in the numbers.  From the
+ * command line:
+ * <pre>
+ * java com.jaxzin.x10.cm11a.TrafficReplay evening.trace 100
+ * </pre>
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class TrafficReplay {
+
+    /** The fastest a trace can be replayed */
+    public static final double MAXIMUM_SPEED = 1000;
+    /** How long to wait for the stack to catch up after the last event
+     * without anything happening before giving up, in milliseconds
+     */
+    public static final long IDLE_TIMEOUT = 10000;
+
+    private static final String IN = "IN";
+    private static final String OUT = "OUT";
+
+    /** One line of a trace */
+    public static final class Entry {
+        private long offset;
+        private boolean inbound;
+        private X10Event event;
+        public Entry(long offset, boolean inbound, X10Event event) {
+            if(offset < 0)
+                throw new IllegalArgumentException("The offset can not be negative: "+offset);
+            if(event == null)
+                throw new IllegalArgumentException("X10Event can not be null.");
+            this.offset = offset;
+            this.inbound = inbound;
+            this.event = event;
+        }
+        /** Returns the time from the start of the trace, in milliseconds. */
+        public long getOffset() {
+            return this.offset;
+        }
+        public boolean isInbound() {
+            return this.inbound;
+        }
+        public X10Event getEvent() {
+            return this.event;
+        }
+        public String toString() {
+            return offset+" "+(inbound ? IN : OUT)+" "+event;
+        }
+    }
+
+    /** What a replay measured */
+    public static final class Report {
+        private double speed;
+        private long duration;
+        private long inboundSent;
+        private long inboundReceived;
+        private long outboundSent;
+        private long outboundDelivered;
+        private long outboundUndelivered;
+        private LatencyHistogram inboundLatency = new LatencyHistogram();
+        private LatencyHistogram outboundLatency = new LatencyHistogram();
+        private int threadsBefore;
+        private int threadsPeak;
+        private int threadsAfter;
+        private long threadsStarted;
+        private long heapBefore;
+        private long heapAfter;
+
+        private Report() {
+        }
+
+        public double getSpeed() {
+            return this.speed;
+        }
+        /** Returns how long the replay took, in nanoseconds. */
+        public long getDuration() {
+            return this.duration;
+        }
+        public long getInboundSent() {
+            return this.inboundSent;
+        }
+        /** Returns the number of inbound events the CM11A's listeners got. */
+        public long getInboundReceived() {
+            return this.inboundReceived;
+        }
+        public long getOutboundSent() {
+            return this.outboundSent;
+        }
+        public long getOutboundDelivered() {
+            return this.outboundDelivered;
+        }
+        /** Returns the number of outbound events reported undelivered,
+         * including the ones the admission policy refused.
+         */
+        public long getOutboundUndelivered() {
+            return this.outboundUndelivered;
+        }
+        /** Returns the events handled per second, both directions together. */
+        public double getThroughput() {
+            if(this.duration == 0)
+                return 0;
+            return (this.inboundReceived+this.outboundDelivered)*1e9/this.duration;
+        }
+        /** Returns the times from putting an event in the simulator's buffer
+         * until a listener got it, in nanoseconds.
+         */
+        public LatencyHistogram getInboundLatency() {
+            return this.inboundLatency;
+        }
+        /** Returns the times from transmitting an event until it was
+         * reported delivered, in nanoseconds.
+         */
+        public LatencyHistogram getOutboundLatency() {
+            return this.outboundLatency;
+        }
+        public int getThreadsBefore() {
+            return this.threadsBefore;
+        }
+        public int getThreadsPeak() {
+            return this.threadsPeak;
+        }
+        public int getThreadsAfter() {
+            return this.threadsAfter;
+        }
+        /** Returns the number of threads started during the replay. */
+        public long getThreadsStarted() {
+            return this.threadsStarted;
+        }
+        /** Returns the heap in use after collecting garbage before the replay, in bytes. */
+        public long getHeapBefore() {
+            return this.heapBefore;
+        }
+        /** Returns the heap in use after collecting garbage after the replay, in bytes. */
+        public long getHeapAfter() {
+            return this.heapAfter;
+        }
+        public long getHeapGrowth() {
+            return this.heapAfter-this.heapBefore;
+        }
+        public String toString() {
+            StringBuffer buf = new StringBuffer();
+            buf.append("speed        ").append(speed).append("x\n");
+            buf.append("duration     ").append(duration/1000000).append("ms\n");
+            buf.append("inbound      ").append(inboundReceived).append(" of ").append(inboundSent).append(" received\n");
+            buf.append("outbound     ").append(outboundDelivered).append(" of ").append(outboundSent).append(" delivered, ")
+               .append(outboundUndelivered).append(" undelivered\n");
+            buf.append("throughput   ").append(Math.round(getThroughput()*10)/10.0).append(" events/s\n");
+            buf.append("inbound lat  ").append(inboundLatency).append('\n');
+            buf.append("outbound lat ").append(outboundLatency).append('\n');
+            buf.append("threads      ").append(threadsBefore).append(" before, ").append(threadsPeak).append(" peak, ")
+               .append(threadsAfter).append(" after, ").append(threadsStarted).append(" started\n");
+            buf.append("heap         ").append(heapBefore/1024).append("KB before, ").append(heapAfter/1024).append("KB after, ")
+               .append(getHeapGrowth()/1024).append("KB growth\n");
+            return buf.toString();
+        }
+    }
+
+    /** Matches what the CM11A reports back to what was sent */
+    private class ReplayListener implements X10Listener, X10TransmitterListener {
+        public void address(X10Event e) {               received(e); }
+        public void allLightsOff(X10Event e) {          received(e); }
+        public void allLightsOn(X10Event e) {           received(e); }
+        public void allUnitsOff(X10Event e) {           received(e); }
+        public void brighten(X10Event e) {              received(e); }
+        public void dim(X10Event e) {                   received(e); }
+        public void extendedCode(X10Event e) {          received(e); }
+        public void extendedDataTransfer(X10Event e) {  received(e); }
+        public void hailAcknowledge(X10Event e) {       received(e); }
+        public void hailRequest(X10Event e) {           received(e); }
+        public void off(X10Event e) {                   received(e); }
+        public void on(X10Event e) {                    received(e); }
+        public void presetDim1(X10Event e) {            received(e); }
+        public void presetDim2(X10Event e) {            received(e); }
+        public void statusOff(X10Event e) {             received(e); }
+        public void statusOn(X10Event e) {              received(e); }
+        public void statusRequest(X10Event e) {         received(e); }
+
+        public void eventDelivered(X10TransmitterEvent e) {
+            acknowledged(e.getX10Event(), true);
+        }
+        public void eventUndelivered(X10TransmitterEvent e) {
+            acknowledged(e.getX10Event(), false);
+        }
+        public void queueEmptied(X10TransmitterEvent e) {
+            // Do nothing
+        }
+        public void queueUpdated(X10TransmitterEvent e) {
+            // Do nothing
+        }
+    }
+
+    private List entries;
+
+    /** The report of the replay running now, and what it is waiting for.
+     * Guarded by the lock on this object.
+     */
+    private Report report;
+    /** Inbound events by {@link #getKey} to when they were put in the buffer */
+    private Map inboundTimes;
+    /** Outbound events to when they were transmitted */
+    private Map outboundTimes;
+    private long lastProgress;
+
+    /** Creates a new instance of TrafficReplay for the given entries, which
+     * are replayed in order of their offsets.
+     */
+    public TrafficReplay(List entries) {
+        if(entries == null)
+            throw new IllegalArgumentException("Entries can not be null.");
+        this.entries = new ArrayList(entries);
+        Collections.sort(this.entries, new Comparator() {
+            public int compare(Object a, Object b) {
+                long difference = ((Entry)a).offset-((Entry)b).offset;
+                return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+            }
+        });
+    }
+
+    /** Returns the entries in the order they are replayed. */
+    public List getEntries() {
+        return Collections.unmodifiableList(this.entries);
+    }
+
+    /** Reads a trace.
+     * @throws java.io.IOException if the trace can not be read or a line is malformed
+     */
+    public static TrafficReplay read(Reader in) throws IOException {
+        BufferedReader reader = new BufferedReader(in);
+        List entries = new ArrayList();
+        int lineNumber = 0;
+        String line;
+        while((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if(line.length() == 0 || line.startsWith("#"))
+                continue;
+            try {
+                entries.add(parseEntry(line));
+            } catch(RuntimeException e) {
+                throw new IOException("Malformed trace entry on line "+lineNumber+": "+line);
+            }
+        }
+        return new TrafficReplay(entries);
+    }
+
+    /** Replays the trace against a new simulated CM11A and waits for the
+     * stack to catch up.
+     * @param speed How many times faster than real time to replay, from 1 to 1000.
+     * @throws java.io.IOException if the CM11A can not be opened on the simulator
+     * @throws java.lang.InterruptedException if the thread is interrupted while replaying
+     */
+    public Report run(double speed) throws IOException, InterruptedException {
+        if(speed < 1 || speed > MAXIMUM_SPEED)
+            throw new IllegalArgumentException("The speed must be from 1 to "+MAXIMUM_SPEED+": "+speed);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        CM11ASimulator simulator = new CM11ASimulator();
+        simulator.setSpeed(speed);
+        CM11A cm11a = new CM11A("simulator");
+        ReplayListener listener = new ReplayListener();
+        cm11a.addX10Listener(listener);
+        cm11a.addX10TransmitterListener(listener, new X10TransmitterEvent.Type[] {
+            X10TransmitterEvent.EVENT_DELIVERED, X10TransmitterEvent.EVENT_UNDELIVERED});
+
+        Report current = new Report();
+        current.speed = speed;
+        synchronized(this) {
+            this.report = current;
+            this.inboundTimes = new HashMap();
+            this.outboundTimes = new IdentityHashMap();
+        }
+
+        System.gc();
+        current.heapBefore = memory.getHeapMemoryUsage().getUsed();
+        current.threadsBefore = threads.getThreadCount();
+        long startedBefore = threads.getTotalStartedThreadCount();
+        threads.resetPeakThreadCount();
+
+        cm11a.open(simulator);
+        long start = System.nanoTime();
+        try {
+            for(Iterator i = entries.iterator();i.hasNext();) {
+                Entry entry = (Entry)i.next();
+                long due = start+(long)(entry.offset*1e6/speed);
+                long wait = due-System.nanoTime();
+                if(wait > 0)
+                    Thread.sleep(wait/1000000, (int)(wait%1000000));
+                if(entry.inbound)
+                    inject(simulator, entry.event);
+                else
+                    transmit(cm11a, entry.event);
+            }
+            awaitCompletion();
+            current.duration = System.nanoTime()-start;
+            current.threadsPeak = threads.getPeakThreadCount();
+            current.threadsStarted = threads.getTotalStartedThreadCount()-startedBefore;
+            current.threadsAfter = threads.getThreadCount();
+            System.gc();
+            current.heapAfter = memory.getHeapMemoryUsage().getUsed();
+        } finally {
+            cm11a.close();
+            synchronized(this) {
+                this.report = null;
+            }
+        }
+        return current;
+    }
+
+    private void inject(CM11ASimulator simulator, X10Event event) {
+        synchronized(this) {
+            Object key = getKey(event);
+            LongFifo times = (LongFifo)inboundTimes.get(key);
+            if(times == null) {
+                times = new LongFifo();
+                inboundTimes.put(key, times);
+            }
+            times.addLast(System.nanoTime());
+            report.inboundSent++;
+        }
+        simulator.receive(event);
+    }
+
+    private void transmit(CM11A cm11a, X10Event event) {
+        synchronized(this) {
+            outboundTimes.put(event, Long.valueOf(System.nanoTime()));
+            report.outboundSent++;
+        }
+        cm11a.transmit(event);
+    }
+
+    private synchronized void received(X10Event event) {
+        if(report == null)
+            return;
+        LongFifo times = (LongFifo)inboundTimes.get(getKey(event));
+        if(times == null || times.isEmpty())
+            return;
+        report.inboundLatency.record(System.nanoTime()-times.removeFirst());
+        report.inboundReceived++;
+        progress();
+    }
+
+    private synchronized void acknowledged(X10Event event, boolean delivered) {
+        if(report == null)
+            return;
+        Long started = (Long)outboundTimes.remove(event);
+        if(started == null)
+            return;
+        if(delivered) {
+            report.outboundLatency.record(System.nanoTime()-started.longValue());
+            report.outboundDelivered++;
+        } else {
+            report.outboundUndelivered++;
+        }
+        progress();
+    }
+
+    /** Callers hold the lock on this object */
+    private void progress() {
+        lastProgress = System.currentTimeMillis();
+        notifyAll();
+    }
+
+    /** Waits until everything sent has come back, or nothing has for a while */
+    private synchronized void awaitCompletion() throws InterruptedException {
+        lastProgress = System.currentTimeMillis();
+        while(report.inboundReceived < report.inboundSent || !outboundTimes.isEmpty()) {
+            long idle = System.currentTimeMillis()-lastProgress;
+            if(idle >= IDLE_TIMEOUT)
+                return;
+            wait(IDLE_TIMEOUT-idle);
+        }
+    }
+
+    /** Received events are new objects with the CM11A's brightness
+     * precision, so they are matched on what they address and do.
+     */
+    private static Object getKey(X10Event event) {
+        return Arrays.asList(new Object[] {event.getHouseCode(), event.getOtherCode(), event.getUnitCode()});
+    }
+
+    private static Entry parseEntry(String line) {
+        StringTokenizer tokens = new StringTokenizer(line);
+        long offset = Long.parseLong(tokens.nextToken());
+        String direction = tokens.nextToken().toUpperCase();
+        if(!direction.equals(IN) && !direction.equals(OUT))
+            throw new IllegalArgumentException("Direction must be IN or OUT: "+direction);
+        String target = tokens.nextToken().toUpperCase();
+        HouseCode houseCode = (HouseCode)find(HouseCode.iterator(), target.substring(0, 1));
+        UnitCode unitCode = target.length() > 1 ? (UnitCode)find(UnitCode.iterator(), target.substring(1)) : null;
+        Object source = TrafficReplay.class;
+
+        X10Event event;
+        if(!tokens.hasMoreTokens()) {
+            event = new X10Event(source, houseCode, required(unitCode));
+        } else {
+            String name = tokens.nextToken().toUpperCase();
+            // Some extended commands share their names with functions, such
+            // as ALL_UNITS_OFF, so only a unit and a data byte make a line
+            // an extended command
+            ExtendedCommand command = unitCode != null && tokens.hasMoreTokens() ? findExtendedCommand(name) : null;
+            if(command != null) {
+                byte data = (byte)Integer.parseInt(tokens.nextToken());
+                event = new X10Event(source, houseCode, required(unitCode), command, data);
+            } else {
+                FunctionCode functionCode = (FunctionCode)find(FunctionCode.iterator(), name);
+                if(functionCode instanceof FunctionCode.Brightness)
+                    event = new X10Event(source, houseCode, (FunctionCode.Brightness)functionCode, Double.parseDouble(tokens.nextToken()));
+                else if(functionCode instanceof FunctionCode.Basic)
+                    event = new X10Event(source, houseCode, (FunctionCode.Basic)functionCode);
+                else
+                    throw new IllegalArgumentException("Extended codes need a command: "+name);
+            }
+        }
+        if(tokens.hasMoreTokens())
+            throw new IllegalArgumentException("Unexpected "+tokens.nextToken());
+        return new Entry(offset, direction.equals(IN), event);
+    }
+
+    private static UnitCode required(UnitCode unitCode) {
+        if(unitCode == null)
+            throw new IllegalArgumentException("A unit code is needed");
+        return unitCode;
+    }
+
+    private static Code find(Iterator codes, String name) {
+        while(codes.hasNext()) {
+            Code code = (Code)codes.next();
+            if(code.toString().equals(name))
+                return code;
+        }
+        throw new IllegalArgumentException("Unknown code "+name);
+    }
+
+    private static ExtendedCommand findExtendedCommand(String name) {
+        for(int value = 0; value < 256; value++) {
+            ExtendedCommand command = ExtendedCommand.get((byte)value);
+            if(command != null && command.toString().equals(name))
+                return command;
+        }
+        return null;
+    }
+
+    /** Replays a trace from the command line and prints the report.
+     * <pre>
+     * usage: TrafficReplay trace-file [speed]
+     * </pre>
+     */
+    public static void main(String[] args) throws Exception {
+        if(args.length < 1) {
+            System.err.println("usage: TrafficReplay trace-file [speed]");
+            System.exit(1);
+        }
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+        Reader in = new FileReader(args[0]);
+        TrafficReplay replay;
+        try {
+            replay = read(in);
+        } finally {
+            in.close();
+        }
+        System.out.println(replay.run(speed));
+        System.exit(0);
+    }
+}
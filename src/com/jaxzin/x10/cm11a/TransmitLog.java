@@ -0,0 +1,449 @@
+/*
+ * TransmitLog.java
+ *
+ * Created on November 8, 2026, 7:15 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.logging.*;
+import java.util.zip.CRC32;
+
+import javax.x10.codes.*;
+import javax.x10.event.X10Event;
+
+/** <code>TransmitLog</code> keeps the events queued on a CM11A in a file,
+ * so the ones not yet sent survive the CM11A being closed or the
+ * application dying.  Each event is written to the log before it is queued
+ * and marked done once it has been delivered or given up on.  A CM11A given
+ * a log with events that were never marked done queues them again, skipping
+ * any older than the log's expiry.
+ * <P>
+ * The file is memory mapped and appended to.  Forcing it to disk is left to
+ * a committer thread, so events queued from several threads at once share
+ * one force rather than waiting for one each.  When the file fills up the
+ * events still pending are copied to a fresh file, which replaces it.
+ * Every record carries a CRC, and reading the log stops at the first record
+ * that does not match, as is left by dying partway through a write.
+ *
+ * @see com.jaxzin.x10.cm11a.CM11A#setTransmitLog
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class TransmitLog {
+
+    // Setup logging facilities
+    private static final Logger LOG =
+            Logger.getLogger(TransmitLog.class.getName());
+
+    /** The size the file is created at, in bytes */
+    public static final int DEFAULT_CAPACITY = 256*1024;
+    /** How old a pending event may be and still be sent, in milliseconds */
+    public static final long DEFAULT_EXPIRY = 10*60*1000;
+
+    private static final int MAGIC      = 0x5831304C; // "X10L"
+    private static final int VERSION    = 1;
+    private static final int HEADER     = 8;
+
+    private static final byte END       = 0;
+    private static final byte QUEUED    = 1;
+    private static final byte DONE      = 2;
+
+    /** type, sequence, time, house, other, unit, brightness, data, command, CRC */
+    private static final int QUEUED_LENGTH  = 1+8+8+1+1+1+8+1+1+4;
+    /** type, sequence, CRC */
+    private static final int DONE_LENGTH    = 1+8+4;
+
+    /** Marks a function nibble in the other code byte */
+    private static final int FUNCTION   = 0x10;
+    /** Stands for an event without a unit code */
+    private static final int NO_UNIT    = 0xFF;
+
+    /** An event in the log that has not been marked done */
+    public static final class Entry {
+        private long sequence;
+        private long time;
+        private int house;
+        private int other;
+        private int unit;
+        private double brightness;
+        private byte data;
+        private byte command;
+
+        private Entry() {
+        }
+
+        /** Returns the number the log gave the event. */
+        public long getSequence() {
+            return this.sequence;
+        }
+
+        /** Returns when the event was logged, in milliseconds since the epoch. */
+        public long getTime() {
+            return this.time;
+        }
+
+        /** Builds the logged event again.
+         * @param source The source of the event.
+         */
+        public X10Event getEvent(Object source) {
+            HouseCode houseCode = CodeMap.getHouseCode(house);
+            if((other & FUNCTION) == 0)
+                return new X10Event(source, houseCode, CodeMap.getUnitCode(other));
+            FunctionCode functionCode = CodeMap.getFunctionCode(other & 0x0F);
+            if(functionCode instanceof FunctionCode.Brightness)
+                return new X10Event(source, houseCode, (FunctionCode.Brightness)functionCode, brightness);
+            if(functionCode instanceof FunctionCode.Extended) {
+                if(unit == NO_UNIT)
+                    return new X10Event(source, houseCode, (FunctionCode.Extended)functionCode, data, command);
+                return new X10Event(source, houseCode, CodeMap.getUnitCode(unit),
+                                    (FunctionCode.Extended)functionCode, data, command);
+            }
+            return new X10Event(source, houseCode, (FunctionCode.Basic)functionCode);
+        }
+
+        public String toString() {
+            return "#"+sequence+" "+getEvent(this);
+        }
+    }
+
+    private class Committer implements Runnable {
+        public void run() {
+            while(true) {
+                long target;
+                MappedByteBuffer toForce;
+                synchronized(TransmitLog.this) {
+                    while(committed >= appended && !closed) {
+                        try {
+                            TransmitLog.this.wait();
+                        } catch(InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if(closed)
+                        return;
+                    target = appended;
+                    toForce = buffer;
+                }
+                // Appending carries on while the pages are forced
+                toForce.force();
+                synchronized(TransmitLog.this) {
+                    if(target > committed)
+                        committed = target;
+                    commits++;
+                    TransmitLog.this.notifyAll();
+                }
+            }
+        }
+    }
+
+    private File file;
+    private int capacity;
+    private CRC32 crc;
+
+    /** Everything below is guarded by the lock on this log */
+    private RandomAccessFile raf;
+    private MappedByteBuffer buffer;
+    private int end;
+    private long nextSequence;
+    /** Sequence numbers to the pending entries, in the order they were logged */
+    private Map pending;
+    /** How many records were appended and how many of those are on disk */
+    private long appended;
+    private long committed;
+    private long commits;
+    private long expiry;
+    private boolean closed;
+
+    /** Opens the log in the given file, creating it if it does not exist.
+     * @throws java.io.IOException if the file is not a transmit log or can
+     * not be read
+     */
+    public TransmitLog(File file) throws IOException {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    /** Opens the log in the given file, creating it at the given size if
+     * it does not exist.
+     * @throws java.io.IOException if the file is not a transmit log or can
+     * not be read
+     */
+    public TransmitLog(File file, int capacity) throws IOException {
+        if(file == null)
+            throw new IllegalArgumentException("File can not be null.");
+        if(capacity < HEADER+QUEUED_LENGTH+DONE_LENGTH)
+            throw new IllegalArgumentException("The capacity is too small: "+capacity);
+        this.file = file;
+        this.capacity = capacity;
+        this.crc = new CRC32();
+        this.pending = new LinkedHashMap();
+        this.nextSequence = 1;
+        this.expiry = DEFAULT_EXPIRY;
+        map();
+        recover();
+        Thread t = new Thread(new Committer(), "Transmit log committer "+file.getName());
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** Returns the file the log is kept in. */
+    public File getFile() {
+        return this.file;
+    }
+
+    /** Returns how old a pending event may be and still be sent, in
+     * milliseconds, 0 if they never expire.
+     */
+    public synchronized long getExpiry() {
+        return this.expiry;
+    }
+
+    public synchronized void setExpiry(long millis) {
+        if(millis < 0)
+            throw new IllegalArgumentException("The expiry can not be negative: "+millis);
+        this.expiry = millis;
+    }
+
+    /** Returns the truth that the entry is too old to be sent. */
+    public synchronized boolean isExpired(Entry entry) {
+        return expiry > 0 && System.currentTimeMillis()-entry.getTime() > expiry;
+    }
+
+    /** Returns the events logged but not marked done, oldest first. */
+    public synchronized Entry[] getPending() {
+        return (Entry[])pending.values().toArray(new Entry[pending.size()]);
+    }
+
+    /** Returns how many events are logged but not marked done. */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /** Returns how many times the file has been forced to disk. */
+    public synchronized long getCommitCount() {
+        return this.commits;
+    }
+
+    /** Logs an event.  The record is not on disk until {@link #commit}
+     * returns.
+     * @return the event's sequence number
+     * @throws java.io.IOException if the log is closed or can not be written
+     */
+    public synchronized long append(X10Event event) throws IOException {
+        if(event == null)
+            throw new IllegalArgumentException("Event can not be null.");
+        Entry entry = new Entry();
+        entry.sequence = nextSequence;
+        entry.time = System.currentTimeMillis();
+        entry.house = CodeMap.getBits(event.getHouseCode());
+        entry.other = CodeMap.getBits(event.getOtherCode());
+        if(event.getType() == X10Event.FUNCTION)
+            entry.other |= FUNCTION;
+        entry.unit = event.getUnitCode() == null || event.getType() == X10Event.ADDRESS
+                ? NO_UNIT : CodeMap.getBits(event.getUnitCode());
+        entry.brightness = event.getBrightnessLevel();
+        entry.data = event.getData();
+        entry.command = event.getCommand();
+        ensureOpen();
+        if(!fits(QUEUED_LENGTH))
+            compact(QUEUED_LENGTH);
+        end = write(buffer, end, entry);
+        nextSequence++;
+        pending.put(Long.valueOf(entry.sequence), entry);
+        appended++;
+        notifyAll();
+        return entry.sequence;
+    }
+
+    /** Waits until everything appended so far is on disk.
+     * @throws java.io.InterruptedIOException if the thread is interrupted while waiting
+     * @throws java.io.IOException if the log is closed first
+     */
+    public synchronized void commit() throws IOException {
+        long target = appended;
+        while(committed < target) {
+            ensureOpen();
+            try {
+                wait();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while committing the transmit log");
+            }
+        }
+    }
+
+    /** Marks a logged event done, so it is not sent again.  Marks are not
+     * waited for, losing one only means the event is sent twice.
+     * @throws java.io.IOException if the log can not be written
+     */
+    public synchronized void markDone(long sequence) throws IOException {
+        if(closed || pending.remove(Long.valueOf(sequence)) == null)
+            return;
+        if(!fits(DONE_LENGTH)) {
+            // Compacting drops the event anyway, it is no longer pending
+            compact(0);
+            return;
+        }
+        buffer.put(end, DONE);
+        buffer.putLong(end+1, sequence);
+        buffer.putInt(end+9, checksum(buffer, end, 9));
+        end += DONE_LENGTH;
+        appended++;
+        notifyAll();
+    }
+
+    /** Forces the log to disk and closes it. */
+    public void close() {
+        synchronized(this) {
+            if(closed)
+                return;
+            closed = true;
+            notifyAll();
+            try {
+                buffer.force();
+                raf.close();
+            } catch(IOException e) {
+                LOG.log(Level.WARNING,"Unable to close the transmit log "+file,e);
+            }
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if(closed)
+            throw new IOException("The transmit log "+file+" is closed");
+    }
+
+    private boolean fits(int length) {
+        // An END byte always follows the last record
+        return end+length < buffer.capacity();
+    }
+
+    /** Maps the file, writing the header if it is new */
+    private void map() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        boolean created = raf.length() == 0;
+        long length = Math.max(raf.length(), capacity);
+        buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        if(created) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.force();
+        } else if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            raf.close();
+            throw new IOException(file+" is not a transmit log");
+        }
+        end = HEADER;
+    }
+
+    /** Reads back the pending events and finds the end of the log */
+    private void recover() {
+        int position = HEADER;
+        boolean torn = false;
+        while(position < buffer.capacity()) {
+            byte type = buffer.get(position);
+            if(type == QUEUED && position+QUEUED_LENGTH <= buffer.capacity()
+                    && buffer.getInt(position+QUEUED_LENGTH-4) == checksum(buffer, position, QUEUED_LENGTH-4)) {
+                Entry entry = read(position);
+                pending.put(Long.valueOf(entry.sequence), entry);
+                nextSequence = Math.max(nextSequence, entry.sequence+1);
+                position += QUEUED_LENGTH;
+            } else if(type == DONE && position+DONE_LENGTH <= buffer.capacity()
+                    && buffer.getInt(position+DONE_LENGTH-4) == checksum(buffer, position, DONE_LENGTH-4)) {
+                pending.remove(Long.valueOf(buffer.getLong(position+1)));
+                position += DONE_LENGTH;
+            } else {
+                torn = type != END;
+                break;
+            }
+        }
+        end = position;
+        if(torn) {
+            // Clear what is left of the torn record so it can not be
+            // mistaken for one after the log is appended to again
+            LOG.warning("The transmit log "+file+" ends in a torn record at "+position+", discarding it");
+            for(int i = position; i < buffer.capacity(); i++)
+                buffer.put(i, END);
+            buffer.force();
+        }
+        if(!pending.isEmpty())
+            LOG.info("The transmit log "+file+" has "+pending.size()+" pending event(s)");
+    }
+
+    /** Writes the pending entries to a fresh file with room for a record
+     * of the given length, and swaps it in for the log.
+     */
+    private void compact(int room) throws IOException {
+        int needed = HEADER+pending.size()*QUEUED_LENGTH+room+1;
+        int size = capacity;
+        while(size < needed*2)
+            size *= 2;
+        File tmp = new File(file.getPath()+".tmp");
+        RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+        try {
+            out.setLength(0);
+            ByteBuffer fresh = out.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            fresh.putInt(0, MAGIC);
+            fresh.putInt(4, VERSION);
+            int position = HEADER;
+            for(Iterator i = pending.values().iterator();i.hasNext();)
+                position = write(fresh, position, (Entry)i.next());
+            ((MappedByteBuffer)fresh).force();
+        } finally {
+            out.close();
+        }
+        raf.close();
+        if(!tmp.renameTo(file)) {
+            // Some platforms will not rename over a file
+            file.delete();
+            if(!tmp.renameTo(file))
+                throw new IOException("Unable to replace "+file+" with "+tmp);
+        }
+        map();
+        end = HEADER+pending.size()*QUEUED_LENGTH;
+        // The fresh file was forced, so everything is on disk
+        committed = appended;
+        notifyAll();
+        LOG.fine("Compacted the transmit log "+file+" to "+pending.size()+" pending event(s)");
+    }
+
+    /** Writes an entry's record at the given position and returns the
+     * position after it.
+     */
+    private int write(ByteBuffer to, int position, Entry entry) {
+        to.put(position, QUEUED);
+        to.putLong(position+1, entry.sequence);
+        to.putLong(position+9, entry.time);
+        to.put(position+17, (byte)entry.house);
+        to.put(position+18, (byte)entry.other);
+        to.put(position+19, (byte)entry.unit);
+        to.putDouble(position+20, entry.brightness);
+        to.put(position+28, entry.data);
+        to.put(position+29, entry.command);
+        to.putInt(position+30, checksum(to, position, QUEUED_LENGTH-4));
+        return position+QUEUED_LENGTH;
+    }
+
+    private Entry read(int position) {
+        Entry entry = new Entry();
+        entry.sequence = buffer.getLong(position+1);
+        entry.time = buffer.getLong(position+9);
+        entry.house = buffer.get(position+17)&0xFF;
+        entry.other = buffer.get(position+18)&0xFF;
+        entry.unit = buffer.get(position+19)&0xFF;
+        entry.brightness = buffer.getDouble(position+20);
+        entry.data = buffer.get(position+28);
+        entry.command = buffer.get(position+29);
+        return entry;
+    }
+
+    private int checksum(ByteBuffer from, int position, int length) {
+        crc.reset();
+        for(int i = 0; i < length; i++)
+            crc.update(from.get(position+i));
+        return (int)crc.getValue();
+    }
+}
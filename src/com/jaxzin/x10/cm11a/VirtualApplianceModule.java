@@ -0,0 +1,27 @@
+/*
+ * VirtualApplianceModule.java
+ *
+ * Created on November 9, 2026, 7:55 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+import javax.x10.codes.*;
+
+/** <code>VirtualApplianceModule</code> is an appliance module on a
+ * {@link com.jaxzin.x10.cm11a.Powerline}.  It is either on or off: it
+ * ignores <code>DIM</code>, <code>BRIGHTEN</code> and the all lights
+ * functions, and obeys <code>ALL_UNITS_OFF</code>.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class VirtualApplianceModule extends VirtualModule {
+
+    public VirtualApplianceModule(HouseCode houseCode, UnitCode unitCode) {
+        super(houseCode, unitCode);
+    }
+
+    public boolean isLight() {
+        return false;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * VirtualLampModule.java
+ *
+ * Created on November 9, 2026, 7:45 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+import javax.x10.codes.*;
+import javax.x10.event.X10Event;
+
+/** <code>VirtualLampModule</code> is a lamp module on a
+ * {@link com.jaxzin.x10.cm11a.Powerline}.  It dims and brightens in whole
+ * steps, 22 from off to full like the CM11A's dim levels, so a dim that
+ * does not fall on a step is rounded to the nearest one.  Dimming or
+ * brightening a lamp that is off first turns it on at full, and
+ * <code>ON</code> turns a lamp that is off on at full.  The extended
+ * <code>PRESET_DIM</code> sets the level directly, to one of 64.
+ * <P>
+ * {@link #getLightOutput} follows the dim curve of a phase-control dimmer,
+ * where the light given off falls away faster than the level.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class VirtualLampModule extends VirtualModule {
+
+    /** The number of steps from off to full */
+    public static final int DIM_STEPS = CM11A.OUTPUT_BRIGHTNESS_LEVELS;
+
+    /** Guarded by the lock on this module */
+    private double level;
+
+    public VirtualLampModule(HouseCode houseCode, UnitCode unitCode) {
+        super(houseCode, unitCode);
+    }
+
+    public boolean isLight() {
+        return true;
+    }
+
+    public synchronized void setOn(boolean on) {
+        if(on && !isOn())
+            level = X10Event.MAX_BRIGHTNESS_LEVEL;
+        else if(!on)
+            level = X10Event.MIN_BRIGHTNESS_LEVEL;
+        super.setOn(on);
+    }
+
+    public synchronized double getBrightnessLevel() {
+        return isOn() ? level : X10Event.MIN_BRIGHTNESS_LEVEL;
+    }
+
+    /** Returns the fraction of its full light the lamp gives off. */
+    public synchronized double getLightOutput() {
+        double brightness = getBrightnessLevel();
+        return brightness*brightness;
+    }
+
+    protected void function(X10Event event) {
+        OtherCode code = event.getOtherCode();
+        if(code == FunctionCode.DIM || code == FunctionCode.BRIGHTEN) {
+            if(!isOn())
+                setOn(true);
+            double steps = Math.round(event.getBrightnessLevel()*DIM_STEPS);
+            double change = (code == FunctionCode.DIM ? -steps : steps)/DIM_STEPS;
+            setLevel(level+change);
+        } else {
+            super.function(event);
+        }
+    }
+
+    protected X10Event extendedCode(X10Event event) {
+        if(event.getExtendedCommand() == ExtendedCommand.PRESET_DIM) {
+            setLevel(ExtendedCommand.getBrightnessLevel(event.getData()));
+            return null;
+        }
+        return super.extendedCode(event);
+    }
+
+    protected void allLightsOn() {
+        setOn(true);
+        level = X10Event.MAX_BRIGHTNESS_LEVEL;
+    }
+
+    /** Sets the level, turning the lamp off at the bottom */
+    private void setLevel(double newLevel) {
+        level = Math.max(X10Event.MIN_BRIGHTNESS_LEVEL, Math.min(X10Event.MAX_BRIGHTNESS_LEVEL, newLevel));
+        super.setOn(level > X10Event.MIN_BRIGHTNESS_LEVEL);
+    }
+
+    public synchronized String toString() {
+        if(!isOn())
+            return super.toString();
+        return super.toString()+" "+Math.round(level*100)+"%";
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * VirtualModule.java
+ *
+ * Created on November 9, 2026, 7:30 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+import javax.x10.codes.*;
+import javax.x10.event.X10Event;
+
+/** <code>VirtualModule</code> is an X10 module plugged into a
+ * {@link com.jaxzin.x10.cm11a.Powerline}.  Like a real module it only
+ * listens to its own house code, and it follows the addressing latch: it
+ * is latched by its own address, obeys the functions sent to its house
+ * while latched, and lets go once its house is addressed again after a
+ * function.  Extended codes name their unit and leave the latch alone.
+ * <P>
+ * A two-way module answers <code>STATUS_REQUEST</code>, when latched, by
+ * sending its own address followed by <code>STATUS_ON</code> or
+ * <code>STATUS_OFF</code> on the powerline, so the status is only credited
+ * to the module that sent it, and the extended <code>STATUS_REQUEST</code> with a
+ * <code>STATUS_ACKNOWLEDGE</code> of its level.  Its answers can collide
+ * like any other frame.
+ *
+ * @see com.jaxzin.x10.cm11a.VirtualLampModule
+ * @see com.jaxzin.x10.cm11a.VirtualApplianceModule
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public abstract class VirtualModule {
+
+    private HouseCode houseCode;
+    private UnitCode unitCode;
+    private boolean twoWay;
+    private Powerline powerline;
+
+    /** Everything below is guarded by the lock on this module */
+    private boolean on;
+    private boolean latched;
+    /** True if the last frame heard for the house was a function */
+    private boolean functionLast;
+
+    protected VirtualModule(HouseCode houseCode, UnitCode unitCode) {
+        if(houseCode == null)
+            throw new IllegalArgumentException("HouseCode can not be null.");
+        if(unitCode == null)
+            throw new IllegalArgumentException("UnitCode can not be null.");
+        this.houseCode = houseCode;
+        this.unitCode = unitCode;
+    }
+
+    public HouseCode getHouseCode() {
+        return this.houseCode;
+    }
+
+    public UnitCode getUnitCode() {
+        return this.unitCode;
+    }
+
+    /** Returns the truth that the module answers status requests. */
+    public boolean isTwoWay() {
+        return this.twoWay;
+    }
+
+    public void setTwoWay(boolean twoWay) {
+        this.twoWay = twoWay;
+    }
+
+    /** Returns the truth that the module is a light, so it obeys
+     * <code>ALL_LIGHTS_ON</code> and <code>ALL_LIGHTS_OFF</code>.
+     */
+    public abstract boolean isLight();
+
+    public synchronized boolean isOn() {
+        return this.on;
+    }
+
+    /** Switches the module by hand, as with its local control. */
+    public synchronized void setOn(boolean on) {
+        this.on = on;
+    }
+
+    /** Returns the brightness the module is at, from
+     * {@link javax.x10.event.X10Event#MIN_BRIGHTNESS_LEVEL} to
+     * {@link javax.x10.event.X10Event#MAX_BRIGHTNESS_LEVEL}.  Modules that
+     * do not dim are at one or the other.
+     */
+    public synchronized double getBrightnessLevel() {
+        return on ? X10Event.MAX_BRIGHTNESS_LEVEL : X10Event.MIN_BRIGHTNESS_LEVEL;
+    }
+
+    /** Returns the truth that the module's own address has latched it. */
+    public synchronized boolean isLatched() {
+        return this.latched;
+    }
+
+    /** Returns the powerline the module is plugged into, or null. */
+    public Powerline getPowerline() {
+        return this.powerline;
+    }
+
+    /** Called by the powerline it is plugged into */
+    void setPowerline(Powerline powerline) {
+        this.powerline = powerline;
+    }
+
+    /** Handles a frame heard on the powerline */
+    void heard(X10Event event) {
+        if(event.getHouseCode() != houseCode)
+            return;
+        X10Event address = null;
+        X10Event answer = null;
+        synchronized(this) {
+            if(event.getType() == X10Event.ADDRESS) {
+                // Addressing after a function starts a new group
+                if(functionLast)
+                    latched = false;
+                functionLast = false;
+                if(event.getUnitCode() == unitCode)
+                    latched = true;
+                return;
+            }
+            OtherCode code = event.getOtherCode();
+            if(code == FunctionCode.EXTENDED_CODE) {
+                if(event.getUnitCode() == unitCode || isHouseWide(event.getExtendedCommand()))
+                    answer = extendedCode(event);
+            } else if(code == FunctionCode.ALL_UNITS_OFF) {
+                allUnitsOff();
+            } else if(code == FunctionCode.ALL_LIGHTS_ON) {
+                if(isLight())
+                    allLightsOn();
+            } else if(code == FunctionCode.ALL_LIGHTS_OFF) {
+                if(isLight())
+                    allLightsOff();
+            } else if(latched) {
+                if(code == FunctionCode.STATUS_REQUEST) {
+                    if(twoWay) {
+                        // Other units may be latched too, so name this one first
+                        address = new X10Event(this, houseCode, unitCode);
+                        answer = new X10Event(this, houseCode, on ? FunctionCode.STATUS_ON : FunctionCode.STATUS_OFF);
+                    }
+                } else {
+                    function(event);
+                }
+            }
+            if(code != FunctionCode.EXTENDED_CODE)
+                functionLast = true;
+        }
+        if(answer != null && powerline != null) {
+            // The powerline sends a module's frames in the order they are given
+            if(address != null)
+                powerline.answer(this, address);
+            powerline.answer(this, answer);
+        }
+    }
+
+    private static boolean isHouseWide(ExtendedCommand command) {
+        return command == ExtendedCommand.ALL_UNITS_ON || command == ExtendedCommand.ALL_UNITS_OFF;
+    }
+
+    /** Obeys a function sent while the module is latched.  The lock on the
+     * module is held.  By default <code>ON</code> and <code>OFF</code> are
+     * obeyed and everything else is ignored.
+     */
+    protected void function(X10Event event) {
+        if(event.getOtherCode() == FunctionCode.ON)
+            setOn(true);
+        else if(event.getOtherCode() == FunctionCode.OFF)
+            setOn(false);
+    }
+
+    /** Obeys an extended code for the module or its whole house, and
+     * returns the answer to send, or null.  The lock on the module is held.
+     */
+    protected X10Event extendedCode(X10Event event) {
+        ExtendedCommand command = event.getExtendedCommand();
+        if(command == ExtendedCommand.ALL_UNITS_ON) {
+            setOn(true);
+        } else if(command == ExtendedCommand.ALL_UNITS_OFF) {
+            setOn(false);
+        } else if(command == ExtendedCommand.STATUS_REQUEST && twoWay) {
+            return new X10Event(this, houseCode, unitCode, ExtendedCommand.STATUS_ACKNOWLEDGE,
+                                ExtendedCommand.getLevelData(getBrightnessLevel()));
+        }
+        return null;
+    }
+
+    /** Obeys <code>ALL_UNITS_OFF</code>.  The lock on the module is held. */
+    protected void allUnitsOff() {
+        setOn(false);
+    }
+
+    /** Obeys <code>ALL_LIGHTS_ON</code>, only called for lights.  The lock
+     * on the module is held.
+     */
+    protected void allLightsOn() {
+        setOn(true);
+    }
+
+    /** Obeys <code>ALL_LIGHTS_OFF</code>, only called for lights.  The lock
+     * on the module is held.
+     */
+    protected void allLightsOff() {
+        setOn(false);
+    }
+
+    public synchronized String toString() {
+        return houseCode.toString()+unitCode+(on ? " on" : " off");
+    }
+}
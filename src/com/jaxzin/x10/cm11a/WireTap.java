@@ -0,0 +1,302 @@
+/*
+ * WireTap.java
+ *
+ * Created on October 20, 2026, 7:45 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** <code>WireTap</code> records every byte that passes between a
+ * {@link com.jaxzin.x10.cm11a.CM11A} and its serial port in a fixed-size
+ * ring buffer.  Each record holds the {@link java.lang.System#nanoTime} the
+ * byte was seen at, which direction it went and the byte itself.  Writers
+ * claim records with a single atomic increment and never lock, so the tap
+ * is cheap enough to leave on all the time.  Once the ring is full the
+ * oldest records are overwritten.
+ * <P>
+ * Each record is guarded by its sequence number, like a seqlock.  A writer
+ * marks the record invalid before writing it and stores the sequence
+ * number last, so a reader that finds the same sequence number before and
+ * after reading the record knows it was not being written over.
+ * <P>
+ * A dump is plain text, one record per line:
+ * <pre>
+ * # CM11A wire tap COM1
+ * 81726354123 TX 04
+ * 81726354981 TX 66
+ * 81738890044 RX 6A
+ * </pre>
+ * The first column is the time in nanoseconds, the second is
+ * {@link #TX} for bytes written to the CM11A or {@link #RX} for bytes read
+ * from it, and the third is the byte in hex. Lines starting with
+ * <code>#</code> are comments.  {@link #parse(Reader)} reads a dump back
+ * in, and {@link #getReceivedStream(List)} turns it back into the stream
+ * the CM11A sent, so a captured session can be replayed.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class WireTap {
+
+    /** The direction name of bytes written to the CM11A */
+    public static final String TX = "TX";
+    /** The direction name of bytes read from the CM11A */
+    public static final String RX = "RX";
+
+    /** The number of records a WireTap holds by default */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final byte DIRECTION_TX = 0;
+    private static final byte DIRECTION_RX = 1;
+
+    // Layout of one record in the ring, in longs
+    private static final int RECORD_SIZE        = 3;
+    private static final int OFFSET_SEQUENCE    = 0;
+    private static final int OFFSET_NANOS       = 1;
+    /** The direction in bit 8 and the byte in bits 0 to 7 */
+    private static final int OFFSET_DATA        = 2;
+
+    /** The sequence number of a record that is being written */
+    private static final long WRITING = -1;
+
+    /** One byte seen on the wire. */
+    public static final class Record {
+        private long nanos;
+        private String direction;
+        private byte value;
+
+        /** Creates a new instance of Record
+         * @param nanos The time the byte was seen, in nanoseconds.
+         * @param direction Either {@link WireTap#TX} or {@link WireTap#RX}.
+         * @param value The byte.
+         */
+        public Record(long nanos, String direction, byte value) {
+            if(!TX.equals(direction) && !RX.equals(direction))
+                throw new IllegalArgumentException("Direction must be WireTap.TX or WireTap.RX, not "+direction);
+            this.nanos = nanos;
+            this.direction = direction;
+            this.value = value;
+        }
+
+        /** Returns the time the byte was seen, in nanoseconds. */
+        public long getNanos() {
+            return this.nanos;
+        }
+
+        /** Returns either {@link WireTap#TX} or {@link WireTap#RX}. */
+        public String getDirection() {
+            return this.direction;
+        }
+
+        /** Returns the truth that the byte was read from the CM11A. */
+        public boolean isReceived() {
+            return RX.equals(this.direction);
+        }
+
+        /** Returns the byte. */
+        public byte getValue() {
+            return this.value;
+        }
+
+        /** Returns the record formatted as one line of a dump. */
+        public String toString() {
+            return nanos+" "+direction+" "+hex(value);
+        }
+    }
+
+    private final AtomicLongArray ring;
+    private final int capacity;
+    private final AtomicLong sequence = new AtomicLong();
+    private String name;
+
+    /** Creates a new instance of WireTap that holds
+     * {@link #DEFAULT_CAPACITY} records.
+     */
+    public WireTap(String name) {
+        this(name, DEFAULT_CAPACITY);
+    }
+
+    /** Creates a new instance of WireTap
+     * @param name The name written at the top of dumps, usually the port name.
+     * @param capacity The number of records to keep.
+     */
+    public WireTap(String name, int capacity) {
+        if(capacity < 1)
+            throw new IllegalArgumentException("WireTap capacity must be at least 1, not "+capacity);
+        this.name = name;
+        this.capacity = capacity;
+        this.ring = new AtomicLongArray(capacity*RECORD_SIZE);
+        for(int i = 0; i < capacity; i++) {
+            this.ring.set(i*RECORD_SIZE+OFFSET_SEQUENCE, WRITING);
+        }
+    }
+
+    /** Returns the number of records the ring holds. */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /** Returns the number of bytes recorded since the tap was created,
+     * including any that have been overwritten.
+     */
+    public long getRecordCount() {
+        return sequence.get();
+    }
+
+    /** Returns an output stream that records every byte written through it
+     * before passing it on to <code>out</code>.
+     */
+    public OutputStream tap(OutputStream out) {
+        return new TapOutputStream(out);
+    }
+
+    /** Returns an input stream that records every byte read through it
+     * from <code>in</code>.
+     */
+    public InputStream tap(InputStream in) {
+        return new TapInputStream(in);
+    }
+
+    private void record(byte direction, int value) {
+        long seq = sequence.getAndIncrement();
+        int offset = (int)(seq % capacity)*RECORD_SIZE;
+        // Mark the record invalid before touching it.  This is a volatile
+        // store, so the writes below can not be seen before it
+        ring.set(offset+OFFSET_SEQUENCE, WRITING);
+        ring.lazySet(offset+OFFSET_NANOS, System.nanoTime());
+        ring.lazySet(offset+OFFSET_DATA, direction << 8 | (value & 0xFF));
+        // Ordered after the record, so a reader that sees the sequence sees
+        // the record that goes with it
+        ring.lazySet(offset+OFFSET_SEQUENCE, seq);
+    }
+
+    /** Returns the records currently in the ring, oldest first. Records that
+     * are being overwritten while the snapshot is taken are left out.
+     */
+    public List getRecords() {
+        long end = sequence.get();
+        long start = Math.max(0, end-capacity);
+        List records = new ArrayList((int)(end-start));
+        for(long seq = start; seq < end; seq++) {
+            int offset = (int)(seq % capacity)*RECORD_SIZE;
+            if(ring.get(offset+OFFSET_SEQUENCE) != seq)
+                continue;
+            long nanos = ring.get(offset+OFFSET_NANOS);
+            long data = ring.get(offset+OFFSET_DATA);
+            // Skip the record if a writer started on it while it was read
+            if(ring.get(offset+OFFSET_SEQUENCE) != seq)
+                continue;
+            records.add(new Record(nanos, (data >> 8) == DIRECTION_RX ? RX : TX, (byte)data));
+        }
+        return records;
+    }
+
+    /** Writes the records currently in the ring to <code>out</code> in the
+     * dump format described above.
+     */
+    public void dump(Writer out) throws IOException {
+        out.write("# CM11A wire tap "+name+"\n");
+        for(Iterator i = getRecords().iterator();i.hasNext();) {
+            out.write(i.next().toString());
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    /** Returns the records currently in the ring in the dump format. */
+    public String dump() {
+        StringWriter out = new StringWriter();
+        try {
+            dump(out);
+        } catch(IOException ignored) {
+            // StringWriter never throws
+        }
+        return out.toString();
+    }
+
+    /** Reads a dump written by {@link #dump(Writer)}.
+     * @return the {@link WireTap.Record}s in the dump, in order
+     * @throws java.io.IOException if the dump can not be read or a line
+     * is malformed
+     */
+    public static List parse(Reader in) throws IOException {
+        BufferedReader reader = new BufferedReader(in);
+        List records = new ArrayList();
+        int lineNumber = 0;
+        for(String line = reader.readLine(); line != null; line = reader.readLine()) {
+            lineNumber++;
+            line = line.trim();
+            if(line.length() == 0 || line.startsWith("#"))
+                continue;
+            StringTokenizer tokens = new StringTokenizer(line);
+            try {
+                long nanos = Long.parseLong(tokens.nextToken());
+                String direction = tokens.nextToken().toUpperCase();
+                byte value = (byte)Integer.parseInt(tokens.nextToken(), 16);
+                records.add(new Record(nanos, direction, value));
+            } catch(RuntimeException e) {
+                throw new IOException("Malformed wire tap record on line "+lineNumber+": "+line);
+            }
+        }
+        return records;
+    }
+
+    /** Returns a stream of the bytes the CM11A sent in the given records,
+     * in the order they were received.
+     * @param records a list of {@link WireTap.Record}s, as returned by
+     * {@link #parse(Reader)} or {@link #getRecords()}
+     */
+    public static InputStream getReceivedStream(List records) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for(Iterator i = records.iterator();i.hasNext();) {
+            Record record = (Record)i.next();
+            if(record.isReceived())
+                bytes.write(record.getValue());
+        }
+        return new ByteArrayInputStream(bytes.toByteArray());
+    }
+
+    private static String hex(byte value) {
+        String hex = Integer.toHexString(value & 0xFF).toUpperCase();
+        return hex.length() == 1 ? "0"+hex : hex;
+    }
+
+    private class TapOutputStream extends FilterOutputStream {
+        private TapOutputStream(OutputStream out) {
+            super(out);
+        }
+        public void write(int b) throws IOException {
+            out.write(b);
+            record(DIRECTION_TX, b);
+        }
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            for(int i = off; i < off+len; i++) {
+                record(DIRECTION_TX, b[i]);
+            }
+        }
+    }
+
+    private class TapInputStream extends FilterInputStream {
+        private TapInputStream(InputStream in) {
+            super(in);
+        }
+        public int read() throws IOException {
+            int b = in.read();
+            if(b >= 0)
+                record(DIRECTION_RX, b);
+            return b;
+        }
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = in.read(b, off, len);
+            for(int i = off; i < off+count; i++) {
+                record(DIRECTION_RX, b[i]);
+            }
+            return count;
+        }
+    }
+}
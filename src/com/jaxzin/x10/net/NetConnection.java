@@ -0,0 +1,104 @@
+/*
+ * NetConnection.java
+ *
+ * Created on October 28, 2026, 9:40 PM
+ */
+
+package com.jaxzin.x10.net;
+
+import javax.x10.*;
+import javax.x10.util.*;
+
+/** <code>NetConnection</code> is an {@link javax.x10.X10Connection} to an
+ * {@link com.jaxzin.x10.net.X10Server}.  It can transmit and receive when
+ * the connection the server shares can.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class NetConnection implements javax.x10.X10Connection {
+
+    private NetTransceiver transceiver;
+    private X10Monitor monitor = null;
+    private X10StatusPoller statusPoller = null;
+
+    /** Creates a new instance of NetConnection. This has
+     * <code>package</code> access because only NetDriver should create
+     * instances of this class.
+     */
+    NetConnection(NetTransceiver transceiver) {
+        this.transceiver = transceiver;
+    }
+
+    public X10Receiver getX10Receiver() {
+        return isX10Receiver() ? transceiver : null;
+    }
+
+    public X10Transceiver getX10Transceiver() {
+        return isX10Transceiver() ? transceiver : null;
+    }
+
+    public X10Transmitter getX10Transmitter() {
+        return isX10Transmitter() ? transceiver : null;
+    }
+
+    public boolean isX10Receiver() {
+        return transceiver.isReceiver();
+    }
+
+    public boolean isX10Transceiver() {
+        return isX10Transmitter() && isX10Receiver();
+    }
+
+    public boolean isX10Transmitter() {
+        return transceiver.isTransmitter();
+    }
+
+    /** Disconnects from the server.  The server's own connection stays open. */
+    public void close() throws X10Exception {
+        synchronized(this) {
+            if(statusPoller != null) statusPoller.stop();
+        }
+        transceiver.close();
+    }
+
+    /** Returns the desired level unchanged.  The level is sent to the server
+     * at full precision; its connection decides what it can deliver.
+     * @throws java.lang.IllegalArgumentException if <code>desired</code> is
+     * not within the range of 0.0 to 1.0 (0% to 100%)
+     */
+    public double getClosestBrightnessLevel(double desired) {
+        if(desired < 0.0 || desired > 1.0)
+            throw new IllegalArgumentException("Brightness level must be between 0.0 and 1.0: "+desired);
+        return desired;
+    }
+
+    public X10Monitor getMonitor() {
+        return this.monitor;
+    }
+
+    public boolean isMonitored() {
+        return this.monitor != null;
+    }
+
+    public void setMonitored(boolean monitored) {
+        if(monitored && !isMonitored()) {
+            this.monitor = new X10Monitor(this);
+        } else if(!monitored) {
+            this.monitor = null;
+        }
+    }
+
+    /** Returns the {@link javax.x10.util.X10StatusPoller} that polls two-way
+     * modules through the server, creating it the first time it is asked
+     * for.  The poller does not send anything until it is started, and is
+     * stopped when the connection is closed.
+     * @return null if this connection cannot both transmit and receive
+     */
+    public synchronized X10StatusPoller getStatusPoller() {
+        if(!isX10Transceiver())
+            return null;
+        if(this.statusPoller == null)
+            this.statusPoller = new X10StatusPoller(this);
+        return this.statusPoller;
+    }
+}
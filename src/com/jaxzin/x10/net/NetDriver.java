@@ -0,0 +1,158 @@
+/*
+ * NetDriver.java
+ *
+ * Created on October 28, 2026, 9:52 PM
+ */
+
+package com.jaxzin.x10.net;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+
+import javax.x10.*;
+
+/** <code>NetDriver</code> connects to an
+ * {@link com.jaxzin.x10.net.X10Server}.  It accepts URLs of the forms
+ * <pre>
+ * x10:net://host[:port]
+ * x10:net:unix:/path/to/socket
+ * </pre>
+ * where the port defaults to {@link X10Server#DEFAULT_PORT}.  The host and
+ * port may also be given with the properties <code>host</code> and
+ * <code>port</code>.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class NetDriver implements javax.x10.X10Driver {
+
+    public static final String PROP_HOST        = "host";
+    public static final String PROP_PORT        = "port";
+
+    private static final String PREFIX          = "X10:NET:";
+    private static final String UNIX_PREFIX     = "X10:NET:UNIX:";
+
+    /** On loading the class,
+     * register the driver with the X10DriverManager
+     */
+    static {
+        try {
+            X10DriverManager.registerX10Driver(new NetDriver());
+        } catch(X10Exception e) {
+            System.err.println("Unable to register NetDriver with X10DriverManager.");
+            e.printStackTrace(System.err);
+        }
+    }
+
+    /** Creates a new instance of NetDriver */
+    public NetDriver() {
+    }
+
+    public boolean acceptsURL(String url) throws X10Exception {
+        return url.toUpperCase().startsWith(PREFIX);
+    }
+
+    public X10Connection connect(String url, Properties info) throws X10Exception {
+        if(!acceptsURL(url))
+            return null;
+        SocketAddress address = getAddress(url, info);
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open(address);
+            if(address instanceof InetSocketAddress)
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+            return new NetConnection(new NetTransceiver(channel));
+        } catch(IOException e) {
+            if(channel != null) {
+                try {
+                    channel.close();
+                } catch(IOException ignored) {}
+            }
+            throw new X10Exception("Unable to connect to X10Server at "+address+": "+e.getMessage());
+        }
+    }
+
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    public X10DriverPropertyInfo[] getPropertyInfo(String url, Properties info) throws X10Exception {
+        X10DriverPropertyInfo[] arr = new X10DriverPropertyInfo[2];
+        for(int i = 0; i < arr.length; i++) {
+            arr[i] = new X10DriverPropertyInfo(null,null);
+        }
+
+        // Build host
+        arr[0].name         = PROP_HOST;
+        arr[0].value        = getHost(url,info);
+        arr[0].required     = !url.toUpperCase().startsWith(UNIX_PREFIX);
+        arr[0].description  = "Host name of the X10Server";
+
+        // Build port
+        arr[1].name         = PROP_PORT;
+        arr[1].value        = String.valueOf(getPort(url,info));
+        arr[1].required     = false;
+        arr[1].description  = "TCP port of the X10Server";
+
+        return arr;
+    }
+
+    private SocketAddress getAddress(String url, Properties info) throws X10Exception {
+        if(url.toUpperCase().startsWith(UNIX_PREFIX)) {
+            String path = url.substring(UNIX_PREFIX.length());
+            if(path.length() == 0)
+                throw new X10Exception("Socket path not specified in URL");
+            return UnixDomainSocketAddress.of(path);
+        }
+        String host = getHost(url, info);
+        if(host == null)
+            throw new X10Exception("Host not specified in URL or property \""+PROP_HOST+"\"");
+        return new InetSocketAddress(host, getPort(url, info));
+    }
+
+    /** Returns the authority of an <code>x10:net://host:port</code> URL, or null */
+    private String getAuthority(String url) {
+        String rest = url.substring(PREFIX.length());
+        if(!rest.startsWith("//"))
+            return null;
+        rest = rest.substring(2);
+        int slash = rest.indexOf('/');
+        return slash < 0 ? rest : rest.substring(0, slash);
+    }
+
+    private String getHost(String url, Properties info) {
+        String authority = getAuthority(url);
+        if(authority != null && authority.length() > 0) {
+            int colon = authority.lastIndexOf(':');
+            // Leave bracketed IPv6 addresses whole
+            if(colon > authority.lastIndexOf(']'))
+                authority = authority.substring(0, colon);
+            if(authority.startsWith("[") && authority.endsWith("]"))
+                authority = authority.substring(1, authority.length()-1);
+            return authority;
+        }
+        return info.getProperty(PROP_HOST);
+    }
+
+    private int getPort(String url, Properties info) throws X10Exception {
+        String port = null;
+        String authority = getAuthority(url);
+        if(authority != null) {
+            int colon = authority.lastIndexOf(':');
+            if(colon > authority.lastIndexOf(']'))
+                port = authority.substring(colon+1);
+        }
+        if(port == null)
+            port = info.getProperty(PROP_PORT, String.valueOf(X10Server.DEFAULT_PORT));
+        try {
+            return Integer.parseInt(port);
+        } catch(NumberFormatException e) {
+            throw new X10Exception("The port of '"+port+"' is not an integer.");
+        }
+    }
+}
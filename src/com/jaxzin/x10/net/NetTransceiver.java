@@ -0,0 +1,384 @@
+/*
+ * NetTransceiver.java
+ *
+ * Created on October 28, 2026, 9:05 PM
+ */
+
+package com.jaxzin.x10.net;
+
+import java.io.*;
+import java.nio.channels.ByteChannel;
+import java.util.*;
+import java.util.logging.*;
+
+import javax.x10.*;
+import javax.x10.event.*;
+import javax.x10.util.X10EventPublisher;
+import javax.x10.util.X10ListenerMailboxes;
+import javax.x10.util.X10TransmitterNotifier;
+
+/** <code>NetTransceiver</code> is the client end of an
+ * {@link com.jaxzin.x10.net.X10Server}.  Transmits are written to the
+ * server as soon as they are given, without waiting for earlier ones, and
+ * are reported delivered or undelivered as the server acknowledges them.
+ * Each listener added becomes a subscription on the server, so the server
+ * only sends the events some listener here wants.
+ *
+ * @see com.jaxzin.x10.net.NetDriver
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class NetTransceiver implements X10Transceiver, X10FilteredReceiver, X10BatchReceiver,
+                                       X10BatchTransmitter, X10FilteredTransmitter {
+
+    // Setup logging facilities
+    private static final Logger LOG =
+            Logger.getLogger(NetTransceiver.class.getName());
+
+    /** Reads acknowledgements and events from the server */
+    private class Reader implements Runnable {
+        public void run() {
+            try {
+                while(!closed) {
+                    byte type = in.readByte();
+                    switch(type) {
+                        case X10Protocol.MSG_ACKS:
+                            int count = in.readUnsignedShort();
+                            for(int i = 0; i < count; i++) {
+                                int id = in.readInt();
+                                byte status = in.readByte();
+                                acknowledged(id, status);
+                            }
+                            break;
+                        case X10Protocol.MSG_EVENT:
+                            Integer subscription = Integer.valueOf(in.readInt());
+                            X10Event event = X10Protocol.readEvent(in, NetTransceiver.this);
+                            X10Listener listener;
+                            synchronized(subscriptions) {
+                                listener = (X10Listener)subscriptions.get(subscription);
+                            }
+                            if(listener instanceof X10BatchAdapter)
+                                x10ListenerMailboxes.post(((X10BatchAdapter)listener).listener, Collections.singletonList(event));
+                            else if(listener != null)
+                                x10ListenerMailboxes.post(listener, event);
+                            break;
+                        default:
+                            throw new StreamCorruptedException("Unknown message type "+type);
+                    }
+                }
+            } catch(IOException e) {
+                if(!closed)
+                    LOG.log(Level.WARNING,"Lost the connection to the X10Server",e);
+            } finally {
+                disconnected();
+            }
+        }
+    }
+
+    /** Subscribes an X10BatchListener.  Each event is handed to it
+     * as a batch of its own, since the server sends events one at a time.
+     */
+    private static class X10BatchAdapter extends X10Adapter {
+        X10BatchListener listener;
+        private X10BatchAdapter(X10BatchListener listener) {
+            this.listener = listener;
+        }
+    }
+
+    private ByteChannel channel;
+    private DataInputStream in;
+    private DataOutputStream out;
+    private boolean canTransmit;
+    private boolean canReceive;
+    /** Transmit ids to the events waiting for acknowledgement */
+    private Map pending;
+    /** Transmit ids to the batches their events belong to. Guarded by the
+     * lock on <code>pending</code>.
+     */
+    private Map pendingBatches;
+    private int nextTransmitId;
+    /** Subscription ids to their listeners */
+    private Map subscriptions;
+    private int nextSubscriptionId;
+    /** X10BatchListeners to the adapters subscribed for them */
+    private Map batchAdapters;
+    /** Notifies the X10TransmitterListeners, with the events waiting for
+     * acknowledgement as the queue
+     */
+    private X10TransmitterNotifier x10TransmitterNotifier;
+    /** Delivers received events to the X10Listeners and X10BatchListeners */
+    private X10ListenerMailboxes x10ListenerMailboxes;
+    private X10EventPublisher x10EventPublisher;
+    private volatile boolean closed;
+
+    /** Creates a new instance of NetTransceiver over a connected channel.
+     * The server's greeting is read before this returns.
+     * @throws java.io.IOException if the channel does not lead to an
+     * X10Server this class can speak to
+     */
+    public NetTransceiver(ByteChannel channel) throws IOException {
+        if(channel == null)
+            throw new IllegalArgumentException("ByteChannel can not be null.");
+        this.channel = channel;
+        this.in = new DataInputStream(new BufferedInputStream(X10Protocol.newInputStream(channel)));
+        this.out = new DataOutputStream(new BufferedOutputStream(X10Protocol.newOutputStream(channel)));
+        this.pending = new HashMap();
+        this.pendingBatches = new HashMap();
+        this.subscriptions = new HashMap();
+        this.batchAdapters = new HashMap();
+        this.x10TransmitterNotifier = new X10TransmitterNotifier(this, "NetTransceiver transmitter notifier");
+        this.x10ListenerMailboxes = new X10ListenerMailboxes(this, "NetTransceiver listener");
+
+        if(in.readInt() != X10Protocol.MAGIC)
+            throw new StreamCorruptedException("Not an X10Server");
+        byte version = in.readByte();
+        if(version != X10Protocol.VERSION)
+            throw new StreamCorruptedException("Unsupported X10Server protocol version "+version);
+        byte capabilities = in.readByte();
+        this.canTransmit = (capabilities & X10Protocol.CAN_TRANSMIT) != 0;
+        this.canReceive = (capabilities & X10Protocol.CAN_RECEIVE) != 0;
+
+        Thread reader = new Thread(new Reader(), "NetTransceiver reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /** Returns true if the server's connection can transmit X10Events */
+    public boolean isTransmitter() {
+        return this.canTransmit;
+    }
+
+    /** Returns true if the server's connection can receive X10Events */
+    public boolean isReceiver() {
+        return this.canReceive;
+    }
+
+    /** Returns the number of transmitted events the server has not yet
+     * acknowledged.
+     */
+    public int getPendingCount() {
+        synchronized(pending) {
+            return pending.size();
+        }
+    }
+
+    /** Sends the event to the server.  The event is reported undelivered if
+     * it can not be sent.
+     */
+    public void transmit(X10Event event) {
+        if(event == null)
+            throw new IllegalArgumentException("X10Event can not be null.");
+        int id;
+        synchronized(pending) {
+            id = nextTransmitId++;
+            pending.put(Integer.valueOf(id), event);
+            x10TransmitterNotifier.queueChanged(event, null, pending.size(), 1, 0);
+        }
+        try {
+            synchronized(out) {
+                out.writeByte(X10Protocol.MSG_TRANSMIT);
+                out.writeInt(id);
+                X10Protocol.writeEvent(out, event);
+                out.flush();
+            }
+        } catch(IOException e) {
+            LOG.log(Level.WARNING,"Unable to send "+event+" to the X10Server",e);
+            acknowledged(id, X10Protocol.STATUS_UNDELIVERED);
+        }
+    }
+
+    /** Sends the events to the server in one message, to be queued there
+     * as one batch.  Events that can not be sent are reported undelivered.
+     */
+    public X10Batch transmit(List events) {
+        X10Batch batch = new X10Batch(events);
+        events = batch.getEvents();
+        if(events.size() > X10Protocol.MAXIMUM_BATCH)
+            throw new IllegalArgumentException("A batch can hold at most "+X10Protocol.MAXIMUM_BATCH+" events: "+events.size());
+        int first;
+        synchronized(pending) {
+            first = nextTransmitId;
+            nextTransmitId += events.size();
+            for(int i = 0; i < events.size(); i++) {
+                Integer id = Integer.valueOf(first+i);
+                pending.put(id, events.get(i));
+                pendingBatches.put(id, batch);
+            }
+            x10TransmitterNotifier.queueChanged((X10Event)events.get(0), batch, pending.size(), events.size(), 0);
+        }
+        try {
+            synchronized(out) {
+                out.writeByte(X10Protocol.MSG_BATCH);
+                out.writeInt(first);
+                out.writeShort(events.size());
+                for(Iterator i = events.iterator();i.hasNext();) {
+                    X10Protocol.writeEvent(out, (X10Event)i.next());
+                }
+                out.flush();
+            }
+        } catch(IOException e) {
+            LOG.log(Level.WARNING,"Unable to send "+batch+" to the X10Server",e);
+            for(int i = 0; i < events.size(); i++) {
+                acknowledged(first+i, X10Protocol.STATUS_UNDELIVERED);
+            }
+        }
+        return batch;
+    }
+
+    public void addX10TransmitterListener(X10TransmitterListener listener) {
+        x10TransmitterNotifier.addListener(listener);
+    }
+
+    public void addX10TransmitterListener(X10TransmitterListener listener, X10TransmitterEvent.Type[] types) {
+        x10TransmitterNotifier.addListener(listener, types);
+    }
+
+    public void removeX10TransmitterListener(X10TransmitterListener listener) {
+        x10TransmitterNotifier.removeListener(listener);
+    }
+
+    /** Returns the notifier of this transceiver's X10TransmitterListeners,
+     * to tune how it coalesces queue notices.
+     */
+    public X10TransmitterNotifier getX10TransmitterNotifier() {
+        return x10TransmitterNotifier;
+    }
+
+    public void addX10Listener(X10Listener listener) {
+        addX10Listener(X10Filter.ALL, listener);
+    }
+
+    /** Subscribes to the events matching the filter.  The filter is applied
+     * by the server, so events nobody here wants never cross the network.
+     */
+    public void addX10Listener(X10Filter filter, X10Listener listener) {
+        if(filter == null)
+            throw new IllegalArgumentException("X10Filter can not be null.");
+        if(listener == null)
+            throw new IllegalArgumentException("X10Listener can not be null.");
+        int id;
+        synchronized(subscriptions) {
+            id = nextSubscriptionId++;
+            subscriptions.put(Integer.valueOf(id), listener);
+        }
+        try {
+            synchronized(out) {
+                out.writeByte(X10Protocol.MSG_SUBSCRIBE);
+                out.writeInt(id);
+                X10Protocol.writeFilter(out, filter);
+                out.flush();
+            }
+        } catch(IOException e) {
+            LOG.log(Level.WARNING,"Unable to subscribe with the X10Server",e);
+        }
+    }
+
+    public void removeX10Listener(X10Listener listener) {
+        List ids = new ArrayList();
+        synchronized(subscriptions) {
+            for(Iterator i = subscriptions.entrySet().iterator();i.hasNext();) {
+                Map.Entry entry = (Map.Entry)i.next();
+                if(entry.getValue() == listener) {
+                    ids.add(entry.getKey());
+                    i.remove();
+                }
+            }
+        }
+        try {
+            synchronized(out) {
+                for(Iterator i = ids.iterator();i.hasNext();) {
+                    out.writeByte(X10Protocol.MSG_UNSUBSCRIBE);
+                    out.writeInt(((Integer)i.next()).intValue());
+                }
+                out.flush();
+            }
+        } catch(IOException e) {
+            LOG.log(Level.FINE,"Unable to unsubscribe from the X10Server",e);
+        }
+        x10ListenerMailboxes.remove(listener);
+    }
+
+    /** Subscribes to every event.  The server sends events one at a time,
+     * so each is handed to the listener as a batch of its own.
+     */
+    public void addX10BatchListener(X10BatchListener listener) {
+        if(listener == null)
+            throw new IllegalArgumentException("X10BatchListener can not be null.");
+        X10BatchAdapter adapter = new X10BatchAdapter(listener);
+        synchronized(batchAdapters) {
+            if(batchAdapters.containsKey(listener))
+                return;
+            batchAdapters.put(listener, adapter);
+        }
+        addX10Listener(X10Filter.ALL, adapter);
+    }
+
+    public void removeX10BatchListener(X10BatchListener listener) {
+        X10BatchAdapter adapter;
+        synchronized(batchAdapters) {
+            adapter = (X10BatchAdapter)batchAdapters.remove(listener);
+        }
+        if(adapter != null)
+            removeX10Listener(adapter);
+        x10ListenerMailboxes.remove(listener);
+    }
+
+    /** Returns the {@link javax.x10.util.X10EventPublisher} of the events
+     * this transceiver receives.  It is created the first time it is asked
+     * for, and its subscribers are completed when the transceiver is closed.
+     */
+    public synchronized X10EventPublisher getX10EventPublisher() {
+        if(x10EventPublisher == null)
+            x10EventPublisher = new X10EventPublisher(this);
+        return x10EventPublisher;
+    }
+
+    /** Disconnects from the server.  Events still waiting for
+     * acknowledgement are reported undelivered.
+     */
+    public void close() {
+        if(closed)
+            return;
+        closed = true;
+        try {
+            channel.close();
+        } catch(IOException ignored) {}
+        disconnected();
+    }
+
+    private void acknowledged(int id, byte status) {
+        boolean delivered = status == X10Protocol.STATUS_DELIVERED;
+        // Report the outcome and the change to the queue together, so the
+        // depth in the notices stays in order
+        synchronized(pending) {
+            Integer key = Integer.valueOf(id);
+            X10Event event = (X10Event)pending.remove(key);
+            X10Batch batch = (X10Batch)pendingBatches.remove(key);
+            if(event == null)
+                return;
+            if(batch != null)
+                batch.recordOutcome(delivered);
+            x10TransmitterNotifier.post(new X10TransmitterEvent(this,
+                    delivered ? X10TransmitterEvent.EVENT_DELIVERED
+                              : X10TransmitterEvent.EVENT_UNDELIVERED,
+                    event, batch));
+            x10TransmitterNotifier.queueChanged(event, batch, pending.size(), 0, 1);
+        }
+    }
+
+    /** Fails everything still pending once the server can no longer answer */
+    private void disconnected() {
+        closed = true;
+        List ids;
+        synchronized(pending) {
+            ids = new ArrayList(pending.keySet());
+        }
+        for(Iterator i = ids.iterator();i.hasNext();) {
+            acknowledged(((Integer)i.next()).intValue(), X10Protocol.STATUS_UNDELIVERED);
+        }
+        synchronized(this) {
+            if(x10EventPublisher != null) x10EventPublisher.close();
+        }
+        x10TransmitterNotifier.close();
+        x10ListenerMailboxes.close();
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * X10Protocol.java
+ *
+ * Created on October 28, 2026, 7:40 PM
+ */
+
+package com.jaxzin.x10.net;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.util.*;
+
+import javax.x10.codes.*;
+import javax.x10.event.*;
+
+/** The constants and encodings of the binary protocol spoken between an
+ * {@link com.jaxzin.x10.net.X10Server} and a
+ * {@link com.jaxzin.x10.net.NetTransceiver}.  All numbers are big-endian.
+ * <P>
+ * The server starts by sending <code>HELLO</code>: the int
+ * {@link #MAGIC}, a version byte and a capabilities byte.  After that each
+ * message is a type byte followed by a fixed layout:
+ * <pre>
+ * client to server
+ *   TRANSMIT     int id, event
+ *   BATCH        int first id, short count, then count events, with the
+ *                ids counting up from the first
+ *   SUBSCRIBE    int subscription, byte house (0xFF for any),
+ *                short unit mask, short function mask (0 for any)
+ *   UNSUBSCRIBE  int subscription
+ * server to client
+ *   ACKS         short count, then count times: int id, byte status
+ *   EVENT        int subscription, event
+ * </pre>
+ * Transmits are pipelined: the client does not wait for one to be
+ * acknowledged before sending the next, and the server acknowledges
+ * whatever has been delivered since its last <code>ACKS</code> in one
+ * message.  A batch is queued on the server's transmitter as one
+ * {@link javax.x10.event.X10Batch}, and its events are acknowledged one by
+ * one like any other transmit.  An event is 6 bytes: house index in the high nibble of the
+ * first byte with a function flag and an extended unit flag in the low
+ * bits, then the code index with the extended code's unit index above it,
+ * the brightness level as an unsigned short fraction of 65535, and the
+ * extended data and command bytes.  Indexes are positions in the codes'
+ * <code>iterator()</code> order.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+final class X10Protocol {
+
+    /** "X10N" */
+    static final int MAGIC                  = 0x5831304E;
+    static final byte VERSION               = 2;
+
+    static final byte CAN_TRANSMIT          = 0x01;
+    static final byte CAN_RECEIVE           = 0x02;
+
+    static final byte MSG_TRANSMIT          = 0x01;
+    static final byte MSG_SUBSCRIBE         = 0x02;
+    static final byte MSG_UNSUBSCRIBE       = 0x03;
+    static final byte MSG_BATCH             = 0x04;
+    static final byte MSG_ACKS              = (byte) 0x81;
+    static final byte MSG_EVENT             = (byte) 0x82;
+
+    static final byte STATUS_DELIVERED      = 0;
+    static final byte STATUS_UNDELIVERED    = 1;
+
+    static final int ANY_HOUSE              = 0xFF;
+    static final int EVENT_LENGTH           = 6;
+    static final int MAXIMUM_BATCH          = 0xFFFF;
+
+    private static final int FLAG_FUNCTION  = 0x01;
+    private static final int FLAG_UNIT      = 0x02;
+    private static final int LEVELS         = 0xFFFF;
+
+    /** The codes by their index on the wire, which is their ordinal */
+    private static final List houseCodes = Arrays.asList(HouseCode.values());
+    private static final List unitCodes = Arrays.asList(UnitCode.values());
+    private static final List functionCodes = Arrays.asList(FunctionCode.values());
+
+    /** This is private since the class only has static members */
+    private X10Protocol() {
+    }
+
+    static void writeEvent(DataOutput out, X10Event event) throws IOException {
+        int flags = event.getType() == X10Event.FUNCTION ? FLAG_FUNCTION : 0;
+        int code = event.getOtherCode().ordinal();
+        if(event.getType() == X10Event.FUNCTION && event.getUnitCode() != null) {
+            flags |= FLAG_UNIT;
+            code |= event.getUnitCode().ordinal() << 4;
+        }
+        out.writeByte(event.getHouseCode().ordinal() << 4 | flags);
+        out.writeByte(code);
+        out.writeShort((int)Math.round(event.getBrightnessLevel()*LEVELS));
+        out.writeByte(event.getData());
+        out.writeByte(event.getCommand());
+    }
+
+    static X10Event readEvent(DataInput in, Object source) throws IOException {
+        int first = in.readUnsignedByte();
+        int code = in.readUnsignedByte();
+        double level = (double)in.readUnsignedShort()/LEVELS;
+        byte data = in.readByte();
+        byte command = in.readByte();
+
+        HouseCode houseCode = (HouseCode)get(houseCodes, first >>> 4);
+        if((first & FLAG_FUNCTION) == 0)
+            return new X10Event(source, houseCode, (UnitCode)get(unitCodes, code & 0xF));
+        FunctionCode functionCode = (FunctionCode)get(functionCodes, code & 0xF);
+        if(functionCode instanceof FunctionCode.Brightness)
+            return new X10Event(source, houseCode, (FunctionCode.Brightness)functionCode, level);
+        if(functionCode instanceof FunctionCode.Extended) {
+            if((first & FLAG_UNIT) != 0)
+                return new X10Event(source, houseCode, (UnitCode)get(unitCodes, code >>> 4), (FunctionCode.Extended)functionCode, data, command);
+            return new X10Event(source, houseCode, (FunctionCode.Extended)functionCode, data, command);
+        }
+        return new X10Event(source, houseCode, (FunctionCode.Basic)functionCode);
+    }
+
+    static void writeFilter(DataOutput out, X10Filter filter) throws IOException {
+        out.writeByte(filter.getHouseCode() == null ? ANY_HOUSE : filter.getHouseCode().ordinal());
+        out.writeShort(mask(filter.getUnitCodes()));
+        out.writeShort(mask(filter.getFunctionCodes()));
+    }
+
+    static X10Filter readFilter(DataInput in) throws IOException {
+        int house = in.readUnsignedByte();
+        int unitMask = in.readUnsignedShort();
+        int functionMask = in.readUnsignedShort();
+        HouseCode houseCode = house == ANY_HOUSE ? null : (HouseCode)get(houseCodes, house);
+        List units = unmask(unitMask, unitCodes);
+        List functions = unmask(functionMask, functionCodes);
+        return new X10Filter(houseCode,
+                             units == null ? null : (UnitCode[])units.toArray(new UnitCode[units.size()]),
+                             functions == null ? null : (FunctionCode[])functions.toArray(new FunctionCode[functions.size()]));
+    }
+
+    /** Returns a stream that reads straight from the channel.  Unlike
+     * {@link java.nio.channels.Channels#newInputStream}, it does not lock
+     * out writes to the channel while a read is blocked.
+     */
+    static InputStream newInputStream(final ByteChannel channel) {
+        return new InputStream() {
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+            }
+            public int read(byte[] b, int off, int len) throws IOException {
+                if(len == 0)
+                    return 0;
+                return channel.read(ByteBuffer.wrap(b, off, len));
+            }
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    /** Returns a stream that writes straight to the channel. */
+    static OutputStream newOutputStream(final ByteChannel channel) {
+        return new OutputStream() {
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte)b}, 0, 1);
+            }
+            public void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while(buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    private static int mask(Set codes) {
+        if(codes == null)
+            return 0;
+        int mask = 0;
+        for(Iterator i = codes.iterator();i.hasNext();) {
+            mask |= 1 << ((Code)i.next()).ordinal();
+        }
+        return mask;
+    }
+
+    private static List unmask(int mask, List all) {
+        if(mask == 0)
+            return null;
+        List codes = new ArrayList();
+        for(int i = 0; i < all.size(); i++) {
+            if((mask & (1 << i)) != 0)
+                codes.add(all.get(i));
+        }
+        return codes;
+    }
+
+    private static Object get(List codes, int index) throws IOException {
+        if(index >= codes.size())
+            throw new StreamCorruptedException("Unknown code index "+index);
+        return codes.get(index);
+    }
+}
@@ -0,0 +1,486 @@
+/*
+ * X10Server.java
+ *
+ * Created on October 28, 2026, 8:20 PM
+ */
+
+package com.jaxzin.x10.net;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.*;
+
+import javax.x10.*;
+import javax.x10.event.*;
+import javax.x10.util.X10FilteredListener;
+import javax.x10.util.X10FramePlan;
+
+/** <code>X10Server</code> shares one {@link javax.x10.X10Connection} with
+ * any number of processes.  It listens on TCP ports and Unix-domain sockets
+ * and speaks the protocol described in {@link X10Protocol}; clients connect
+ * to it with a {@link com.jaxzin.x10.net.NetDriver} URL like
+ * <code>x10:net://localhost:7010</code> or
+ * <code>x10:net:unix:/var/run/x10.sock</code>.
+ * <P>
+ * Every client's transmits go onto the connection's one transmit queue and
+ * are acknowledged once the connection reports them delivered or
+ * undelivered.  Each subscription a client makes is registered with the
+ * connection's receiver under the client's filter, so only matching events
+ * cross the socket.
+ * <P>
+ * To run a server from the command line:
+ * <pre>
+ * java com.jaxzin.x10.net.X10Server x10:cm11a:COM1 7010 /var/run/x10.sock
+ * </pre>
+ * The driver for the connection URL must be on the classpath; the CM11A
+ * driver is loaded automatically.  The protocol has no authentication, so
+ * from the command line the TCP port only listens on the loopback
+ * interface unless <code>-bind</code> names another address.
+ *
+ * @see com.jaxzin.x10.net.NetDriver
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class X10Server {
+
+    // Setup logging facilities
+    private static final Logger LOG =
+            Logger.getLogger(X10Server.class.getName());
+
+    /** The TCP port clients connect to by default */
+    public static final int DEFAULT_PORT = 7010;
+
+    /** One connected client */
+    private class Session implements Runnable {
+        private ByteChannel channel;
+        private String name;
+        private DataOutputStream out;
+        /** Subscription ids to the listeners registered for them */
+        private Map subscriptions;
+        /** Acknowledgements waiting to be sent, id then status */
+        private List acks;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Session(ByteChannel channel, String name) {
+            this.channel = channel;
+            this.name = name;
+            this.out = new DataOutputStream(new BufferedOutputStream(X10Protocol.newOutputStream(channel)));
+            this.subscriptions = new HashMap();
+            this.acks = new ArrayList();
+        }
+
+        /** Reads the client's messages until it goes away */
+        public void run() {
+            try {
+                synchronized(out) {
+                    out.writeInt(X10Protocol.MAGIC);
+                    out.writeByte(X10Protocol.VERSION);
+                    out.writeByte((connection.isX10Transmitter() ? X10Protocol.CAN_TRANSMIT : 0)
+                                 |(connection.isX10Receiver() ? X10Protocol.CAN_RECEIVE : 0));
+                    out.flush();
+                }
+                DataInputStream in = new DataInputStream(new BufferedInputStream(X10Protocol.newInputStream(channel)));
+                while(!closed.get()) {
+                    byte type = in.readByte();
+                    switch(type) {
+                        case X10Protocol.MSG_TRANSMIT:
+                            int id = in.readInt();
+                            transmit(this, id, X10Protocol.readEvent(in, X10Server.this));
+                            break;
+                        case X10Protocol.MSG_BATCH:
+                            int first = in.readInt();
+                            int count = in.readUnsignedShort();
+                            List events = new ArrayList(count);
+                            for(int i = 0; i < count; i++) {
+                                events.add(X10Protocol.readEvent(in, X10Server.this));
+                            }
+                            transmit(this, first, events);
+                            break;
+                        case X10Protocol.MSG_SUBSCRIBE:
+                            subscribe(in.readInt(), X10Protocol.readFilter(in));
+                            break;
+                        case X10Protocol.MSG_UNSUBSCRIBE:
+                            unsubscribe(Integer.valueOf(in.readInt()));
+                            break;
+                        default:
+                            throw new StreamCorruptedException("Unknown message type "+type);
+                    }
+                }
+            } catch(EOFException e) {
+                LOG.fine("Client "+name+" disconnected");
+            } catch(IOException e) {
+                if(!closed.get())
+                    LOG.log(Level.INFO,"Dropping client "+name,e);
+            } finally {
+                close();
+            }
+        }
+
+        private void subscribe(int subscription, X10Filter filter) {
+            if(!connection.isX10Receiver())
+                return;
+            final Integer key = Integer.valueOf(subscription);
+            X10Receiver receiver = connection.getX10Receiver();
+            X10Listener listener = new SubscriptionListener(this, key);
+            // Receivers that can not filter get a wrapper that filters
+            if(!(receiver instanceof X10FilteredReceiver))
+                listener = new X10FilteredListener(filter, listener);
+            synchronized(subscriptions) {
+                unsubscribe(key);
+                subscriptions.put(key, listener);
+            }
+            if(receiver instanceof X10FilteredReceiver)
+                ((X10FilteredReceiver)receiver).addX10Listener(filter, listener);
+            else
+                receiver.addX10Listener(listener);
+        }
+
+        private void unsubscribe(Integer subscription) {
+            X10Listener listener;
+            synchronized(subscriptions) {
+                listener = (X10Listener)subscriptions.remove(subscription);
+            }
+            if(listener != null)
+                connection.getX10Receiver().removeX10Listener(listener);
+        }
+
+        private void sendEvent(Integer subscription, X10Event event) {
+            if(closed.get())
+                return;
+            try {
+                synchronized(out) {
+                    out.writeByte(X10Protocol.MSG_EVENT);
+                    out.writeInt(subscription.intValue());
+                    X10Protocol.writeEvent(out, event);
+                    out.flush();
+                }
+            } catch(IOException e) {
+                close();
+            }
+        }
+
+        private void acknowledge(int id, byte status) {
+            synchronized(acks) {
+                acks.add(new int[] {id, status});
+                // Only the first ack of a batch needs to schedule a flush,
+                // the rest ride along with it
+                if(acks.size() == 1)
+                    ackFlusher.execute(new Runnable() {
+                        public void run() {
+                            flushAcks();
+                        }
+                    });
+            }
+        }
+
+        private void flushAcks() {
+            List batch;
+            synchronized(acks) {
+                batch = new ArrayList(acks);
+                acks.clear();
+            }
+            if(batch.isEmpty() || closed.get())
+                return;
+            try {
+                synchronized(out) {
+                    // Split very large batches so the count fits in a short
+                    for(int start = 0; start < batch.size(); start += Short.MAX_VALUE) {
+                        int end = Math.min(batch.size(), start+Short.MAX_VALUE);
+                        out.writeByte(X10Protocol.MSG_ACKS);
+                        out.writeShort(end-start);
+                        for(int i = start; i < end; i++) {
+                            int[] ack = (int[])batch.get(i);
+                            out.writeInt(ack[0]);
+                            out.writeByte(ack[1]);
+                        }
+                    }
+                    out.flush();
+                }
+            } catch(IOException e) {
+                close();
+            }
+        }
+
+        private void close() {
+            // Only the first of the reader and the server closes the session
+            if(!closed.compareAndSet(false, true))
+                return;
+            List subscriptionIds;
+            synchronized(subscriptions) {
+                subscriptionIds = new ArrayList(subscriptions.keySet());
+            }
+            for(Iterator i = subscriptionIds.iterator();i.hasNext();) {
+                unsubscribe((Integer)i.next());
+            }
+            try {
+                channel.close();
+            } catch(IOException ignored) {}
+            sessions.remove(this);
+        }
+    }
+
+    /** Forwards the events matching one subscription to its client */
+    private static class SubscriptionListener implements X10Listener {
+        private Session session;
+        private Integer subscription;
+        private SubscriptionListener(Session session, Integer subscription) {
+            this.session = session;
+            this.subscription = subscription;
+        }
+        public void address(X10Event e) {               session.sendEvent(subscription, e); }
+        public void allLightsOff(X10Event e) {          session.sendEvent(subscription, e); }
+        public void allLightsOn(X10Event e) {           session.sendEvent(subscription, e); }
+        public void allUnitsOff(X10Event e) {           session.sendEvent(subscription, e); }
+        public void brighten(X10Event e) {              session.sendEvent(subscription, e); }
+        public void dim(X10Event e) {                   session.sendEvent(subscription, e); }
+        public void extendedCode(X10Event e) {          session.sendEvent(subscription, e); }
+        public void extendedDataTransfer(X10Event e) {  session.sendEvent(subscription, e); }
+        public void hailAcknowledge(X10Event e) {       session.sendEvent(subscription, e); }
+        public void hailRequest(X10Event e) {           session.sendEvent(subscription, e); }
+        public void off(X10Event e) {                   session.sendEvent(subscription, e); }
+        public void on(X10Event e) {                    session.sendEvent(subscription, e); }
+        public void presetDim1(X10Event e) {            session.sendEvent(subscription, e); }
+        public void presetDim2(X10Event e) {            session.sendEvent(subscription, e); }
+        public void statusOff(X10Event e) {             session.sendEvent(subscription, e); }
+        public void statusOn(X10Event e) {              session.sendEvent(subscription, e); }
+        public void statusRequest(X10Event e) {         session.sendEvent(subscription, e); }
+    }
+
+    /** Turns delivery reports into acknowledgements for the client that sent the event */
+    private class DeliveryListener implements X10TransmitterListener {
+        public void eventDelivered(X10TransmitterEvent e) {
+            acknowledge(e.getX10Event(), X10Protocol.STATUS_DELIVERED);
+        }
+        public void eventUndelivered(X10TransmitterEvent e) {
+            acknowledge(e.getX10Event(), X10Protocol.STATUS_UNDELIVERED);
+        }
+        public void queueEmptied(X10TransmitterEvent e) {
+            // Do nothing
+        }
+        public void queueUpdated(X10TransmitterEvent e) {
+            // Do nothing
+        }
+    }
+
+    private X10Connection connection;
+    private List serverChannels;
+    private List sessions;
+    /** Events sent on behalf of clients, to the session and id they came from */
+    private Map inFlight;
+    private ExecutorService ackFlusher;
+    private DeliveryListener deliveryListener;
+    private volatile boolean closed;
+
+    /** Creates a new instance of X10Server that serves the given connection.
+     * Call {@link #bind} to start accepting clients.
+     */
+    public X10Server(X10Connection connection) {
+        if(connection == null)
+            throw new IllegalArgumentException("X10Connection can not be null.");
+        this.connection = connection;
+        this.serverChannels = new Vector();
+        this.sessions = new Vector();
+        this.inFlight = new IdentityHashMap();
+        this.ackFlusher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "X10Server acks");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        if(connection.isX10Transmitter()) {
+            // The listener ignores the queue notices anyway
+            X10Transmitter transmitter = connection.getX10Transmitter();
+            this.deliveryListener = new DeliveryListener();
+            if(transmitter instanceof X10FilteredTransmitter)
+                ((X10FilteredTransmitter)transmitter).addX10TransmitterListener(this.deliveryListener, new X10TransmitterEvent.Type[] {
+                    X10TransmitterEvent.EVENT_DELIVERED, X10TransmitterEvent.EVENT_UNDELIVERED});
+            else
+                transmitter.addX10TransmitterListener(this.deliveryListener);
+        }
+    }
+
+    /** Starts accepting clients at the given address, which is either an
+     * {@link java.net.InetSocketAddress} for TCP or a
+     * {@link java.net.UnixDomainSocketAddress}.
+     * @return the address actually bound, which has the real port if port 0
+     * was asked for
+     * @throws java.io.IOException if the address can not be bound
+     */
+    public SocketAddress bind(SocketAddress address) throws IOException {
+        if(closed)
+            throw new IOException("X10Server is closed");
+        final ServerSocketChannel server;
+        if(address instanceof UnixDomainSocketAddress)
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        else
+            server = ServerSocketChannel.open();
+        server.bind(address);
+        serverChannels.add(server);
+        final SocketAddress local = server.getLocalAddress();
+        Thread acceptor = new Thread(new Runnable() {
+            public void run() {
+                accept(server, local);
+            }
+        }, "X10Server "+local);
+        acceptor.setDaemon(true);
+        acceptor.start();
+        LOG.info("X10Server listening on "+local);
+        return local;
+    }
+
+    /** Returns the addresses the server is listening on. */
+    public SocketAddress[] getAddresses() {
+        List addresses = new ArrayList();
+        synchronized(serverChannels) {
+            for(Iterator i = serverChannels.iterator();i.hasNext();) {
+                try {
+                    addresses.add(((ServerSocketChannel)i.next()).getLocalAddress());
+                } catch(IOException ignored) {}
+            }
+        }
+        return (SocketAddress[])addresses.toArray(new SocketAddress[addresses.size()]);
+    }
+
+    /** Returns the number of clients connected. */
+    public int getClientCount() {
+        return sessions.size();
+    }
+
+    /** Stops accepting clients and disconnects the ones connected.  The
+     * served connection is left open.
+     */
+    public void close() {
+        closed = true;
+        List channels;
+        synchronized(serverChannels) {
+            channels = new ArrayList(serverChannels);
+            serverChannels.clear();
+        }
+        for(Iterator i = channels.iterator();i.hasNext();) {
+            ServerSocketChannel server = (ServerSocketChannel)i.next();
+            try {
+                SocketAddress local = server.getLocalAddress();
+                server.close();
+                // Unix-domain sockets leave their file behind
+                if(local instanceof UnixDomainSocketAddress)
+                    java.nio.file.Files.deleteIfExists(((UnixDomainSocketAddress)local).getPath());
+            } catch(IOException ignored) {}
+        }
+        List current;
+        synchronized(sessions) {
+            current = new ArrayList(sessions);
+        }
+        for(Iterator i = current.iterator();i.hasNext();) {
+            ((Session)i.next()).close();
+        }
+        if(deliveryListener != null)
+            connection.getX10Transmitter().removeX10TransmitterListener(deliveryListener);
+        ackFlusher.shutdown();
+    }
+
+    private void accept(ServerSocketChannel server, SocketAddress local) {
+        int count = 0;
+        while(!closed) {
+            try {
+                SocketChannel channel = server.accept();
+                if(local instanceof InetSocketAddress)
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+                SocketAddress remote = channel.getRemoteAddress();
+                String name = remote instanceof InetSocketAddress ? remote.toString() : local+"#"+(++count);
+                Session session = new Session(channel, name);
+                sessions.add(session);
+                Thread reader = new Thread(session, "X10Server client "+name);
+                reader.setDaemon(true);
+                reader.start();
+            } catch(IOException e) {
+                if(!closed)
+                    LOG.log(Level.WARNING,"Stopped accepting clients on "+local,e);
+                return;
+            }
+        }
+    }
+
+    private void transmit(Session session, int id, X10Event event) {
+        if(!connection.isX10Transmitter()) {
+            session.acknowledge(id, X10Protocol.STATUS_UNDELIVERED);
+            return;
+        }
+        synchronized(inFlight) {
+            inFlight.put(event, new Object[] {session, Integer.valueOf(id)});
+        }
+        connection.getX10Transmitter().transmit(event);
+    }
+
+    /** Queues a client's batch as one batch on the connection */
+    private void transmit(Session session, int first, List events) {
+        if(events.isEmpty())
+            return;
+        if(!connection.isX10Transmitter()) {
+            for(int i = 0; i < events.size(); i++) {
+                session.acknowledge(first+i, X10Protocol.STATUS_UNDELIVERED);
+            }
+            return;
+        }
+        synchronized(inFlight) {
+            for(int i = 0; i < events.size(); i++) {
+                inFlight.put(events.get(i), new Object[] {session, Integer.valueOf(first+i)});
+            }
+        }
+        new X10FramePlan((X10Event[])events.toArray(new X10Event[events.size()])).transmit(connection.getX10Transmitter());
+    }
+
+    private void acknowledge(X10Event event, byte status) {
+        Object[] origin;
+        synchronized(inFlight) {
+            origin = (Object[])inFlight.remove(event);
+        }
+        if(origin != null)
+            ((Session)origin[0]).acknowledge(((Integer)origin[1]).intValue(), status);
+    }
+
+    /** Serves an X10 connection from the command line.
+     * <pre>
+     * usage: X10Server [-bind address] connection-url [tcp-port [unix-socket-path]]
+     * </pre>
+     * A TCP port of 0 skips TCP.  TCP listens on the loopback interface
+     * unless <code>-bind</code> gives another address, such as
+     * <code>0.0.0.0</code> for every interface; anyone who can reach the
+     * port can then switch the devices.
+     */
+    public static void main(String[] args) throws Exception {
+        InetAddress host = InetAddress.getLoopbackAddress();
+        if(args.length > 1 && args[0].equals("-bind")) {
+            host = InetAddress.getByName(args[1]);
+            String[] rest = new String[args.length-2];
+            System.arraycopy(args, 2, rest, 0, rest.length);
+            args = rest;
+        }
+        if(args.length < 1) {
+            System.err.println("usage: X10Server [-bind address] connection-url [tcp-port [unix-socket-path]]");
+            System.exit(1);
+        }
+        try {
+            Class.forName("com.jaxzin.x10.cm11a.CM11ADriver");
+        } catch(ClassNotFoundException ignored) {
+            // Only needed for CM11A URLs
+        }
+        X10Connection connection = X10DriverManager.getX10Connection(args[0]);
+        X10Server server = new X10Server(connection);
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        if(port > 0) {
+            SocketAddress bound = server.bind(new InetSocketAddress(host, port));
+            if(!host.isLoopbackAddress())
+                LOG.warning("Listening on "+bound+" without authentication, anyone who can reach it can control the connection");
+        }
+        if(args.length > 2)
+            server.bind(UnixDomainSocketAddress.of(args[2]));
+        // The acceptor threads are daemons, so wait here until killed
+        synchronized(server) {
+            server.wait();
+        }
+    }
+}
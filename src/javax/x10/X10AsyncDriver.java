@@ -0,0 +1,37 @@
+/*
+ * X10AsyncDriver.java
+ *
+ * Created on November 6, 2026, 7:10 PM
+ */
+
+package javax.x10;
+
+import java.util.Properties;
+import java.util.concurrent.Future;
+
+/** An {@link javax.x10.X10Driver} that can open a connection without
+ * blocking the caller.  Drivers whose connections take a while to become
+ * ready implement this so
+ * {@link javax.x10.X10DriverManager#getX10ConnectionAsync(String, Properties)}
+ * can overlap the work rather than running every step on the caller's
+ * thread.  Drivers that do not are run on a thread of their own instead.
+ *
+ * @see javax.x10.X10DriverManager#getX10ConnectionAsync(String, Properties)
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public interface X10AsyncDriver extends X10Driver {
+
+    /**
+     * Starts making an X10 connection to the given URL and returns at once.
+     * The future's <code>get</code> returns the
+     * {@link javax.x10.X10Connection}, or <code>null</code> if this is the
+     * wrong kind of driver for the URL, and throws an
+     * {@link java.util.concurrent.ExecutionException} holding the
+     * {@link javax.x10.X10Exception} if the connection could not be made.
+     * @param url the URL of the X10 connection to which to connect
+     * @param info a list of arbitrary string tag/value pairs as connection arguments.
+     * @return a future for the X10Connection
+     * @throws X10Exception if the arguments are wrong before anything is started
+     */
+    public Future connectAsync(String url, Properties info) throws X10Exception;
+}
@@ -0,0 +1,31 @@
+/*
+ * X10BatchReceiver.java
+ *
+ * Created on November 16, 2026, 10:05 PM
+ */
+
+package javax.x10;
+
+import javax.x10.event.X10BatchListener;
+
+/** An {@link javax.x10.X10Receiver} that can hand the
+ * {@link javax.x10.event.X10Event}s it receives to
+ * {@link javax.x10.event.X10BatchListener}s a group at a time, rather than
+ * one call per event.
+ *
+ * @see javax.x10.event.X10BatchListener
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public interface X10BatchReceiver extends X10Receiver {
+    
+    /** Registers an X10BatchListener to be handed every
+     * {@link javax.x10.event.X10Event} received, a group at a time.
+     * @param listener the listener to be added
+     */
+    public void addX10BatchListener(X10BatchListener listener);
+    
+    /** Deregisters an X10BatchListener
+     * @param listener the listener to be removed
+     */
+    public void removeX10BatchListener(X10BatchListener listener);
+}
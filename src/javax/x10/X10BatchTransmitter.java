@@ -0,0 +1,34 @@
+/*
+ * X10BatchTransmitter.java
+ *
+ * Created on November 16, 2026, 9:05 PM
+ */
+
+package javax.x10;
+
+import java.util.List;
+
+import javax.x10.event.X10Batch;
+
+/** An {@link javax.x10.X10Transmitter} that can queue a sequence of
+ * {@link javax.x10.event.X10Event}s as one {@link javax.x10.event.X10Batch},
+ * so no other event is sent between them.  To send a batch on any
+ * transmitter, falling back to one event at a time on those that are not
+ * batch transmitters, use
+ * {@link javax.x10.util.X10FramePlan#transmit(X10Transmitter)}.
+ *
+ * @see javax.x10.event.X10Batch
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public interface X10BatchTransmitter extends X10Transmitter {
+    
+    /** This method gives the X10 transmitter a sequence of
+     * {@link javax.x10.event.X10Event}s to deliver together.  They are
+     * queued at once and in order, so no other event is sent between them,
+     * and one {@link javax.x10.event.X10TransmitterEvent#QUEUE_UPDATED} is
+     * sent for the whole batch.
+     * @param events The X10Events to deliver, in order.
+     * @return the batch, which keeps count of the events delivered
+     */
+    public X10Batch transmit(List events);
+}
@@ -7,6 +7,7 @@
 package javax.x10;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.sql.*; // For javadoc only!!
 
 /**
@@ -154,6 +155,48 @@ public class X10DriverManager {
         return null;
     }
     
+    /** Starts establishing a connection to the given URL and returns at
+     * once.  A driver that implements {@link javax.x10.X10AsyncDriver}
+     * does the work its own way, any other driver that accepts the URL is
+     * asked to connect on a new thread.
+     * @param url an X10 url of the form <code>x10:<i>subprotocol</i>:<i>subname</i></code>
+     * @param info a list of arbitrary string tag/value pairs as connection arguments
+     * @return a future whose <code>get</code> returns the connection, or
+     * <code>null</code> if no driver accepts the URL, and throws an
+     * {@link java.util.concurrent.ExecutionException} holding the
+     * {@link javax.x10.X10Exception} if the connection fails
+     * @throws X10Exception if an error occurs before anything is started
+     */
+    public static Future getX10ConnectionAsync(final String url, Properties info) throws X10Exception {
+        if(info == null)
+            info = new Properties();
+        final Properties connectInfo = info;
+        // Find the first driver that accepts the URL
+        for(Iterator i = getDrivers();i.hasNext();) {
+            final X10Driver driver = (X10Driver)i.next();
+            if(!driver.acceptsURL(url))
+                continue;
+            if(driver instanceof X10AsyncDriver)
+                return ((X10AsyncDriver)driver).connectAsync(url, connectInfo);
+            FutureTask task = new FutureTask(new Callable() {
+                public Object call() throws X10Exception {
+                    return driver.connect(url, connectInfo);
+                }
+            });
+            Thread t = new Thread(task, "X10 connect "+url);
+            t.setDaemon(true);
+            t.start();
+            return task;
+        }
+        // We didn't find a suitable driver so..
+        FutureTask none = new FutureTask(new Runnable() {
+            public void run() {
+            }
+        }, null);
+        none.run();
+        return none;
+    }
+    
     /** Attempts to locate a driver that understands the given URL. 
      * The <code>X10DriverManager</code> attempts to select an appropriate 
      * driver from the set of registered X10 drivers. 
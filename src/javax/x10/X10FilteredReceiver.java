@@ -0,0 +1,34 @@
+/*
+ * X10FilteredReceiver.java
+ *
+ * Created on November 16, 2026, 7:40 PM
+ */
+
+package javax.x10;
+
+import javax.x10.event.X10Filter;
+import javax.x10.event.X10Listener;
+
+/** An {@link javax.x10.X10Receiver} that can register
+ * {@link javax.x10.event.X10Listener}s for only the
+ * {@link javax.x10.event.X10Event}s they want.  Receivers that are not
+ * filtered can still be given a filtered listener by wrapping it in an
+ * {@link javax.x10.util.X10FilteredListener}.
+ *
+ * @see javax.x10.event.X10Filter
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public interface X10FilteredReceiver extends X10Receiver {
+    
+    /** Registers a new X10Listener to be notified of the
+     * {@link javax.x10.event.X10Event}s that match the given filter.
+     * Receivers are expected to look up interested listeners rather than
+     * testing every filter, so registering many narrowly filtered listeners
+     * is cheap.  {@link #removeX10Listener} deregisters the listener along
+     * with every filter it was registered with.
+     * @param filter the events the listener wants
+     * @param listener the listener to be added
+     * @see javax.x10.util.X10ListenerIndex
+     */
+    public void addX10Listener(X10Filter filter, X10Listener listener);
+}
@@ -0,0 +1,31 @@
+/*
+ * X10FilteredTransmitter.java
+ *
+ * Created on November 16, 2026, 9:40 PM
+ */
+
+package javax.x10;
+
+import javax.x10.event.X10TransmitterEvent;
+import javax.x10.event.X10TransmitterListener;
+
+/** An {@link javax.x10.X10Transmitter} that can register
+ * {@link javax.x10.event.X10TransmitterListener}s for only the types of
+ * {@link javax.x10.event.X10TransmitterEvent} they want, so a listener
+ * that only counts deliveries is not woken by queue notices.  On other
+ * transmitters such a listener has to be registered for every type and
+ * ignore the ones it does not want.
+ *
+ * @see javax.x10.util.X10TransmitterNotifier
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public interface X10FilteredTransmitter extends X10Transmitter {
+    
+    /** Registers an {@link javax.x10.event.X10TransmitterListener} for
+     * only the given types of {@link javax.x10.event.X10TransmitterEvent}.
+     * The listener's methods for other types are never called.
+     * @param listener the listener to be added
+     * @param types the types the listener wants
+     */
+    public void addX10TransmitterListener(X10TransmitterListener listener, X10TransmitterEvent.Type[] types);
+}
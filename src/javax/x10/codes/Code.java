@@ -6,25 +6,23 @@
 
 package javax.x10.codes;
 
-/** Subclasses of <code>Code</code> represent X10 codes.
+/** Implementations of <code>Code</code> represent X10 codes.  Every kind
+ * of code has a fixed set of constants, numbered from 0 in the order they
+ * are declared, so code that handles them can use arrays indexed by
+ * {@link #ordinal} instead of maps.
  *
  * @see javax.x10.codes.HouseCode
  * @see javax.x10.codes.UnitCode
  * @see javax.x10.codes.FunctionCode
  * @author  Brian Jackson (brian@jaxzin.com)
  */
-public abstract class Code {
-    
-    private String name;
-    
-    /** This has package access so only classes in this package can 
-     * call this. 
-     */
-    Code(String name) {
-        this.name = name;
-    }
+public interface Code {
+
+    /** Returns the name of the constant, as declared. */
+    public String name();
 
-    public String toString() {
-        return this.name;
-    }
+    /** Returns the position of the constant among the codes of its kind,
+     * starting from 0.
+     */
+    public int ordinal();
 }
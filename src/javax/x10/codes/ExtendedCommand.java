@@ -0,0 +1,99 @@
+/*
+ * ExtendedCommand.java
+ *
+ * Created on October 25, 2026, 6:48 PM
+ */
+
+package javax.x10.codes;
+
+/** This contains constants that represent the command byte of an X10
+ * extended code, the {@link javax.x10.codes.FunctionCode#EXTENDED_CODE}
+ * function that carries a unit code, a data byte and a command byte.
+ * These are the type 3 commands understood by two-way lamp and appliance
+ * modules.
+ * <P>
+ * Brightness levels in the data byte run from 0 to {@link #MAX_LEVEL} in
+ * the low 6 bits, so any of 64 levels is one frame away.  Group commands
+ * carry a group from 0 to 3 in the high 2 bits.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public enum ExtendedCommand {
+
+    /** Adds the unit to a group at the level in the data byte */
+    INCLUDE_IN_GROUP(0x30),
+    /** Sets the unit to the level in the data byte */
+    PRESET_DIM(0x31),
+    /** Sets every unit in the group in the data byte to its group level */
+    EXECUTE_GROUP(0x32),
+    /** Turns on every unit on the house code */
+    ALL_UNITS_ON(0x33),
+    /** Turns off every unit on the house code */
+    ALL_UNITS_OFF(0x34),
+    /** Removes the unit from the groups set in the low 4 bits of the data byte */
+    REMOVE_FROM_GROUP(0x35),
+    /** Asks the unit to report its level */
+    STATUS_REQUEST(0x37),
+    /** A unit's reply to {@link #STATUS_REQUEST}, with its level in the data byte */
+    STATUS_ACKNOWLEDGE(0x38);
+
+    /** The highest level a data byte can carry */
+    public static final int MAX_LEVEL = 63;
+    /** The highest group number */
+    public static final int MAX_GROUP = 3;
+
+    /** The commands indexed by their command byte, as an unsigned value */
+    private static final ExtendedCommand[] BY_VALUE = new ExtendedCommand[256];
+    static {
+        ExtendedCommand[] all = values();
+        for(int i = 0; i < all.length; i++) {
+            BY_VALUE[all[i].value & 0xFF] = all[i];
+        }
+    }
+
+    private final byte value;
+
+    private ExtendedCommand(int value) {
+        this.value = (byte)value;
+    }
+
+    /** Returns the command byte. */
+    public byte getValue() {
+        return this.value;
+    }
+
+    /** Returns the command with the given command byte, or <code>null</code>
+     * if it is not one of the constants defined here.
+     */
+    public static ExtendedCommand get(byte value) {
+        return BY_VALUE[value & 0xFF];
+    }
+
+    /** Returns the data byte that sets a unit to the closest of the 64
+     * levels to the given brightness level.
+     * @param level a brightness level from 0.0 to 1.0
+     */
+    public static byte getLevelData(double level) {
+        if(level < 0.0 || level > 1.0)
+            throw new IllegalArgumentException("The specified brightness level("+level+") is out of the valid range of 0.0 to 1.0, inclusive.");
+        return (byte)Math.round(level*MAX_LEVEL);
+    }
+
+    /** Returns the data byte for a group command.
+     * @param group a group from 0 to {@link #MAX_GROUP}
+     * @param level a brightness level from 0.0 to 1.0, used by
+     * {@link #INCLUDE_IN_GROUP}
+     */
+    public static byte getGroupData(int group, double level) {
+        if(group < 0 || group > MAX_GROUP)
+            throw new IllegalArgumentException("The specified group("+group+") is out of the valid range of 0 to "+MAX_GROUP+", inclusive.");
+        return (byte)((group << 6) | getLevelData(level));
+    }
+
+    /** Returns the brightness level, from 0.0 to 1.0, carried in the low 6
+     * bits of a data byte.
+     */
+    public static double getBrightnessLevel(byte data) {
+        return (double)(data & MAX_LEVEL)/(double)MAX_LEVEL;
+    }
+}
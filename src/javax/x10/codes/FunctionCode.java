@@ -7,67 +7,123 @@
 package javax.x10.codes;
 
 /** This contains constants that represent X10 function codes.  
+ * <P>
+ * Unlike the other codes this is not an enum, since the subclasses
+ * {@link FunctionCode.Basic}, {@link FunctionCode.Brightness} and
+ * {@link FunctionCode.Extended} let the constructors of
+ * {@link javax.x10.event.X10Event} check at compile time that a function
+ * gets the information it needs.  It has the same {@link #name},
+ * {@link #ordinal}, {@link #values} and {@link #valueOf} an enum would.
  *
  * @author  Brian Jackson (brian@jaxzin.com)
  */
-public class FunctionCode extends OtherCode {
+public class FunctionCode implements OtherCode {
+    
+    private String name;
+    private int ordinal;
     
     /** Creates a new instance of FunctionCode */
-    private FunctionCode(String name) {
-        super(name);
+    private FunctionCode(String name, int ordinal) {
+        this.name = name;
+        this.ordinal = ordinal;
     }
     
     /** Subclass that represents X10 functions that need no extra information */
     public static final class Basic extends FunctionCode {
-        private Basic(String name) {
-            super(name);
+        private Basic(String name, int ordinal) {
+            super(name, ordinal);
         }
     }
     
     /** Subclass that represents X10 functions that need brightness information */
     public static final class Brightness extends FunctionCode {
-        private Brightness(String name) {
-            super(name);
+        private Brightness(String name, int ordinal) {
+            super(name, ordinal);
         }
     }
 
     /** Subclass that represents X10 functions that need extended code information */
     public static final class Extended extends FunctionCode {
-        private Extended(String name) {
-            super(name);
+        private Extended(String name, int ordinal) {
+            super(name, ordinal);
         }
     }
 
     /**Turn off all X10 units */ 	
-    public static final Basic ALL_UNITS_OFF             = new Basic("ALL_UNITS_OFF");
+    public static final Basic ALL_UNITS_OFF             = new Basic("ALL_UNITS_OFF", 0);
     /**Turn on all X10 lights */ 	
-    public static final Basic ALL_LIGHTS_ON             = new Basic("ALL_LIGHTS_ON");
+    public static final Basic ALL_LIGHTS_ON             = new Basic("ALL_LIGHTS_ON", 1);
     /**Turn on all currently addressed X10 units*/		
-    public static final Basic ON                        = new Basic("ON");
+    public static final Basic ON                        = new Basic("ON", 2);
     /**Turn off all currently addressed X10 units*/	
-    public static final Basic OFF                       = new Basic("OFF");
+    public static final Basic OFF                       = new Basic("OFF", 3);
     /**Dim all currently addressed X10 units by the specified amount*/		
-    public static final Brightness DIM                  = new Brightness("DIM");
+    public static final Brightness DIM                  = new Brightness("DIM", 4);
     /**Brighten all currently addressed X10 units by the specified amount*/
-    public static final Brightness BRIGHTEN             = new Brightness("BRIGHTEN");
+    public static final Brightness BRIGHTEN             = new Brightness("BRIGHTEN", 5);
     /**Turn off all X10 lights */
-    public static final Basic ALL_LIGHTS_OFF            = new Basic("ALL_LIGHTS_OFF");
+    public static final Basic ALL_LIGHTS_OFF            = new Basic("ALL_LIGHTS_OFF", 6);
     /**Extra information is included*/			
-    public static final Extended EXTENDED_CODE          = new Extended("EXTENDED_CODE");
+    public static final Extended EXTENDED_CODE          = new Extended("EXTENDED_CODE", 7);
     /**Hail all addressed units*/							
-    public static final Basic HAIL_REQUEST              = new Basic("HAIL_REQUEST");
+    public static final Basic HAIL_REQUEST              = new Basic("HAIL_REQUEST", 8);
     /**Acknowledgement message to a hail*/						
-    public static final Basic HAIL_ACKNOWLEDGE          = new Basic("HAIL_ACKNOWLEDGE");
+    public static final Basic HAIL_ACKNOWLEDGE          = new Basic("HAIL_ACKNOWLEDGE", 9);
     /**Set all currently addressed X10 lights to their first preset dim level*/		
-    public static final Basic PRESET_DIM_1              = new Basic("PRESET_DIM_1");
+    public static final Basic PRESET_DIM_1              = new Basic("PRESET_DIM_1", 10);
     /**Set all currently addressed X10 lights to their second preset dim level*/
-    public static final Basic PRESET_DIM_2              = new Basic("PRESET_DIM_2");
+    public static final Basic PRESET_DIM_2              = new Basic("PRESET_DIM_2", 11);
     /**Signals an extended data transfer*/						
-    public static final Basic EXTENDED_DATA_TRANSFER    = new Basic("EXTENDED_DATA_TRANSFER");
+    public static final Basic EXTENDED_DATA_TRANSFER    = new Basic("EXTENDED_DATA_TRANSFER", 12);
     /**Set all currently addressed X10 units to respond to status requests*/		
-    public static final Basic STATUS_ON                 = new Basic("STATUS_ON");
+    public static final Basic STATUS_ON                 = new Basic("STATUS_ON", 13);
     /**Set all currently addressed X10 units to not respond to status requests*/	
-    public static final Basic STATUS_OFF                = new Basic("STATUS_OFF");
+    public static final Basic STATUS_OFF                = new Basic("STATUS_OFF", 14);
     /**Send back status information for all addressed X10 units. */
-    public static final Basic STATUS_REQUEST            = new Basic("STATUS_REQUEST");
+    public static final Basic STATUS_REQUEST            = new Basic("STATUS_REQUEST", 15);
+    
+    private static final FunctionCode[] allCodes = {
+        ALL_UNITS_OFF, ALL_LIGHTS_ON, ON, OFF, DIM, BRIGHTEN, ALL_LIGHTS_OFF,
+        EXTENDED_CODE, HAIL_REQUEST, HAIL_ACKNOWLEDGE, PRESET_DIM_1,
+        PRESET_DIM_2, EXTENDED_DATA_TRANSFER, STATUS_ON, STATUS_OFF,
+        STATUS_REQUEST
+    };
+    
+    private static final java.util.List allCodeList =
+            java.util.Collections.unmodifiableList(java.util.Arrays.asList(allCodes));
+    
+    public final String name() {
+        return this.name;
+    }
+    
+    public final int ordinal() {
+        return this.ordinal;
+    }
+    
+    public String toString() {
+        return this.name;
+    }
+    
+    /** Returns every function code, in order of {@link #ordinal}. */
+    public static FunctionCode[] values() {
+        return allCodes.clone();
+    }
+    
+    /** Returns the function code with the given name.
+     * @throws java.lang.IllegalArgumentException if there is no such function code
+     */
+    public static FunctionCode valueOf(String name) {
+        if(name == null)
+            throw new IllegalArgumentException("Name can not be null.");
+        for(int i = 0; i < allCodes.length; i++) {
+            if(allCodes[i].name.equals(name))
+                return allCodes[i];
+        }
+        throw new IllegalArgumentException("No function code named "+name);
+    }
+    
+    /** Returns the function codes in order. */
+    public static final java.util.Iterator iterator() {
+        return allCodeList.iterator();
+    }
 }
@@ -10,68 +10,47 @@ package javax.x10.codes;
  *
  * @author  Brian Jackson (brian@jaxzin.com)
  */
-public final class HouseCode extends Code {
+public enum HouseCode implements Code {
 
-    /** This is private so no one can override these values */
-    private HouseCode(String name) {
-        super(name);
-    }
-    
     /**Represents the X10 house code - "A"*/ 
-    public static final HouseCode A = new HouseCode("A"); 
+    A,
     /**Represents the X10 house code - "B"*/ 
-    public static final HouseCode B = new HouseCode("B");
+    B,
     /**Represents the X10 house code - "C"*/ 
-    public static final HouseCode C = new HouseCode("C");
+    C,
     /**Represents the X10 house code - "D"*/ 
-    public static final HouseCode D = new HouseCode("D");
+    D,
     /**Represents the X10 house code - "E"*/ 
-    public static final HouseCode E = new HouseCode("E");
+    E,
     /**Represents the X10 house code - "F"*/ 
-    public static final HouseCode F = new HouseCode("F");
+    F,
     /**Represents the X10 house code - "G"*/ 
-    public static final HouseCode G = new HouseCode("G");
+    G,
     /**Represents the X10 house code - "H"*/ 
-    public static final HouseCode H = new HouseCode("H");
+    H,
     /**Represents the X10 house code - "I"*/ 
-    public static final HouseCode I = new HouseCode("I");
+    I,
     /**Represents the X10 house code - "J"*/ 
-    public static final HouseCode J = new HouseCode("J");
+    J,
     /**Represents the X10 house code - "K"*/ 
-    public static final HouseCode K = new HouseCode("K");
+    K,
     /**Represents the X10 house code - "L"*/ 
-    public static final HouseCode L = new HouseCode("L");
+    L,
     /**Represents the X10 house code - "M"*/ 
-    public static final HouseCode M = new HouseCode("M");
+    M,
     /**Represents the X10 house code - "N"*/ 
-    public static final HouseCode N = new HouseCode("N");
+    N,
     /**Represents the X10 house code - "O"*/ 
-    public static final HouseCode O = new HouseCode("O");
+    O,
     /**Represents the X10 house code - "P"*/ 
-    public static final HouseCode P = new HouseCode("P");
-    
-    private static java.util.List allCodes;
-    static {
-        java.util.List temp = new java.util.Vector();
-        temp.add(A);
-        temp.add(B);
-        temp.add(C);
-        temp.add(D);
-        temp.add(E);
-        temp.add(F);
-        temp.add(G);
-        temp.add(H);
-        temp.add(I);
-        temp.add(J);
-        temp.add(K);
-        temp.add(L);
-        temp.add(M);
-        temp.add(N);
-        temp.add(O);
-        temp.add(P);
-        allCodes = java.util.Collections.unmodifiableList(temp);
-    }
-    
+    P;
+
+    private static final java.util.List allCodes =
+            java.util.Collections.unmodifiableList(java.util.Arrays.asList(values()));
+
+    /** Returns the house codes in order.  Kept for code written before
+     * this was an enum; {@link #values} does the same.
+     */
     public static final java.util.Iterator iterator() {
         return allCodes.iterator();
     }
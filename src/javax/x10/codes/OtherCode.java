@@ -6,7 +6,7 @@
 
 package javax.x10.codes;
 
-/** Subclasses of this represent codes other than HouseCodes.  An 
+/** Implementations of this represent codes other than HouseCodes.  An 
  * {@link javax.x10.event.X10Event} is either an 
  * {@link javax.x10.event.X10Event#ADDRESS} event or a 
  * {@link javax.x10.event.X10Event#FUNCTION} event. The 
@@ -17,13 +17,5 @@ package javax.x10.codes;
  *
  * @author  Brian Jackson (brian@jaxzin.com)
  */
-public abstract class OtherCode extends Code {
-    
-    /** This has package access so only classes in this package can 
-     * call this. 
-     */
-    OtherCode(String name) {
-        super(name);
-    }
-
+public interface OtherCode extends Code {
 }
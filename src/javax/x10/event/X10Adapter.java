@@ -28,7 +28,7 @@ package javax.x10.event;
 public abstract class X10Adapter implements X10Listener {
     
     /** Creates a new instance of X10Adapter */
-    private X10Adapter() {
+    protected X10Adapter() {
     }
 
     /** An addressing event was received. Use <code>e.getHouseCode()</code> and 
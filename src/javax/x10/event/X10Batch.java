@@ -0,0 +1,130 @@
+/*
+ * X10Batch.java
+ *
+ * Created on November 1, 2026, 7:20 PM
+ */
+
+package javax.x10.event;
+
+import java.util.*;
+
+/** <code>X10Batch</code> is a sequence of {@link javax.x10.event.X10Event}s
+ * given to {@link javax.x10.X10BatchTransmitter#transmit(List)} to be queued
+ * together.  No other event is sent between the events of a batch, so an
+ * address and the functions that follow it stay together on the wire.
+ * <P>
+ * The batch keeps count of how many of its events have been delivered and
+ * how many have not, and is done once every event has been accounted for.
+ * The {@link javax.x10.event.X10TransmitterEvent}s about a batch's events
+ * return the batch from {@link javax.x10.event.X10TransmitterEvent#getX10Batch},
+ * and {@link #waitFor(long)} blocks until the batch is done.
+ *
+ * @see javax.x10.X10BatchTransmitter#transmit(List)
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class X10Batch {
+
+    private List events;
+    private long started;
+    private long finished;
+    private int delivered;
+    private int undelivered;
+
+    /** Creates a new instance of X10Batch holding a copy of the given events.
+     * @throws java.lang.IllegalArgumentException if there are no events or
+     * one of them is not an X10Event
+     */
+    public X10Batch(List events) {
+        if(events == null)
+            throw new IllegalArgumentException("Events can not be null.");
+        if(events.isEmpty())
+            throw new IllegalArgumentException("A batch needs at least one event.");
+        for(Iterator i = events.iterator();i.hasNext();) {
+            if(!(i.next() instanceof X10Event))
+                throw new IllegalArgumentException("Batches can only hold X10Events.");
+        }
+        this.events = Collections.unmodifiableList(new ArrayList(events));
+        this.started = System.nanoTime();
+    }
+
+    /** Returns the events of the batch, in the order they are sent. */
+    public List getEvents() {
+        return this.events;
+    }
+
+    /** Returns the number of events in the batch. */
+    public int size() {
+        return this.events.size();
+    }
+
+    /** Returns the number of events delivered so far. */
+    public synchronized int getDeliveredCount() {
+        return this.delivered;
+    }
+
+    /** Returns the number of events that could not be delivered so far. */
+    public synchronized int getUndeliveredCount() {
+        return this.undelivered;
+    }
+
+    /** Returns the truth that every event has been delivered or found
+     * undeliverable.
+     */
+    public synchronized boolean isDone() {
+        return this.delivered+this.undelivered >= this.events.size();
+    }
+
+    /** Returns the truth that every event in the batch was delivered. */
+    public synchronized boolean isDelivered() {
+        return this.delivered == this.events.size();
+    }
+
+    /** Returns the time from when the batch was created until it was done,
+     * or until now if it is not done yet, in nanoseconds.
+     */
+    public synchronized long getElapsedTime() {
+        return (isDone() ? this.finished : System.nanoTime())-this.started;
+    }
+
+    /** Waits until the batch is done.
+     * @param timeout The most to wait in milliseconds, 0 to wait forever.
+     * @return the truth that the batch is done
+     * @throws java.lang.InterruptedException if the thread is interrupted while waiting
+     */
+    public synchronized boolean waitFor(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis()+timeout;
+        while(!isDone()) {
+            long remaining = deadline-System.currentTimeMillis();
+            if(timeout == 0)
+                wait();
+            else if(remaining > 0)
+                wait(remaining);
+            else
+                return false;
+        }
+        return true;
+    }
+
+    /** Records the outcome of one of the batch's events.  This is called by
+     * the {@link javax.x10.X10BatchTransmitter} the batch was given to, before it
+     * notifies its listeners of the outcome.
+     * @return the truth that this outcome finished the batch
+     */
+    public synchronized boolean recordOutcome(boolean delivered) {
+        if(isDone())
+            return false;
+        if(delivered)
+            this.delivered++;
+        else
+            this.undelivered++;
+        if(!isDone())
+            return false;
+        this.finished = System.nanoTime();
+        notifyAll();
+        return true;
+    }
+
+    public synchronized String toString() {
+        return "X10Batch["+events.size()+" events,"+delivered+" delivered,"+undelivered+" undelivered]";
+    }
+}
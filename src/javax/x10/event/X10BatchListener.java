@@ -0,0 +1,26 @@
+/*
+ * X10BatchListener.java
+ *
+ * Created on November 4, 2026, 8:05 PM
+ */
+
+package javax.x10.event;
+
+import java.util.List;
+
+/** X10BatchListener defines the interface for an object that takes the
+ * {@link javax.x10.event.X10Event}s an {@link javax.x10.X10BatchReceiver}
+ * receives a group at a time, in the order they were received, rather
+ * than one call per event.  A receiver that reads events in groups, like
+ * a CM11A downloading its buffer, hands over each group as it was read.
+ *
+ * @see javax.x10.X10BatchReceiver#addX10BatchListener(X10BatchListener)
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public interface X10BatchListener extends java.util.EventListener {
+    
+    /** A group of events was received.
+     * @param events The X10Events, in the order received, at least one.
+     */
+    public void events(List events);
+}
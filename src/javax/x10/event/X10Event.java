@@ -74,26 +74,32 @@ import javax.x10.codes.*;
  * be one of the constants that is an instance of 
  * {@link javax.x10.codes.FunctionCode.Extended}.
  *</P>
+ * <P>
+ * Extended codes that are addressed to a single unit, like those two-way
+ * modules understand, are created with
+ * {@link #X10Event(Object,HouseCode,UnitCode,ExtendedCommand,byte)}.
+ * Here's an example:
+ * <pre>
+ * X10Event eventA1half = new X10Event(this, HouseCode.A, UnitCode.UNIT_1, ExtendedCommand.PRESET_DIM, ExtendedCommand.getLevelData(0.5));
+ *</pre>
+ * This sets unit A1 straight to half brightness in a single frame, with no
+ * separate addressing event.  The commands are constants in
+ * {@link javax.x10.codes.ExtendedCommand}.
+ *</P>
  *
  * @author  Brian Jackson (brian@jaxzin.com)
  */
 public class X10Event extends java.util.EventObject {
     
-    /** <code>X10Event.Type</code> is only used as an enumeration
-     * pattern for the type of {@link javax.x10.event.X10Event}.
-     * The only instances of this class that you can use are defined as
-     * constants in {@link javax.x10.event.X10Event}.
+    /** <code>X10Event.Type</code> is the type of an
+     * {@link javax.x10.event.X10Event}.  Its constants are also defined
+     * in {@link javax.x10.event.X10Event}, where they have always been.
      * @see javax.x10.event.X10Event#ADDRESS
      * @see javax.x10.event.X10Event#FUNCTION
      */
-    public static final class Type {
-        private String name;
-        private Type(String name) {
-            this.name = name;
-        }
-        public String toString() {
-            return name;
-        }
+    public static enum Type {
+        ADDRESS,
+        FUNCTION
     }
     
     /** <code>X10Events</code> of this type contain addressing 
@@ -102,17 +108,18 @@ public class X10Event extends java.util.EventObject {
      * {@link javax.x10.codes.UnitCode} from the method
      * {@link #getOtherCode}
      */
-    public static final Type ADDRESS        = new Type("ADDRESS");
+    public static final Type ADDRESS        = Type.ADDRESS;
     /** <code>X10Events</code> of this type contain command 
      * information. <code>X10Events</code> of this type will 
      * return one of the constants defined in 
      * {@link javax.x10.codes.FunctionCode} from the method 
      * {@link #getOtherCode}
      */
-    public static final Type FUNCTION       = new Type("FUNCTION");
+    public static final Type FUNCTION       = Type.FUNCTION;
     
     private HouseCode houseCode;
     private OtherCode otherCode;
+    private UnitCode unitCode;
     private Type type;
     private double brightnessLevel;
     private byte data;
@@ -169,6 +176,32 @@ public class X10Event extends java.util.EventObject {
         this(source, houseCode, functionCode, MIN_BRIGHTNESS_LEVEL, data, command);
     }
     
+    /** Creates a new instance of X10Event that is of the type 
+     * {@link #FUNCTION} that contains extended data for a single unit.
+     * @param source The source of this event.
+     * @param houseCode The house code for this event.
+     * @param unitCode The unit code the extended code is addressed to.
+     * @param functionCode The function code for this event.
+     * @param data The data byte for this extended code event.
+     * @param command The command byte for this extended code event.
+     */
+    public X10Event(Object source, HouseCode houseCode, UnitCode unitCode, FunctionCode.Extended functionCode, byte data, byte command) {
+        this(source, houseCode, functionCode, MIN_BRIGHTNESS_LEVEL, data, command);
+        this.unitCode = unitCode;
+    }
+    
+    /** Creates a new instance of X10Event that is of the type 
+     * {@link #FUNCTION} that sends an extended command to a single unit.
+     * @param source The source of this event.
+     * @param houseCode The house code for this event.
+     * @param unitCode The unit code the extended code is addressed to.
+     * @param command The extended command.
+     * @param data The data byte for the command.
+     */
+    public X10Event(Object source, HouseCode houseCode, UnitCode unitCode, ExtendedCommand command, byte data) {
+        this(source, houseCode, unitCode, FunctionCode.EXTENDED_CODE, data, command.getValue());
+    }
+    
     private X10Event(Object source, HouseCode houseCode, OtherCode otherCode, double brightnessLevel, byte data, byte command) {
         // Set the values of the properties
         super(source);
@@ -185,6 +218,7 @@ public class X10Event extends java.util.EventObject {
         // Figure out the type
         if(otherCode instanceof UnitCode) {
             this.type = ADDRESS;
+            this.unitCode = (UnitCode)otherCode;
         } else { // if otherCode instanceof FunctionCode
             this.type = FUNCTION;
         }
@@ -255,6 +289,14 @@ public class X10Event extends java.util.EventObject {
         return this.otherCode;
     }
     
+    /** Returns the unit code of an {@link #ADDRESS} event, or the unit code
+     * an extended code event is addressed to. Returns <code>null</code> for
+     * every other event.
+     */
+    public UnitCode getUnitCode() {
+        return this.unitCode;
+    }
+    
     /** Returns the type of this event, which is one of the constants
      * defined in <code>X10Event</code>.
      */
@@ -287,6 +329,16 @@ public class X10Event extends java.util.EventObject {
     }
     
     
+    /** Returns the {@link javax.x10.codes.ExtendedCommand} of an extended
+     * code event, or <code>null</code> if this is not an extended code event
+     * or the command byte is not one of the known commands.
+     */
+    public ExtendedCommand getExtendedCommand() {
+        if(this.otherCode != FunctionCode.EXTENDED_CODE)
+            return null;
+        return ExtendedCommand.get(this.command);
+    }
+        
     /** Returns the bytes that make up this event in the X10 protocol. */
     /*public byte[] getBytes() {
         return (byte[])this.bytes.clone();
@@ -298,6 +350,8 @@ public class X10Event extends java.util.EventObject {
     }*/
     
     public String toString() {
+        if(otherCode == FunctionCode.EXTENDED_CODE && unitCode != null)
+            return "X10Event["+houseCode+unitCode+" "+otherCode+","+brightnessLevel+","+data+","+command+"]";
         return "X10Event["+houseCode+" "+otherCode+","+brightnessLevel+","+data+","+command+"]";
     }
 }
@@ -0,0 +1,121 @@
+/*
+ * X10EventDispatcher.java
+ *
+ * Created on October 28, 2026, 7:15 PM
+ */
+
+package javax.x10.event;
+
+import javax.x10.codes.FunctionCode;
+
+/** <code>X10EventDispatcher</code> calls the method of an
+ * {@link javax.x10.event.X10Listener} that matches an
+ * {@link javax.x10.event.X10Event}, so every
+ * {@link javax.x10.X10Receiver} dispatches events the same way.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public final class X10EventDispatcher {
+
+    /** The listener methods, by the ordinal of their function code */
+    private static final int[] METHODS = new int[FunctionCode.values().length];
+    private static final int ALL_LIGHTS_OFF          = 1;
+    private static final int ALL_LIGHTS_ON           = 2;
+    private static final int ALL_UNITS_OFF           = 3;
+    private static final int BRIGHTEN                = 4;
+    private static final int DIM                     = 5;
+    private static final int EXTENDED_CODE           = 6;
+    private static final int EXTENDED_DATA_TRANSFER  = 7;
+    private static final int HAIL_ACKNOWLEDGE        = 8;
+    private static final int HAIL_REQUEST            = 9;
+    private static final int OFF                     = 10;
+    private static final int ON                      = 11;
+    private static final int PRESET_DIM_1            = 12;
+    private static final int PRESET_DIM_2            = 13;
+    private static final int STATUS_OFF              = 14;
+    private static final int STATUS_ON               = 15;
+    private static final int STATUS_REQUEST          = 16;
+
+    static {
+        METHODS[FunctionCode.ALL_LIGHTS_OFF.ordinal()]          = ALL_LIGHTS_OFF;
+        METHODS[FunctionCode.ALL_LIGHTS_ON.ordinal()]           = ALL_LIGHTS_ON;
+        METHODS[FunctionCode.ALL_UNITS_OFF.ordinal()]           = ALL_UNITS_OFF;
+        METHODS[FunctionCode.BRIGHTEN.ordinal()]                = BRIGHTEN;
+        METHODS[FunctionCode.DIM.ordinal()]                     = DIM;
+        METHODS[FunctionCode.EXTENDED_CODE.ordinal()]           = EXTENDED_CODE;
+        METHODS[FunctionCode.EXTENDED_DATA_TRANSFER.ordinal()]  = EXTENDED_DATA_TRANSFER;
+        METHODS[FunctionCode.HAIL_ACKNOWLEDGE.ordinal()]        = HAIL_ACKNOWLEDGE;
+        METHODS[FunctionCode.HAIL_REQUEST.ordinal()]            = HAIL_REQUEST;
+        METHODS[FunctionCode.OFF.ordinal()]                     = OFF;
+        METHODS[FunctionCode.ON.ordinal()]                      = ON;
+        METHODS[FunctionCode.PRESET_DIM_1.ordinal()]            = PRESET_DIM_1;
+        METHODS[FunctionCode.PRESET_DIM_2.ordinal()]            = PRESET_DIM_2;
+        METHODS[FunctionCode.STATUS_OFF.ordinal()]              = STATUS_OFF;
+        METHODS[FunctionCode.STATUS_ON.ordinal()]               = STATUS_ON;
+        METHODS[FunctionCode.STATUS_REQUEST.ordinal()]          = STATUS_REQUEST;
+    }
+
+    /** This is private since the class only has static methods */
+    private X10EventDispatcher() {
+    }
+
+    /** Calls the method of <code>listener</code> that handles <code>event</code>.
+     * Events with a function code the listener has no method for are ignored.
+     */
+    public static void dispatch(X10Listener listener, X10Event event) {
+        if(event.getType() == X10Event.ADDRESS) {
+            listener.address(event);
+            return;
+        }
+        switch(METHODS[event.getOtherCode().ordinal()]) {
+            case ALL_LIGHTS_OFF:
+                listener.allLightsOff(event);
+                break;
+            case ALL_LIGHTS_ON:
+                listener.allLightsOn(event);
+                break;
+            case ALL_UNITS_OFF:
+                listener.allUnitsOff(event);
+                break;
+            case BRIGHTEN:
+                listener.brighten(event);
+                break;
+            case DIM:
+                listener.dim(event);
+                break;
+            case EXTENDED_CODE:
+                listener.extendedCode(event);
+                break;
+            case EXTENDED_DATA_TRANSFER:
+                listener.extendedDataTransfer(event);
+                break;
+            case HAIL_ACKNOWLEDGE:
+                listener.hailAcknowledge(event);
+                break;
+            case HAIL_REQUEST:
+                listener.hailRequest(event);
+                break;
+            case OFF:
+                listener.off(event);
+                break;
+            case ON:
+                listener.on(event);
+                break;
+            case PRESET_DIM_1:
+                listener.presetDim1(event);
+                break;
+            case PRESET_DIM_2:
+                listener.presetDim2(event);
+                break;
+            case STATUS_OFF:
+                listener.statusOff(event);
+                break;
+            case STATUS_ON:
+                listener.statusOn(event);
+                break;
+            case STATUS_REQUEST:
+                listener.statusRequest(event);
+                break;
+        }
+    }
+}
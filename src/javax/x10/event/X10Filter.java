@@ -0,0 +1,157 @@
+/*
+ * X10Filter.java
+ *
+ * Created on October 22, 2026, 8:14 PM
+ */
+
+package javax.x10.event;
+
+import java.util.*;
+
+import javax.x10.codes.*;
+
+/** An <code>X10Filter</code> narrows down which
+ * {@link javax.x10.event.X10Event}s an {@link javax.x10.event.X10Listener}
+ * is told about when it is registered with
+ * {@link javax.x10.X10FilteredReceiver#addX10Listener(X10Filter,X10Listener)}.
+ * A filter can name a house code, a set of unit codes and a set of function
+ * codes; anything left as <code>null</code> matches everything.  For
+ * example:
+ * <pre>
+ * // Everything on house code B
+ * X10Filter.forHouseCode(HouseCode.B);
+ * // Addressing of A1, and any function sent while A1 is addressed
+ * X10Filter.forUnit(HouseCode.A, UnitCode.UNIT_1);
+ * // Just ON and OFF for C3 and C4
+ * new X10Filter(HouseCode.C,
+ *               new UnitCode[] {UnitCode.UNIT_3, UnitCode.UNIT_4},
+ *               new FunctionCode[] {FunctionCode.ON, FunctionCode.OFF});
+ * </pre>
+ * Function events in X10 do not carry a unit code, they apply to whatever
+ * units are addressed at the time.  So a filter with unit codes matches an
+ * {@link X10Event#ADDRESS} event for one of its units, and an
+ * {@link X10Event#FUNCTION} event on its house code while one of its units
+ * is addressed.  The house-wide functions {@link FunctionCode#ALL_UNITS_OFF},
+ * {@link FunctionCode#ALL_LIGHTS_ON} and {@link FunctionCode#ALL_LIGHTS_OFF}
+ * match every unit.  A filter with function codes never matches
+ * {@link X10Event#ADDRESS} events.
+ *
+ * @see javax.x10.X10FilteredReceiver
+ * @see javax.x10.util.X10ListenerIndex
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class X10Filter {
+    
+    /** A filter that matches every event. */
+    public static final X10Filter ALL = new X10Filter(null, null, null);
+    
+    private HouseCode houseCode;
+    private Set unitCodes;
+    private Set functionCodes;
+    
+    /** Creates a new instance of X10Filter.
+     * @param houseCode The house code to match, or null for any.
+     * @param unitCodes The unit codes to match, or null for any.
+     * @param functionCodes The function codes to match, or null for any.
+     * @throws java.lang.IllegalArgumentException if either array is empty,
+     * since the filter could never match anything
+     */
+    public X10Filter(HouseCode houseCode, UnitCode[] unitCodes, FunctionCode[] functionCodes) {
+        this.houseCode = houseCode;
+        this.unitCodes = toSet(unitCodes, "unit");
+        this.functionCodes = toSet(functionCodes, "function");
+    }
+    
+    /** Returns a filter that matches every event on the given house code. */
+    public static X10Filter forHouseCode(HouseCode houseCode) {
+        return new X10Filter(houseCode, null, null);
+    }
+    
+    /** Returns a filter that matches one unit. */
+    public static X10Filter forUnit(HouseCode houseCode, UnitCode unitCode) {
+        return new X10Filter(houseCode, new UnitCode[] {unitCode}, null);
+    }
+    
+    /** Returns a filter that matches any of the given units on one house code. */
+    public static X10Filter forUnits(HouseCode houseCode, UnitCode[] unitCodes) {
+        return new X10Filter(houseCode, unitCodes, null);
+    }
+    
+    /** Returns a filter that matches one function on any house code. */
+    public static X10Filter forFunction(FunctionCode functionCode) {
+        return new X10Filter(null, null, new FunctionCode[] {functionCode});
+    }
+    
+    /** Returns the house code this filter matches, or null if it matches any. */
+    public HouseCode getHouseCode() {
+        return this.houseCode;
+    }
+    
+    /** Returns the unit codes this filter matches, or null if it matches any. */
+    public Set getUnitCodes() {
+        return this.unitCodes;
+    }
+    
+    /** Returns the function codes this filter matches, or null if it matches any. */
+    public Set getFunctionCodes() {
+        return this.functionCodes;
+    }
+    
+    /** Returns the truth that this filter matches the given event.
+     * @param event The event to test.
+     * @param addressedUnitCodes The unit codes addressed on the event's
+     * house code when the event was received. Only used for
+     * {@link X10Event#FUNCTION} events.
+     */
+    public boolean accepts(X10Event event, Set addressedUnitCodes) {
+        if(this.houseCode != null && this.houseCode != event.getHouseCode())
+            return false;
+        if(event.getType() == X10Event.ADDRESS) {
+            if(this.functionCodes != null)
+                return false;
+            return this.unitCodes == null || this.unitCodes.contains(event.getOtherCode());
+        } else {
+            if(this.functionCodes != null && !this.functionCodes.contains(event.getOtherCode()))
+                return false;
+            if(this.unitCodes == null || isHouseWide((FunctionCode)event.getOtherCode()))
+                return true;
+            // Extended codes may name their unit instead of relying on addressing
+            if(event.getUnitCode() != null)
+                return this.unitCodes.contains(event.getUnitCode());
+            for(Iterator i = this.unitCodes.iterator();i.hasNext();) {
+                if(addressedUnitCodes.contains(i.next()))
+                    return true;
+            }
+            return false;
+        }
+    }
+    
+    /** Returns the truth that the given function applies to every unit on
+     * a house code regardless of addressing.
+     */
+    public static boolean isHouseWide(FunctionCode functionCode) {
+        return functionCode == FunctionCode.ALL_UNITS_OFF
+            || functionCode == FunctionCode.ALL_LIGHTS_ON
+            || functionCode == FunctionCode.ALL_LIGHTS_OFF;
+    }
+    
+    public String toString() {
+        return "X10Filter["+(houseCode == null ? "*" : houseCode.toString())
+              +","+(unitCodes == null ? "*" : unitCodes.toString())
+              +","+(functionCodes == null ? "*" : functionCodes.toString())+"]";
+    }
+    
+    private static Set toSet(Code[] codes, String kind) {
+        if(codes == null)
+            return null;
+        if(codes.length == 0)
+            throw new IllegalArgumentException("An X10Filter needs at least one "+kind+" code, use null to match any.");
+        Set set = new HashSet();
+        for(int i = 0; i < codes.length; i++) {
+            if(codes[i] == null)
+                throw new IllegalArgumentException("An X10Filter can not match a null "+kind+" code.");
+            set.add(codes[i]);
+        }
+        return Collections.unmodifiableSet(set);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * X10PackedEvent.java
+ *
+ * Created on November 11, 2026, 7:40 PM
+ */
+
+package javax.x10.event;
+
+import javax.x10.codes.*;
+
+/** <code>X10PackedEvent</code> packs everything an
+ * {@link javax.x10.event.X10Event} carries, apart from its source, into a
+ * single <code>long</code>, for pipelines that handle events in bulk and
+ * can not afford an object per event.  A packed event turns back into an
+ * <code>X10Event</code> with the same codes, level, data and command with
+ * {@link #unpack}.
+ * <P>
+ * From the lowest bit up, a packed event holds:
+ * <LI>4 bits of house code ordinal</LI>
+ * <LI>1 bit that is set for {@link X10Event#FUNCTION} events</LI>
+ * <LI>4 bits of unit or function code ordinal</LI>
+ * <LI>1 bit that is set if an extended code names its unit, and 4 bits of
+ * that unit code's ordinal</LI>
+ * <LI>8 bits of extended data and 8 bits of extended command</LI>
+ * <LI>17 bits of brightness level, in {@link #BRIGHTNESS_LEVELS}ths</LI>
+ * <P>
+ * The remaining high bits are zero.  Brightness levels are kept exactly as
+ * long as they are a whole number of {@link #BRIGHTNESS_LEVELS}ths, which
+ * covers every level a receiver reports, the 22 levels of
+ * <code>DIM</code> and <code>BRIGHTEN</code>, the 64 levels of an extended
+ * code and whole percentages.  Events with any other level can not be
+ * packed.
+ *
+ * @see javax.x10.event.X10Event
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public final class X10PackedEvent {
+
+    /** Brightness levels are packed as a whole number of this many parts.
+     * It is the least common multiple of 210, 22, 63 and 100.
+     */
+    public static final int BRIGHTNESS_LEVELS = 69300;
+
+    private static final int HOUSE_SHIFT        = 0;
+    private static final int FUNCTION_BIT       = 4;
+    private static final int CODE_SHIFT         = 5;
+    private static final int UNIT_BIT           = 9;
+    private static final int UNIT_SHIFT         = 10;
+    private static final int DATA_SHIFT         = 14;
+    private static final int COMMAND_SHIFT      = 22;
+    private static final int BRIGHTNESS_SHIFT   = 30;
+
+    private static final HouseCode[] HOUSE_CODES = HouseCode.values();
+    private static final UnitCode[] UNIT_CODES = UnitCode.values();
+    private static final FunctionCode[] FUNCTION_CODES = FunctionCode.values();
+
+    /** This is private since the class only has static methods */
+    private X10PackedEvent() {
+    }
+
+    /** Packs an event.
+     * @throws java.lang.IllegalArgumentException if the event's brightness
+     * level is not a whole number of {@link #BRIGHTNESS_LEVELS}ths
+     */
+    public static long pack(X10Event event) {
+        if(event == null)
+            throw new IllegalArgumentException("X10Event can not be null.");
+        int level = toLevel(event.getBrightnessLevel());
+        if(level < 0)
+            throw new IllegalArgumentException("The brightness level "+event.getBrightnessLevel()+" of "+event+" can not be packed");
+        long packed = (long)event.getHouseCode().ordinal() << HOUSE_SHIFT
+                    | (long)event.getOtherCode().ordinal() << CODE_SHIFT
+                    | (long)level << BRIGHTNESS_SHIFT;
+        if(event.getType() == X10Event.FUNCTION) {
+            packed |= 1L << FUNCTION_BIT;
+            if(event.getUnitCode() != null)
+                packed |= 1L << UNIT_BIT | (long)event.getUnitCode().ordinal() << UNIT_SHIFT;
+            packed |= (long)(event.getData() & 0xFF) << DATA_SHIFT
+                    | (long)(event.getCommand() & 0xFF) << COMMAND_SHIFT;
+        }
+        return packed;
+    }
+
+    /** Returns the truth that {@link #pack} can pack the event. */
+    public static boolean isPackable(X10Event event) {
+        return event != null && toLevel(event.getBrightnessLevel()) >= 0;
+    }
+
+    /** Turns a packed event back into an X10Event.
+     * @param source The source the event is given.
+     */
+    public static X10Event unpack(long packed, Object source) {
+        HouseCode houseCode = getHouseCode(packed);
+        if(!isFunction(packed))
+            return new X10Event(source, houseCode, getUnitCode(packed));
+        FunctionCode functionCode = FUNCTION_CODES[code(packed)];
+        if(functionCode instanceof FunctionCode.Brightness)
+            return new X10Event(source, houseCode, (FunctionCode.Brightness)functionCode, getBrightnessLevel(packed));
+        if(functionCode instanceof FunctionCode.Extended) {
+            if((packed & 1L << UNIT_BIT) != 0)
+                return new X10Event(source, houseCode, getUnitCode(packed), (FunctionCode.Extended)functionCode,
+                                    getData(packed), getCommand(packed));
+            return new X10Event(source, houseCode, (FunctionCode.Extended)functionCode, getData(packed), getCommand(packed));
+        }
+        return new X10Event(source, houseCode, (FunctionCode.Basic)functionCode);
+    }
+
+    /** Packs an address event. */
+    public static long address(HouseCode houseCode, UnitCode unitCode) {
+        return (long)houseCode.ordinal() << HOUSE_SHIFT
+             | (long)unitCode.ordinal() << CODE_SHIFT;
+    }
+
+    /** Packs a function event with no extra information. */
+    public static long function(HouseCode houseCode, FunctionCode.Basic functionCode) {
+        return (long)houseCode.ordinal() << HOUSE_SHIFT
+             | 1L << FUNCTION_BIT
+             | (long)functionCode.ordinal() << CODE_SHIFT;
+    }
+
+    /** Packs a brightness event at <code>level</code> of <code>levels</code>,
+     * without going through a <code>double</code>.
+     * @param levels The number of steps to full brightness, which must
+     * divide {@link #BRIGHTNESS_LEVELS}.
+     */
+    public static long function(HouseCode houseCode, FunctionCode.Brightness functionCode, int level, int levels) {
+        if(levels <= 0 || BRIGHTNESS_LEVELS % levels != 0)
+            throw new IllegalArgumentException("The number of levels must divide "+BRIGHTNESS_LEVELS+": "+levels);
+        if(level < 0 || level > levels)
+            throw new IllegalArgumentException("The level must be from 0 to "+levels+": "+level);
+        return (long)houseCode.ordinal() << HOUSE_SHIFT
+             | 1L << FUNCTION_BIT
+             | (long)functionCode.ordinal() << CODE_SHIFT
+             | (long)(level*(BRIGHTNESS_LEVELS/levels)) << BRIGHTNESS_SHIFT;
+    }
+
+    /** Packs an extended code event.
+     * @param unitCode The unit the code is for, or null.
+     */
+    public static long function(HouseCode houseCode, UnitCode unitCode, FunctionCode.Extended functionCode, byte data, byte command) {
+        long packed = (long)houseCode.ordinal() << HOUSE_SHIFT
+                    | 1L << FUNCTION_BIT
+                    | (long)functionCode.ordinal() << CODE_SHIFT
+                    | (long)(data & 0xFF) << DATA_SHIFT
+                    | (long)(command & 0xFF) << COMMAND_SHIFT;
+        if(unitCode != null)
+            packed |= 1L << UNIT_BIT | (long)unitCode.ordinal() << UNIT_SHIFT;
+        return packed;
+    }
+
+    public static HouseCode getHouseCode(long packed) {
+        return HOUSE_CODES[(int)(packed >>> HOUSE_SHIFT) & 0xF];
+    }
+
+    public static X10Event.Type getType(long packed) {
+        return isFunction(packed) ? X10Event.FUNCTION : X10Event.ADDRESS;
+    }
+
+    /** Returns the truth that the packed event is a function event. */
+    public static boolean isFunction(long packed) {
+        return (packed & 1L << FUNCTION_BIT) != 0;
+    }
+
+    /** Returns the unit code of an address event or the function code of a
+     * function event.
+     */
+    public static OtherCode getOtherCode(long packed) {
+        return isFunction(packed) ? (OtherCode)FUNCTION_CODES[code(packed)] : (OtherCode)UNIT_CODES[code(packed)];
+    }
+
+    /** Returns the unit code of an address event, or of an extended code
+     * that names its unit, or null.
+     */
+    public static UnitCode getUnitCode(long packed) {
+        if(!isFunction(packed))
+            return UNIT_CODES[code(packed)];
+        if((packed & 1L << UNIT_BIT) == 0)
+            return null;
+        return UNIT_CODES[(int)(packed >>> UNIT_SHIFT) & 0xF];
+    }
+
+    public static double getBrightnessLevel(long packed) {
+        return (double)((packed >>> BRIGHTNESS_SHIFT) & 0x1FFFF)/(double)BRIGHTNESS_LEVELS;
+    }
+
+    public static byte getData(long packed) {
+        return (byte)(packed >>> DATA_SHIFT);
+    }
+
+    public static byte getCommand(long packed) {
+        return (byte)(packed >>> COMMAND_SHIFT);
+    }
+
+    public static String toString(long packed) {
+        return unpack(packed, X10PackedEvent.class).toString();
+    }
+
+    private static int code(long packed) {
+        return (int)(packed >>> CODE_SHIFT) & 0xF;
+    }
+
+    /** Returns the level in BRIGHTNESS_LEVELSths, or -1 if it is not whole */
+    private static int toLevel(double level) {
+        long parts = Math.round(level*BRIGHTNESS_LEVELS);
+        if(parts < 0 || parts > BRIGHTNESS_LEVELS || (double)parts/(double)BRIGHTNESS_LEVELS != level)
+            return -1;
+        return (int)parts;
+    }
+}
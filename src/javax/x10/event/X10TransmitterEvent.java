@@ -17,56 +17,84 @@ package javax.x10.event;
  */
 public class X10TransmitterEvent extends java.util.EventObject {
     
-    /** <code>X10TransmitterEvent.Type</code> is only used as an enumeration
-     * pattern for the type of {@link javax.x10.event.X10TransmitterEvent}.
-     * The only instances of this class that you can use are defined as
-     * constants in {@link javax.x10.event.X10TransmitterEvent}.
+    /** <code>X10TransmitterEvent.Type</code> is the type of an
+     * {@link javax.x10.event.X10TransmitterEvent}.  Its constants are also
+     * defined in {@link javax.x10.event.X10TransmitterEvent}, where they
+     * have always been.
      * @see javax.x10.event.X10TransmitterEvent#EVENT_DELIVERED
      * @see javax.x10.event.X10TransmitterEvent#EVENT_UNDELIVERED
      * @see javax.x10.event.X10TransmitterEvent#QUEUE_EMPTIED
      * @see javax.x10.event.X10TransmitterEvent#QUEUE_UPDATED
      */
-    public static final class Type {
-        private String name;
-        private Type(String name) {
-            this.name = name;
-        }
-        /** Returns a text representation of the Type. */
-        public String toString() {
-            return name;
-        }
+    public static enum Type {
+        QUEUE_EMPTIED,
+        QUEUE_UPDATED,
+        EVENT_UNDELIVERED,
+        EVENT_DELIVERED
     }
     
     /** <code>X10TransmitterEvent</code>s of this type signify that the
      * {@link javax.x10.X10Transmitter}'s internal queue has been emptied.
      */
-    public static final Type QUEUE_EMPTIED      = new Type("QUEUE_EMPTIED");
+    public static final Type QUEUE_EMPTIED      = Type.QUEUE_EMPTIED;
     /** <code>X10TransmitterEvent</code>s of this type signify that the
      * {@link javax.x10.X10Transmitter}'s internal queue has been updated.
      */
-    public static final Type QUEUE_UPDATED      = new Type("QUEUE_UPDATED");
+    public static final Type QUEUE_UPDATED      = Type.QUEUE_UPDATED;
     /** <code>X10TransmitterEvent</code>s of this type signify that the
      * {@link javax.x10.X10Transmitter} was not able to deliver the related
      * {@link javax.x10.event.X10Event}.
      */
-    public static final Type EVENT_UNDELIVERED  = new Type("EVENT_UNDELIVERED");
+    public static final Type EVENT_UNDELIVERED  = Type.EVENT_UNDELIVERED;
     /** <code>X10TransmitterEvent</code>s of this type signify that the
      * {@link javax.x10.X10Transmitter} successfully delivered the related
      * {@link javax.x10.event.X10Event}.
      */
-    public static final Type EVENT_DELIVERED  = new Type("EVENT_DELIVERED");
+    public static final Type EVENT_DELIVERED  = Type.EVENT_DELIVERED;
     
     private X10Event x10Event;
     private Type type;
+    private X10Batch batch;
+    private int queueDepth;
+    private int eventsAdded;
+    private int eventsDrained;
     
     /** Creates a new instance of X10TransmitterEvent
      * @param source An Object that is the source of this event.
      * @param relatedEvent A related X10Event, if there is one.
      */
     public X10TransmitterEvent(Object source, Type type, X10Event relatedEvent) {
+        this(source, type, relatedEvent, null);
+    }
+    
+    /** Creates a new instance of X10TransmitterEvent about an event that
+     * was transmitted as part of a batch.
+     * @param source An Object that is the source of this event.
+     * @param relatedEvent A related X10Event, if there is one.
+     * @param batch The X10Batch the related event belongs to, if there is one.
+     */
+    public X10TransmitterEvent(Object source, Type type, X10Event relatedEvent, X10Batch batch) {
+        this(source, type, relatedEvent, batch, -1, 0, 0);
+    }
+    
+    /** Creates a new instance of X10TransmitterEvent that reports the
+     * state of the queue.
+     * @param source An Object that is the source of this event.
+     * @param relatedEvent A related X10Event, if there is one.
+     * @param batch The X10Batch the related event belongs to, if there is one.
+     * @param queueDepth The number of events in the queue, or -1 if not known.
+     * @param eventsAdded The number of events added to the queue since the last report.
+     * @param eventsDrained The number of events taken from the queue since the last report.
+     */
+    public X10TransmitterEvent(Object source, Type type, X10Event relatedEvent, X10Batch batch,
+                               int queueDepth, int eventsAdded, int eventsDrained) {
         super(source);
         this.x10Event = relatedEvent;
         this.type = type;
+        this.batch = batch;
+        this.queueDepth = queueDepth;
+        this.eventsAdded = eventsAdded;
+        this.eventsDrained = eventsDrained;
     }
     
     /** Returns the X10Event that is related to this event, or null if there 
@@ -79,11 +107,44 @@ public class X10TransmitterEvent extends java.util.EventObject {
      * X10Event returned will be the event that was not delivered.</LI><LI>For
      * <code>X10TransmitterEvent</code>s of type {@link #EVENT_DELIVERED}, the 
      * X10Event returned will be the event that was not delivered.</LI>
+     * When a whole batch is added to the queue, one {@link #QUEUE_UPDATED}
+     * is sent for it and the X10Event returned is the first of the batch.
+     * A coalesced notice returns the last event added or taken from the queue.
      */
     public X10Event getX10Event() {
         return this.x10Event;
     }
     
+    /** Returns the number of events in the transmitter's queue when this
+     * event was created, or -1 if the transmitter did not say.
+     */
+    public int getQueueDepth() {
+        return this.queueDepth;
+    }
+    
+    /** Returns the number of events added to the queue since the
+     * transmitter's last queue notice. Transmitters that coalesce their
+     * {@link #QUEUE_UPDATED} and {@link #QUEUE_EMPTIED} notices report
+     * every change through this and {@link #getEventsDrained}.
+     */
+    public int getEventsAdded() {
+        return this.eventsAdded;
+    }
+    
+    /** Returns the number of events taken from the queue to be sent since
+     * the transmitter's last queue notice.
+     */
+    public int getEventsDrained() {
+        return this.eventsDrained;
+    }
+    
+    /** Returns the {@link javax.x10.event.X10Batch} the related event was
+     * transmitted in, or null if it was transmitted on its own.
+     */
+    public X10Batch getX10Batch() {
+        return this.batch;
+    }
+    
     /** Returns the type of the current event.  This will be one of the Type
      * constants {@link #QUEUE_EMPTIED}, {@link #QUEUE_UPDATED}, 
      * {@link #EVENT_UNDELIVERED}, or {@link #EVENT_DELIVERED}.
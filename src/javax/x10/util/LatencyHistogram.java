@@ -0,0 +1,134 @@
+/*
+ * LatencyHistogram.java
+ *
+ * Created on October 19, 2026, 9:12 PM
+ */
+
+package javax.x10.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** A fixed-size, lock-free histogram of elapsed times.  Samples are recorded
+ * in nanoseconds and counted in buckets whose upper bounds are powers of two
+ * microseconds, so bucket <code>i</code> holds samples up to
+ * 2<sup>i</sup> microseconds.  Recording a sample never locks and never
+ * allocates, which makes it safe to call from I/O threads; reading the
+ * histogram gives a snapshot that may be slightly out of date with
+ * concurrent writers.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public final class LatencyHistogram {
+
+    /** The number of buckets, enough for samples of a little over an hour */
+    public static final int BUCKETS = 33;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong maximum = new AtomicLong();
+
+    /** Creates a new, empty instance of LatencyHistogram */
+    public LatencyHistogram() {
+    }
+
+    /** Records one sample.
+     * @param nanos the elapsed time in nanoseconds, negative values count as 0
+     */
+    public void record(long nanos) {
+        if(nanos < 0)
+            nanos = 0;
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        // Raise the maximum without locking
+        long max = maximum.get();
+        while(nanos > max && !maximum.compareAndSet(max, nanos)) {
+            max = maximum.get();
+        }
+    }
+
+    /** Returns the number of samples recorded. */
+    public long getCount() {
+        return count.get();
+    }
+
+    /** Returns the mean of the recorded samples in nanoseconds, or 0 if
+     * nothing has been recorded.
+     */
+    public long getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : total.get()/n;
+    }
+
+    /** Returns the largest sample recorded in nanoseconds. */
+    public long getMaximum() {
+        return maximum.get();
+    }
+
+    /** Returns an upper bound, in nanoseconds, for the given percentile of
+     * the recorded samples. The bound is the top of the bucket the
+     * percentile falls in, capped at the largest sample seen.
+     * @param percentile a value from 0.0 to 100.0
+     */
+    public long getPercentile(double percentile) {
+        long n = count.get();
+        if(n == 0)
+            return 0;
+        long rank = (long)Math.ceil(n*percentile/100.0);
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if(seen >= rank && seen > 0)
+                return Math.min(getUpperBound(i), maximum.get());
+        }
+        return maximum.get();
+    }
+
+    /** Returns a copy of the bucket counts. */
+    public long[] getCounts() {
+        long[] counts = new long[BUCKETS];
+        for(int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    /** Returns the upper bound of the given bucket in nanoseconds. */
+    public static long getUpperBound(int bucket) {
+        return (1L << bucket) * 1000L;
+    }
+
+    /** Clears all of the recorded samples. */
+    public void reset() {
+        for(int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        maximum.set(0);
+    }
+
+    /** Returns a one line summary of the histogram in milliseconds. */
+    public String toString() {
+        return "count="+getCount()
+              +", mean="+millis(getMean())+"ms"
+              +", p50="+millis(getPercentile(50))+"ms"
+              +", p99="+millis(getPercentile(99))+"ms"
+              +", max="+millis(getMaximum())+"ms";
+    }
+
+    private static int bucketOf(long nanos) {
+        long micros = nanos/1000L;
+        if(micros <= 1)
+            return 0;
+        // Round up to the next power of two
+        int bucket = 64 - Long.numberOfLeadingZeros(micros-1);
+        return bucket < BUCKETS ? bucket : BUCKETS-1;
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos/1000.0)/1000.0;
+    }
+}
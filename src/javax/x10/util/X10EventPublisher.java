@@ -0,0 +1,586 @@
+/*
+ * X10EventPublisher.java
+ *
+ * Created on October 23, 2026, 8:22 PM
+ */
+
+package javax.x10.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.x10.*;
+import javax.x10.codes.*;
+import javax.x10.event.*;
+
+/** <code>X10EventPublisher</code> is a {@link java.util.concurrent.Flow.Publisher}
+ * of the {@link javax.x10.event.X10Event}s an {@link javax.x10.X10Receiver}
+ * receives.  Unlike an {@link javax.x10.event.X10Listener}, a subscriber
+ * only gets events as fast as it asks for them, and a slow subscriber does
+ * not hold up the receiver or any other subscriber.
+ * <P>
+ * Each subscription has its own bounded buffer.  When the subscriber falls
+ * far enough behind that the buffer fills, the subscription's overflow
+ * strategy decides what is lost:
+ * <LI>{@link #DROP_OLDEST} drops the oldest buffered event to make room.</LI>
+ * <LI>{@link #DROP_NEWEST} drops the event that just arrived.</LI>
+ * <LI>{@link #LATEST_PER_UNIT} buffers each function together with the
+ * address events it goes with, and never buffers two such commands for the
+ * same units and function; a newer one replaces the older one and moves to
+ * the back of the buffer.  If the buffer is still full, the oldest whole
+ * command is dropped, so an address event is never dropped or delivered
+ * apart from its function.  Address events are held back until their
+ * function arrives.</LI>
+ * <P>
+ * Events are handed to subscribers on the publisher's own daemon threads,
+ * one thread per subscription at a time, so each subscriber sees its events
+ * in order and never concurrently.  A publisher can be created for any
+ * receiver.  The CM11A and network receivers also keep one of their own,
+ * whose subscribers are completed when the receiver is closed.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class X10EventPublisher implements Flow.Publisher<X10Event> {
+
+    /** What a subscription does when its buffer is full.  Each strategy is
+     * also a constant of {@link javax.x10.util.X10EventPublisher}.
+     */
+    public enum OverflowStrategy {
+        /** Drop the oldest buffered event to make room for a new one. */
+        DROP_OLDEST,
+        /** Drop new events until there is room in the buffer. */
+        DROP_NEWEST,
+        /** Keep only the latest command for each house code, addressed units and function code. */
+        LATEST_PER_UNIT
+    }
+
+    /** Drop the oldest buffered event to make room for a new one. */
+    public static final OverflowStrategy DROP_OLDEST     = OverflowStrategy.DROP_OLDEST;
+    /** Drop new events until there is room in the buffer. */
+    public static final OverflowStrategy DROP_NEWEST     = OverflowStrategy.DROP_NEWEST;
+    /** Keep only the latest command for each house code, addressed units and function code. */
+    public static final OverflowStrategy LATEST_PER_UNIT = OverflowStrategy.LATEST_PER_UNIT;
+
+    /** The buffer size used by {@link #subscribe(Flow.Subscriber)} */
+    public static final int DEFAULT_BUFFER_SIZE = 256;
+
+    private static final int HOUSES = HouseCode.values().length;
+    private static final int UNITS  = UnitCode.values().length;
+
+    /** A function and the address events it goes with, buffered as one by
+     * {@link #LATEST_PER_UNIT}
+     */
+    private static final class Command {
+        private X10Event[] events;
+        private int house;
+        /** The units the function is for, as a bit mask */
+        private int units;
+        private X10Event function;
+        /** The index of the next event to deliver */
+        private int next;
+
+        private Command(X10Event[] events, int house, int units, X10Event function) {
+            this.events = events;
+            this.house = house;
+            this.units = units;
+            this.function = function;
+        }
+
+        /** Returns the truth that the commands are for the same units and
+         * do the same thing, apart from their levels or data.
+         */
+        private boolean replaces(Command other) {
+            if(function == null || other.function == null)
+                return false;
+            if(house != other.house || units != other.units
+            || function.getOtherCode() != other.function.getOtherCode())
+                return false;
+            return !(function.getOtherCode() instanceof FunctionCode.Extended)
+                || function.getCommand() == other.function.getCommand();
+        }
+    }
+
+    /** A subscription to an X10EventPublisher. Besides the
+     * {@link java.util.concurrent.Flow.Subscription} methods it reports how
+     * many events were delivered and how many were lost to overflow.
+     */
+    public final class EventSubscription implements Flow.Subscription, Runnable {
+        private Flow.Subscriber<? super X10Event> subscriber;
+        private int bufferSize;
+        private OverflowStrategy overflowStrategy;
+        /** X10Events, or Commands under LATEST_PER_UNIT */
+        private LinkedList buffer;
+        /** The number of events in the buffer. Guarded by the lock on buffer. */
+        private int buffered;
+        /** The latest address event of each unit on each house code,
+         * indexed by house and unit ordinal, followed under
+         * LATEST_PER_UNIT. Guarded by the lock on buffer.
+         */
+        private X10Event[][] addressing;
+        /** The units addressed on each house code, as a bit mask.
+         * Guarded by the lock on buffer.
+         */
+        private int[] addressed;
+        /** Whether a function has been sent on each house code since it was
+         * last addressed. Guarded by the lock on buffer.
+         */
+        private boolean[] functionSent;
+        private AtomicBoolean ended;
+        private AtomicLong demand;
+        private AtomicInteger work;
+        private AtomicLong delivered;
+        private AtomicLong dropped;
+        private volatile boolean subscribed;
+        private volatile boolean cancelled;
+        private volatile boolean completed;
+        private Throwable error;
+
+        private EventSubscription(Flow.Subscriber<? super X10Event> subscriber, int bufferSize, OverflowStrategy overflowStrategy) {
+            this.subscriber = subscriber;
+            this.bufferSize = bufferSize;
+            this.overflowStrategy = overflowStrategy;
+            this.buffer = new LinkedList();
+            if(overflowStrategy == LATEST_PER_UNIT) {
+                this.addressing = new X10Event[HOUSES][UNITS];
+                this.addressed = new int[HOUSES];
+                this.functionSent = new boolean[HOUSES];
+            }
+            this.ended = new AtomicBoolean();
+            this.demand = new AtomicLong();
+            this.work = new AtomicInteger();
+            this.delivered = new AtomicLong();
+            this.dropped = new AtomicLong();
+        }
+
+        public void request(long n) {
+            if(n <= 0) {
+                // Reactive Streams rule 3.9
+                synchronized(buffer) {
+                    error = new IllegalArgumentException("Subscriptions must request a positive number of events, not "+n+".");
+                }
+                cancelled = true;
+                removeSubscription(this);
+                schedule();
+                return;
+            }
+            // Add to the demand without overflowing
+            long current, updated;
+            do {
+                current = demand.get();
+                updated = current+n < 0 ? Long.MAX_VALUE : current+n;
+            } while(!demand.compareAndSet(current, updated));
+            schedule();
+        }
+
+        public void cancel() {
+            cancelled = true;
+            removeSubscription(this);
+            synchronized(buffer) {
+                buffer.clear();
+                buffered = 0;
+            }
+            end();
+        }
+
+        /** Returns the number of events handed to the subscriber. */
+        public long getDeliveredCount() {
+            return delivered.get();
+        }
+
+        /** Returns the number of events lost because the buffer was full or
+         * replaced by a newer event for the same unit.
+         */
+        public long getDroppedCount() {
+            return dropped.get();
+        }
+
+        /** Returns the number of events waiting for the subscriber to ask for them. */
+        public int getBufferedCount() {
+            synchronized(buffer) {
+                return buffered;
+            }
+        }
+
+        /** Returns the number of events the subscriber has asked for but not yet received. */
+        public long getOutstandingDemand() {
+            return demand.get();
+        }
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        public OverflowStrategy getOverflowStrategy() {
+            return overflowStrategy;
+        }
+
+        /** Buffers an event for the subscriber, applying the overflow strategy. */
+        private void offer(X10Event event) {
+            if(cancelled)
+                return;
+            synchronized(buffer) {
+                if(overflowStrategy == LATEST_PER_UNIT) {
+                    Command command = follow(event);
+                    if(command == null)
+                        return;
+                    offer(command);
+                } else {
+                    if(buffered >= bufferSize) {
+                        dropped.incrementAndGet();
+                        if(overflowStrategy == DROP_NEWEST)
+                            return;
+                        buffer.removeFirst();
+                        buffered--;
+                    }
+                    buffer.addLast(event);
+                    buffered++;
+                }
+            }
+            schedule();
+        }
+
+        /** Follows the addressing on the event's house code, the same way
+         * {@link X10ListenerIndex} does, and returns the command a function
+         * event completes, or null if the event is an address event that
+         * is held until its function arrives.
+         */
+        private Command follow(X10Event event) {
+            int h = event.getHouseCode().ordinal();
+            if(event.getType() == X10Event.ADDRESS) {
+                // Addressing after a function starts a new set of addressed units
+                if(functionSent[h]) {
+                    addressed[h] = 0;
+                    functionSent[h] = false;
+                }
+                // Addressing a unit again replaces its address event, so
+                // repeated addressing holds at most one per unit
+                int u = event.getOtherCode().ordinal();
+                addressing[h][u] = event;
+                addressed[h] |= 1 << u;
+                return null;
+            }
+            FunctionCode functionCode = (FunctionCode)event.getOtherCode();
+            boolean houseWide = X10Filter.isHouseWide(functionCode);
+            // Extended codes may name their unit instead of relying on addressing
+            boolean dependent = !houseWide && event.getUnitCode() == null;
+            int units = 0;
+            List events = new ArrayList();
+            // A function that relies on addressing carries the address events
+            // with it, even if they went out with an earlier function, so
+            // the command means the same wherever it ends up in the buffer
+            if(dependent || !functionSent[h]) {
+                addAddressing(h, events);
+                if(dependent)
+                    units = addressed[h];
+            }
+            if(event.getUnitCode() != null)
+                units = 1 << event.getUnitCode().ordinal();
+            events.add(event);
+            functionSent[h] = true;
+            return new Command((X10Event[])events.toArray(new X10Event[events.size()]), h, units, event);
+        }
+
+        /** Adds the address events of the units addressed on a house code,
+         * in unit order.
+         */
+        private void addAddressing(int h, List events) {
+            for(int u = 0; u < UNITS; u++) {
+                if((addressed[h] & (1 << u)) != 0)
+                    events.add(addressing[h][u]);
+            }
+        }
+
+        /** Buffers a command, replacing an older one for the same units and
+         * function and dropping the oldest whole commands to make room.
+         */
+        private void offer(Command command) {
+            for(Iterator i = buffer.iterator(); i.hasNext();) {
+                Command old = (Command)i.next();
+                // Part of a command that has started going out can not be taken back
+                if(old.next == 0 && command.replaces(old)) {
+                    i.remove();
+                    buffered -= old.events.length;
+                    dropped.addAndGet(old.events.length);
+                    break;
+                }
+            }
+            for(Iterator i = buffer.iterator(); i.hasNext() && buffered+command.events.length > bufferSize;) {
+                Command old = (Command)i.next();
+                if(old.next == 0) {
+                    i.remove();
+                    buffered -= old.events.length;
+                    dropped.addAndGet(old.events.length);
+                }
+            }
+            buffer.addLast(command);
+            buffered += command.events.length;
+        }
+
+        private void complete() {
+            if(overflowStrategy == LATEST_PER_UNIT) {
+                synchronized(buffer) {
+                    // Address events still waiting for a function go out last
+                    for(int h = 0; h < HOUSES; h++) {
+                        if(!functionSent[h] && addressed[h] != 0) {
+                            List events = new ArrayList(UNITS);
+                            addAddressing(h, events);
+                            offer(new Command((X10Event[])events.toArray(new X10Event[events.size()]), h, 0, null));
+                            addressed[h] = 0;
+                        }
+                    }
+                }
+            }
+            completed = true;
+            schedule();
+        }
+
+        /** Tells the publisher the subscription is over, once */
+        private void end() {
+            if(ended.compareAndSet(false, true))
+                subscriptionEnded();
+        }
+
+        private void schedule() {
+            // Nothing is left to hand over once the subscription is over,
+            // and the executor may be shut down
+            if(ended.get())
+                return;
+            // Only one drain runs at a time; anyone arriving while it runs
+            // bumps the counter so it goes around again
+            if(work.getAndIncrement() == 0)
+                executor.execute(this);
+        }
+
+        /** Drains the buffer into the subscriber as far as demand allows. */
+        public void run() {
+            int missed = 1;
+            while(true) {
+                drain();
+                missed = work.addAndGet(-missed);
+                if(missed == 0)
+                    break;
+            }
+        }
+
+        private void drain() {
+            if(!subscribed) {
+                subscribed = true;
+                subscriber.onSubscribe(this);
+            }
+            Throwable failure;
+            synchronized(buffer) {
+                failure = error;
+                error = null;
+            }
+            if(failure != null) {
+                subscriber.onError(failure);
+                end();
+                return;
+            }
+            while(!cancelled && demand.get() > 0) {
+                X10Event event;
+                synchronized(buffer) {
+                    if(buffer.isEmpty())
+                        break;
+                    Object first = buffer.getFirst();
+                    if(first instanceof Command) {
+                        Command command = (Command)first;
+                        event = command.events[command.next++];
+                        if(command.next == command.events.length)
+                            buffer.removeFirst();
+                    } else {
+                        event = (X10Event)buffer.removeFirst();
+                    }
+                    buffered--;
+                }
+                if(demand.get() != Long.MAX_VALUE)
+                    demand.decrementAndGet();
+                delivered.incrementAndGet();
+                try {
+                    subscriber.onNext(event);
+                } catch(RuntimeException e) {
+                    // Reactive Streams rule 2.13, the subscriber is broken
+                    cancel();
+                    return;
+                }
+            }
+            if(completed && !cancelled && getBufferedCount() == 0) {
+                cancelled = true;
+                subscriber.onComplete();
+                end();
+            }
+        }
+    }
+
+    /** Forwards every event the receiver gets to the subscriptions */
+    private class PublishingListener implements X10Listener {
+        private PublishingListener() {
+        }
+
+        public void address(X10Event e) {               publish(e); }
+        public void allLightsOff(X10Event e) {          publish(e); }
+        public void allLightsOn(X10Event e) {           publish(e); }
+        public void allUnitsOff(X10Event e) {           publish(e); }
+        public void brighten(X10Event e) {              publish(e); }
+        public void dim(X10Event e) {                   publish(e); }
+        public void extendedCode(X10Event e) {          publish(e); }
+        public void extendedDataTransfer(X10Event e) {  publish(e); }
+        public void hailAcknowledge(X10Event e) {       publish(e); }
+        public void hailRequest(X10Event e) {           publish(e); }
+        public void off(X10Event e) {                   publish(e); }
+        public void on(X10Event e) {                    publish(e); }
+        public void presetDim1(X10Event e) {            publish(e); }
+        public void presetDim2(X10Event e) {            publish(e); }
+        public void statusOff(X10Event e) {             publish(e); }
+        public void statusOn(X10Event e) {              publish(e); }
+        public void statusRequest(X10Event e) {         publish(e); }
+    }
+
+    private static final ThreadFactory DAEMON_THREADS = new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "X10EventPublisher");
+            t.setDaemon(true);
+            return t;
+        }
+    };
+
+    private volatile EventSubscription[] subscriptions;
+    private Executor executor;
+    /** The executor this publisher made for itself, shut down once it is
+     * closed and its subscriptions are over, or null
+     */
+    private ExecutorService ownExecutor;
+    /** The number of subscriptions not yet over. Guarded by the lock on this publisher. */
+    private int open;
+    private volatile boolean closed;
+
+    /** Creates a new instance of X10EventPublisher that publishes the events
+     * the given receiver gets.
+     */
+    public X10EventPublisher(X10Receiver receiver) {
+        this(receiver, Executors.newCachedThreadPool(DAEMON_THREADS));
+        this.ownExecutor = (ExecutorService)executor;
+    }
+
+    /** Creates a new instance of X10EventPublisher
+     * @param receiver The receiver whose events are published.
+     * @param executor Runs the tasks that hand events to subscribers.
+     */
+    public X10EventPublisher(X10Receiver receiver, Executor executor) {
+        if(receiver == null)
+            throw new IllegalArgumentException("X10Receiver can not be null.");
+        if(executor == null)
+            throw new IllegalArgumentException("Executor can not be null.");
+        this.subscriptions = new EventSubscription[0];
+        this.executor = executor;
+        receiver.addX10Listener(new PublishingListener());
+    }
+
+    /** Subscribes with a buffer of {@link #DEFAULT_BUFFER_SIZE} events that
+     * drops the oldest event when it is full.
+     */
+    public void subscribe(Flow.Subscriber<? super X10Event> subscriber) {
+        subscribe(subscriber, DEFAULT_BUFFER_SIZE, DROP_OLDEST);
+    }
+
+    /** Subscribes with the given buffer size and overflow strategy.
+     * @return the new subscription, which is also passed to the subscriber's
+     * <code>onSubscribe</code>
+     */
+    public EventSubscription subscribe(Flow.Subscriber<? super X10Event> subscriber, int bufferSize, OverflowStrategy overflowStrategy) {
+        if(subscriber == null)
+            throw new NullPointerException("Subscriber can not be null.");
+        if(bufferSize < 1)
+            throw new IllegalArgumentException("The buffer size must be at least 1, not "+bufferSize+".");
+        if(overflowStrategy == null)
+            throw new IllegalArgumentException("OverflowStrategy can not be null.");
+        EventSubscription subscription = new EventSubscription(subscriber, bufferSize, overflowStrategy);
+        boolean added = false;
+        synchronized(this) {
+            if(!closed) {
+                EventSubscription[] larger = new EventSubscription[subscriptions.length+1];
+                System.arraycopy(subscriptions, 0, larger, 0, subscriptions.length);
+                larger[subscriptions.length] = subscription;
+                subscriptions = larger;
+                open++;
+                added = true;
+            }
+        }
+        if(added) {
+            subscription.schedule();
+        } else {
+            // The executor may already be shut down, so finish here
+            subscription.subscribed = true;
+            subscription.cancelled = true;
+            subscription.ended.set(true);
+            subscriber.onSubscribe(subscription);
+            subscriber.onComplete();
+        }
+        return subscription;
+    }
+
+    /** Returns the current subscriptions. */
+    public EventSubscription[] getSubscriptions() {
+        return subscriptions.clone();
+    }
+
+    /** Returns the number of events lost to overflow across all current subscriptions. */
+    public long getDroppedCount() {
+        EventSubscription[] current = subscriptions;
+        long total = 0;
+        for(int i = 0; i < current.length; i++) {
+            total += current[i].getDroppedCount();
+        }
+        return total;
+    }
+
+    /** Completes every subscription once its buffered events are delivered.
+     * Later subscribers are completed right away.
+     */
+    public void close() {
+        EventSubscription[] current;
+        synchronized(this) {
+            if(closed)
+                return;
+            closed = true;
+            current = subscriptions;
+            subscriptions = new EventSubscription[0];
+            if(open == 0 && ownExecutor != null)
+                ownExecutor.shutdown();
+        }
+        for(int i = 0; i < current.length; i++) {
+            current[i].complete();
+        }
+    }
+
+    private void publish(X10Event event) {
+        EventSubscription[] current = subscriptions;
+        for(int i = 0; i < current.length; i++) {
+            current[i].offer(event);
+        }
+    }
+
+    /** Shuts down the publisher's own executor once it is closed and the
+     * last subscription is over.
+     */
+    private synchronized void subscriptionEnded() {
+        open--;
+        if(closed && open == 0 && ownExecutor != null)
+            ownExecutor.shutdown();
+    }
+
+    private synchronized void removeSubscription(EventSubscription subscription) {
+        int index = -1;
+        for(int i = 0; i < subscriptions.length; i++) {
+            if(subscriptions[i] == subscription)
+                index = i;
+        }
+        if(index < 0)
+            return;
+        EventSubscription[] smaller = new EventSubscription[subscriptions.length-1];
+        System.arraycopy(subscriptions, 0, smaller, 0, index);
+        System.arraycopy(subscriptions, index+1, smaller, index, smaller.length-index);
+        subscriptions = smaller;
+    }
+}
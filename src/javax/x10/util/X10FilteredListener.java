@@ -0,0 +1,82 @@
+/*
+ * X10FilteredListener.java
+ *
+ * Created on November 16, 2026, 7:55 PM
+ */
+
+package javax.x10.util;
+
+import javax.x10.event.*;
+
+/** <code>X10FilteredListener</code> passes on only the events an
+ * {@link javax.x10.event.X10Filter} matches to another
+ * {@link javax.x10.event.X10Listener}.  It lets a filtered listener be
+ * registered with an {@link javax.x10.X10Receiver} that is not an
+ * {@link javax.x10.X10FilteredReceiver}:
+ * <pre>
+ * if(receiver instanceof X10FilteredReceiver)
+ *     ((X10FilteredReceiver)receiver).addX10Listener(filter, listener);
+ * else
+ *     receiver.addX10Listener(new X10FilteredListener(filter, listener));
+ * </pre>
+ * The wrapper is what is registered, so it is also what has to be
+ * deregistered.  It follows the addressing on each house code itself, so
+ * it must be told about every event the receiver gets, in order.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class X10FilteredListener implements X10Listener {
+
+    private X10Filter filter;
+    private X10Listener listener;
+    /** Holds just the one registration, to follow the addressing */
+    private X10ListenerIndex index;
+
+    /** Creates a new instance of X10FilteredListener
+     * @param filter The events to pass on.
+     * @param listener Where to pass them.
+     */
+    public X10FilteredListener(X10Filter filter, X10Listener listener) {
+        if(filter == null)
+            throw new IllegalArgumentException("X10Filter can not be null.");
+        if(listener == null)
+            throw new IllegalArgumentException("X10Listener can not be null.");
+        this.filter = filter;
+        this.listener = listener;
+        this.index = new X10ListenerIndex();
+        this.index.add(filter, listener);
+    }
+
+    /** Returns the events that are passed on. */
+    public X10Filter getFilter() {
+        return this.filter;
+    }
+
+    /** Returns the listener the events are passed on to. */
+    public X10Listener getListener() {
+        return this.listener;
+    }
+
+    public void address(X10Event e) {               received(e); }
+    public void allLightsOff(X10Event e) {          received(e); }
+    public void allLightsOn(X10Event e) {           received(e); }
+    public void allUnitsOff(X10Event e) {           received(e); }
+    public void brighten(X10Event e) {              received(e); }
+    public void dim(X10Event e) {                   received(e); }
+    public void extendedCode(X10Event e) {          received(e); }
+    public void extendedDataTransfer(X10Event e) {  received(e); }
+    public void hailAcknowledge(X10Event e) {       received(e); }
+    public void hailRequest(X10Event e) {           received(e); }
+    public void off(X10Event e) {                   received(e); }
+    public void on(X10Event e) {                    received(e); }
+    public void presetDim1(X10Event e) {            received(e); }
+    public void presetDim2(X10Event e) {            received(e); }
+    public void statusOff(X10Event e) {             received(e); }
+    public void statusOn(X10Event e) {              received(e); }
+    public void statusRequest(X10Event e) {         received(e); }
+
+    private void received(X10Event e) {
+        if(this.index.getListeners(e).length > 0)
+            X10EventDispatcher.dispatch(this.listener, e);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * X10FramePlan.java
+ *
+ * Created on October 24, 2026, 7:38 PM
+ */
+
+package javax.x10.util;
+
+import java.util.Arrays;
+
+import javax.x10.X10BatchTransmitter;
+import javax.x10.X10Transmitter;
+import javax.x10.codes.FunctionCode;
+import javax.x10.event.X10Batch;
+import javax.x10.event.X10Event;
+
+/** <code>X10FramePlan</code> is an ordered list of
+ * {@link javax.x10.event.X10Event}s to transmit, along with an estimate of
+ * how long they will take on the powerline.
+ * <P>
+ * The estimate counts AC line cycles.  Every X10 code takes 11 cycles and
+ * is sent twice, and 3 quiet cycles separate one code from the next.  A
+ * dim or bright code is repeated once for each of the 22 dim steps it
+ * covers instead.  At 60Hz a plain address or function frame works out to
+ * about 417 milliseconds.
+ *
+ * @see javax.x10.util.X10SceneCompiler
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class X10FramePlan {
+
+    /** The number of AC cycles in one X10 code */
+    public static final int CODE_CYCLES = 11;
+    /** The number of quiet AC cycles between frames */
+    public static final int GAP_CYCLES = 3;
+    /** The number of dim steps between off and full brightness */
+    public static final int DIM_STEPS = 22;
+    /** The AC line frequency assumed by {@link #getEstimatedDuration()} */
+    public static final int DEFAULT_LINE_FREQUENCY = 60;
+
+    private X10Event[] events;
+    private int cycles;
+
+    /** Creates a new instance of X10FramePlan
+     * @param events The events to transmit, in order.
+     */
+    public X10FramePlan(X10Event[] events) {
+        if(events == null)
+            throw new IllegalArgumentException("X10Event[] can not be null.");
+        this.events = events.clone();
+        this.cycles = 0;
+        for(int i = 0; i < events.length; i++) {
+            this.cycles += getCycles(events[i]);
+        }
+    }
+
+    /** Returns the events to transmit, in order. */
+    public X10Event[] getEvents() {
+        return this.events.clone();
+    }
+
+    /** Returns the number of frames in the plan. */
+    public int getFrameCount() {
+        return this.events.length;
+    }
+
+    /** Returns the truth that the plan has nothing to transmit. */
+    public boolean isEmpty() {
+        return this.events.length == 0;
+    }
+
+    /** Returns the estimated number of AC line cycles the plan takes. */
+    public int getCycles() {
+        return this.cycles;
+    }
+
+    /** Returns the estimated time the plan takes on a 60Hz powerline, in milliseconds. */
+    public long getEstimatedDuration() {
+        return getEstimatedDuration(DEFAULT_LINE_FREQUENCY);
+    }
+
+    /** Returns the estimated time the plan takes, in milliseconds.
+     * @param lineFrequency The AC line frequency in Hz, usually 50 or 60.
+     */
+    public long getEstimatedDuration(int lineFrequency) {
+        if(lineFrequency <= 0)
+            throw new IllegalArgumentException("The line frequency must be positive, not "+lineFrequency+".");
+        return (this.cycles*1000L+lineFrequency-1)/lineFrequency;
+    }
+
+    /** Queues every event in the plan on the transmitter as one batch, so
+     * no other event lands between an address and its function.  A
+     * transmitter that is not an {@link javax.x10.X10BatchTransmitter} is
+     * given the events one at a time, in order, and other events may land
+     * between them.
+     * @return the batch, or null if the plan is empty or the transmitter
+     * can not queue batches
+     */
+    public X10Batch transmit(X10Transmitter transmitter) {
+        if(transmitter == null)
+            throw new IllegalArgumentException("X10Transmitter can not be null.");
+        if(this.events.length == 0)
+            return null;
+        if(transmitter instanceof X10BatchTransmitter)
+            return ((X10BatchTransmitter)transmitter).transmit(Arrays.asList(this.events));
+        for(int i = 0; i < this.events.length; i++) {
+            transmitter.transmit(this.events[i]);
+        }
+        return null;
+    }
+
+    /** Returns the estimated number of AC line cycles one event takes,
+     * including the quiet cycles after it.
+     */
+    public static int getCycles(X10Event event) {
+        if(event.getOtherCode() instanceof FunctionCode.Brightness) {
+            int steps = Math.max(1, (int)Math.round(event.getBrightnessLevel()*DIM_STEPS));
+            return CODE_CYCLES*(1+steps)+GAP_CYCLES;
+        }
+        return CODE_CYCLES*2+GAP_CYCLES;
+    }
+
+    public String toString() {
+        StringBuffer buffer = new StringBuffer("X10FramePlan[");
+        buffer.append(this.events.length).append(" frames,");
+        buffer.append(getEstimatedDuration()).append("ms]");
+        return buffer.toString();
+    }
+}
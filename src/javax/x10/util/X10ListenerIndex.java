@@ -0,0 +1,219 @@
+/*
+ * X10ListenerIndex.java
+ *
+ * Created on October 22, 2026, 9:03 PM
+ */
+
+package javax.x10.util;
+
+import java.util.*;
+
+import javax.x10.codes.*;
+import javax.x10.event.*;
+
+/** <code>X10ListenerIndex</code> keeps track of the
+ * {@link javax.x10.event.X10Listener}s registered with an
+ * {@link javax.x10.X10Receiver} and the
+ * {@link javax.x10.event.X10Filter}s they were registered with, and finds
+ * the listeners that want a given event without testing every one of them.
+ * <P>
+ * Each listener is filed under every (house code, unit or function code)
+ * pair its filter can match, so looking up an event only visits the
+ * listeners filed under that event's pair.  Listeners whose filter names
+ * unit codes still have to be checked against what is addressed when a
+ * function event arrives, but that is a single bit mask test.
+ * <P>
+ * Because function events depend on addressing, the index follows the
+ * addressing on each house code as events go through
+ * {@link #getListeners(X10Event)}.  Receivers must call it once for every
+ * event, in the order the events were received.
+ *
+ * @see javax.x10.event.X10Filter
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class X10ListenerIndex {
+
+    private static final int HOUSES     = 16;
+    /** 16 unit codes for address events followed by 16 function codes */
+    private static final int CODES      = 32;
+    /** Every one of 16 houses, units or functions */
+    private static final int ALL        = 0xFFFF;
+
+    private static final X10Listener[] NO_LISTENERS = new X10Listener[0];
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+
+    /** One registration of a listener */
+    private static final class Entry {
+        private X10Listener listener;
+        private X10Filter filter;
+        /** Bit i is set if the filter matches the i-th unit code */
+        private int unitMask;
+        /** True if the filter names no unit codes, so it wants functions
+         * whatever is addressed, even when nothing is
+         */
+        private boolean anyUnit;
+        private Entry(X10Listener listener, X10Filter filter) {
+            this.listener = listener;
+            this.filter = filter;
+            this.unitMask = mask(filter.getUnitCodes());
+            this.anyUnit = filter.getUnitCodes() == null;
+        }
+        /** Returns the truth that the entry wants an event for the given units */
+        private boolean wants(int matching) {
+            return anyUnit || (unitMask & matching) != 0;
+        }
+    }
+
+    /** The registrations in the order they were made */
+    private List entries;
+    /** The registrations filed by house code and unit or function code */
+    private Entry[][] buckets;
+    /** The units addressed on each house code, as a bit mask */
+    private int[] addressed;
+    /** Whether a function has been sent on each house code since it was last addressed */
+    private boolean[] functionSent;
+
+    /** Creates a new, empty instance of X10ListenerIndex */
+    public X10ListenerIndex() {
+        this.entries = new ArrayList();
+        this.buckets = new Entry[HOUSES*CODES][];
+        Arrays.fill(this.buckets, NO_ENTRIES);
+        this.addressed = new int[HOUSES];
+        this.functionSent = new boolean[HOUSES];
+    }
+
+    /** Registers a listener that is told about every event. */
+    public void add(X10Listener listener) {
+        add(X10Filter.ALL, listener);
+    }
+
+    /** Registers a listener that is told about the events the filter matches. */
+    public synchronized void add(X10Filter filter, X10Listener listener) {
+        if(filter == null)
+            throw new IllegalArgumentException("X10Filter can not be null.");
+        if(listener == null)
+            throw new IllegalArgumentException("X10Listener can not be null.");
+        Entry entry = new Entry(listener, filter);
+        this.entries.add(entry);
+
+        int houseMask = filter.getHouseCode() == null ? ALL
+                      : 1 << filter.getHouseCode().ordinal();
+        // Address events are only wanted when there is no function filter
+        int addressMask = filter.getFunctionCodes() == null ? entry.unitMask : 0;
+        int functionMask = mask(filter.getFunctionCodes());
+        for(int h = 0; h < HOUSES; h++) {
+            if((houseMask & (1 << h)) == 0)
+                continue;
+            for(int c = 0; c < HOUSES; c++) {
+                if((addressMask & (1 << c)) != 0)
+                    file(h, c, entry);
+                if((functionMask & (1 << c)) != 0)
+                    file(h, HOUSES+c, entry);
+            }
+        }
+    }
+
+    /** Deregisters every registration of the listener. */
+    public synchronized void remove(X10Listener listener) {
+        for(Iterator i = this.entries.iterator();i.hasNext();) {
+            if(((Entry)i.next()).listener == listener)
+                i.remove();
+        }
+        for(int b = 0; b < this.buckets.length; b++) {
+            Entry[] bucket = this.buckets[b];
+            int kept = 0;
+            for(int i = 0; i < bucket.length; i++) {
+                if(bucket[i].listener != listener)
+                    kept++;
+            }
+            if(kept == bucket.length)
+                continue;
+            Entry[] smaller = kept == 0 ? NO_ENTRIES : new Entry[kept];
+            for(int i = 0, j = 0; i < bucket.length; i++) {
+                if(bucket[i].listener != listener)
+                    smaller[j++] = bucket[i];
+            }
+            this.buckets[b] = smaller;
+        }
+    }
+
+    /** Returns the number of registrations. */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /** Returns every registered listener, in the order they were registered. */
+    public synchronized X10Listener[] getListeners() {
+        X10Listener[] listeners = new X10Listener[this.entries.size()];
+        for(int i = 0; i < listeners.length; i++) {
+            listeners[i] = ((Entry)this.entries.get(i)).listener;
+        }
+        return listeners;
+    }
+
+    /** Returns the listeners that want the given event, in the order they
+     * were registered, and updates the addressing the index is following.
+     */
+    public synchronized X10Listener[] getListeners(X10Event event) {
+        int h = event.getHouseCode().ordinal();
+        Entry[] bucket;
+        int matching;
+        if(event.getType() == X10Event.ADDRESS) {
+            int u = event.getOtherCode().ordinal();
+            // Addressing after a function starts a new set of addressed units
+            if(this.functionSent[h]) {
+                this.addressed[h] = 0;
+                this.functionSent[h] = false;
+            }
+            this.addressed[h] |= 1 << u;
+            bucket = this.buckets[h*CODES+u];
+            matching = ALL;
+        } else {
+            int f = event.getOtherCode().ordinal();
+            this.functionSent[h] = true;
+            bucket = this.buckets[h*CODES+HOUSES+f];
+            if(X10Filter.isHouseWide((FunctionCode)event.getOtherCode()))
+                matching = ALL;
+            else if(event.getUnitCode() != null)
+                // Extended codes may name their unit instead of relying on addressing
+                matching = 1 << event.getUnitCode().ordinal();
+            else
+                matching = this.addressed[h];
+        }
+        if(bucket.length == 0)
+            return NO_LISTENERS;
+
+        // Count first so the result is exactly the right size
+        int count = 0;
+        for(int i = 0; i < bucket.length; i++) {
+            if(bucket[i].wants(matching))
+                count++;
+        }
+        X10Listener[] listeners = new X10Listener[count];
+        for(int i = 0, j = 0; i < bucket.length; i++) {
+            if(bucket[i].wants(matching))
+                listeners[j++] = bucket[i].listener;
+        }
+        return listeners;
+    }
+
+    private void file(int house, int code, Entry entry) {
+        int b = house*CODES+code;
+        Entry[] bucket = this.buckets[b];
+        Entry[] larger = new Entry[bucket.length+1];
+        System.arraycopy(bucket, 0, larger, 0, bucket.length);
+        larger[bucket.length] = entry;
+        this.buckets[b] = larger;
+    }
+
+    private static int mask(Set codes) {
+        if(codes == null)
+            return ALL;
+        int mask = 0;
+        for(Iterator i = codes.iterator();i.hasNext();) {
+            mask |= 1 << ((Code)i.next()).ordinal();
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,540 @@
+/*
+ * X10ListenerMailboxes.java
+ *
+ * Created on November 10, 2026, 8:05 PM
+ */
+
+package javax.x10.util;
+
+import java.util.*;
+import java.util.logging.*;
+
+import javax.x10.*;
+import javax.x10.event.*;
+
+/** <code>X10ListenerMailboxes</code> delivers the events an
+ * {@link javax.x10.X10Receiver} receives to its listeners, each through a
+ * bounded mailbox of its own, emptied by a thread of its own.  Each
+ * listener sees its events in order and never two at once, and a listener
+ * that is slow or hangs only holds up its own mailbox.
+ * <P>
+ * Every callback is timed.  A listener whose callbacks run over the
+ * latency budget several times in a row, whose callback is still running
+ * that many budgets after it started, or whose mailbox fills up, is
+ * quarantined and reported, and from then on the quarantine policy
+ * decides what it gets:
+ * <LI>{@link #DROP} drops everything posted to it until it is released or
+ * the quarantine time has passed, after which it gets another chance.</LI>
+ * <LI>{@link #SAMPLE} only delivers one event in every sample rate, and
+ * releases it once as many callbacks in a row as it took to quarantine it
+ * are back under the budget.</LI>
+ * <LI>{@link #DISCONNECT} deregisters it from the receiver.</LI>
+ * <P>
+ * Mailbox threads are daemons, started when something is posted and let go
+ * once the mailbox has been idle for a while.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class X10ListenerMailboxes {
+
+    // Setup logging facilities
+    private static final Logger LOG =
+            Logger.getLogger(X10ListenerMailboxes.class.getName());
+
+    /** What a quarantined listener gets.  Each policy is also a constant of
+     * {@link javax.x10.util.X10ListenerMailboxes}.
+     */
+    public enum QuarantinePolicy {
+        /** Drop everything posted to a quarantined listener. */
+        DROP,
+        /** Deliver one in every sample rate of the events posted to a quarantined listener. */
+        SAMPLE,
+        /** Deregister a quarantined listener from the receiver. */
+        DISCONNECT
+    }
+
+    /** Drop everything posted to a quarantined listener. */
+    public static final QuarantinePolicy DROP       = QuarantinePolicy.DROP;
+    /** Deliver one in every sample rate of the events posted to a quarantined listener. */
+    public static final QuarantinePolicy SAMPLE     = QuarantinePolicy.SAMPLE;
+    /** Deregister a quarantined listener from the receiver. */
+    public static final QuarantinePolicy DISCONNECT = QuarantinePolicy.DISCONNECT;
+
+    /** The number of posts a mailbox holds by default */
+    public static final int DEFAULT_CAPACITY = 1024;
+    /** The longest a callback should take by default, in milliseconds */
+    public static final long DEFAULT_LATENCY_BUDGET = 250;
+    /** How many callbacks in a row may run over the budget by default */
+    public static final int DEFAULT_STRIKES = 3;
+    /** One in how many events a sampled listener gets by default */
+    public static final int DEFAULT_SAMPLE_RATE = 10;
+    /** How long a listener quarantined under {@link #DROP} stays so by default, in milliseconds */
+    public static final long DEFAULT_QUARANTINE_TIME = 10000;
+
+    /** How long a mailbox thread waits for work before it is let go */
+    private static final long IDLE_TIMEOUT = 30000;
+
+    /** The mailbox of one listener */
+    public final class Mailbox implements Runnable {
+        private Object listener;
+        /** Everything below is guarded by the lock on the mailboxes */
+        private LinkedList posts;
+        private Thread thread;
+        private boolean removed;
+        private boolean quarantined;
+        /** When the listener was last quarantined */
+        private long quarantinedAt;
+        private int strikes;
+        private int recovered;
+        private long skipped;
+        /** When the running callback started, or 0 */
+        private long callbackStarted;
+        private long lastLatency;
+        private long delivered;
+        private long dropped;
+
+        private Mailbox(Object listener) {
+            this.listener = listener;
+            this.posts = new LinkedList();
+        }
+
+        /** Returns the listener the mailbox delivers to. */
+        public Object getListener() {
+            return this.listener;
+        }
+
+        /** Returns the truth that the listener is quarantined. */
+        public boolean isQuarantined() {
+            synchronized(lock) {
+                return this.quarantined;
+            }
+        }
+
+        /** Lets a quarantined listener have all its events again. */
+        public void release() {
+            synchronized(lock) {
+                quarantined = false;
+                strikes = 0;
+                recovered = 0;
+            }
+        }
+
+        /** Returns the number of posts waiting to be delivered. */
+        public int getPendingCount() {
+            synchronized(lock) {
+                return posts.size();
+            }
+        }
+
+        /** Returns the number of posts handed to the listener. */
+        public long getDeliveredCount() {
+            synchronized(lock) {
+                return delivered;
+            }
+        }
+
+        /** Returns the number of posts dropped because the mailbox was full
+         * or the listener was quarantined.
+         */
+        public long getDroppedCount() {
+            synchronized(lock) {
+                return dropped;
+            }
+        }
+
+        /** Returns how long the last callback took, in nanoseconds. */
+        public long getLastLatency() {
+            synchronized(lock) {
+                return lastLatency;
+            }
+        }
+
+        public void run() {
+            while(true) {
+                Object post;
+                synchronized(lock) {
+                    long idleSince = System.currentTimeMillis();
+                    while(posts.isEmpty()) {
+                        long remaining = IDLE_TIMEOUT-(System.currentTimeMillis()-idleSince);
+                        if(removed || closed || remaining <= 0) {
+                            thread = null;
+                            return;
+                        }
+                        try {
+                            lock.wait(remaining);
+                        } catch(InterruptedException e) {
+                            thread = null;
+                            return;
+                        }
+                    }
+                    post = posts.removeFirst();
+                    callbackStarted = System.nanoTime();
+                }
+                long start = System.nanoTime();
+                try {
+                    deliver(listener, post);
+                } catch(RuntimeException e) {
+                    LOG.log(Level.WARNING,"X10 listener "+listener+" threw an exception",e);
+                }
+                long nanos = System.nanoTime()-start;
+                dispatched(listener, nanos);
+                String reason = timed(nanos);
+                if(reason != null)
+                    quarantine(this, reason);
+            }
+        }
+
+        /** Records how long a callback took.
+         * @return why the listener has just run out of strikes, or null
+         */
+        private String timed(long nanos) {
+            synchronized(lock) {
+                callbackStarted = 0;
+                lastLatency = nanos;
+                delivered++;
+                if(nanos <= latencyBudget*1000000L) {
+                    strikes = 0;
+                    // Sampled listeners earn their way back
+                    if(quarantined && policy == SAMPLE && ++recovered >= maxStrikes) {
+                        quarantined = false;
+                        recovered = 0;
+                        LOG.info("X10 listener "+listener+" is back under its latency budget");
+                    }
+                    return null;
+                }
+                recovered = 0;
+                if(++strikes < maxStrikes || quarantined)
+                    return null;
+                return "ran over its "+latencyBudget+" ms budget "+strikes+" times in a row, the last time "+nanos/1000000+" ms";
+            }
+        }
+
+        public String toString() {
+            synchronized(lock) {
+                return listener+(quarantined ? " (quarantined)" : "")+": "+posts.size()+" pending, "
+                      +delivered+" delivered, "+dropped+" dropped";
+            }
+        }
+    }
+
+    private X10Receiver receiver;
+    private String name;
+
+    /** Everything below is guarded by the lock */
+    private Object lock;
+    /** Listeners to their Mailboxes */
+    private Map mailboxes;
+    private int capacity;
+    private long latencyBudget;
+    private int maxStrikes;
+    private int sampleRate;
+    private long quarantineTime;
+    private QuarantinePolicy policy;
+    private boolean closed;
+
+    /** Creates a new instance of X10ListenerMailboxes.
+     * @param receiver The receiver quarantined listeners are deregistered
+     * from under the {@link #DISCONNECT} policy.
+     * @param name The name mailbox threads are given, followed by the listener.
+     */
+    public X10ListenerMailboxes(X10Receiver receiver, String name) {
+        if(receiver == null)
+            throw new IllegalArgumentException("X10Receiver can not be null.");
+        this.receiver = receiver;
+        this.name = name;
+        this.lock = new Object();
+        this.mailboxes = new IdentityHashMap();
+        this.capacity = DEFAULT_CAPACITY;
+        this.latencyBudget = DEFAULT_LATENCY_BUDGET;
+        this.maxStrikes = DEFAULT_STRIKES;
+        this.sampleRate = DEFAULT_SAMPLE_RATE;
+        this.quarantineTime = DEFAULT_QUARANTINE_TIME;
+        this.policy = DROP;
+    }
+
+    /** Returns the number of posts each mailbox holds. */
+    public int getCapacity() {
+        synchronized(lock) {
+            return this.capacity;
+        }
+    }
+
+    public void setCapacity(int capacity) {
+        if(capacity < 1)
+            throw new IllegalArgumentException("The capacity must be positive: "+capacity);
+        synchronized(lock) {
+            this.capacity = capacity;
+        }
+    }
+
+    /** Returns the longest a callback should take, in milliseconds. */
+    public long getLatencyBudget() {
+        synchronized(lock) {
+            return this.latencyBudget;
+        }
+    }
+
+    public void setLatencyBudget(long millis) {
+        if(millis <= 0)
+            throw new IllegalArgumentException("The latency budget must be positive: "+millis);
+        synchronized(lock) {
+            this.latencyBudget = millis;
+        }
+    }
+
+    /** Returns how many callbacks in a row may run over the budget before
+     * the listener is quarantined.
+     */
+    public int getStrikes() {
+        synchronized(lock) {
+            return this.maxStrikes;
+        }
+    }
+
+    public void setStrikes(int strikes) {
+        if(strikes < 1)
+            throw new IllegalArgumentException("At least one strike is needed: "+strikes);
+        synchronized(lock) {
+            this.maxStrikes = strikes;
+        }
+    }
+
+    /** Returns one in how many events a listener quarantined under the
+     * {@link #SAMPLE} policy gets.
+     */
+    public int getSampleRate() {
+        synchronized(lock) {
+            return this.sampleRate;
+        }
+    }
+
+    public void setSampleRate(int sampleRate) {
+        if(sampleRate < 1)
+            throw new IllegalArgumentException("The sample rate must be positive: "+sampleRate);
+        synchronized(lock) {
+            this.sampleRate = sampleRate;
+        }
+    }
+
+    /** Returns how long a listener quarantined under the {@link #DROP}
+     * policy stays quarantined, in milliseconds.
+     */
+    public long getQuarantineTime() {
+        synchronized(lock) {
+            return this.quarantineTime;
+        }
+    }
+
+    public void setQuarantineTime(long millis) {
+        if(millis <= 0)
+            throw new IllegalArgumentException("The quarantine time must be positive: "+millis);
+        synchronized(lock) {
+            this.quarantineTime = millis;
+        }
+    }
+
+    public QuarantinePolicy getQuarantinePolicy() {
+        synchronized(lock) {
+            return this.policy;
+        }
+    }
+
+    public void setQuarantinePolicy(QuarantinePolicy policy) {
+        if(policy == null)
+            throw new IllegalArgumentException("QuarantinePolicy can not be null.");
+        synchronized(lock) {
+            this.policy = policy;
+        }
+    }
+
+    /** Returns the mailbox of the listener, or null if nothing has been
+     * posted to it.
+     */
+    public Mailbox getMailbox(Object listener) {
+        synchronized(lock) {
+            return (Mailbox)mailboxes.get(listener);
+        }
+    }
+
+    /** Returns every mailbox. */
+    public Mailbox[] getMailboxes() {
+        synchronized(lock) {
+            return (Mailbox[])mailboxes.values().toArray(new Mailbox[mailboxes.size()]);
+        }
+    }
+
+    /** Returns the mailboxes of the quarantined listeners. */
+    public Mailbox[] getQuarantined() {
+        List quarantined = new ArrayList();
+        synchronized(lock) {
+            for(Iterator i = mailboxes.values().iterator();i.hasNext();) {
+                Mailbox mailbox = (Mailbox)i.next();
+                if(mailbox.quarantined)
+                    quarantined.add(mailbox);
+            }
+        }
+        return (Mailbox[])quarantined.toArray(new Mailbox[quarantined.size()]);
+    }
+
+    /** Posts an event to a listener. */
+    public void post(X10Listener listener, X10Event event) {
+        if(event == null)
+            throw new IllegalArgumentException("X10Event can not be null.");
+        offer(listener, event);
+    }
+
+    /** Posts the events of one download to a batch listener.  The list must
+     * not change afterwards.
+     */
+    public void post(X10BatchListener listener, List events) {
+        if(events == null)
+            throw new IllegalArgumentException("List can not be null.");
+        offer(listener, events);
+    }
+
+    /** Drops the mailbox of a listener that has been deregistered, along
+     * with anything still waiting in it.
+     */
+    public void remove(Object listener) {
+        synchronized(lock) {
+            Mailbox mailbox = (Mailbox)mailboxes.remove(listener);
+            if(mailbox == null)
+                return;
+            mailbox.removed = true;
+            mailbox.posts.clear();
+            lock.notifyAll();
+        }
+    }
+
+    /** Stops taking posts.  What is already posted is still delivered. */
+    public void close() {
+        synchronized(lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+    }
+
+    /** Called after each callback with how long it took.  Does nothing
+     * unless overridden.
+     */
+    protected void dispatched(Object listener, long nanos) {
+    }
+
+    /** Called when posts to a listener are dropped.  Does nothing unless
+     * overridden.
+     */
+    protected void dropped(Object listener, int count) {
+    }
+
+    /** Called once a listener is quarantined, after it has been reported.
+     * Does nothing unless overridden.
+     */
+    protected void quarantined(Mailbox mailbox) {
+    }
+
+    private void offer(Object listener, Object post) {
+        if(listener == null)
+            throw new IllegalArgumentException("Listener can not be null.");
+        Mailbox mailbox;
+        String reason = null;
+        synchronized(lock) {
+            if(closed)
+                return;
+            mailbox = (Mailbox)mailboxes.get(listener);
+            if(mailbox == null) {
+                mailbox = new Mailbox(listener);
+                mailboxes.put(listener, mailbox);
+            }
+            // A callback that has not come back counts against the listener
+            // even though it has not finished
+            if(!mailbox.quarantined && mailbox.callbackStarted != 0
+                    && System.nanoTime()-mailbox.callbackStarted > latencyBudget*1000000L*maxStrikes) {
+                reason = "has been in one callback for over "+latencyBudget*maxStrikes+" ms";
+            } else if(!mailbox.quarantined && mailbox.posts.size() >= capacity) {
+                reason = "let its mailbox fill up with "+capacity+" posts";
+            } else if(accept(mailbox)) {
+                mailbox.posts.add(post);
+                if(mailbox.thread == null) {
+                    mailbox.thread = new Thread(mailbox, name+" "+listener);
+                    mailbox.thread.setDaemon(true);
+                    mailbox.thread.start();
+                } else {
+                    lock.notifyAll();
+                }
+                return;
+            }
+            mailbox.dropped++;
+        }
+        dropped(listener, 1);
+        if(reason != null)
+            quarantine(mailbox, reason);
+    }
+
+    /** Returns the truth that a post fits in the mailbox and the policy lets
+     * it through.  The lock is held.
+     */
+    private boolean accept(Mailbox mailbox) {
+        if(mailbox.posts.size() >= capacity)
+            return false;
+        if(!mailbox.quarantined)
+            return true;
+        if(policy == SAMPLE)
+            return mailbox.skipped++ % sampleRate == 0;
+        // Give a dropped listener another chance once its time is up; if
+        // it is still slow it runs out of strikes again
+        if(System.currentTimeMillis()-mailbox.quarantinedAt >= quarantineTime) {
+            mailbox.quarantined = false;
+            mailbox.strikes = 0;
+            mailbox.recovered = 0;
+            LOG.info("X10 listener "+mailbox.listener+" is out of quarantine after "+quarantineTime+" ms");
+            return true;
+        }
+        return false;
+    }
+
+    private void quarantine(Mailbox mailbox, String reason) {
+        QuarantinePolicy policy;
+        int discarded = 0;
+        synchronized(lock) {
+            if(mailbox.quarantined || mailbox.removed)
+                return;
+            mailbox.quarantined = true;
+            mailbox.quarantinedAt = System.currentTimeMillis();
+            mailbox.recovered = 0;
+            mailbox.skipped = 0;
+            policy = this.policy;
+            if(policy == DROP) {
+                discarded = mailbox.posts.size();
+                mailbox.posts.clear();
+            } else if(policy == SAMPLE) {
+                // Thin out the backlog the same way
+                for(Iterator i = mailbox.posts.iterator();i.hasNext();) {
+                    i.next();
+                    if(mailbox.skipped++ % sampleRate != 0) {
+                        i.remove();
+                        discarded++;
+                    }
+                }
+            }
+            mailbox.dropped += discarded;
+        }
+        LOG.warning("X10 listener "+mailbox.listener+" "+reason+", quarantined with policy "+policy);
+        if(discarded > 0)
+            dropped(mailbox.listener, discarded);
+        if(policy == DISCONNECT) {
+            if(mailbox.listener instanceof X10BatchListener && receiver instanceof X10BatchReceiver)
+                ((X10BatchReceiver)receiver).removeX10BatchListener((X10BatchListener)mailbox.listener);
+            if(mailbox.listener instanceof X10Listener)
+                receiver.removeX10Listener((X10Listener)mailbox.listener);
+            remove(mailbox.listener);
+        }
+        quarantined(mailbox);
+    }
+
+    private static void deliver(Object listener, Object post) {
+        if(post instanceof X10Event)
+            X10EventDispatcher.dispatch((X10Listener)listener, (X10Event)post);
+        else
+            ((X10BatchListener)listener).events((List)post);
+    }
+}
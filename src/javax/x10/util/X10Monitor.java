@@ -7,39 +7,67 @@
 package javax.x10.util;
 
 import java.util.*;
+import java.util.logging.*;
 
 import javax.x10.*;
 import javax.x10.codes.*;
 import javax.x10.event.*;
 
-/**
+/** <code>X10Monitor</code> keeps track of the state of every unit from
+ * the events a connection receives and delivers.  Besides answering
+ * questions like {@link #isOn} and {@link #getBrightnessLevel}, it works
+ * out what each event actually changed and tells the registered
+ * {@link javax.x10.util.X10StateListener}s, so nothing has to poll it.
+ * An event that leaves every unit as it was, like an
+ * <code>ALL_LIGHTS_OFF</code> on a house with no lights on, tells them
+ * nothing.
+ * <P>
+ * Listeners that read the monitor when an event arrives, like the rules
+ * of an {@link javax.x10.util.X10RuleEngine}, should register with
+ * {@link #addX10Listener(X10Filter,X10Listener)} rather than with the
+ * receiver.  They are told about each received event on the monitor's own
+ * thread, right after the monitor has recorded it, so they never see a
+ * state from before the event.
  *
  * @author  Brian Jackson (brian@jaxzin.com)
  */
 public class X10Monitor {
     
+    // Setup logging facilities
+    private static final Logger LOG =
+            Logger.getLogger(X10Monitor.class.getName());
+    
+    /** A state listener and the house code it wants, null for all */
+    private static final class StateRegistration {
+        private HouseCode houseCode;
+        private X10StateListener listener;
+        private StateRegistration(HouseCode houseCode, X10StateListener listener) {
+            this.houseCode = houseCode;
+            this.listener = listener;
+        }
+    }
     
     private class MonitorListener implements X10Listener, X10TransmitterListener {
         private MonitorListener() {
         }
         
-        public void address(X10Event e) {               recordEvent(e); }
-        public void allLightsOff(X10Event e) {          recordEvent(e); }
-        public void allLightsOn(X10Event e) {           recordEvent(e); }
-        public void allUnitsOff(X10Event e) {           recordEvent(e); }
-        public void brighten(X10Event e) {              recordEvent(e); }
-        public void dim(X10Event e) {                   recordEvent(e); }
-        public void extendedCode(X10Event e) {          recordEvent(e); }
-        public void extendedDataTransfer(X10Event e) {  recordEvent(e); }
-        public void hailAcknowledge(X10Event e) {       recordEvent(e); }
-        public void hailRequest(X10Event e) {           recordEvent(e); }
-        public void off(X10Event e) {                   recordEvent(e); }
-        public void on(X10Event e) {                    recordEvent(e); }
-        public void presetDim1(X10Event e) {            recordEvent(e); }
-        public void presetDim2(X10Event e) {            recordEvent(e); }
-        public void statusOff(X10Event e) {             recordEvent(e); }
-        public void statusOn(X10Event e) {              recordEvent(e); }
-        public void statusRequest(X10Event e) {         recordEvent(e); }
+        public void address(X10Event e) {               received(e); }
+        public void allLightsOff(X10Event e) {          received(e); }
+        public void allLightsOn(X10Event e) {           received(e); }
+        public void allUnitsOff(X10Event e) {           received(e); }
+        public void brighten(X10Event e) {              received(e); }
+        public void dim(X10Event e) {                   received(e); }
+        public void extendedCode(X10Event e) {          received(e); }
+        public void extendedDataTransfer(X10Event e) {  received(e); }
+        public void hailAcknowledge(X10Event e) {       received(e); }
+        public void hailRequest(X10Event e) {           received(e); }
+        public void off(X10Event e) {                   received(e); }
+        public void on(X10Event e) {                    received(e); }
+        public void presetDim1(X10Event e) {            received(e); }
+        public void presetDim2(X10Event e) {            received(e); }
+        public void statusOff(X10Event e) {             received(e); }
+        public void statusOn(X10Event e) {              received(e); }
+        public void statusRequest(X10Event e) {         received(e); }
         
         public void eventDelivered(X10TransmitterEvent e) {
             recordEvent(e.getX10Event());
@@ -55,40 +83,140 @@ public class X10Monitor {
         }
     }
     
+    private static final UnitCode[] UNIT_CODES = UnitCode.values();
+    
+    /** What the state arrays hold for a unit nothing is known about yet */
+    private static final byte UNKNOWN = 0;
+    private static final byte NO = 1;
+    private static final byte YES = 2;
+    
     private HouseCode addressedHouseCode;
     private Set addressedUnitCodes;
     private X10Event.Type lastEventType;
-    private Map statusMap;
-    private Map brightnessMap;
-    private Map lightMap;
+    /** The state of each unit, indexed by {@link #index} */
+    private byte[] status;
+    /** NaN for units nothing is known about yet */
+    private double[] brightness;
+    private byte[] light;
+    /** Copied on write. Guarded by the lock on this monitor. */
+    private StateRegistration[] stateListeners;
+    /** The listeners told about received events once they are recorded */
+    private X10ListenerIndex x10Listeners;
     
     /** Creates a new instance of X10Monitor */
     public X10Monitor(X10Connection xconn) {
         // Validate argument
         if(xconn == null)
             throw new IllegalArgumentException("X10Connection can not be null.");
+        this.x10Listeners = new X10ListenerIndex();
         
         // Register the appropriate listeners
         if(xconn.isX10Receiver()) {
             xconn.getX10Receiver().addX10Listener(new MonitorListener());
         }
         if(xconn.isX10Transmitter()) {
-            xconn.getX10Transmitter().addX10TransmitterListener(new MonitorListener());
+            // The listener ignores every other type anyway
+            X10Transmitter transmitter = xconn.getX10Transmitter();
+            if(transmitter instanceof X10FilteredTransmitter)
+                ((X10FilteredTransmitter)transmitter).addX10TransmitterListener(new MonitorListener(),
+                        new X10TransmitterEvent.Type[] {X10TransmitterEvent.EVENT_DELIVERED});
+            else
+                transmitter.addX10TransmitterListener(new MonitorListener());
         }
         initialize();
     }
     
     private void initialize() {
         this.addressedHouseCode = null;
-        this.addressedUnitCodes = new HashSet();
+        this.addressedUnitCodes = EnumSet.noneOf(UnitCode.class);
         this.lastEventType = null;
-        this.statusMap = new HashMap();
-        this.brightnessMap = new HashMap();
-        this.lightMap = new HashMap();
+        int units = HouseCode.values().length*UNIT_CODES.length;
+        this.status = new byte[units];
+        this.brightness = new double[units];
+        Arrays.fill(this.brightness, Double.NaN);
+        this.light = new byte[units];
+        this.stateListeners = new StateRegistration[0];
+    }
+    
+    /** Registers a listener for the changes to every unit. */
+    public void addX10StateListener(X10StateListener listener) {
+        addX10StateListener(null, listener);
+    }
+    
+    /** Registers a listener for the changes to the units of one house.
+     * @param houseCode The house to listen to, or null for all of them.
+     */
+    public synchronized void addX10StateListener(HouseCode houseCode, X10StateListener listener) {
+        if(listener == null)
+            throw new IllegalArgumentException("X10StateListener can not be null.");
+        StateRegistration[] updated = new StateRegistration[stateListeners.length+1];
+        System.arraycopy(stateListeners, 0, updated, 0, stateListeners.length);
+        updated[stateListeners.length] = new StateRegistration(houseCode, listener);
+        this.stateListeners = updated;
+    }
+    
+    /** Deregisters a listener from every house it was registered for. */
+    public synchronized void removeX10StateListener(X10StateListener listener) {
+        List kept = new ArrayList();
+        for(int i = 0; i < stateListeners.length; i++) {
+            if(stateListeners[i].listener != listener)
+                kept.add(stateListeners[i]);
+        }
+        this.stateListeners = (StateRegistration[])kept.toArray(new StateRegistration[kept.size()]);
+    }
+    
+    /** Registers a listener that is told about every received event, once
+     * the monitor has recorded it.
+     */
+    public void addX10Listener(X10Listener listener) {
+        this.x10Listeners.add(listener);
+    }
+    
+    /** Registers a listener that is told about the received events the
+     * filter matches, once the monitor has recorded them.
+     */
+    public void addX10Listener(X10Filter filter, X10Listener listener) {
+        this.x10Listeners.add(filter, listener);
+    }
+    
+    public void removeX10Listener(X10Listener listener) {
+        this.x10Listeners.remove(listener);
+    }
+    
+    /** Records a received event, then tells the listeners registered with
+     * the monitor about it
+     */
+    private void received(X10Event e) {
+        recordEvent(e);
+        X10Listener[] listeners = x10Listeners.getListeners(e);
+        for(int i = 0; i < listeners.length; i++) {
+            try {
+                X10EventDispatcher.dispatch(listeners[i], e);
+            } catch(RuntimeException ex) {
+                LOG.log(Level.WARNING,"X10Listener "+listeners[i]+" failed handling "+e,ex);
+            }
+        }
     }
     
     public void recordEvent(X10Event e) {
-        synchronized(this.addressedHouseCode) {
+        synchronized(this) {
+            // Remember the units the event can change, so the changes can
+            // be worked out afterwards
+            HouseCode changedHouseCode = null;
+            UnitCode[] changedUnitCodes = null;
+            boolean[] wereOn = null;
+            double[] oldLevels = null;
+            if(stateListeners.length > 0) {
+                changedHouseCode = getAffectedHouseCode(e);
+                changedUnitCodes = getAffectedUnitCodes(e);
+                wereOn = new boolean[changedUnitCodes.length];
+                oldLevels = new double[changedUnitCodes.length];
+                for(int i = 0; i < changedUnitCodes.length; i++) {
+                    wereOn[i] = peekOn(changedHouseCode, changedUnitCodes[i]);
+                    oldLevels[i] = peekBrightnessLevel(changedHouseCode, changedUnitCodes[i]);
+                }
+            }
+            
             if(e.getType() == X10Event.ADDRESS) {
                 if(this.lastEventType == X10Event.FUNCTION) {
                     clearAddressing();
@@ -101,15 +229,16 @@ public class X10Monitor {
             } else if(e.getOtherCode() == FunctionCode.ON) {
                 for(Iterator i = this.addressedUnitCodes.iterator();i.hasNext();) {
                     UnitCode unitCode = (UnitCode)i.next();
-                    Boolean old = (Boolean)set(this.statusMap,this.addressedHouseCode,unitCode,new Boolean(true));
-                    if(!old.booleanValue())
-                        set(this.brightnessMap,this.addressedHouseCode,unitCode,new Double(1.0));
+                    int u = index(this.addressedHouseCode,unitCode);
+                    if(this.status[u] != YES)
+                        this.brightness[u] = 1.0;
+                    this.status[u] = YES;
                 }
             } else if(e.getOtherCode() == FunctionCode.OFF) {
                 for(Iterator i = this.addressedUnitCodes.iterator();i.hasNext();) {
                     UnitCode unitCode = (UnitCode)i.next();
-                    set(this.statusMap,this.addressedHouseCode,unitCode,new Boolean(false));
-                    set(this.brightnessMap,this.addressedHouseCode,unitCode,new Double(0.0));
+                    setOn(this.addressedHouseCode,unitCode,false);
+                    setBrightnessLevel(this.addressedHouseCode,unitCode,0.0);
                 }
             } else if(e.getOtherCode() == FunctionCode.DIM) {
                 for(Iterator i = this.addressedUnitCodes.iterator();i.hasNext();) {
@@ -118,7 +247,9 @@ public class X10Monitor {
                         double level = getBrightnessLevel(this.addressedHouseCode,unitCode);
                         if(isOff(this.addressedHouseCode,unitCode))
                             level = X10Event.MAX_BRIGHTNESS_LEVEL;
-                        set(this.brightnessMap,this.addressedHouseCode,unitCode,new Double(Math.min(level-e.getBrightnessLevel(),X10Event.MIN_BRIGHTNESS_LEVEL)));
+                        level = Math.max(level-e.getBrightnessLevel(),X10Event.MIN_BRIGHTNESS_LEVEL);
+                        setOn(this.addressedHouseCode,unitCode,level > X10Event.MIN_BRIGHTNESS_LEVEL);
+                        setBrightnessLevel(this.addressedHouseCode,unitCode,level);
                     }
                 }
             } else if(e.getOtherCode() == FunctionCode.BRIGHTEN) {
@@ -128,29 +259,120 @@ public class X10Monitor {
                         double level = getBrightnessLevel(this.addressedHouseCode,unitCode);
                         if(isOff(this.addressedHouseCode,unitCode))
                             level = X10Event.MAX_BRIGHTNESS_LEVEL;
-                        set(this.brightnessMap,this.addressedHouseCode,unitCode,new Double(Math.max(level+e.getBrightnessLevel(),X10Event.MAX_BRIGHTNESS_LEVEL)));
+                        level = Math.min(level+e.getBrightnessLevel(),X10Event.MAX_BRIGHTNESS_LEVEL);
+                        setOn(this.addressedHouseCode,unitCode,level > X10Event.MIN_BRIGHTNESS_LEVEL);
+                        setBrightnessLevel(this.addressedHouseCode,unitCode,level);
                     }
                 }
             } else if(e.getOtherCode() == FunctionCode.ALL_UNITS_OFF) {
-                this.statusMap.clear();
+                allUnits(e.getHouseCode(),false,false);
             } else if(e.getOtherCode() == FunctionCode.ALL_LIGHTS_OFF) {
-                allLights(false);
+                allUnits(e.getHouseCode(),true,false);
             } else if(e.getOtherCode() == FunctionCode.ALL_LIGHTS_ON) {
-                allLights(true);
+                allUnits(e.getHouseCode(),true,true);
+            } else if(e.getOtherCode() == FunctionCode.STATUS_ON || e.getOtherCode() == FunctionCode.STATUS_OFF) {
+                // A two-way module reporting its state
+                for(Iterator i = this.addressedUnitCodes.iterator();i.hasNext();) {
+                    setOn(this.addressedHouseCode,(UnitCode)i.next(),e.getOtherCode() == FunctionCode.STATUS_ON);
+                }
+            } else if(e.getOtherCode() == FunctionCode.EXTENDED_CODE) {
+                recordExtendedCode(e);
             }
             
             this.lastEventType = e.getType(); 
+            
+            if(changedUnitCodes != null)
+                notifyStateListeners(e, changedHouseCode, changedUnitCodes, wereOn, oldLevels);
+        }
+    }
+    
+    /** Returns the house whose units the event can change, or null */
+    private HouseCode getAffectedHouseCode(X10Event e) {
+        if(e.getType() == X10Event.ADDRESS)
+            return null;
+        OtherCode code = e.getOtherCode();
+        if(code == FunctionCode.ALL_UNITS_OFF || code == FunctionCode.ALL_LIGHTS_OFF
+           || code == FunctionCode.ALL_LIGHTS_ON || code == FunctionCode.EXTENDED_CODE)
+            return e.getHouseCode();
+        return this.addressedHouseCode;
+    }
+    
+    /** Returns the units the event can change, maybe more than it does */
+    private UnitCode[] getAffectedUnitCodes(X10Event e) {
+        if(getAffectedHouseCode(e) == null)
+            return new UnitCode[0];
+        OtherCode code = e.getOtherCode();
+        if(code == FunctionCode.EXTENDED_CODE) {
+            ExtendedCommand command = e.getExtendedCommand();
+            if(command == ExtendedCommand.ALL_UNITS_ON || command == ExtendedCommand.ALL_UNITS_OFF)
+                return allUnitCodes();
+            if(e.getUnitCode() == null)
+                return new UnitCode[0];
+            return new UnitCode[] {e.getUnitCode()};
+        }
+        if(code == FunctionCode.ALL_UNITS_OFF || code == FunctionCode.ALL_LIGHTS_OFF || code == FunctionCode.ALL_LIGHTS_ON)
+            return allUnitCodes();
+        return (UnitCode[])this.addressedUnitCodes.toArray(new UnitCode[this.addressedUnitCodes.size()]);
+    }
+    
+    private static UnitCode[] allUnitCodes() {
+        return UNIT_CODES.clone();
+    }
+    
+    /** Works out what really changed and tells the listeners that want it */
+    private void notifyStateListeners(X10Event e, HouseCode houseCode, UnitCode[] unitCodes, boolean[] wereOn, double[] oldLevels) {
+        List changes = null;
+        for(int i = 0; i < unitCodes.length; i++) {
+            boolean on = peekOn(houseCode, unitCodes[i]);
+            double level = peekBrightnessLevel(houseCode, unitCodes[i]);
+            if(on == wereOn[i] && level == oldLevels[i])
+                continue;
+            if(changes == null)
+                changes = new ArrayList();
+            changes.add(new X10StateChange(houseCode, unitCodes[i], wereOn[i], oldLevels[i], on, level, e));
+        }
+        if(changes == null)
+            return;
+        X10StateChange[] changed = (X10StateChange[])changes.toArray(new X10StateChange[changes.size()]);
+        StateRegistration[] current = this.stateListeners;
+        for(int i = 0; i < current.length; i++) {
+            if(current[i].houseCode != null && current[i].houseCode != houseCode)
+                continue;
+            try {
+                current[i].listener.stateChanged(e, changed);
+            } catch(RuntimeException ex) {
+                LOG.log(Level.WARNING,"X10StateListener "+current[i].listener+" failed handling "+e,ex);
+            }
         }
     }
     
     public void recordEvents(X10Event[] events) {
-        synchronized(this.addressedHouseCode) {
+        synchronized(this) {
             for(int i = 0; i < events.length; i++) {
                 recordEvent(events[i]);
             }
         }
     }
     
+    /** Extended codes name their unit, so they leave the addressing alone */
+    private void recordExtendedCode(X10Event e) {
+        ExtendedCommand command = e.getExtendedCommand();
+        if(command == ExtendedCommand.PRESET_DIM || command == ExtendedCommand.STATUS_ACKNOWLEDGE) {
+            if(e.getUnitCode() == null)
+                return;
+            double level = ExtendedCommand.getBrightnessLevel(e.getData());
+            setOn(e.getHouseCode(),e.getUnitCode(),level > X10Event.MIN_BRIGHTNESS_LEVEL);
+            setBrightnessLevel(e.getHouseCode(),e.getUnitCode(),level);
+        } else if(command == ExtendedCommand.ALL_UNITS_ON || command == ExtendedCommand.ALL_UNITS_OFF) {
+            boolean on = command == ExtendedCommand.ALL_UNITS_ON;
+            for(int i = 0; i < UNIT_CODES.length; i++) {
+                UnitCode unitCode = UNIT_CODES[i];
+                setOn(e.getHouseCode(),unitCode,on);
+                setBrightnessLevel(e.getHouseCode(),unitCode,on?X10Event.MAX_BRIGHTNESS_LEVEL:X10Event.MIN_BRIGHTNESS_LEVEL);
+            }
+        }
+    }
+    
     public HouseCode getAddressedHouseCode() {
         return this.addressedHouseCode;
     }
@@ -160,69 +382,45 @@ public class X10Monitor {
     }
     
     public boolean isOn(HouseCode houseCode, UnitCode unitCode) {
-        Boolean on = (Boolean)get(this.statusMap,houseCode,unitCode,new Boolean(false));
-        return on.booleanValue();
+        int u = index(houseCode,unitCode);
+        if(this.status[u] == UNKNOWN)
+            this.status[u] = NO;
+        return this.status[u] == YES;
     }
     
     private void setOn(HouseCode houseCode, UnitCode unitCode, boolean on) {
-        set(this.statusMap,houseCode,unitCode,new Boolean(on));
+        this.status[index(houseCode,unitCode)] = on ? YES : NO;
     }
     
     public boolean isOff(HouseCode houseCode, UnitCode unitCode) {
         return !isOn(houseCode,unitCode);
     }
     public double getBrightnessLevel(HouseCode houseCode, UnitCode unitCode) {
-        Double dfault;
-        if(isOn(houseCode,unitCode))
-            dfault = new Double(X10Event.MAX_BRIGHTNESS_LEVEL);
-        else
-            dfault = new Double(X10Event.MIN_BRIGHTNESS_LEVEL);
-            
-        Double level = (Double)get(this.brightnessMap,houseCode,unitCode,dfault);
-        return level.doubleValue();
+        int u = index(houseCode,unitCode);
+        // Remember the default, so it stays put once it has been seen
+        if(Double.isNaN(this.brightness[u]))
+            this.brightness[u] = isOn(houseCode,unitCode) ? X10Event.MAX_BRIGHTNESS_LEVEL : X10Event.MIN_BRIGHTNESS_LEVEL;
+        return this.brightness[u];
+    }
+    
+    private void setBrightnessLevel(HouseCode houseCode, UnitCode unitCode, double level) {
+        this.brightness[index(houseCode,unitCode)] = level;
     }
+    
     public void setLight(HouseCode houseCode, UnitCode unitCode, boolean isLight) {
-        set(this.lightMap,houseCode,unitCode,new Boolean(isLight));
+        this.light[index(houseCode,unitCode)] = isLight ? YES : NO;
     }
     public boolean isLight(HouseCode houseCode, UnitCode unitCode) {
-        Boolean light = (Boolean)get(this.lightMap,houseCode,unitCode,new Boolean(true));
-        return light.booleanValue();
+        return this.light[index(houseCode,unitCode)] != NO;
     }
     
-    private Object get(Map houseMap, HouseCode houseCode, UnitCode unitCode, Object dfault) {
+    /** Returns the position of the unit in the state arrays */
+    private static int index(HouseCode houseCode, UnitCode unitCode) {
         if(houseCode == null)
             throw new IllegalArgumentException("HouseCode can not be null.");
         if(unitCode == null)
             throw new IllegalArgumentException("UnitCode can not be null.");
-        
-        Map unitMap = (Map)houseMap.get(houseCode);
-        if(unitMap == null) {
-            unitMap = new HashMap();
-            houseMap.put(houseCode,unitMap);
-        }
-        Object value = unitMap.get(unitCode);
-        if(value == null) {
-            value = dfault;
-            unitMap.put(unitCode,value);
-        }
-        return value;
-    }
-
-    private Object set(Map houseMap, HouseCode houseCode, UnitCode unitCode, Object value) {
-        if(houseCode == null)
-            throw new IllegalArgumentException("HouseCode can not be null.");
-        if(unitCode == null)
-            throw new IllegalArgumentException("UnitCode can not be null.");
-        
-        Map unitMap = (Map)houseMap.get(houseCode);
-        if(unitMap == null) {
-            unitMap = new HashMap();
-            houseMap.put(houseCode,unitMap);
-        }
-        
-        Object oldValue = unitMap.put(unitCode,value);
-        
-        return oldValue;
+        return houseCode.ordinal()*UNIT_CODES.length+unitCode.ordinal();
     }
     
     private void clearAddressing() {
@@ -230,15 +428,27 @@ public class X10Monitor {
         this.addressedUnitCodes.clear();
     }
     
-    private void allLights(boolean on) {
-        for(Iterator i = HouseCode.iterator();i.hasNext();) {
-            HouseCode hc = (HouseCode)i.next();
-            for(Iterator j = UnitCode.iterator();j.hasNext();) {
-                UnitCode uc = (UnitCode)j.next();
-                if(isLight(hc,uc)) {
-                    setOn(hc,uc,on);
-                }
+    /** Turns all the units, or only the lights, of one house on or off */
+    private void allUnits(HouseCode houseCode, boolean lightsOnly, boolean on) {
+        for(int i = 0; i < UNIT_CODES.length; i++) {
+            UnitCode unitCode = UNIT_CODES[i];
+            if(!lightsOnly || isLight(houseCode,unitCode)) {
+                setOn(houseCode,unitCode,on);
+                setBrightnessLevel(houseCode,unitCode,on?X10Event.MAX_BRIGHTNESS_LEVEL:X10Event.MIN_BRIGHTNESS_LEVEL);
             }
         }
     }
+    
+    /** Like {@link #isOn} but without remembering the default */
+    private boolean peekOn(HouseCode houseCode, UnitCode unitCode) {
+        return this.status[index(houseCode,unitCode)] == YES;
+    }
+    
+    /** Like {@link #getBrightnessLevel} but without remembering the default */
+    private double peekBrightnessLevel(HouseCode houseCode, UnitCode unitCode) {
+        double level = this.brightness[index(houseCode,unitCode)];
+        if(!Double.isNaN(level))
+            return level;
+        return peekOn(houseCode,unitCode) ? X10Event.MAX_BRIGHTNESS_LEVEL : X10Event.MIN_BRIGHTNESS_LEVEL;
+    }
 }
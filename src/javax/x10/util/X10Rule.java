@@ -0,0 +1,199 @@
+/*
+ * X10Rule.java
+ *
+ * Created on October 29, 2026, 7:10 PM
+ */
+
+package javax.x10.util;
+
+import java.util.*;
+
+import javax.x10.codes.*;
+import javax.x10.event.*;
+
+/** <code>X10Rule</code> is one event-condition-action rule for an
+ * {@link javax.x10.util.X10RuleEngine}: when an event matching the
+ * trigger is received during the active hours and every condition holds,
+ * the actions are transmitted.  For example, "when B4 ON between 18:00 and
+ * 06:00 and A1 is off, then A1 ON at 50%" is
+ * <pre>
+ * X10Rule rule = new X10Rule("porch", HouseCode.B, UnitCode.UNIT_4, FunctionCode.ON);
+ * rule.setActiveTime(18*60, 6*60);
+ * rule.addCondition(X10Rule.isOff(HouseCode.A, UnitCode.UNIT_1));
+ * rule.getScene().setBrightnessLevel(HouseCode.A, UnitCode.UNIT_1, 0.5);
+ * </pre>
+ * The actions are an {@link javax.x10.util.X10Scene}, compiled against the
+ * monitor when the rule fires, followed by any events added with
+ * {@link #addAction}.
+ * <P>
+ * Change a rule only before it is added to an engine.
+ *
+ * @see javax.x10.util.X10RuleEngine
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class X10Rule {
+
+    /** Condition defines the interface for tests a rule makes against the
+     * {@link javax.x10.util.X10Monitor} before it fires.  The engine holds
+     * the monitor's lock while testing a rule's conditions, so they all see
+     * the same state.
+     */
+    public interface Condition {
+        /** Returns the truth that the condition holds. */
+        public boolean isSatisfied(X10Monitor monitor);
+    }
+
+    private static final int MINUTES_PER_DAY = 24*60;
+
+    private String name;
+    private X10Filter trigger;
+    private int activeStart = -1;
+    private int activeEnd = -1;
+    private List conditions;
+    private X10Scene scene;
+    private List actions;
+
+    /** Creates a new instance of X10Rule triggered by the events the
+     * filter matches.
+     */
+    public X10Rule(String name, X10Filter trigger) {
+        if(name == null)
+            throw new IllegalArgumentException("Name can not be null.");
+        if(trigger == null)
+            throw new IllegalArgumentException("X10Filter can not be null.");
+        this.name = name;
+        this.trigger = trigger;
+        this.conditions = new ArrayList();
+        this.scene = new X10Scene();
+        this.actions = new ArrayList();
+    }
+
+    /** Creates a new instance of X10Rule triggered by a function sent to one unit. */
+    public X10Rule(String name, HouseCode houseCode, UnitCode unitCode, FunctionCode functionCode) {
+        this(name, new X10Filter(houseCode, new UnitCode[] {unitCode}, new FunctionCode[] {functionCode}));
+        if(houseCode == null)
+            throw new IllegalArgumentException("HouseCode can not be null.");
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public X10Filter getTrigger() {
+        return this.trigger;
+    }
+
+    /** Limits the rule to part of the day.  Times are minutes after
+     * midnight; a start after the end means the rule is active overnight.
+     * @param start The first minute the rule is active.
+     * @param end The first minute the rule is no longer active.
+     */
+    public void setActiveTime(int start, int end) {
+        if(start < 0 || start >= MINUTES_PER_DAY)
+            throw new IllegalArgumentException("Start must be a minute of the day: "+start);
+        if(end < 0 || end >= MINUTES_PER_DAY)
+            throw new IllegalArgumentException("End must be a minute of the day: "+end);
+        this.activeStart = start;
+        this.activeEnd = end;
+    }
+
+    /** Makes the rule active all day, which is the default. */
+    public void clearActiveTime() {
+        this.activeStart = -1;
+        this.activeEnd = -1;
+    }
+
+    /** Returns the truth that the rule is active at the given minute after midnight. */
+    public boolean isActive(int minute) {
+        if(this.activeStart < 0 || this.activeStart == this.activeEnd)
+            return true;
+        if(this.activeStart < this.activeEnd)
+            return minute >= this.activeStart && minute < this.activeEnd;
+        return minute >= this.activeStart || minute < this.activeEnd;
+    }
+
+    public void addCondition(Condition condition) {
+        if(condition == null)
+            throw new IllegalArgumentException("Condition can not be null.");
+        this.conditions.add(condition);
+    }
+
+    /** Returns the truth that every condition holds.  Callers should hold
+     * the monitor's lock.
+     */
+    public boolean isSatisfied(X10Monitor monitor) {
+        for(int i = 0; i < this.conditions.size(); i++) {
+            if(!((Condition)this.conditions.get(i)).isSatisfied(monitor))
+                return false;
+        }
+        return true;
+    }
+
+    /** Returns the scene the rule sets when it fires. */
+    public X10Scene getScene() {
+        return this.scene;
+    }
+
+    /** Adds an event to transmit after the scene when the rule fires. */
+    public void addAction(X10Event event) {
+        if(event == null)
+            throw new IllegalArgumentException("X10Event can not be null.");
+        this.actions.add(event);
+    }
+
+    /** Returns the events added with {@link #addAction}. */
+    public X10Event[] getActions() {
+        return (X10Event[])this.actions.toArray(new X10Event[this.actions.size()]);
+    }
+
+    public String toString() {
+        return "X10Rule["+this.name+" "+this.trigger+"]";
+    }
+
+    /** Returns a condition that holds while the unit is on. */
+    public static Condition isOn(final HouseCode houseCode, final UnitCode unitCode) {
+        return new Condition() {
+            public boolean isSatisfied(X10Monitor monitor) {
+                return monitor.isOn(houseCode, unitCode);
+            }
+        };
+    }
+
+    /** Returns a condition that holds while the unit is off. */
+    public static Condition isOff(final HouseCode houseCode, final UnitCode unitCode) {
+        return new Condition() {
+            public boolean isSatisfied(X10Monitor monitor) {
+                return monitor.isOff(houseCode, unitCode);
+            }
+        };
+    }
+
+    /** Returns a condition that holds while the unit is at least as bright as the level. */
+    public static Condition isAtLeast(final HouseCode houseCode, final UnitCode unitCode, final double level) {
+        return new Condition() {
+            public boolean isSatisfied(X10Monitor monitor) {
+                return monitor.getBrightnessLevel(houseCode, unitCode) >= level;
+            }
+        };
+    }
+
+    /** Returns a condition that holds while the unit is no brighter than the level. */
+    public static Condition isAtMost(final HouseCode houseCode, final UnitCode unitCode, final double level) {
+        return new Condition() {
+            public boolean isSatisfied(X10Monitor monitor) {
+                return monitor.getBrightnessLevel(houseCode, unitCode) <= level;
+            }
+        };
+    }
+
+    /** Returns a condition that holds while the given one does not. */
+    public static Condition not(final Condition condition) {
+        if(condition == null)
+            throw new IllegalArgumentException("Condition can not be null.");
+        return new Condition() {
+            public boolean isSatisfied(X10Monitor monitor) {
+                return !condition.isSatisfied(monitor);
+            }
+        };
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * X10RuleEngine.java
+ *
+ * Created on October 29, 2026, 7:48 PM
+ */
+
+package javax.x10.util;
+
+import java.util.*;
+
+import javax.x10.*;
+import javax.x10.event.*;
+
+/** <code>X10RuleEngine</code> runs {@link javax.x10.util.X10Rule}s against
+ * the events an {@link javax.x10.X10Connection} receives.
+ * <P>
+ * Each rule is registered with the connection's
+ * {@link javax.x10.util.X10Monitor}, which the engine turns on if it is not
+ * already, under its trigger filter, so the monitor's
+ * {@link javax.x10.util.X10ListenerIndex} files it by house code and unit
+ * or function code and a received event only reaches the rules it can
+ * trigger.  The monitor hands each event to the rules after it has
+ * recorded the event, on the same thread, so conditions are always tested
+ * against a state that includes the trigger, and the rule's scene is
+ * compiled against the same state before the monitor is let go.  The actions go onto the connection's
+ * transmit queue.
+ * <P>
+ * The engine measures two reaction times, both starting when the receiver
+ * hands it the triggering event: until the actions are queued, and until
+ * the last of them is reported delivered.
+ *
+ * @see javax.x10.util.X10Rule
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class X10RuleEngine {
+
+    /** Receives the events that can trigger one rule */
+    private class RuleListener implements X10Listener {
+        private X10Rule rule;
+        private RuleListener(X10Rule rule) {
+            this.rule = rule;
+        }
+        public void address(X10Event e) {               evaluate(rule, e); }
+        public void allLightsOff(X10Event e) {          evaluate(rule, e); }
+        public void allLightsOn(X10Event e) {           evaluate(rule, e); }
+        public void allUnitsOff(X10Event e) {           evaluate(rule, e); }
+        public void brighten(X10Event e) {              evaluate(rule, e); }
+        public void dim(X10Event e) {                   evaluate(rule, e); }
+        public void extendedCode(X10Event e) {          evaluate(rule, e); }
+        public void extendedDataTransfer(X10Event e) {  evaluate(rule, e); }
+        public void hailAcknowledge(X10Event e) {       evaluate(rule, e); }
+        public void hailRequest(X10Event e) {           evaluate(rule, e); }
+        public void off(X10Event e) {                   evaluate(rule, e); }
+        public void on(X10Event e) {                    evaluate(rule, e); }
+        public void presetDim1(X10Event e) {            evaluate(rule, e); }
+        public void presetDim2(X10Event e) {            evaluate(rule, e); }
+        public void statusOff(X10Event e) {             evaluate(rule, e); }
+        public void statusOn(X10Event e) {              evaluate(rule, e); }
+        public void statusRequest(X10Event e) {         evaluate(rule, e); }
+    }
+
+    /** Times the last action of each firing until it is delivered */
+    private class DeliveryListener implements X10TransmitterListener {
+        public void eventDelivered(X10TransmitterEvent e) {
+            Long started = finished(e.getX10Event());
+            if(started != null)
+                deliveryTimes.record(System.nanoTime()-started.longValue());
+        }
+        public void eventUndelivered(X10TransmitterEvent e) {
+            finished(e.getX10Event());
+        }
+        public void queueEmptied(X10TransmitterEvent e) {
+            // Do nothing
+        }
+        public void queueUpdated(X10TransmitterEvent e) {
+            // Do nothing
+        }
+    }
+
+    private X10Connection connection;
+    private X10Monitor monitor;
+    private X10SceneCompiler compiler;
+    private DeliveryListener deliveryListener;
+    /** Rules to the listeners registered for them */
+    private Map rules;
+    /** The last action of the firings in flight to the times their
+     * triggers were received, oldest first.  A rule's actions are the same
+     * events every time it fires, so each firing gets its own time and the
+     * transmit queue delivers them in the order they were queued.
+     */
+    private Map inFlight;
+
+    private long rulesEvaluated;
+    private long rulesFired;
+    private LatencyHistogram queueTimes;
+    private LatencyHistogram deliveryTimes;
+
+    /** Creates a new instance of X10RuleEngine for the given connection,
+     * which must both transmit and receive.  The connection is monitored
+     * from now on.
+     */
+    public X10RuleEngine(X10Connection xconn) {
+        if(xconn == null)
+            throw new IllegalArgumentException("X10Connection can not be null.");
+        if(!xconn.isX10Transmitter() || !xconn.isX10Receiver())
+            throw new IllegalArgumentException("X10RuleEngine needs a connection that can both transmit and receive.");
+        this.connection = xconn;
+        if(!xconn.isMonitored())
+            xconn.setMonitored(true);
+        this.monitor = xconn.getMonitor();
+        this.compiler = new X10SceneCompiler(this.monitor);
+        this.rules = new LinkedHashMap();
+        this.inFlight = new IdentityHashMap();
+        this.queueTimes = new LatencyHistogram();
+        this.deliveryTimes = new LatencyHistogram();
+        this.deliveryListener = new DeliveryListener();
+        // The listener ignores the queue notices anyway
+        X10Transmitter transmitter = xconn.getX10Transmitter();
+        if(transmitter instanceof X10FilteredTransmitter)
+            ((X10FilteredTransmitter)transmitter).addX10TransmitterListener(this.deliveryListener, new X10TransmitterEvent.Type[] {
+                X10TransmitterEvent.EVENT_DELIVERED, X10TransmitterEvent.EVENT_UNDELIVERED});
+        else
+            transmitter.addX10TransmitterListener(this.deliveryListener);
+    }
+
+    /** Starts running a rule. */
+    public void addRule(X10Rule rule) {
+        if(rule == null)
+            throw new IllegalArgumentException("X10Rule can not be null.");
+        RuleListener listener = new RuleListener(rule);
+        synchronized(rules) {
+            if(rules.containsKey(rule))
+                return;
+            rules.put(rule, listener);
+        }
+        monitor.addX10Listener(rule.getTrigger(), listener);
+    }
+
+    /** Stops running a rule. */
+    public void removeRule(X10Rule rule) {
+        RuleListener listener;
+        synchronized(rules) {
+            listener = (RuleListener)rules.remove(rule);
+        }
+        if(listener != null)
+            monitor.removeX10Listener(listener);
+    }
+
+    /** Returns the rules being run, in the order they were added. */
+    public X10Rule[] getRules() {
+        synchronized(rules) {
+            return (X10Rule[])rules.keySet().toArray(new X10Rule[rules.size()]);
+        }
+    }
+
+    /** Stops running every rule. */
+    public void close() {
+        X10Rule[] current = getRules();
+        for(int i = 0; i < current.length; i++) {
+            removeRule(current[i]);
+        }
+        connection.getX10Transmitter().removeX10TransmitterListener(this.deliveryListener);
+    }
+
+    /** Returns the number of times a received event was tested against a rule. */
+    public synchronized long getRulesEvaluated() {
+        return this.rulesEvaluated;
+    }
+
+    /** Returns the number of times a rule's actions were queued. */
+    public synchronized long getRulesFired() {
+        return this.rulesFired;
+    }
+
+    /** Returns the times from receiving a triggering event until its
+     * actions were queued, in nanoseconds.
+     */
+    public LatencyHistogram getQueueTimes() {
+        return this.queueTimes;
+    }
+
+    /** Returns the times from receiving a triggering event until the last
+     * of its actions was delivered, in nanoseconds.
+     */
+    public LatencyHistogram getReactionTimes() {
+        return this.deliveryTimes;
+    }
+
+    /** Forgets the counts and times measured so far. */
+    public synchronized void resetStatistics() {
+        this.rulesEvaluated = 0;
+        this.rulesFired = 0;
+        this.queueTimes.reset();
+        this.deliveryTimes.reset();
+    }
+
+    private void evaluate(X10Rule rule, X10Event trigger) {
+        long received = System.nanoTime();
+        synchronized(this) {
+            this.rulesEvaluated++;
+        }
+        Calendar now = Calendar.getInstance();
+        if(!rule.isActive(now.get(Calendar.HOUR_OF_DAY)*60+now.get(Calendar.MINUTE)))
+            return;
+
+        X10Event[] planned;
+        // Test every condition and compile the scene against one state
+        synchronized(monitor) {
+            if(!rule.isSatisfied(monitor))
+                return;
+            planned = rule.getScene().size() == 0 ? new X10Event[0]
+                                                  : compiler.compile(rule.getScene()).getEvents();
+        }
+        X10Event[] actions = rule.getActions();
+        X10Event last = actions.length > 0 ? actions[actions.length-1]
+                      : planned.length > 0 ? planned[planned.length-1] : null;
+        if(last == null)
+            return;
+
+        Long started = Long.valueOf(received);
+        synchronized(inFlight) {
+            LinkedList firings = (LinkedList)inFlight.get(last);
+            if(firings == null) {
+                firings = new LinkedList();
+                inFlight.put(last, firings);
+            }
+            firings.addLast(started);
+        }
+        X10Event[] batch = new X10Event[planned.length+actions.length];
+        System.arraycopy(planned, 0, batch, 0, planned.length);
+        System.arraycopy(actions, 0, batch, planned.length, actions.length);
+        try {
+            new X10FramePlan(batch).transmit(connection.getX10Transmitter());
+        } catch(RuntimeException e) {
+            // The batch never made it onto the queue, so forget this firing
+            synchronized(inFlight) {
+                LinkedList firings = (LinkedList)inFlight.get(last);
+                if(firings != null && firings.removeLastOccurrence(started) && firings.isEmpty())
+                    inFlight.remove(last);
+            }
+            throw e;
+        }
+        queueTimes.record(System.nanoTime()-received);
+        synchronized(this) {
+            this.rulesFired++;
+        }
+    }
+
+    /** Returns when the trigger of the oldest firing in flight that ends
+     * with the given event was received, and forgets the firing.
+     * @return the time in nanoseconds, or <code>null</code> if no firing
+     * ends with the event
+     */
+    private Long finished(X10Event last) {
+        synchronized(inFlight) {
+            LinkedList firings = (LinkedList)inFlight.get(last);
+            if(firings == null)
+                return null;
+            Long started = (Long)firings.removeFirst();
+            if(firings.isEmpty())
+                inFlight.remove(last);
+            return started;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * X10Scene.java
+ *
+ * Created on October 24, 2026, 7:10 PM
+ */
+
+package javax.x10.util;
+
+import java.util.*;
+
+import javax.x10.codes.*;
+import javax.x10.event.X10Event;
+
+/** <code>X10Scene</code> is a set of units and the state each should be
+ * put in: off, on, or on at a particular brightness level.  Units can be on
+ * any number of house codes.  A scene only says where the units should end
+ * up; an {@link javax.x10.util.X10SceneCompiler} works out which frames get
+ * them there.
+ *
+ * @see javax.x10.util.X10SceneCompiler
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class X10Scene {
+
+    /** Maps house codes to maps of unit codes to brightness levels */
+    private Map houseMap;
+    private int size;
+
+    /** Creates a new, empty instance of X10Scene */
+    public X10Scene() {
+        this.houseMap = new HashMap();
+        this.size = 0;
+    }
+
+    /** Sets a unit to be on at full brightness. */
+    public void setOn(HouseCode houseCode, UnitCode unitCode) {
+        setBrightnessLevel(houseCode, unitCode, X10Event.MAX_BRIGHTNESS_LEVEL);
+    }
+
+    /** Sets a unit to be off. */
+    public void setOff(HouseCode houseCode, UnitCode unitCode) {
+        setBrightnessLevel(houseCode, unitCode, X10Event.MIN_BRIGHTNESS_LEVEL);
+    }
+
+    /** Sets a unit to be on at the given brightness level, or off if the
+     * level is {@link javax.x10.event.X10Event#MIN_BRIGHTNESS_LEVEL}.
+     * Units that are not lights are simply turned on for any other level.
+     */
+    public void setBrightnessLevel(HouseCode houseCode, UnitCode unitCode, double level) {
+        if(houseCode == null)
+            throw new IllegalArgumentException("HouseCode can not be null.");
+        if(unitCode == null)
+            throw new IllegalArgumentException("UnitCode can not be null.");
+        if(level < X10Event.MIN_BRIGHTNESS_LEVEL || level > X10Event.MAX_BRIGHTNESS_LEVEL)
+            throw new IllegalArgumentException("The specified brightness level("+level+") is out of the valid range of X10Event.MIN_BRIGHTNESS_LEVEL("+X10Event.MIN_BRIGHTNESS_LEVEL+") to X10Event.MAX_BRIGHTNESS_LEVEL("+X10Event.MAX_BRIGHTNESS_LEVEL+"), inclusive.");
+        Map unitMap = (Map)this.houseMap.get(houseCode);
+        if(unitMap == null) {
+            unitMap = new HashMap();
+            this.houseMap.put(houseCode, unitMap);
+        }
+        if(unitMap.put(unitCode, Double.valueOf(level)) == null)
+            this.size++;
+    }
+
+    /** Takes a unit out of the scene, so the scene leaves it alone. */
+    public void remove(HouseCode houseCode, UnitCode unitCode) {
+        Map unitMap = (Map)this.houseMap.get(houseCode);
+        if(unitMap != null && unitMap.remove(unitCode) != null) {
+            this.size--;
+            if(unitMap.isEmpty())
+                this.houseMap.remove(houseCode);
+        }
+    }
+
+    /** Returns the truth that the scene sets the given unit. */
+    public boolean contains(HouseCode houseCode, UnitCode unitCode) {
+        Map unitMap = (Map)this.houseMap.get(houseCode);
+        return unitMap != null && unitMap.containsKey(unitCode);
+    }
+
+    /** Returns the brightness level the scene sets the unit to.
+     * @throws IllegalArgumentException if the scene does not set the unit
+     */
+    public double getBrightnessLevel(HouseCode houseCode, UnitCode unitCode) {
+        Map unitMap = (Map)this.houseMap.get(houseCode);
+        Double level = unitMap == null ? null : (Double)unitMap.get(unitCode);
+        if(level == null)
+            throw new IllegalArgumentException("The scene does not set "+houseCode+" "+unitCode+".");
+        return level.doubleValue();
+    }
+
+    /** Returns the truth that the scene turns the unit on. */
+    public boolean isOn(HouseCode houseCode, UnitCode unitCode) {
+        return getBrightnessLevel(houseCode, unitCode) > X10Event.MIN_BRIGHTNESS_LEVEL;
+    }
+
+    /** Returns the house codes of the units in the scene. */
+    public Set getHouseCodes() {
+        return Collections.unmodifiableSet(this.houseMap.keySet());
+    }
+
+    /** Returns the unit codes the scene sets on the given house code. */
+    public Set getUnitCodes(HouseCode houseCode) {
+        Map unitMap = (Map)this.houseMap.get(houseCode);
+        if(unitMap == null)
+            return Collections.EMPTY_SET;
+        return Collections.unmodifiableSet(unitMap.keySet());
+    }
+
+    /** Returns the number of units in the scene. */
+    public int size() {
+        return this.size;
+    }
+
+    public String toString() {
+        return "X10Scene"+this.houseMap;
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * X10SceneCompiler.java
+ *
+ * Created on October 24, 2026, 8:05 PM
+ */
+
+package javax.x10.util;
+
+import java.util.*;
+
+import javax.x10.codes.*;
+import javax.x10.event.X10Event;
+
+/** <code>X10SceneCompiler</code> turns an {@link javax.x10.util.X10Scene}
+ * into the cheapest {@link javax.x10.util.X10FramePlan} it can find.
+ * <P>
+ * Units that need the same functions are addressed together and share one
+ * set of function frames.  On each house code the compiler also tries
+ * starting with a house-wide <code>ALL_UNITS_OFF</code> or
+ * <code>ALL_LIGHTS_ON</code> and then correcting the units that should end
+ * up differently, and keeps whichever plan takes the fewest powerline
+ * cycles.  A house-wide function is only considered when it cannot change
+ * a unit the scene leaves out: every other unit on the house code must
+ * already be off for <code>ALL_UNITS_OFF</code>, or already fully on or not
+ * a light for <code>ALL_LIGHTS_ON</code>.
+ * <P>
+ * Given an {@link javax.x10.util.X10Monitor}, the compiler skips units the
+ * monitor says are already in the right state and uses the monitor to tell
+ * lights from appliances.  Without one every unit's state is unknown, so
+ * lights that should be dimmed are first brought to full brightness, and
+ * <code>ALL_LIGHTS_ON</code> is never used.
+ * <P>
+ * Compiled plans are cached by the scene and the state of its house codes,
+ * so compiling the same scene again while nothing has changed is a lookup.
+ *
+ * @see javax.x10.util.X10Scene
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class X10SceneCompiler {
+
+    /** The number of plans cached by default */
+    public static final int DEFAULT_CACHE_SIZE = 64;
+
+    private static final int DIM_STEPS = X10FramePlan.DIM_STEPS;
+    /** The state of a unit the compiler knows nothing about */
+    private static final int UNKNOWN = -1;
+    /** The target of a unit the scene leaves out */
+    private static final int UNSET = -1;
+
+    private static final HouseCode[] HOUSE_CODES = HouseCode.values();
+    private static final UnitCode[] UNIT_CODES = UnitCode.values();
+
+    /** One function in a unit's sequence of corrections */
+    private static final class Step {
+        private FunctionCode code;
+        private int steps;
+        private Step(FunctionCode code, int steps) {
+            this.code = code;
+            this.steps = steps;
+        }
+        public String toString() {
+            return code+(steps > 0 ? ":"+steps : "");
+        }
+    }
+
+    private X10Monitor monitor;
+    private LinkedHashMap cache;
+    private int cacheSize;
+    private long cacheHits;
+    private long cacheMisses;
+
+    /** Creates a new instance of X10SceneCompiler that assumes nothing
+     * about the current state of any unit.
+     */
+    public X10SceneCompiler() {
+        this(null);
+    }
+
+    /** Creates a new instance of X10SceneCompiler
+     * @param monitor The monitor that knows the current state of the units,
+     * or <code>null</code> if it is unknown.
+     */
+    public X10SceneCompiler(X10Monitor monitor) {
+        this.monitor = monitor;
+        this.cacheSize = DEFAULT_CACHE_SIZE;
+        // Access ordered, so the least recently used plan goes first
+        this.cache = new LinkedHashMap(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /** Returns the cheapest plan that puts the units in the states the
+     * scene sets.  The plan is empty if every unit is already set.
+     */
+    public synchronized X10FramePlan compile(X10Scene scene) {
+        if(scene == null)
+            throw new IllegalArgumentException("X10Scene can not be null.");
+
+        // Gather the targets and current states of the scene's house codes
+        List houses = new ArrayList();
+        StringBuffer key = new StringBuffer();
+        for(int h = 0; h < HOUSE_CODES.length; h++) {
+            HouseCode houseCode = HOUSE_CODES[h];
+            if(scene.getUnitCodes(houseCode).isEmpty())
+                continue;
+            int[] target = new int[UNIT_CODES.length];
+            int[] current = new int[UNIT_CODES.length];
+            boolean[] light = new boolean[UNIT_CODES.length];
+            for(int u = 0; u < UNIT_CODES.length; u++) {
+                UnitCode unitCode = UNIT_CODES[u];
+                light[u] = monitor == null || monitor.isLight(houseCode, unitCode);
+                current[u] = UNKNOWN;
+                if(monitor != null) {
+                    current[u] = monitor.isOn(houseCode, unitCode)
+                               ? toSteps(monitor.getBrightnessLevel(houseCode, unitCode)) : 0;
+                }
+                target[u] = UNSET;
+                if(scene.contains(houseCode, unitCode)) {
+                    target[u] = toSteps(scene.getBrightnessLevel(houseCode, unitCode));
+                    // Units that are not lights are either off or on
+                    if(target[u] > 0 && !light[u])
+                        target[u] = DIM_STEPS;
+                }
+                key.append(target[u]).append(',').append(current[u]).append(light[u] ? 'L' : 'A').append(';');
+            }
+            houses.add(new Object[] {houseCode, target, current, light});
+            key.append('|');
+        }
+
+        X10FramePlan plan = (X10FramePlan)this.cache.get(key.toString());
+        if(plan != null) {
+            this.cacheHits++;
+            return plan;
+        }
+        this.cacheMisses++;
+
+        List events = new ArrayList();
+        for(Iterator i = houses.iterator();i.hasNext();) {
+            Object[] house = (Object[])i.next();
+            events.addAll(compileHouse((HouseCode)house[0], (int[])house[1], (int[])house[2], (boolean[])house[3]));
+        }
+        plan = new X10FramePlan((X10Event[])events.toArray(new X10Event[events.size()]));
+        this.cache.put(key.toString(), plan);
+        return plan;
+    }
+
+    /** Returns the number of plans the cache holds. */
+    public synchronized int getCacheSize() {
+        return this.cacheSize;
+    }
+
+    /** Sets the number of plans the cache holds. */
+    public synchronized void setCacheSize(int cacheSize) {
+        if(cacheSize < 0)
+            throw new IllegalArgumentException("The cache size can not be negative: "+cacheSize);
+        this.cacheSize = cacheSize;
+        while(this.cache.size() > cacheSize) {
+            this.cache.remove(this.cache.keySet().iterator().next());
+        }
+    }
+
+    /** Returns the number of compiles answered from the cache. */
+    public synchronized long getCacheHits() {
+        return this.cacheHits;
+    }
+
+    /** Returns the number of compiles that had to build a plan. */
+    public synchronized long getCacheMisses() {
+        return this.cacheMisses;
+    }
+
+    /** Empties the cache. */
+    public synchronized void clearCache() {
+        this.cache.clear();
+    }
+
+    /** Returns the cheapest frames for one house code */
+    private List compileHouse(HouseCode houseCode, int[] target, int[] current, boolean[] light) {
+        List best = correct(houseCode, target, current, light);
+        int bestCycles = cycles(best);
+
+        // ALL_UNITS_OFF is safe if everything the scene leaves out is off
+        boolean allUnitsOffSafe = true;
+        for(int u = 0; u < target.length; u++) {
+            if(target[u] == UNSET && current[u] != 0)
+                allUnitsOffSafe = false;
+        }
+        if(allUnitsOffSafe) {
+            int[] after = new int[current.length];
+            List candidate = new ArrayList();
+            candidate.add(new X10Event(this, houseCode, FunctionCode.ALL_UNITS_OFF));
+            candidate.addAll(correct(houseCode, target, after, light));
+            if(cycles(candidate) < bestCycles) {
+                best = candidate;
+                bestCycles = cycles(candidate);
+            }
+        }
+
+        // ALL_LIGHTS_ON is safe if everything the scene leaves out is
+        // either fully on or not a light, which takes a monitor to know
+        boolean allLightsOnSafe = this.monitor != null;
+        for(int u = 0; u < target.length; u++) {
+            if(target[u] == UNSET && light[u] && current[u] != DIM_STEPS)
+                allLightsOnSafe = false;
+        }
+        if(allLightsOnSafe) {
+            int[] after = current.clone();
+            for(int u = 0; u < after.length; u++) {
+                if(light[u])
+                    after[u] = DIM_STEPS;
+            }
+            List candidate = new ArrayList();
+            candidate.add(new X10Event(this, houseCode, FunctionCode.ALL_LIGHTS_ON));
+            candidate.addAll(correct(houseCode, target, after, light));
+            if(cycles(candidate) < bestCycles) {
+                best = candidate;
+                bestCycles = cycles(candidate);
+            }
+        }
+        return best;
+    }
+
+    /** Returns the frames that take the units from their current states to
+     * their targets, addressing units that need the same functions together.
+     */
+    private List correct(HouseCode houseCode, int[] target, int[] current, boolean[] light) {
+        // Group the units by the functions they need, in unit code order
+        Map groups = new LinkedHashMap();
+        for(int u = 0; u < target.length; u++) {
+            List steps = getSteps(target[u], current[u], light[u]);
+            if(steps.isEmpty())
+                continue;
+            String key = steps.toString();
+            Object[] group = (Object[])groups.get(key);
+            if(group == null) {
+                group = new Object[] {steps, new ArrayList()};
+                groups.put(key, group);
+            }
+            ((List)group[1]).add(UNIT_CODES[u]);
+        }
+
+        List events = new ArrayList();
+        for(Iterator i = groups.values().iterator();i.hasNext();) {
+            Object[] group = (Object[])i.next();
+            for(Iterator j = ((List)group[1]).iterator();j.hasNext();) {
+                events.add(new X10Event(this, houseCode, (UnitCode)j.next()));
+            }
+            for(Iterator j = ((List)group[0]).iterator();j.hasNext();) {
+                Step step = (Step)j.next();
+                if(step.code instanceof FunctionCode.Brightness)
+                    events.add(new X10Event(this, houseCode, (FunctionCode.Brightness)step.code, (double)step.steps/DIM_STEPS));
+                else
+                    events.add(new X10Event(this, houseCode, (FunctionCode.Basic)step.code));
+            }
+        }
+        return events;
+    }
+
+    /** Returns the functions that take one unit from its state to its target */
+    private static List getSteps(int target, int current, boolean light) {
+        List steps = new ArrayList(3);
+        if(target == UNSET || target == current)
+            return steps;
+        if(target == 0) {
+            steps.add(new Step(FunctionCode.OFF, 0));
+        } else if(!light) {
+            if(current <= 0)
+                steps.add(new Step(FunctionCode.ON, 0));
+        } else if(current > 0) {
+            if(current > target)
+                steps.add(new Step(FunctionCode.DIM, current-target));
+            else
+                steps.add(new Step(FunctionCode.BRIGHTEN, target-current));
+        } else {
+            // An unknown light may already be on at some other level, where
+            // ON leaves it, so brighten it all the way to know where it is
+            steps.add(new Step(FunctionCode.ON, 0));
+            if(current == UNKNOWN)
+                steps.add(new Step(FunctionCode.BRIGHTEN, DIM_STEPS));
+            if(target < DIM_STEPS)
+                steps.add(new Step(FunctionCode.DIM, DIM_STEPS-target));
+        }
+        return steps;
+    }
+
+    private static int cycles(List events) {
+        int cycles = 0;
+        for(Iterator i = events.iterator();i.hasNext();) {
+            cycles += X10FramePlan.getCycles((X10Event)i.next());
+        }
+        return cycles;
+    }
+
+    /** Converts a brightness level to dim steps, where anything on is at least one step */
+    private static int toSteps(double level) {
+        int steps = (int)Math.round(level*DIM_STEPS);
+        if(steps == 0 && level > X10Event.MIN_BRIGHTNESS_LEVEL)
+            steps = 1;
+        return steps;
+    }
+}
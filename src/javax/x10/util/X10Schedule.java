@@ -0,0 +1,193 @@
+/*
+ * X10Schedule.java
+ *
+ * Created on October 30, 2026, 7:05 PM
+ */
+
+package javax.x10.util;
+
+import java.util.*;
+
+/** <code>X10Schedule</code> is a calendar rule for the
+ * {@link javax.x10.util.X10Scheduler}: it gives the next time after a given
+ * time that a recurring action is due.  Schedules can be daily at a fixed
+ * time, or at sunrise or sunset plus an offset.  Sunrise and sunset are
+ * computed locally from a latitude and longitude with the sunrise equation
+ * of the <i>Almanac for Computers</i>, which is good to about a minute,
+ * and times of day are in the default time zone.
+ *
+ * @see javax.x10.util.X10Scheduler
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public abstract class X10Schedule {
+
+    private static final long MINUTE = 60000;
+    private static final long HOUR = 60*MINUTE;
+    private static final long DAY = 24*HOUR;
+    /** The sun's zenith at sunrise and sunset, allowing for refraction */
+    private static final double ZENITH = 90.833;
+    /** Days searched for the next sunrise or sunset before giving up */
+    private static final int MAXIMUM_DAYS = 366;
+
+    /** A schedule that is due once on each day, at a time computed for that day */
+    private static abstract class DailySchedule extends X10Schedule {
+        public long getNextTime(long after) {
+            Calendar day = Calendar.getInstance();
+            day.setTimeInMillis(after);
+            startOfDay(day);
+            // Start a day early in case an offset pushes yesterday's time into today
+            day.add(Calendar.DATE, -1);
+            for(int i = 0; i <= MAXIMUM_DAYS; i++) {
+                long time = getTime(day);
+                if(time > after)
+                    return time;
+                day.add(Calendar.DATE, 1);
+            }
+            return -1;
+        }
+        /** Returns the time due on the given day, or -1 if there is none */
+        abstract long getTime(Calendar day);
+    }
+
+    /** Not public, only the factory methods create schedules */
+    X10Schedule() {
+    }
+
+    /** Returns the first time after the given time that the schedule is
+     * due, in milliseconds since the epoch, or -1 if it is never due again.
+     */
+    public abstract long getNextTime(long after);
+
+    /** Returns a schedule that is due every day at the given time.
+     * @param minute The time of day, in minutes after midnight.
+     */
+    public static X10Schedule daily(final int minute) {
+        if(minute < 0 || minute >= 24*60)
+            throw new IllegalArgumentException("Minute must be a minute of the day: "+minute);
+        return new DailySchedule() {
+            long getTime(Calendar day) {
+                Calendar time = (Calendar)day.clone();
+                time.set(Calendar.HOUR_OF_DAY, minute/60);
+                time.set(Calendar.MINUTE, minute%60);
+                return time.getTimeInMillis();
+            }
+            public String toString() {
+                return "daily at "+(minute/60)+":"+(minute%60 < 10 ? "0" : "")+(minute%60);
+            }
+        };
+    }
+
+    /** Returns a schedule that is due every day at sunrise plus an offset.
+     * Days the sun does not rise are skipped.
+     * @param latitude Degrees north of the equator, negative for south.
+     * @param longitude Degrees east of Greenwich, negative for west.
+     * @param offset Minutes after sunrise, negative for before.
+     */
+    public static X10Schedule sunrise(double latitude, double longitude, int offset) {
+        return sun(latitude, longitude, offset, true);
+    }
+
+    /** Returns a schedule that is due every day at sunset plus an offset.
+     * Days the sun does not set are skipped.
+     * @param latitude Degrees north of the equator, negative for south.
+     * @param longitude Degrees east of Greenwich, negative for west.
+     * @param offset Minutes after sunset, negative for before.
+     */
+    public static X10Schedule sunset(double latitude, double longitude, int offset) {
+        return sun(latitude, longitude, offset, false);
+    }
+
+    /** Returns the time of sunrise on the given day, or -1 if the sun does not rise. */
+    public static long getSunrise(double latitude, double longitude, Calendar day) {
+        return getSunTime(latitude, longitude, day, true);
+    }
+
+    /** Returns the time of sunset on the given day, or -1 if the sun does not set. */
+    public static long getSunset(double latitude, double longitude, Calendar day) {
+        return getSunTime(latitude, longitude, day, false);
+    }
+
+    private static X10Schedule sun(final double latitude, final double longitude, final int offset, final boolean rise) {
+        if(latitude < -90 || latitude > 90)
+            throw new IllegalArgumentException("Latitude must be between -90 and 90: "+latitude);
+        if(longitude < -180 || longitude > 180)
+            throw new IllegalArgumentException("Longitude must be between -180 and 180: "+longitude);
+        return new DailySchedule() {
+            long getTime(Calendar day) {
+                long time = getSunTime(latitude, longitude, day, rise);
+                return time < 0 ? -1 : time+offset*MINUTE;
+            }
+            public String toString() {
+                return (rise ? "sunrise" : "sunset")+(offset < 0 ? "" : "+")+offset+"min at "+latitude+","+longitude;
+            }
+        };
+    }
+
+    private static long getSunTime(double latitude, double longitude, Calendar day, boolean rise) {
+        Calendar local = (Calendar)day.clone();
+        startOfDay(local);
+        int dayOfYear = local.get(Calendar.DAY_OF_YEAR);
+        double longitudeHour = longitude/15;
+        double t = dayOfYear+((rise ? 6 : 18)-longitudeHour)/24;
+
+        // The sun's mean anomaly and true longitude
+        double m = 0.9856*t-3.289;
+        double l = normalize(m+1.916*sin(m)+0.020*sin(2*m)+282.634, 360);
+
+        // Right ascension, in the same quadrant as the longitude, in hours
+        double ra = normalize(Math.toDegrees(Math.atan(0.91764*tan(l))), 360);
+        ra += Math.floor(l/90)*90-Math.floor(ra/90)*90;
+        ra /= 15;
+
+        // Declination and local hour angle
+        double sinDeclination = 0.39782*sin(l);
+        double cosDeclination = Math.cos(Math.asin(sinDeclination));
+        double cosH = (cos(ZENITH)-sinDeclination*sin(latitude))/(cosDeclination*cos(latitude));
+        if(cosH > 1 || cosH < -1)
+            return -1;
+        double h = Math.toDegrees(Math.acos(cosH));
+        if(rise)
+            h = 360-h;
+        h /= 15;
+
+        // Local mean time, then UTC
+        double meanTime = h+ra-0.06571*t-6.622;
+        double utc = normalize(meanTime-longitudeHour, 24);
+
+        // Put the UTC hour on the local day
+        Calendar midnight = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        midnight.clear();
+        midnight.set(local.get(Calendar.YEAR), local.get(Calendar.MONTH), local.get(Calendar.DATE));
+        long time = midnight.getTimeInMillis()+(long)(utc*HOUR);
+        long start = local.getTimeInMillis();
+        while(time < start)
+            time += DAY;
+        while(time >= start+DAY)
+            time -= DAY;
+        return time;
+    }
+
+    private static void startOfDay(Calendar day) {
+        day.set(Calendar.HOUR_OF_DAY, 0);
+        day.set(Calendar.MINUTE, 0);
+        day.set(Calendar.SECOND, 0);
+        day.set(Calendar.MILLISECOND, 0);
+    }
+
+    private static double normalize(double value, double range) {
+        value %= range;
+        return value < 0 ? value+range : value;
+    }
+
+    private static double sin(double degrees) {
+        return Math.sin(Math.toRadians(degrees));
+    }
+
+    private static double cos(double degrees) {
+        return Math.cos(Math.toRadians(degrees));
+    }
+
+    private static double tan(double degrees) {
+        return Math.tan(Math.toRadians(degrees));
+    }
+}
@@ -0,0 +1,463 @@
+/*
+ * X10Scheduler.java
+ *
+ * Created on October 30, 2026, 7:50 PM
+ */
+
+package javax.x10.util;
+
+import java.util.*;
+import java.util.logging.*;
+
+import javax.x10.*;
+import javax.x10.codes.*;
+import javax.x10.event.X10Event;
+
+/** <code>X10Scheduler</code> transmits scenes and events at set times:
+ * once after a delay, once at a time, or repeatedly on an
+ * {@link javax.x10.util.X10Schedule}.  It is meant for thousands of timed
+ * actions, such as schedules, delays, and turning lights off a while after
+ * motion stops, on a single thread.
+ * <P>
+ * Tasks are kept in a hierarchical timing wheel: four wheels of 64 slots,
+ * the first a tick per slot and each one after 64 times coarser than the
+ * one before.  A task goes into the slot of the coarsest wheel it fits and
+ * is moved down a wheel each time that wheel's current slot comes around,
+ * so scheduling and cancelling are constant time and each tick only looks
+ * at the tasks due in it.  With the default tick of 100 milliseconds the
+ * wheels reach about 19 days; later tasks wait in the last slot of the
+ * outer wheel until they are close enough.
+ * <P>
+ * Tasks can be given a jitter, which moves each time they are due by a
+ * random amount up to the jitter either way, so that an occupied house
+ * does not look like it runs on a timer.
+ * <P>
+ * Every task that falls due on the same tick goes out as one batch: their
+ * scenes are merged, with later tasks winning where they set the same
+ * unit, compiled into one {@link javax.x10.util.X10FramePlan}, and
+ * transmitted ahead of their events.  Units that share a state then share
+ * frames on the powerline.
+ *
+ * @see javax.x10.util.X10Schedule
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class X10Scheduler {
+
+    // Setup logging facilities
+    private static final Logger LOG =
+            Logger.getLogger(X10Scheduler.class.getName());
+
+    /** The length of a tick by default, in milliseconds */
+    public static final long DEFAULT_TICK = 100;
+
+    private static final int WHEEL_BITS = 6;
+    private static final int SLOTS = 1 << WHEEL_BITS;
+    private static final int SLOT_MASK = SLOTS-1;
+    private static final int WHEELS = 4;
+    /** The farthest ahead, in ticks, the wheels can hold a task */
+    private static final long SPAN = 1L << (WHEEL_BITS*WHEELS);
+
+    private static final X10Event[] NO_EVENTS = new X10Event[0];
+
+    /** One scheduled action.  Tasks are also the links of the wheel slots'
+     * lists, which is what makes cancelling constant time.
+     */
+    public final class Task {
+        private X10Scene scene;
+        private X10Event[] events;
+        private X10Schedule schedule;
+        private long jitter;
+        private long time;
+        private long dueTick;
+        private Task previous;
+        private Task next;
+        private boolean cancelled;
+
+        private Task(X10Scene scene, X10Event[] events, X10Schedule schedule, long jitter) {
+            this.scene = scene;
+            this.events = events;
+            this.schedule = schedule;
+            this.jitter = jitter;
+        }
+
+        /** Returns the time the task is next due, in milliseconds since the epoch. */
+        public long getScheduledTime() {
+            synchronized(lock) {
+                return this.time;
+            }
+        }
+
+        /** Returns the calendar rule the task repeats on, or null if it runs once. */
+        public X10Schedule getSchedule() {
+            return this.schedule;
+        }
+
+        public boolean isCancelled() {
+            synchronized(lock) {
+                return this.cancelled;
+            }
+        }
+
+        /** Stops the task from running again.
+         * @return true if the task was waiting to run
+         */
+        public boolean cancel() {
+            synchronized(lock) {
+                if(this.cancelled)
+                    return false;
+                this.cancelled = true;
+                return unlink(this);
+            }
+        }
+    }
+
+    /** Runs the tasks as they fall due until the scheduler is stopped */
+    private class Runner implements Runnable {
+        public void run() {
+            while(true) {
+                List due;
+                synchronized(lock) {
+                    // A start() before this thread saw the stop keeps it going
+                    if(!running) {
+                        thread = null;
+                        return;
+                    }
+                    long now = System.currentTimeMillis();
+                    due = advance(now);
+                    if(due.isEmpty()) {
+                        // Sleep to the next tick, or with nothing scheduled
+                        // until add() or stop() notifies the lock
+                        try {
+                            if(count == 0)
+                                lock.wait();
+                            else
+                                lock.wait(Math.max(origin+baseTick*tick-now, 1));
+                        } catch(InterruptedException e) {
+                            running = false;
+                        }
+                        continue;
+                    }
+                }
+                fire(due);
+            }
+        }
+    }
+
+    private X10Transmitter transmitter;
+    private X10SceneCompiler compiler;
+    private long tick;
+    private Random random;
+    private Object lock = new Object();
+    /** The thread running the tasks, only changed with the lock held */
+    private Thread thread;
+    private volatile boolean running;
+
+    /** The slot lists of each wheel, each headed by a sentinel task */
+    private Task[][] wheels;
+    /** When tick 0 began */
+    private long origin;
+    /** The next tick to process */
+    private long baseTick;
+    /** The number of tasks in the wheels */
+    private int count;
+
+    private long tasksRun;
+    private long batchesSent;
+
+    /** Creates a new instance of X10Scheduler that transmits on the given
+     * connection, compiling scenes against its monitor if it has one.
+     */
+    public X10Scheduler(X10Connection xconn) {
+        this(xconn == null ? null : xconn.getX10Transmitter(),
+             xconn == null ? null : xconn.getMonitor(),
+             DEFAULT_TICK);
+    }
+
+    /** Creates a new instance of X10Scheduler
+     * @param transmitter Where the batches are transmitted.
+     * @param monitor The state scenes are compiled against, or null to
+     * assume nothing.
+     * @param tick The length of a tick in milliseconds.  Tasks are run on
+     * the first tick at or after they are due.
+     */
+    public X10Scheduler(X10Transmitter transmitter, X10Monitor monitor, long tick) {
+        if(transmitter == null)
+            throw new IllegalArgumentException("X10Transmitter can not be null.");
+        if(tick <= 0)
+            throw new IllegalArgumentException("The tick must be positive: "+tick);
+        this.transmitter = transmitter;
+        this.compiler = new X10SceneCompiler(monitor);
+        this.tick = tick;
+        this.random = new Random();
+        this.wheels = new Task[WHEELS][SLOTS];
+        for(int w = 0; w < WHEELS; w++) {
+            for(int s = 0; s < SLOTS; s++) {
+                Task sentinel = new Task(null, null, null, 0);
+                sentinel.previous = sentinel;
+                sentinel.next = sentinel;
+                this.wheels[w][s] = sentinel;
+            }
+        }
+        this.origin = System.currentTimeMillis();
+    }
+
+    /** Transmits a scene once after a delay in milliseconds. */
+    public Task schedule(X10Scene scene, long delay) {
+        return scheduleAt(scene, System.currentTimeMillis()+delay, 0);
+    }
+
+    /** Transmits events once after a delay in milliseconds. */
+    public Task schedule(X10Event[] events, long delay) {
+        return scheduleAt(events, System.currentTimeMillis()+delay, 0);
+    }
+
+    /** Transmits a scene once at a time in milliseconds since the epoch,
+     * moved by up to <code>jitter</code> milliseconds either way.
+     */
+    public Task scheduleAt(X10Scene scene, long time, long jitter) {
+        if(scene == null)
+            throw new IllegalArgumentException("X10Scene can not be null.");
+        return add(new Task(scene, NO_EVENTS, null, jitter), time);
+    }
+
+    /** Transmits events once at a time in milliseconds since the epoch,
+     * moved by up to <code>jitter</code> milliseconds either way.
+     */
+    public Task scheduleAt(X10Event[] events, long time, long jitter) {
+        return add(new Task(null, copy(events), null, jitter), time);
+    }
+
+    /** Transmits a scene each time the schedule is due, moved by up to
+     * <code>jitter</code> milliseconds either way.
+     */
+    public Task schedule(X10Scene scene, X10Schedule schedule, long jitter) {
+        if(scene == null)
+            throw new IllegalArgumentException("X10Scene can not be null.");
+        if(schedule == null)
+            throw new IllegalArgumentException("X10Schedule can not be null.");
+        return add(new Task(scene, NO_EVENTS, schedule, jitter), schedule.getNextTime(System.currentTimeMillis()));
+    }
+
+    /** Transmits events each time the schedule is due, moved by up to
+     * <code>jitter</code> milliseconds either way.
+     */
+    public Task schedule(X10Event[] events, X10Schedule schedule, long jitter) {
+        if(schedule == null)
+            throw new IllegalArgumentException("X10Schedule can not be null.");
+        return add(new Task(null, copy(events), schedule, jitter), schedule.getNextTime(System.currentTimeMillis()));
+    }
+
+    /** Starts running tasks as they fall due. */
+    public void start() {
+        synchronized(lock) {
+            this.running = true;
+            if(this.thread == null) {
+                this.thread = new Thread(new Runner(), "X10Scheduler");
+                this.thread.start();
+            }
+        }
+    }
+
+    /** Stops running tasks.  They stay scheduled, and any that fall due
+     * while stopped run together when started again.
+     */
+    public void stop() {
+        synchronized(lock) {
+            this.running = false;
+            lock.notifyAll();
+        }
+    }
+
+    /** Returns the truth that the scheduler has been started and not stopped. */
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    /** Returns the number of tasks waiting to run. */
+    public int getTaskCount() {
+        synchronized(lock) {
+            return this.count;
+        }
+    }
+
+    /** Returns the number of times a task has run. */
+    public long getTasksRun() {
+        synchronized(lock) {
+            return this.tasksRun;
+        }
+    }
+
+    /** Returns the number of batches transmitted.  Fewer batches than tasks
+     * run means tasks were coalesced.
+     */
+    public long getBatchesSent() {
+        synchronized(lock) {
+            return this.batchesSent;
+        }
+    }
+
+    public long getTick() {
+        return this.tick;
+    }
+
+    private Task add(Task task, long time) {
+        if(task.jitter < 0)
+            throw new IllegalArgumentException("The jitter can not be negative: "+task.jitter);
+        synchronized(lock) {
+            if(time < 0) {
+                // A schedule that is never due
+                task.cancelled = true;
+                return task;
+            }
+            task.time = jitter(time, task.jitter);
+            insert(task);
+            lock.notifyAll();
+        }
+        return task;
+    }
+
+    private long jitter(long time, long jitter) {
+        if(jitter == 0)
+            return time;
+        return time+(long)((random.nextDouble()*2-1)*jitter);
+    }
+
+    /** Files a task in the coarsest wheel it fits.  Callers hold the lock. */
+    private void insert(Task task) {
+        long due = (task.time-origin)/tick;
+        if(task.time > origin && (task.time-origin)%tick != 0)
+            due++;
+        if(due < baseTick)
+            due = baseTick;
+        task.dueTick = due;
+
+        long ticks = due-baseTick;
+        long placed = due;
+        int wheel = 0;
+        while(wheel < WHEELS-1 && ticks >= 1L << (WHEEL_BITS*(wheel+1))) {
+            wheel++;
+        }
+        if(ticks >= SPAN)
+            // Too far out, park it in the last slot of the outer wheel
+            placed = baseTick+SPAN-1;
+        int slot = (int)(placed >>> (WHEEL_BITS*wheel)) & SLOT_MASK;
+
+        Task head = wheels[wheel][slot];
+        task.previous = head.previous;
+        task.next = head;
+        head.previous.next = task;
+        head.previous = task;
+        count++;
+    }
+
+    /** Takes a task out of its slot.  Callers hold the lock. */
+    private boolean unlink(Task task) {
+        if(task.next == null)
+            return false;
+        task.previous.next = task.next;
+        task.next.previous = task.previous;
+        task.previous = null;
+        task.next = null;
+        count--;
+        return true;
+    }
+
+    /** Processes every tick up to now and returns the tasks that fell due,
+     * in the order they were due.  Callers hold the lock.
+     */
+    private List advance(long now) {
+        List due = new ArrayList();
+        long nowTick = (now-origin)/tick;
+        while(baseTick <= nowTick) {
+            int slot = (int)baseTick & SLOT_MASK;
+            // Move the next slot of each coarser wheel down as the finer one wraps
+            int index = slot;
+            for(int wheel = 1; wheel < WHEELS && index == 0; wheel++) {
+                index = (int)(baseTick >>> (WHEEL_BITS*wheel)) & SLOT_MASK;
+                cascade(wheels[wheel][index]);
+            }
+            Task head = wheels[0][slot];
+            while(head.next != head) {
+                Task task = head.next;
+                unlink(task);
+                if(task.dueTick <= baseTick)
+                    due.add(task);
+                else
+                    insert(task);
+            }
+            baseTick++;
+        }
+        return due;
+    }
+
+    private void cascade(Task head) {
+        List tasks = new ArrayList();
+        while(head.next != head) {
+            Task task = head.next;
+            unlink(task);
+            tasks.add(task);
+        }
+        for(int i = 0; i < tasks.size(); i++) {
+            insert((Task)tasks.get(i));
+        }
+    }
+
+    /** Transmits the tasks that fell due together as one batch and
+     * reschedules the recurring ones.
+     */
+    private void fire(List due) {
+        X10Scene merged = new X10Scene();
+        List events = new ArrayList();
+        long now = System.currentTimeMillis();
+        synchronized(lock) {
+            for(int i = 0; i < due.size(); i++) {
+                Task task = (Task)due.get(i);
+                if(task.scene != null)
+                    merge(merged, task.scene);
+                events.addAll(Arrays.asList(task.events));
+                if(task.schedule != null && !task.cancelled) {
+                    long next = task.schedule.getNextTime(Math.max(now, task.time));
+                    if(next < 0) {
+                        task.cancelled = true;
+                    } else {
+                        task.time = jitter(next, task.jitter);
+                        insert(task);
+                    }
+                }
+            }
+            this.tasksRun += due.size();
+            this.batchesSent++;
+        }
+        try {
+            List batch = new ArrayList();
+            if(merged.size() > 0)
+                batch.addAll(Arrays.asList(compiler.compile(merged).getEvents()));
+            batch.addAll(events);
+            new X10FramePlan((X10Event[])batch.toArray(new X10Event[batch.size()])).transmit(transmitter);
+        } catch(RuntimeException e) {
+            LOG.log(Level.WARNING,"Unable to transmit scheduled batch",e);
+        }
+    }
+
+    private static void merge(X10Scene into, X10Scene scene) {
+        for(Iterator h = scene.getHouseCodes().iterator();h.hasNext();) {
+            HouseCode houseCode = (HouseCode)h.next();
+            for(Iterator u = scene.getUnitCodes(houseCode).iterator();u.hasNext();) {
+                UnitCode unitCode = (UnitCode)u.next();
+                into.setBrightnessLevel(houseCode, unitCode, scene.getBrightnessLevel(houseCode, unitCode));
+            }
+        }
+    }
+
+    private static X10Event[] copy(X10Event[] events) {
+        if(events == null)
+            throw new IllegalArgumentException("X10Event[] can not be null.");
+        X10Event[] copy = new X10Event[events.length];
+        for(int i = 0; i < events.length; i++) {
+            if(events[i] == null)
+                throw new IllegalArgumentException("X10Event can not be null.");
+            copy[i] = events[i];
+        }
+        return copy;
+    }
+}
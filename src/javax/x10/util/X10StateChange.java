@@ -0,0 +1,86 @@
+/*
+ * X10StateChange.java
+ *
+ * Created on November 3, 2026, 7:45 PM
+ */
+
+package javax.x10.util;
+
+import javax.x10.codes.*;
+import javax.x10.event.X10Event;
+
+/** <code>X10StateChange</code> is one unit's change of state as worked
+ * out by an {@link javax.x10.util.X10Monitor}: whether it went on or off,
+ * its brightness level before and after, and the
+ * {@link javax.x10.event.X10Event} that changed it.  Only real changes are
+ * reported, so an event that leaves a unit as it was produces none.
+ *
+ * @see javax.x10.util.X10StateListener
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public final class X10StateChange {
+
+    private HouseCode houseCode;
+    private UnitCode unitCode;
+    private boolean wasOn;
+    private boolean on;
+    private double oldBrightnessLevel;
+    private double brightnessLevel;
+    private X10Event event;
+
+    /** Not public, only X10Monitor creates changes */
+    X10StateChange(HouseCode houseCode, UnitCode unitCode,
+                   boolean wasOn, double oldBrightnessLevel,
+                   boolean on, double brightnessLevel, X10Event event) {
+        this.houseCode = houseCode;
+        this.unitCode = unitCode;
+        this.wasOn = wasOn;
+        this.oldBrightnessLevel = oldBrightnessLevel;
+        this.on = on;
+        this.brightnessLevel = brightnessLevel;
+        this.event = event;
+    }
+
+    public HouseCode getHouseCode() {
+        return this.houseCode;
+    }
+
+    public UnitCode getUnitCode() {
+        return this.unitCode;
+    }
+
+    /** Returns the truth that the unit was on before the change. */
+    public boolean wasOn() {
+        return this.wasOn;
+    }
+
+    /** Returns the truth that the unit is on after the change. */
+    public boolean isOn() {
+        return this.on;
+    }
+
+    /** Returns the truth that the unit went on or off. */
+    public boolean isSwitched() {
+        return this.wasOn != this.on;
+    }
+
+    /** Returns the brightness level before the change. */
+    public double getOldBrightnessLevel() {
+        return this.oldBrightnessLevel;
+    }
+
+    /** Returns the brightness level after the change. */
+    public double getBrightnessLevel() {
+        return this.brightnessLevel;
+    }
+
+    /** Returns the event that caused the change. */
+    public X10Event getX10Event() {
+        return this.event;
+    }
+
+    public String toString() {
+        return "X10StateChange["+houseCode+unitCode+" "+(wasOn?"ON":"OFF")+","+oldBrightnessLevel
+              +" -> "+(on?"ON":"OFF")+","+brightnessLevel+"]";
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * X10StateListener.java
+ *
+ * Created on November 3, 2026, 7:40 PM
+ */
+
+package javax.x10.util;
+
+import javax.x10.event.X10Event;
+
+/** Classes that implement this interface are told of the changes an
+ * {@link javax.x10.util.X10Monitor} works out from the events it sees,
+ * rather than polling the monitor for them.  Register with
+ * {@link javax.x10.util.X10Monitor#addX10StateListener}.
+ *
+ * @see javax.x10.util.X10StateChange
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public interface X10StateListener {
+
+    /** Called once for each event that changed the state of at least one
+     * unit the listener is interested in.  It is called while the monitor
+     * is locked, so it sees the state just after the event and should not
+     * block.
+     * @param event The event that was applied.
+     * @param changes The units it changed, at least one.
+     */
+    public void stateChanged(X10Event event, X10StateChange[] changes);
+}
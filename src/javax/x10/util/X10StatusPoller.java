@@ -0,0 +1,472 @@
+/*
+ * X10StatusPoller.java
+ *
+ * Created on October 26, 2026, 7:34 PM
+ */
+
+package javax.x10.util;
+
+import java.util.*;
+
+import javax.x10.*;
+import javax.x10.codes.*;
+import javax.x10.event.*;
+
+/** <code>X10StatusPoller</code> asks two-way modules for their status with
+ * <code>STATUS_REQUEST</code> without getting in the way of real commands.
+ * <P>
+ * Each polled unit has its own interval.  A unit that answers with the same
+ * status as last time is polled half as often, up to the maximum interval;
+ * a unit whose status changed, or that was seen on the powerline, goes back
+ * to the minimum interval.  Polls are only sent while the transmitter has
+ * nothing else queued or in flight, one at a time, and only while polling
+ * has used less than its share of powerline time over the budget window.
+ * <P>
+ * The <code>STATUS_ON</code> or <code>STATUS_OFF</code> reply on the polled
+ * house code is matched to the outstanding request, and the time between
+ * the two is recorded as the round trip time.  A request with no reply
+ * within the reply timeout counts as a timeout.
+ * <P>
+ * Idle slots are judged from the {@link javax.x10.event.X10TransmitterEvent}s
+ * the poller sees: the queue depth of the transmitter's last queue notice,
+ * and whether the last event it took from its queue has been reported
+ * {@link javax.x10.event.X10TransmitterEvent#EVENT_DELIVERED} or
+ * {@link javax.x10.event.X10TransmitterEvent#EVENT_UNDELIVERED} yet.
+ * <P>
+ * A poller can be created for any connection that both transmits and
+ * receives.  Connections may also keep one of their own that they stop
+ * when they are closed, as the CM11A connection does.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class X10StatusPoller {
+
+    /** The shortest time between polls of a unit by default, one minute */
+    public static final long DEFAULT_MINIMUM_INTERVAL = 60000;
+    /** The longest time between polls of a unit by default, half an hour */
+    public static final long DEFAULT_MAXIMUM_INTERVAL = 1800000;
+    /** The time to wait for a reply by default */
+    public static final long DEFAULT_REPLY_TIMEOUT = 3000;
+    /** The share of powerline time polling may use by default */
+    public static final double DEFAULT_BUDGET = 0.1;
+    /** The window the budget is measured over by default, five minutes */
+    public static final long DEFAULT_BUDGET_WINDOW = 300000;
+
+    /** The polling state of one unit */
+    private static final class Poll {
+        private HouseCode houseCode;
+        private UnitCode unitCode;
+        private long interval;
+        private long nextPoll;
+        private Boolean status;
+        private Poll(HouseCode houseCode, UnitCode unitCode, long interval, long nextPoll) {
+            this.houseCode = houseCode;
+            this.unitCode = unitCode;
+            this.interval = interval;
+            this.nextPoll = nextPoll;
+        }
+    }
+
+    private class PollerListener extends X10Adapter implements X10TransmitterListener {
+        private PollerListener() {
+        }
+
+        public void address(X10Event e) {       addressReceived(e); }
+        public void statusOn(X10Event e) {      statusReceived(e, true); }
+        public void statusOff(X10Event e) {     statusReceived(e, false); }
+
+        public void queueUpdated(X10TransmitterEvent e) {
+            queueChanged(e);
+        }
+        public void eventDelivered(X10TransmitterEvent e) {
+            eventFinished(e.getX10Event());
+        }
+        public void eventUndelivered(X10TransmitterEvent e) {
+            eventFinished(e.getX10Event());
+        }
+        public void queueEmptied(X10TransmitterEvent e) {
+            queueChanged(e);
+        }
+    }
+
+    /** Sends the polls as they fall due until the poller is stopped */
+    private class Runner implements Runnable {
+        public void run() {
+            synchronized(lock) {
+                // A start() before this thread saw the stop keeps it going
+                while(running) {
+                    long delay = pollIfDue();
+                    try {
+                        lock.wait(Math.max(delay, 1));
+                    } catch(InterruptedException e) {
+                        running = false;
+                    }
+                }
+                thread = null;
+            }
+        }
+    }
+
+    private X10Transmitter transmitter;
+    private Object lock = new Object();
+    /** The thread sending the polls, only changed with the lock held */
+    private Thread thread;
+    private volatile boolean running;
+
+    /** The polled units, keyed by house code and unit code */
+    private Map polls;
+    private Poll outstanding;
+    private long outstandingSent;
+    private UnitCode replyUnitCode;
+    /** Events queued on the transmitter, as of its last queue notice */
+    private int queued;
+    /** The event the transmitter last took from its queue, until its
+     * outcome is reported, or null
+     */
+    private X10Event inFlight;
+    /** The event whose outcome was last reported, in case the coalesced
+     * notice that it was taken from the queue comes after it
+     */
+    private X10Event finished;
+    /** The times and powerline durations of recent polls, oldest first */
+    private LinkedList recentPolls;
+
+    private long minimumInterval;
+    private long maximumInterval;
+    private long replyTimeout;
+    private double budget;
+    private long budgetWindow;
+
+    private long pollsSent;
+    private long repliesMatched;
+    private long timeouts;
+    private long roundTripTotal;
+    private long roundTripMaximum;
+    private long roundTripLast;
+
+    /** Creates a new instance of X10StatusPoller for the given connection,
+     * which must both transmit and receive. The poller does not send
+     * anything until it is started.
+     */
+    public X10StatusPoller(X10Connection xconn) {
+        if(xconn == null)
+            throw new IllegalArgumentException("X10Connection can not be null.");
+        if(!xconn.isX10Transmitter() || !xconn.isX10Receiver())
+            throw new IllegalArgumentException("X10StatusPoller needs a connection that can both transmit and receive.");
+        this.transmitter = xconn.getX10Transmitter();
+        this.polls = new LinkedHashMap();
+        this.recentPolls = new LinkedList();
+        this.minimumInterval = DEFAULT_MINIMUM_INTERVAL;
+        this.maximumInterval = DEFAULT_MAXIMUM_INTERVAL;
+        this.replyTimeout = DEFAULT_REPLY_TIMEOUT;
+        this.budget = DEFAULT_BUDGET;
+        this.budgetWindow = DEFAULT_BUDGET_WINDOW;
+
+        PollerListener listener = new PollerListener();
+        xconn.getX10Receiver().addX10Listener(listener);
+        this.transmitter.addX10TransmitterListener(listener);
+    }
+
+    /** Adds a unit to be polled, first as soon as there is an idle slot. */
+    public void addUnit(HouseCode houseCode, UnitCode unitCode) {
+        if(houseCode == null)
+            throw new IllegalArgumentException("HouseCode can not be null.");
+        if(unitCode == null)
+            throw new IllegalArgumentException("UnitCode can not be null.");
+        synchronized(lock) {
+            List key = Arrays.asList(new Object[] {houseCode, unitCode});
+            if(!this.polls.containsKey(key))
+                this.polls.put(key, new Poll(houseCode, unitCode, this.minimumInterval, System.currentTimeMillis()));
+            lock.notifyAll();
+        }
+    }
+
+    /** Stops polling a unit. */
+    public void removeUnit(HouseCode houseCode, UnitCode unitCode) {
+        synchronized(lock) {
+            this.polls.remove(Arrays.asList(new Object[] {houseCode, unitCode}));
+        }
+    }
+
+    /** Returns the number of units being polled. */
+    public int getUnitCount() {
+        synchronized(lock) {
+            return this.polls.size();
+        }
+    }
+
+    /** Returns the status the unit last reported, or <code>null</code> if
+     * it is not polled or has not answered yet.
+     */
+    public Boolean getStatus(HouseCode houseCode, UnitCode unitCode) {
+        synchronized(lock) {
+            Poll poll = (Poll)this.polls.get(Arrays.asList(new Object[] {houseCode, unitCode}));
+            return poll == null ? null : poll.status;
+        }
+    }
+
+    /** Returns the current polling interval of a unit in milliseconds, or
+     * -1 if it is not polled.
+     */
+    public long getInterval(HouseCode houseCode, UnitCode unitCode) {
+        synchronized(lock) {
+            Poll poll = (Poll)this.polls.get(Arrays.asList(new Object[] {houseCode, unitCode}));
+            return poll == null ? -1 : poll.interval;
+        }
+    }
+
+    /** Starts polling. */
+    public void start() {
+        synchronized(lock) {
+            this.running = true;
+            if(this.thread == null) {
+                this.thread = new Thread(new Runner(), "X10StatusPoller");
+                this.thread.start();
+            }
+        }
+    }
+
+    /** Stops polling.  A poll already sent is still matched to its reply. */
+    public void stop() {
+        synchronized(lock) {
+            this.running = false;
+            lock.notifyAll();
+        }
+    }
+
+    /** Returns the truth that the poller has been started and not stopped. */
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    public long getMinimumInterval() {
+        return this.minimumInterval;
+    }
+
+    /** Sets the shortest time between polls of a unit, in milliseconds. */
+    public void setMinimumInterval(long minimumInterval) {
+        if(minimumInterval <= 0 || minimumInterval > this.maximumInterval)
+            throw new IllegalArgumentException("The minimum interval must be positive and no more than the maximum interval, not "+minimumInterval+".");
+        this.minimumInterval = minimumInterval;
+    }
+
+    public long getMaximumInterval() {
+        return this.maximumInterval;
+    }
+
+    /** Sets the longest time between polls of a unit, in milliseconds. */
+    public void setMaximumInterval(long maximumInterval) {
+        if(maximumInterval < this.minimumInterval)
+            throw new IllegalArgumentException("The maximum interval must be at least the minimum interval, not "+maximumInterval+".");
+        this.maximumInterval = maximumInterval;
+    }
+
+    public long getReplyTimeout() {
+        return this.replyTimeout;
+    }
+
+    /** Sets how long to wait for a reply, in milliseconds. */
+    public void setReplyTimeout(long replyTimeout) {
+        if(replyTimeout <= 0)
+            throw new IllegalArgumentException("The reply timeout must be positive, not "+replyTimeout+".");
+        this.replyTimeout = replyTimeout;
+    }
+
+    public double getBudget() {
+        return this.budget;
+    }
+
+    /** Sets the share of powerline time, from 0.0 to 1.0, polling may use
+     * over the budget window.
+     */
+    public void setBudget(double budget) {
+        if(budget <= 0.0 || budget > 1.0)
+            throw new IllegalArgumentException("The budget must be more than 0.0 and at most 1.0, not "+budget+".");
+        this.budget = budget;
+    }
+
+    public long getBudgetWindow() {
+        return this.budgetWindow;
+    }
+
+    /** Sets the window the budget is measured over, in milliseconds. */
+    public void setBudgetWindow(long budgetWindow) {
+        if(budgetWindow <= 0)
+            throw new IllegalArgumentException("The budget window must be positive, not "+budgetWindow+".");
+        this.budgetWindow = budgetWindow;
+    }
+
+    /** Returns the number of status requests sent. */
+    public long getPollsSent() {
+        synchronized(lock) {
+            return this.pollsSent;
+        }
+    }
+
+    /** Returns the number of replies matched to a request. */
+    public long getRepliesMatched() {
+        synchronized(lock) {
+            return this.repliesMatched;
+        }
+    }
+
+    /** Returns the number of requests that went unanswered. */
+    public long getTimeouts() {
+        synchronized(lock) {
+            return this.timeouts;
+        }
+    }
+
+    /** Returns the mean time from sending a request to its reply, in milliseconds. */
+    public double getRoundTripMean() {
+        synchronized(lock) {
+            return this.repliesMatched == 0 ? 0.0 : this.roundTripTotal/1e6/this.repliesMatched;
+        }
+    }
+
+    /** Returns the longest time from sending a request to its reply, in milliseconds. */
+    public double getRoundTripMaximum() {
+        synchronized(lock) {
+            return this.roundTripMaximum/1e6;
+        }
+    }
+
+    /** Returns the time from sending the last matched request to its reply, in milliseconds. */
+    public double getRoundTripLast() {
+        synchronized(lock) {
+            return this.roundTripLast/1e6;
+        }
+    }
+
+    /** Sends a poll if one is due and allowed.  Called holding the lock.
+     * @return how long to wait before looking again, in milliseconds
+     */
+    private long pollIfDue() {
+        long now = System.currentTimeMillis();
+        if(this.outstanding != null) {
+            long waited = (System.nanoTime()-this.outstandingSent)/1000000;
+            if(waited < this.replyTimeout)
+                return this.replyTimeout-waited;
+            this.timeouts++;
+            reschedule(this.outstanding, now, false);
+            this.outstanding = null;
+        }
+        if(this.queued > 0 || this.inFlight != null || this.polls.isEmpty())
+            return this.replyTimeout;
+
+        Poll next = null;
+        for(Iterator i = this.polls.values().iterator();i.hasNext();) {
+            Poll poll = (Poll)i.next();
+            if(next == null || poll.nextPoll < next.nextPoll)
+                next = poll;
+        }
+        if(next.nextPoll > now)
+            return next.nextPoll-now;
+
+        // Stay within the share of the powerline polling is allowed
+        while(!this.recentPolls.isEmpty() && ((long[])this.recentPolls.getFirst())[0] <= now-this.budgetWindow) {
+            this.recentPolls.removeFirst();
+        }
+        long used = 0;
+        for(Iterator i = this.recentPolls.iterator();i.hasNext();) {
+            used += ((long[])i.next())[1];
+        }
+        long cost = getPollDuration(next);
+        if(used+cost > this.budget*this.budgetWindow && !this.recentPolls.isEmpty())
+            return ((long[])this.recentPolls.getFirst())[0]+this.budgetWindow-now;
+
+        this.recentPolls.addLast(new long[] {now, cost});
+        this.outstanding = next;
+        this.outstandingSent = System.nanoTime();
+        this.replyUnitCode = null;
+        this.pollsSent++;
+        new X10FramePlan(new X10Event[] {
+            new X10Event(this, next.houseCode, next.unitCode),
+            new X10Event(this, next.houseCode, FunctionCode.STATUS_REQUEST)}).transmit(this.transmitter);
+        return this.replyTimeout;
+    }
+
+    /** Returns the powerline time of a request and its reply, in milliseconds */
+    private long getPollDuration(Poll poll) {
+        X10Event address = new X10Event(this, poll.houseCode, poll.unitCode);
+        X10Event request = new X10Event(this, poll.houseCode, FunctionCode.STATUS_REQUEST);
+        X10Event reply = new X10Event(this, poll.houseCode, FunctionCode.STATUS_ON);
+        return new X10FramePlan(new X10Event[] {address, request, address, reply}).getEstimatedDuration();
+    }
+
+    private void reschedule(Poll poll, long now, boolean changed) {
+        if(changed)
+            poll.interval = this.minimumInterval;
+        else
+            poll.interval = Math.min(poll.interval*2, this.maximumInterval);
+        poll.nextPoll = now+poll.interval;
+    }
+
+    private void addressReceived(X10Event e) {
+        synchronized(lock) {
+            if(this.outstanding != null && this.outstanding.houseCode == e.getHouseCode())
+                this.replyUnitCode = (UnitCode)e.getOtherCode();
+            // Activity on the powerline means the unit may have changed
+            Poll poll = (Poll)this.polls.get(Arrays.asList(new Object[] {e.getHouseCode(), e.getOtherCode()}));
+            if(poll != null && poll != this.outstanding) {
+                poll.interval = this.minimumInterval;
+                poll.nextPoll = Math.min(poll.nextPoll, System.currentTimeMillis()+this.minimumInterval);
+            }
+        }
+    }
+
+    private void statusReceived(X10Event e, boolean on) {
+        synchronized(lock) {
+            Poll poll = this.outstanding;
+            if(poll == null || poll.houseCode != e.getHouseCode())
+                return;
+            if(this.replyUnitCode != null && this.replyUnitCode != poll.unitCode)
+                return;
+            long roundTrip = System.nanoTime()-this.outstandingSent;
+            this.repliesMatched++;
+            this.roundTripTotal += roundTrip;
+            this.roundTripMaximum = Math.max(this.roundTripMaximum, roundTrip);
+            this.roundTripLast = roundTrip;
+
+            Boolean status = on ? Boolean.TRUE : Boolean.FALSE;
+            reschedule(poll, System.currentTimeMillis(), !status.equals(poll.status));
+            poll.status = status;
+            this.outstanding = null;
+            lock.notifyAll();
+        }
+    }
+
+    private void queueChanged(X10TransmitterEvent e) {
+        synchronized(lock) {
+            if(e.getQueueDepth() >= 0)
+                this.queued = e.getQueueDepth();
+            else
+                this.queued = Math.max(0, this.queued+e.getEventsAdded()-e.getEventsDrained());
+            if(e.getEventsDrained() > 0 && e.getX10Event() != null) {
+                if(e.getX10Event() == this.finished) {
+                    this.finished = null;
+                } else {
+                    this.inFlight = e.getX10Event();
+                    this.finished = null;
+                }
+            }
+            if(this.queued == 0 && this.inFlight == null)
+                lock.notifyAll();
+        }
+    }
+
+    /** Outcomes of events that were never queued, such as refused ones,
+     * do not change what is in flight
+     */
+    private void eventFinished(X10Event event) {
+        synchronized(lock) {
+            if(event == this.inFlight) {
+                this.inFlight = null;
+            } else {
+                this.finished = event;
+            }
+            if(this.queued == 0 && this.inFlight == null)
+                lock.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * X10TransmitterNotifier.java
+ *
+ * Created on November 2, 2026, 8:15 PM
+ */
+
+package javax.x10.util;
+
+import java.util.*;
+import java.util.logging.*;
+
+import javax.x10.event.*;
+
+/** <code>X10TransmitterNotifier</code> delivers the
+ * {@link javax.x10.event.X10TransmitterEvent}s of an
+ * {@link javax.x10.X10Transmitter} to its listeners.  Every event goes out
+ * on the notifier's one thread in the order it was posted, so a listener
+ * never sees an event reported delivered before the queue notice that
+ * added it, and never sees two notices at once.
+ * <P>
+ * Changes to the queue are coalesced.  The first change after a notice
+ * starts the coalescing interval, and at the end of it one
+ * {@link javax.x10.event.X10TransmitterEvent#QUEUE_UPDATED}, or
+ * {@link javax.x10.event.X10TransmitterEvent#QUEUE_EMPTIED} if the queue
+ * is empty by then, carries the current depth and the number of events
+ * added and drained since the last notice.  A notice that adds events is
+ * sent ahead of any delivery report posted while it is being coalesced, so
+ * an event is never reported before the notice that queued it.  An
+ * interval of 0 sends a notice for every change.
+ * <P>
+ * Listeners can be registered for only the types of event they want, so a
+ * listener that only counts deliveries is not woken by queue notices.
+ *
+ * @see javax.x10.X10FilteredTransmitter
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class X10TransmitterNotifier {
+
+    // Setup logging facilities
+    private static final Logger LOG =
+            Logger.getLogger(X10TransmitterNotifier.class.getName());
+
+    /** The coalescing interval notifiers start with, in milliseconds */
+    public static final long DEFAULT_COALESCING_INTERVAL = 100;
+
+    /** A listener and the types it wants */
+    private static final class Registration {
+        private X10TransmitterListener listener;
+        /** Indexed by the ordinal of the type */
+        private boolean[] wanted;
+        private Registration(X10TransmitterListener listener, X10TransmitterEvent.Type[] types) {
+            this.listener = listener;
+            this.wanted = new boolean[X10TransmitterEvent.Type.values().length];
+            for(int i = 0; i < types.length; i++) {
+                if(types[i] != null)
+                    this.wanted[types[i].ordinal()] = true;
+            }
+        }
+    }
+
+    private class Dispatcher implements Runnable {
+        public void run() {
+            while(true) {
+                X10TransmitterEvent event;
+                synchronized(lock) {
+                    while(true) {
+                        if(closed && events.isEmpty())
+                            return;
+                        if(coalescing && !closed) {
+                            long remaining = noticeDue-System.currentTimeMillis();
+                            if(remaining <= 0)
+                                postNotice();
+                        }
+                        if(!events.isEmpty())
+                            break;
+                        try {
+                            if(coalescing)
+                                lock.wait(Math.max(1, noticeDue-System.currentTimeMillis()));
+                            else
+                                lock.wait();
+                        } catch(InterruptedException e) {
+                            return;
+                        }
+                    }
+                    event = (X10TransmitterEvent)events.removeFirst();
+                }
+                dispatch(event);
+            }
+        }
+    }
+
+    private Object source;
+    private String name;
+    /** The registrations, copied on write so dispatch does not lock them */
+    private volatile Registration[] registrations;
+    private long coalescingInterval;
+
+    /** Everything below is guarded by the lock */
+    private Object lock;
+    private LinkedList events;
+    private boolean coalescing;
+    private long noticeDue;
+    private int depth;
+    private int added;
+    private int drained;
+    private X10Event lastEvent;
+    private X10Batch lastBatch;
+    private long noticesSent;
+    private long changesCoalesced;
+    private Thread thread;
+    private boolean closed;
+
+    /** Creates a new instance of X10TransmitterNotifier.
+     * @param source The source of the events, usually the X10Transmitter.
+     * @param name A name for the notifier's thread.
+     */
+    public X10TransmitterNotifier(Object source, String name) {
+        if(source == null)
+            throw new IllegalArgumentException("Source can not be null.");
+        this.source = source;
+        this.name = name;
+        this.registrations = new Registration[0];
+        this.coalescingInterval = DEFAULT_COALESCING_INTERVAL;
+        this.lock = new Object();
+        this.events = new LinkedList();
+    }
+
+    /** Registers a listener for every type of event. */
+    public void addListener(X10TransmitterListener listener) {
+        addListener(listener, X10TransmitterEvent.Type.values());
+    }
+
+    /** Registers a listener for the given types of event only.  Adding a
+     * listener again replaces the types it was registered for.
+     */
+    public synchronized void addListener(X10TransmitterListener listener, X10TransmitterEvent.Type[] types) {
+        if(listener == null)
+            throw new IllegalArgumentException("X10TransmitterListener can not be null.");
+        if(types == null)
+            throw new IllegalArgumentException("Types can not be null.");
+        removeListener(listener);
+        Registration[] current = this.registrations;
+        Registration[] updated = new Registration[current.length+1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = new Registration(listener, types);
+        this.registrations = updated;
+    }
+
+    /** Deregisters a listener */
+    public synchronized void removeListener(X10TransmitterListener listener) {
+        Registration[] current = this.registrations;
+        List kept = new ArrayList(current.length);
+        for(int i = 0; i < current.length; i++) {
+            if(current[i].listener != listener)
+                kept.add(current[i]);
+        }
+        if(kept.size() < current.length)
+            this.registrations = (Registration[])kept.toArray(new Registration[kept.size()]);
+    }
+
+    /** Returns how long queue changes are coalesced before a notice is
+     * sent, in milliseconds.
+     */
+    public long getCoalescingInterval() {
+        synchronized(lock) {
+            return this.coalescingInterval;
+        }
+    }
+
+    /** Sets how long queue changes are coalesced before a notice is sent.
+     * @param millis The interval in milliseconds, 0 for a notice per change.
+     */
+    public void setCoalescingInterval(long millis) {
+        if(millis < 0)
+            throw new IllegalArgumentException("The coalescing interval can not be negative: "+millis);
+        synchronized(lock) {
+            this.coalescingInterval = millis;
+            if(coalescing)
+                noticeDue = Math.min(noticeDue, System.currentTimeMillis()+millis);
+            lock.notifyAll();
+        }
+    }
+
+    /** Records a change to the transmitter's queue.
+     * @param event The event added or removed.
+     * @param batch The batch the event belongs to, if any.
+     * @param depth The number of events queued after the change.
+     * @param added The number of events the change added.
+     * @param drained The number of events the change removed.
+     */
+    public void queueChanged(X10Event event, X10Batch batch, int depth, int added, int drained) {
+        synchronized(lock) {
+            if(closed)
+                return;
+            if(coalescing)
+                changesCoalesced++;
+            this.depth = depth;
+            this.added += added;
+            this.drained += drained;
+            this.lastEvent = event;
+            this.lastBatch = batch;
+            if(coalescingInterval == 0) {
+                postNotice();
+            } else if(!coalescing) {
+                coalescing = true;
+                noticeDue = System.currentTimeMillis()+coalescingInterval;
+            }
+            wake();
+        }
+    }
+
+    /** Sends an event that is not about the queue, such as
+     * {@link javax.x10.event.X10TransmitterEvent#EVENT_DELIVERED}, after
+     * any queue notice being coalesced that adds events.
+     */
+    public void post(X10TransmitterEvent event) {
+        if(event == null)
+            throw new IllegalArgumentException("X10TransmitterEvent can not be null.");
+        synchronized(lock) {
+            if(closed)
+                return;
+            // Only a notice that adds events has to go first, since the
+            // event may be about one of them
+            if(coalescing && added > 0)
+                postNotice();
+            events.addLast(event);
+            wake();
+        }
+    }
+
+    /** Returns the number of queue notices sent. */
+    public long getNoticesSent() {
+        synchronized(lock) {
+            return this.noticesSent;
+        }
+    }
+
+    /** Returns the number of queue changes folded into a notice with an
+     * earlier change rather than sent on their own.
+     */
+    public long getChangesCoalesced() {
+        synchronized(lock) {
+            return this.changesCoalesced;
+        }
+    }
+
+    /** Sends any notice still being coalesced and the events already
+     * posted, then stops the notifier's thread.  Nothing posted after this
+     * is sent.
+     */
+    public void close() {
+        synchronized(lock) {
+            if(closed)
+                return;
+            if(coalescing)
+                postNotice();
+            closed = true;
+            lock.notifyAll();
+        }
+    }
+
+    /** Callers hold the lock */
+    private void postNotice() {
+        coalescing = false;
+        X10TransmitterEvent.Type type = depth == 0 ? X10TransmitterEvent.QUEUE_EMPTIED
+                                                   : X10TransmitterEvent.QUEUE_UPDATED;
+        events.addLast(new X10TransmitterEvent(source, type, lastEvent, lastBatch, depth, added, drained));
+        noticesSent++;
+        added = 0;
+        drained = 0;
+        lastEvent = null;
+        lastBatch = null;
+    }
+
+    /** Callers hold the lock */
+    private void wake() {
+        if(thread == null) {
+            thread = new Thread(new Dispatcher(), name == null ? "X10TransmitterNotifier" : name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        lock.notifyAll();
+    }
+
+    private void dispatch(X10TransmitterEvent event) {
+        X10TransmitterEvent.Type type = event.getType();
+        Registration[] current = this.registrations;
+        for(int i = 0; i < current.length; i++) {
+            if(!current[i].wanted[type.ordinal()])
+                continue;
+            X10TransmitterListener listener = current[i].listener;
+            try {
+                switch(type) {
+                    case QUEUE_EMPTIED:
+                        listener.queueEmptied(event);
+                        break;
+                    case QUEUE_UPDATED:
+                        listener.queueUpdated(event);
+                        break;
+                    case EVENT_UNDELIVERED:
+                        listener.eventUndelivered(event);
+                        break;
+                    case EVENT_DELIVERED:
+                        listener.eventDelivered(event);
+                        break;
+                }
+            } catch(RuntimeException e) {
+                LOG.log(Level.WARNING,"X10TransmitterListener "+listener+" failed handling "+type,e);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * CM11ADetectorTest.java
+ *
+ * Created on November 17, 2026, 8:10 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.TestCase;
+
+/** Tests that {@link com.jaxzin.x10.cm11a.CM11ADetector} finds a
+ * {@link com.jaxzin.x10.cm11a.CM11ASimulator} among ports that are busy,
+ * silent or answer with something that is not a CM11A status, and that it
+ * tries the port it found last time first.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class CM11ADetectorTest extends TestCase {
+
+    private static final String BUSY        = "/dev/ttyS0";
+    private static final String SILENT      = "/dev/ttyS1";
+    private static final String GARBLED     = "/dev/ttyUSB0";
+    private static final String CM11A       = "/dev/ttyUSB1";
+
+    /** A port that gives the same bytes whatever is written to it */
+    private static class FakeLink implements SerialLink {
+        private InputStream in;
+        private FakeLink(byte[] answer) {
+            this.in = new ByteArrayInputStream(answer);
+        }
+        public InputStream getInputStream() {   return in; }
+        public OutputStream getOutputStream() { return new ByteArrayOutputStream(); }
+        public void setDataListener(Runnable listener) {}
+        public void notifyOnDataAvailable(boolean enable) {}
+        public void close() {}
+    }
+
+    /** Detects over fake ports, with the simulator on the ports given */
+    private static class FakeDetector extends CM11ADetector {
+        private String[] ports;
+        private Set simulated;
+        private List opened;
+        private FakeDetector(String[] ports, String[] simulated) {
+            this.ports = ports;
+            this.simulated = new HashSet(Arrays.asList(simulated));
+            this.opened = Collections.synchronizedList(new ArrayList());
+            setTimeout(500);
+        }
+        protected String[] getPortNames() {
+            return ports;
+        }
+        protected SerialLink openLink(String portName) throws Exception {
+            opened.add(portName);
+            if(simulated.contains(portName)) {
+                CM11ASimulator simulator = new CM11ASimulator();
+                simulator.setReceiveTimeout(getTimeout());
+                return simulator;
+            }
+            if(portName.equals(BUSY))
+                throw new IOException(portName+" is in use");
+            if(portName.equals(GARBLED)) {
+                // Long enough for a status, but the seconds are impossible
+                byte[] answer = new byte[14];
+                Arrays.fill(answer, (byte)0xC8);
+                return new FakeLink(answer);
+            }
+            // Reads give up at once, as they do when the timeout expires
+            return new FakeLink(new byte[0]);
+        }
+    }
+
+    protected void setUp() {
+        CM11ADetector.clearCache();
+    }
+
+    protected void tearDown() {
+        CM11ADetector.clearCache();
+    }
+
+    public void testFindsTheSimulatorAmongOtherPorts() throws InterruptedException {
+        FakeDetector detector = new FakeDetector(new String[] {BUSY, SILENT, GARBLED, CM11A},
+                                                 new String[] {CM11A});
+        assertEquals(CM11A, detector.detect());
+        assertEquals(CM11A, CM11ADetector.getCachedPortName());
+        assertEquals(Arrays.asList(new String[] {BUSY, SILENT, GARBLED, CM11A}),
+                     Arrays.asList(CM11ADetector.getSerialPortNames()));
+    }
+
+    public void testTriesTheCachedPortFirst() throws InterruptedException {
+        String[] ports = {BUSY, SILENT, GARBLED, CM11A};
+        assertEquals(CM11A, new FakeDetector(ports, new String[] {CM11A}).detect());
+        FakeDetector again = new FakeDetector(ports, new String[] {CM11A});
+        assertEquals(CM11A, again.detect());
+        assertEquals(Collections.singletonList(CM11A), again.opened);
+    }
+
+    public void testProbesEveryPortWhenTheCachedOneStopsAnswering() throws InterruptedException {
+        String[] ports = {SILENT, CM11A, "/dev/ttyUSB2"};
+        assertEquals(CM11A, new FakeDetector(ports, new String[] {CM11A}).detect());
+        // The adapter moved to another port
+        assertEquals("/dev/ttyUSB2", new FakeDetector(ports, new String[] {"/dev/ttyUSB2"}).detect());
+        assertEquals("/dev/ttyUSB2", CM11ADetector.getCachedPortName());
+    }
+
+    public void testFindsNothingWhenNoPortAnswers() throws InterruptedException {
+        FakeDetector detector = new FakeDetector(new String[] {BUSY, SILENT, GARBLED}, new String[0]);
+        assertNull(detector.detect());
+        assertNull(CM11ADetector.getCachedPortName());
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * CM11ATest.java
+ *
+ * Created on November 15, 2026, 8:30 PM
+ */
+
+package com.jaxzin.x10.cm11a;
+
+import junit.framework.TestCase;
+
+import javax.x10.codes.*;
+import javax.x10.event.X10Event;
+import javax.x10.util.X10FramePlan;
+import javax.x10.util.X10Scene;
+import javax.x10.util.X10SceneCompiler;
+
+/** Tests that brightness levels reach the CM11A as the dim steps they
+ * stand for, including the levels an
+ * {@link javax.x10.util.X10SceneCompiler} plans.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class CM11ATest extends TestCase {
+
+    private static final int STEPS = CM11A.OUTPUT_BRIGHTNESS_LEVELS;
+
+    public void testEveryStepIsSentExactly() {
+        for(int s = 0; s <= STEPS; s++) {
+            X10Event dim = new X10Event(this, HouseCode.A, FunctionCode.DIM, (double)s/STEPS);
+            assertEquals("steps", s, getSteps(dim));
+        }
+    }
+
+    public void testCompiledSceneDimsToItsLevel() {
+        X10SceneCompiler compiler = new X10SceneCompiler();
+        for(int s = 1; s <= STEPS; s++) {
+            X10Scene scene = new X10Scene();
+            scene.setBrightnessLevel(HouseCode.A, UnitCode.UNIT_1, (double)s/STEPS);
+            X10FramePlan plan = compiler.compile(scene);
+
+            // Without a monitor the lamp's state is unknown, so play the
+            // plan against a lamp that could start anywhere
+            int level = 0;
+            X10Event[] events = plan.getEvents();
+            for(int i = 0; i < events.length; i++) {
+                FunctionCode code = events[i].getType() == X10Event.ADDRESS ? null
+                                  : (FunctionCode)events[i].getOtherCode();
+                if(code == FunctionCode.ON)
+                    level = Math.max(level, 1);
+                else if(code == FunctionCode.BRIGHTEN)
+                    level = Math.min(STEPS, level+getSteps(events[i]));
+                else if(code == FunctionCode.DIM)
+                    level = Math.max(0, level-getSteps(events[i]));
+            }
+            assertEquals("level after "+plan, s, level);
+        }
+    }
+
+    /** Returns the dim steps the CM11A is told to send with a function */
+    private static int getSteps(X10Event event) {
+        return (CM11A.getBytes(event)[0] & 0xFF) >> 3;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * X10PackedEventTest.java
+ *
+ * Created on November 17, 2026, 7:45 PM
+ */
+
+package javax.x10.event;
+
+import junit.framework.TestCase;
+
+import javax.x10.codes.*;
+
+/** Tests that {@link javax.x10.event.X10PackedEvent} turns events into
+ * <code>long</code>s and back without losing anything, and refuses the
+ * brightness levels it can not keep exactly.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class X10PackedEventTest extends TestCase {
+
+    public void testEveryKindOfEventRoundTrips() {
+        X10Event[] events = {
+            new X10Event(this, HouseCode.A, UnitCode.UNIT_1),
+            new X10Event(this, HouseCode.P, UnitCode.UNIT_16),
+            new X10Event(this, HouseCode.C, FunctionCode.ON),
+            new X10Event(this, HouseCode.D, FunctionCode.ALL_UNITS_OFF),
+            new X10Event(this, HouseCode.E, FunctionCode.DIM, 5.0/22.0),
+            new X10Event(this, HouseCode.F, FunctionCode.BRIGHTEN, 0.37),
+            new X10Event(this, HouseCode.G, FunctionCode.EXTENDED_CODE, (byte)0x2A, (byte)0x31),
+            new X10Event(this, HouseCode.H, UnitCode.UNIT_9, ExtendedCommand.PRESET_DIM,
+                         ExtendedCommand.getLevelData(0.5)),
+            new X10Event(this, HouseCode.M, UnitCode.UNIT_3, ExtendedCommand.STATUS_ACKNOWLEDGE, (byte)0xFF)
+        };
+        for(int i = 0; i < events.length; i++) {
+            X10Event event = events[i];
+            assertTrue(event.toString(), X10PackedEvent.isPackable(event));
+            X10Event unpacked = X10PackedEvent.unpack(X10PackedEvent.pack(event), this);
+            assertSame(event.toString(), this, unpacked.getSource());
+            assertSame(event.toString(), event.getType(), unpacked.getType());
+            assertSame(event.toString(), event.getHouseCode(), unpacked.getHouseCode());
+            assertSame(event.toString(), event.getOtherCode(), unpacked.getOtherCode());
+            assertSame(event.toString(), event.getUnitCode(), unpacked.getUnitCode());
+            assertEquals(event.toString(), event.getBrightnessLevel(), unpacked.getBrightnessLevel(), 0.0);
+            assertEquals(event.toString(), event.getData(), unpacked.getData());
+            assertEquals(event.toString(), event.getCommand(), unpacked.getCommand());
+        }
+    }
+
+    public void testOffGridLevelIsRefused() {
+        X10Event dim = new X10Event(this, HouseCode.A, FunctionCode.DIM, 0.123456789);
+        assertFalse(X10PackedEvent.isPackable(dim));
+        try {
+            X10PackedEvent.pack(dim);
+            fail("Packed a level that is not a whole number of parts");
+        } catch(IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * X10FilteredListenerTest.java
+ *
+ * Created on November 16, 2026, 8:20 PM
+ */
+
+package javax.x10.util;
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import javax.x10.codes.*;
+import javax.x10.event.*;
+
+/** Tests that {@link javax.x10.util.X10FilteredListener} passes on the
+ * events its filter matches, following the addressing as it goes.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class X10FilteredListenerTest extends TestCase {
+
+    private List heard;
+    private X10FilteredListener filtered;
+
+    protected void setUp() {
+        heard = new ArrayList();
+        X10Listener recorder = new X10Adapter() {
+            public void address(X10Event e) {   heard.add(e); }
+            public void on(X10Event e) {        heard.add(e); }
+            public void off(X10Event e) {       heard.add(e); }
+        };
+        filtered = new X10FilteredListener(X10Filter.forUnit(HouseCode.A, UnitCode.UNIT_1), recorder);
+    }
+
+    public void testPassesOnFunctionsForAddressedUnit() {
+        X10Event address = new X10Event(this, HouseCode.A, UnitCode.UNIT_1);
+        X10Event on = new X10Event(this, HouseCode.A, FunctionCode.ON);
+        X10EventDispatcher.dispatch(filtered, address);
+        X10EventDispatcher.dispatch(filtered, on);
+        assertEquals(Arrays.asList(new X10Event[] {address, on}), heard);
+    }
+
+    public void testHoldsBackFunctionsForOtherUnits() {
+        X10EventDispatcher.dispatch(filtered, new X10Event(this, HouseCode.A, UnitCode.UNIT_2));
+        X10EventDispatcher.dispatch(filtered, new X10Event(this, HouseCode.A, FunctionCode.ON));
+        X10EventDispatcher.dispatch(filtered, new X10Event(this, HouseCode.B, UnitCode.UNIT_1));
+        X10EventDispatcher.dispatch(filtered, new X10Event(this, HouseCode.B, FunctionCode.OFF));
+        assertTrue(heard.isEmpty());
+    }
+}
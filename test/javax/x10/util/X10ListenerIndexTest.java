@@ -0,0 +1,113 @@
+/*
+ * X10ListenerIndexTest.java
+ *
+ * Created on November 14, 2026, 7:20 PM
+ */
+
+package javax.x10.util;
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import javax.x10.codes.*;
+import javax.x10.event.*;
+
+/** Tests that {@link javax.x10.util.X10ListenerIndex} finds the same
+ * listeners {@link javax.x10.event.X10Filter#accepts} would.
+ *
+ * @author  Brian Jackson (brian@jaxzin.com)
+ */
+public class X10ListenerIndexTest extends TestCase {
+
+    private X10ListenerIndex index;
+    private X10Listener all;
+    private X10Listener unitA1;
+    private X10Listener onOnly;
+
+    protected void setUp() {
+        index = new X10ListenerIndex();
+        all = new X10Adapter() {};
+        unitA1 = new X10Adapter() {};
+        onOnly = new X10Adapter() {};
+        index.add(all);
+        index.add(X10Filter.forUnit(HouseCode.A, UnitCode.UNIT_1), unitA1);
+        index.add(X10Filter.forFunction(FunctionCode.ON), onOnly);
+    }
+
+    public void testUnaddressedFunctionReachesUnfilteredListeners() {
+        List listeners = listenersFor(new X10Event(this, HouseCode.C, FunctionCode.HAIL_REQUEST));
+        assertEquals(Collections.singletonList(all), listeners);
+
+        listeners = listenersFor(new X10Event(this, HouseCode.A, FunctionCode.ON));
+        assertEquals(Arrays.asList(new X10Listener[] {all, onOnly}), listeners);
+    }
+
+    public void testFunctionReachesAddressedUnit() {
+        assertEquals(Arrays.asList(new X10Listener[] {all, unitA1}),
+                     listenersFor(new X10Event(this, HouseCode.A, UnitCode.UNIT_1)));
+        assertEquals(Arrays.asList(new X10Listener[] {all, unitA1}),
+                     listenersFor(new X10Event(this, HouseCode.A, FunctionCode.OFF)));
+    }
+
+    public void testFunctionSkipsUnitsNotAddressed() {
+        listenersFor(new X10Event(this, HouseCode.A, UnitCode.UNIT_1));
+        listenersFor(new X10Event(this, HouseCode.A, FunctionCode.ON));
+        // Addressing after a function starts a new set without A1
+        listenersFor(new X10Event(this, HouseCode.A, UnitCode.UNIT_2));
+        assertEquals(Collections.singletonList(all),
+                     listenersFor(new X10Event(this, HouseCode.A, FunctionCode.OFF)));
+    }
+
+    public void testHouseWideFunctionReachesEveryUnit() {
+        assertEquals(Arrays.asList(new X10Listener[] {all, unitA1}),
+                     listenersFor(new X10Event(this, HouseCode.A, FunctionCode.ALL_UNITS_OFF)));
+    }
+
+    public void testExtendedCodeNamesItsUnit() {
+        X10Event extended = new X10Event(this, HouseCode.A, UnitCode.UNIT_1, FunctionCode.EXTENDED_CODE, (byte)0, (byte)0x31);
+        assertEquals(Arrays.asList(new X10Listener[] {all, unitA1}), listenersFor(extended));
+    }
+
+    public void testAgreesWithFilter() {
+        X10Filter[] filters = {
+            X10Filter.ALL,
+            X10Filter.forUnit(HouseCode.A, UnitCode.UNIT_1),
+            X10Filter.forFunction(FunctionCode.ON),
+        };
+        Set addressed = new HashSet();
+        boolean functionSent = false;
+        X10Event[] events = {
+            new X10Event(this, HouseCode.A, FunctionCode.ON),
+            new X10Event(this, HouseCode.A, UnitCode.UNIT_1),
+            new X10Event(this, HouseCode.A, UnitCode.UNIT_3),
+            new X10Event(this, HouseCode.A, FunctionCode.ON),
+            new X10Event(this, HouseCode.A, FunctionCode.DIM, 0.5),
+            new X10Event(this, HouseCode.A, UnitCode.UNIT_3),
+            new X10Event(this, HouseCode.A, FunctionCode.OFF),
+            new X10Event(this, HouseCode.B, FunctionCode.STATUS_REQUEST),
+        };
+        X10Listener[] byFilter = {all, unitA1, onOnly};
+        for(int i = 0; i < events.length; i++) {
+            X10Event event = events[i];
+            if(event.getHouseCode() == HouseCode.A && event.getType() == X10Event.ADDRESS) {
+                if(functionSent)
+                    addressed.clear();
+                functionSent = false;
+                addressed.add(event.getOtherCode());
+            }
+            List expected = new ArrayList();
+            for(int f = 0; f < filters.length; f++) {
+                if(filters[f].accepts(event, addressed))
+                    expected.add(byFilter[f]);
+            }
+            if(event.getHouseCode() == HouseCode.A && event.getType() == X10Event.FUNCTION)
+                functionSent = true;
+            assertEquals(event.toString(), expected, listenersFor(event));
+        }
+    }
+
+    private List listenersFor(X10Event event) {
+        return Arrays.asList(index.getListeners(event));
+    }
+}